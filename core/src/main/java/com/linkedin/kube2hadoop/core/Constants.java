@@ -12,6 +12,7 @@ public class Constants {
 
   // Servlet Paths
   public static final String GET_DELEGATION_TOKEN_PATH = "/getDelegationToken";
+  public static final String BATCH_GET_DELEGATION_TOKEN_PATH = "/batchGetDelegationToken";
   public static final String HEALTH_PATH = "/health";
   public static final String METRICS_PATH = "/metrics";
 
@@ -33,18 +34,29 @@ public class Constants {
   public static final String NAMESPACE = "namespace";
   public static final String POD_NAME = "pod-name";
   public static final String TOKEN_KINDS = "token-kinds";
+  public static final String PODS = "pods";
   public static final String DO_AS = "doAs";
   public static final String SRCIP = "srcIP";
   public static final String PROXY_USER = "proxyUser";
+  public static final String JOB_ID = "kube2hadoop.job-id";
   public static final String IDDECORATOR_LABEL = "iddecorator";
+  public static final String POD_SUCCEEDED = "Succeeded";
+  public static final String POD_FAILED = "Failed";
 
   public static final String KUBERNETES_USER_ID = "iddecorator.username";
 
   // LDAP related constants
   public static final String CONTEXT_FACTORY = "com.sun.jndi.ldap.LdapCtxFactory";
+  public static final String LDAP_CONNECT_POOL = "com.sun.jndi.ldap.connect.pool";
+  public static final String LDAP_CONNECT_POOL_MAX_SIZE = "com.sun.jndi.ldap.connect.pool.maxsize";
+  public static final String LDAP_CONNECT_POOL_TIMEOUT = "com.sun.jndi.ldap.connect.pool.timeout";
+  public static final String LDAP_CONNECT_POOL_PROTOCOL = "com.sun.jndi.ldap.connect.pool.protocol";
+  public static final String LDAP_CONNECT_TIMEOUT = "com.sun.jndi.ldap.connect.timeout";
+  public static final String LDAP_READ_TIMEOUT = "com.sun.jndi.ldap.read.timeout";
 
   public static final String CN_ATTR = "cn";
   public static final String MEM_UID_ATTR = "memberuid";
+  public static final String MODIFY_TIMESTAMP_ATTR = "modifyTimestamp";
 
   private Constants() {
 
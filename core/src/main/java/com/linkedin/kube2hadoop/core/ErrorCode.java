@@ -22,7 +22,12 @@ public enum ErrorCode {
   BEARER_TOKEN_EXCEPTION(113, "Failed to retrieve kubernetes bearer token"),
   READ_KEYTAB_EXCEPTION(114, "Failed to read keytab information"),
   LDAP_LOOKUP_EXCEPTION(115, "Failed to authenticate user to access specified headless account"),
-  KUBERNETES_AUTHENTICATION_BLACKLIST_EXCEPTION(116, "Username is blacklisted for fetching delegation token");
+  KUBERNETES_AUTHENTICATION_BLACKLIST_EXCEPTION(116, "Username is blacklisted for fetching delegation token"),
+  TOO_MANY_REQUESTS(117, "Too many token requests in flight"),
+  REQUEST_TIMEOUT(118, "Token request timed out"),
+  BATCH_CALLER_NOT_ALLOWED(119, "Caller is not allowed to request tokens for a batch of pods"),
+  TOKEN_CACHE_EXCEPTION(120, "Failed to store delegation tokens in the token cache"),
+  INTERNAL_ERROR(121, "Unexpected error while processing the token request");
 
 
   private final int code;
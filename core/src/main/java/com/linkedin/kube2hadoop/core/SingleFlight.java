@@ -0,0 +1,111 @@
+/**
+ * Copyright 2020 LinkedIn Corporation. All rights reserved. Licensed under the BSD-2 Clause license.
+ * See LICENSE in the project root for license information.
+ */
+
+package com.linkedin.kube2hadoop.core;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+
+/**
+ * Coalesces concurrent calls for the same key: the first caller runs the call, and callers arriving while it is in
+ * flight wait for and share its result (or exception) instead of running the call again. Results are not cached once
+ * the call completes. Waiting callers give up after {@code waitTimeout}, so that a hung call does not hold every
+ * caller for the same key.
+ * @param <K> key type
+ * @param <V> result type
+ */
+public class SingleFlight<K, V> {
+  private final ConcurrentMap<K, CompletableFuture<V>> inFlightCalls = new ConcurrentHashMap<>();
+  private final LongAdder executedCalls = new LongAdder();
+  private final LongAdder sharedCalls = new LongAdder();
+  private final LongAdder timedOutWaits = new LongAdder();
+  private final long waitTimeout;
+
+  public SingleFlight() {
+    this(0L);
+  }
+
+  /**
+   * @param waitTimeout time in milliseconds callers wait for the call in flight, unlimited if not positive
+   */
+  public SingleFlight(long waitTimeout) {
+    this.waitTimeout = waitTimeout;
+  }
+
+  /**
+   * Run {@code call} for {@code key}, or wait for the result of the call already in flight for {@code key}.
+   * @param key key identifying identical calls
+   * @param call call to run
+   * @return result of the call
+   * @throws TokenServiceException with {@code ErrorCode.REQUEST_TIMEOUT} if the call in flight did not complete
+   *  within the wait timeout
+   */
+  public V execute(K key, Supplier<V> call) {
+    CompletableFuture<V> future = new CompletableFuture<>();
+    CompletableFuture<V> inFlight = inFlightCalls.putIfAbsent(key, future);
+    if (inFlight != null) {
+      sharedCalls.increment();
+      return await(inFlight);
+    }
+
+    executedCalls.increment();
+    try {
+      V result = call.get();
+      future.complete(result);
+      return result;
+    } catch (RuntimeException | Error e) {
+      future.completeExceptionally(e);
+      throw e;
+    } finally {
+      inFlightCalls.remove(key, future);
+    }
+  }
+
+  private V await(CompletableFuture<V> inFlight) {
+    try {
+      return waitTimeout > 0 ? inFlight.get(waitTimeout, TimeUnit.MILLISECONDS) : inFlight.get();
+    } catch (TimeoutException e) {
+      timedOutWaits.increment();
+      throw new TokenServiceException("Timed out after " + waitTimeout + "ms waiting for the identical call in flight",
+          ErrorCode.REQUEST_TIMEOUT);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new CompletionException(e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new CompletionException(cause);
+    }
+  }
+
+  public int getInFlightCount() {
+    return inFlightCalls.size();
+  }
+
+  public long getExecutedCount() {
+    return executedCalls.sum();
+  }
+
+  public long getSharedCount() {
+    return sharedCalls.sum();
+  }
+
+  public long getTimedOutWaitCount() {
+    return timedOutWaits.sum();
+  }
+}
@@ -14,6 +14,16 @@ public class ConfigurationKeys {
     LDAP
   }
 
+  public enum TokenCacheType {
+    LOCAL,
+    ZOOKEEPER
+  }
+
+  public enum TokenOwnership {
+    PARTITIONED,
+    LEADER
+  }
+
   private ConfigurationKeys() {
 
   }
@@ -32,12 +42,66 @@ public class ConfigurationKeys {
   public static final String JETTY_IDLE_TIMEOUT = JETTY_PREFIX + "idleTimeout";
   public static final Integer DEFAULT_JETTY_IDLE_TIMEOUT = 120;
 
+  // Asynchronous getDelegationToken request handling
+  public static final String KUBE2HADOOP_ASYNC = KUBE2HADOOP_PREFIX + "async.";
+
+  public static final String KUBE2HADOOP_ASYNC_ENABLED = KUBE2HADOOP_ASYNC + "enabled";
+  public static final Boolean DEFAULT_KUBE2HADOOP_ASYNC_ENABLED = false;
+
+  public static final String KUBE2HADOOP_ASYNC_THREADS = KUBE2HADOOP_ASYNC + "threads";
+  public static final Integer DEFAULT_KUBE2HADOOP_ASYNC_THREADS = 50;
+
+  public static final String KUBE2HADOOP_ASYNC_MAX_IN_FLIGHT_REQUESTS = KUBE2HADOOP_ASYNC + "max-in-flight-requests";
+  public static final Integer DEFAULT_KUBE2HADOOP_ASYNC_MAX_IN_FLIGHT_REQUESTS = 5000;
+
+  public static final String KUBE2HADOOP_ASYNC_REQUEST_TIMEOUT_IN_MILLISECONDS = KUBE2HADOOP_ASYNC + "request-timeout";
+  public static final Integer DEFAULT_KUBE2HADOOP_ASYNC_REQUEST_TIMEOUT_IN_MILLISECONDS = 1000 * 60 * 2;
+
+  // Batch getDelegationToken requests
+  public static final String KUBE2HADOOP_BATCH = KUBE2HADOOP_PREFIX + "batch.";
+
+  public static final String KUBE2HADOOP_BATCH_ALLOWED_CALLERS = KUBE2HADOOP_BATCH + "allowed-callers";
+
+  public static final String KUBE2HADOOP_BATCH_MAX_PODS = KUBE2HADOOP_BATCH + "max-pods";
+  public static final Integer DEFAULT_KUBE2HADOOP_BATCH_MAX_PODS = 1000;
+
 
   // Hadoop configurations
   public static final String KUBE2HADOOP_KEYTAB_LOCATION = KUBE2HADOOP_PREFIX + "keytab.location";
 
   public static final String HADOOP_CONF_DIR = KUBE2HADOOP_PREFIX + "hadoop.conf.dir";
 
+  public static final String KUBE2HADOOP_NAMENODES = KUBE2HADOOP_PREFIX + "namenodes";
+
+  public static final String KUBE2HADOOP_NAMENODE_FETCH_THREADS = KUBE2HADOOP_PREFIX + "namenode.fetch.threads";
+  public static final Integer DEFAULT_KUBE2HADOOP_NAMENODE_FETCH_THREADS = 16;
+
+  public static final String KUBE2HADOOP_NAMENODE_FETCH_TIMEOUT_IN_MILLISECONDS = KUBE2HADOOP_PREFIX + "namenode.fetch.timeout";
+  public static final Integer DEFAULT_KUBE2HADOOP_NAMENODE_FETCH_TIMEOUT_IN_MILLISECONDS = 1000 * 60;
+
+  // Proxy user cache configurations
+  public static final String KUBE2HADOOP_PROXY_USER_CACHE = KUBE2HADOOP_PREFIX + "proxy-user-cache.";
+
+  public static final String KUBE2HADOOP_PROXY_USER_CACHE_MAX_SIZE = KUBE2HADOOP_PROXY_USER_CACHE + "max-size";
+  public static final Long DEFAULT_KUBE2HADOOP_PROXY_USER_CACHE_MAX_SIZE = 10000L;
+
+  public static final String KUBE2HADOOP_PROXY_USER_CACHE_TTL_IN_MILLISECONDS = KUBE2HADOOP_PROXY_USER_CACHE + "ttl";
+  public static final Long DEFAULT_KUBE2HADOOP_PROXY_USER_CACHE_TTL_IN_MILLISECONDS = 1000L * 60 * 60;
+
+  // Job-level token sharing configurations
+  public static final String KUBE2HADOOP_JOB_TOKEN_SHARING = KUBE2HADOOP_PREFIX + "job-token-sharing.";
+
+  public static final String KUBE2HADOOP_JOB_TOKEN_SHARING_ENABLED = KUBE2HADOOP_JOB_TOKEN_SHARING + "enabled";
+  public static final Boolean DEFAULT_KUBE2HADOOP_JOB_TOKEN_SHARING_ENABLED = false;
+
+  public static final String KUBE2HADOOP_JOB_TOKEN_SHARING_JOB_LABEL = KUBE2HADOOP_JOB_TOKEN_SHARING + "job-label";
+
+  public static final String KUBE2HADOOP_JOB_TOKEN_SHARING_MAX_SIZE = KUBE2HADOOP_JOB_TOKEN_SHARING + "max-size";
+  public static final Long DEFAULT_KUBE2HADOOP_JOB_TOKEN_SHARING_MAX_SIZE = 10000L;
+
+  public static final String KUBE2HADOOP_JOB_TOKEN_SHARING_MAX_AGE_IN_MILLISECONDS = KUBE2HADOOP_JOB_TOKEN_SHARING + "max-age";
+  public static final Long DEFAULT_KUBE2HADOOP_JOB_TOKEN_SHARING_MAX_AGE_IN_MILLISECONDS = 1000L * 60 * 60 * 24;
+
 
   // Kubernetes configurations
   public static final String KUBERNETES_PREFIX = "kubernetes";
@@ -49,11 +113,119 @@ public class ConfigurationKeys {
 
   public static final String KUBE2HADOOP_WATCH_LABEL_SELECTOR = KUBERNETES_PREFIX + "watch.labelselector";
 
+  // Kubernetes pod watch configurations
+  public static final String KUBE2HADOOP_WATCH = KUBE2HADOOP_PREFIX + "watch.";
+
+  public static final String KUBE2HADOOP_WATCH_CLUSTER_WIDE = KUBE2HADOOP_WATCH + "cluster-wide";
+  public static final Boolean DEFAULT_KUBE2HADOOP_WATCH_CLUSTER_WIDE = false;
+
+  public static final String KUBE2HADOOP_WATCH_RETAINED_ANNOTATIONS = KUBE2HADOOP_WATCH + "retained-annotations";
+  public static final String DEFAULT_KUBE2HADOOP_WATCH_RETAINED_ANNOTATIONS = "doAs";
+
+  public static final String KUBE2HADOOP_WATCH_PAGE_SIZE = KUBE2HADOOP_WATCH + "page-size";
+  public static final Integer DEFAULT_KUBE2HADOOP_WATCH_PAGE_SIZE = 500;
+
+  public static final String KUBE2HADOOP_WATCH_TIMEOUT_IN_SECONDS = KUBE2HADOOP_WATCH + "timeout";
+  public static final Integer DEFAULT_KUBE2HADOOP_WATCH_TIMEOUT_IN_SECONDS = 60 * 5;
+
+  public static final String KUBE2HADOOP_WATCH_RESYNC_INTERVAL_IN_MILLISECONDS = KUBE2HADOOP_WATCH + "resync-interval";
+  public static final Long DEFAULT_KUBE2HADOOP_WATCH_RESYNC_INTERVAL_IN_MILLISECONDS = 1000L * 60 * 30;
+
+  public static final String KUBE2HADOOP_WATCH_INITIAL_BACKOFF_IN_MILLISECONDS = KUBE2HADOOP_WATCH + "initial-backoff";
+  public static final Long DEFAULT_KUBE2HADOOP_WATCH_INITIAL_BACKOFF_IN_MILLISECONDS = 1000L;
+
+  public static final String KUBE2HADOOP_WATCH_MAX_BACKOFF_IN_MILLISECONDS = KUBE2HADOOP_WATCH + "max-backoff";
+  public static final Long DEFAULT_KUBE2HADOOP_WATCH_MAX_BACKOFF_IN_MILLISECONDS = 1000L * 60;
+
   // Authenticator configurations
   public static final String KUBE2HADOOP_AUTHENTICATOR_LDAP_PROVIDER_URL = KUBERNETES_PREFIX + "authenticator.ldap-provider-url";
   public static final String KUBE2HAdOOP_AUTHENTICATOR_LDAP_GROUP_DOMAIN = KUBERNETES_PREFIX + "authenticator.ldap-group-domain";
   public static final String KUBE2HADOOP_AUTHENTICATOR_BLACKLISTED_USERS = KUBERNETES_PREFIX + "authenticator.blacklisted-user";
 
+  // LDAP connection configurations
+  public static final String KUBE2HADOOP_AUTHENTICATOR_LDAP_CONNECT_TIMEOUT_IN_MILLISECONDS =
+      KUBE2HADOOP_PREFIX + "authenticator.ldap-connect-timeout";
+  public static final Long DEFAULT_KUBE2HADOOP_AUTHENTICATOR_LDAP_CONNECT_TIMEOUT_IN_MILLISECONDS = 1000L * 2;
+
+  public static final String KUBE2HADOOP_AUTHENTICATOR_LDAP_READ_TIMEOUT_IN_MILLISECONDS =
+      KUBE2HADOOP_PREFIX + "authenticator.ldap-read-timeout";
+  public static final Long DEFAULT_KUBE2HADOOP_AUTHENTICATOR_LDAP_READ_TIMEOUT_IN_MILLISECONDS = 1000L * 5;
+
+  public static final String KUBE2HADOOP_AUTHENTICATOR_LDAP_POOL = KUBE2HADOOP_PREFIX + "authenticator.ldap-pool.";
+
+  public static final String KUBE2HADOOP_AUTHENTICATOR_LDAP_POOL_ENABLED = KUBE2HADOOP_AUTHENTICATOR_LDAP_POOL + "enabled";
+  public static final Boolean DEFAULT_KUBE2HADOOP_AUTHENTICATOR_LDAP_POOL_ENABLED = true;
+
+  public static final String KUBE2HADOOP_AUTHENTICATOR_LDAP_POOL_MAX_SIZE = KUBE2HADOOP_AUTHENTICATOR_LDAP_POOL + "max-size";
+  public static final Integer DEFAULT_KUBE2HADOOP_AUTHENTICATOR_LDAP_POOL_MAX_SIZE = 16;
+
+  public static final String KUBE2HADOOP_AUTHENTICATOR_LDAP_POOL_IDLE_TIMEOUT_IN_MILLISECONDS =
+      KUBE2HADOOP_AUTHENTICATOR_LDAP_POOL + "idle-timeout";
+  public static final Long DEFAULT_KUBE2HADOOP_AUTHENTICATOR_LDAP_POOL_IDLE_TIMEOUT_IN_MILLISECONDS = 1000L * 60 * 5;
+
+  // LDAP headless account membership cache configurations
+  public static final String KUBE2HADOOP_AUTHENTICATOR_LDAP_CACHE = KUBE2HADOOP_PREFIX + "authenticator.ldap-cache.";
+
+  public static final String KUBE2HADOOP_AUTHENTICATOR_LDAP_CACHE_ENABLED = KUBE2HADOOP_AUTHENTICATOR_LDAP_CACHE + "enabled";
+  public static final Boolean DEFAULT_KUBE2HADOOP_AUTHENTICATOR_LDAP_CACHE_ENABLED = true;
+
+  public static final String KUBE2HADOOP_AUTHENTICATOR_LDAP_CACHE_TTL_IN_MILLISECONDS = KUBE2HADOOP_AUTHENTICATOR_LDAP_CACHE + "ttl";
+  public static final Long DEFAULT_KUBE2HADOOP_AUTHENTICATOR_LDAP_CACHE_TTL_IN_MILLISECONDS = 1000L * 60 * 5;
+
+  public static final String KUBE2HADOOP_AUTHENTICATOR_LDAP_CACHE_NEGATIVE_TTL_IN_MILLISECONDS =
+      KUBE2HADOOP_AUTHENTICATOR_LDAP_CACHE + "negative-ttl";
+  public static final Long DEFAULT_KUBE2HADOOP_AUTHENTICATOR_LDAP_CACHE_NEGATIVE_TTL_IN_MILLISECONDS = 1000L * 60;
+
+  public static final String KUBE2HADOOP_AUTHENTICATOR_LDAP_CACHE_REFRESH_AHEAD_IN_MILLISECONDS =
+      KUBE2HADOOP_AUTHENTICATOR_LDAP_CACHE + "refresh-ahead";
+  public static final Long DEFAULT_KUBE2HADOOP_AUTHENTICATOR_LDAP_CACHE_REFRESH_AHEAD_IN_MILLISECONDS = 1000L * 60;
+
+  public static final String KUBE2HADOOP_AUTHENTICATOR_LDAP_CACHE_MAX_STALE_IN_MILLISECONDS =
+      KUBE2HADOOP_AUTHENTICATOR_LDAP_CACHE + "max-stale";
+  public static final Long DEFAULT_KUBE2HADOOP_AUTHENTICATOR_LDAP_CACHE_MAX_STALE_IN_MILLISECONDS = 1000L * 60 * 30;
+
+  public static final String KUBE2HADOOP_AUTHENTICATOR_LDAP_CACHE_LOAD_TIMEOUT_IN_MILLISECONDS =
+      KUBE2HADOOP_AUTHENTICATOR_LDAP_CACHE + "load-timeout";
+  public static final Long DEFAULT_KUBE2HADOOP_AUTHENTICATOR_LDAP_CACHE_LOAD_TIMEOUT_IN_MILLISECONDS = 1000L * 2;
+
+  public static final String KUBE2HADOOP_AUTHENTICATOR_LDAP_CACHE_MAX_SIZE = KUBE2HADOOP_AUTHENTICATOR_LDAP_CACHE + "max-size";
+  public static final Long DEFAULT_KUBE2HADOOP_AUTHENTICATOR_LDAP_CACHE_MAX_SIZE = 10000L;
+
+  public static final String KUBE2HADOOP_AUTHENTICATOR_LDAP_CACHE_THREADS = KUBE2HADOOP_AUTHENTICATOR_LDAP_CACHE + "threads";
+  public static final Integer DEFAULT_KUBE2HADOOP_AUTHENTICATOR_LDAP_CACHE_THREADS = 4;
+
+  // LDAP group snapshot configurations
+  public static final String KUBE2HADOOP_AUTHENTICATOR_LDAP_SNAPSHOT = KUBE2HADOOP_PREFIX + "authenticator.ldap-snapshot.";
+
+  public static final String KUBE2HADOOP_AUTHENTICATOR_LDAP_SNAPSHOT_ENABLED = KUBE2HADOOP_AUTHENTICATOR_LDAP_SNAPSHOT + "enabled";
+  public static final Boolean DEFAULT_KUBE2HADOOP_AUTHENTICATOR_LDAP_SNAPSHOT_ENABLED = false;
+
+  public static final String KUBE2HADOOP_AUTHENTICATOR_LDAP_SNAPSHOT_SYNC_INTERVAL_IN_MILLISECONDS =
+      KUBE2HADOOP_AUTHENTICATOR_LDAP_SNAPSHOT + "sync-interval";
+  public static final Long DEFAULT_KUBE2HADOOP_AUTHENTICATOR_LDAP_SNAPSHOT_SYNC_INTERVAL_IN_MILLISECONDS = 1000L * 60;
+
+  public static final String KUBE2HADOOP_AUTHENTICATOR_LDAP_SNAPSHOT_FULL_SYNC_INTERVAL_IN_MILLISECONDS =
+      KUBE2HADOOP_AUTHENTICATOR_LDAP_SNAPSHOT + "full-sync-interval";
+  public static final Long DEFAULT_KUBE2HADOOP_AUTHENTICATOR_LDAP_SNAPSHOT_FULL_SYNC_INTERVAL_IN_MILLISECONDS =
+      1000L * 60 * 60;
+
+  public static final String KUBE2HADOOP_AUTHENTICATOR_LDAP_SNAPSHOT_PAGE_SIZE = KUBE2HADOOP_AUTHENTICATOR_LDAP_SNAPSHOT + "page-size";
+  public static final Integer DEFAULT_KUBE2HADOOP_AUTHENTICATOR_LDAP_SNAPSHOT_PAGE_SIZE = 500;
+
+  // Live pod lookup configurations
+  public static final String KUBE2HADOOP_AUTHENTICATOR_POD_LOOKUP = KUBE2HADOOP_PREFIX + "authenticator.pod-lookup.";
+
+  public static final String KUBE2HADOOP_AUTHENTICATOR_POD_LOOKUP_NOT_FOUND_TTL_IN_MILLISECONDS =
+      KUBE2HADOOP_AUTHENTICATOR_POD_LOOKUP + "not-found-ttl";
+  public static final Long DEFAULT_KUBE2HADOOP_AUTHENTICATOR_POD_LOOKUP_NOT_FOUND_TTL_IN_MILLISECONDS = 1000L * 5;
+
+  public static final String KUBE2HADOOP_AUTHENTICATOR_POD_LOOKUP_RATE_LIMIT = KUBE2HADOOP_AUTHENTICATOR_POD_LOOKUP + "rate-limit";
+  public static final Integer DEFAULT_KUBE2HADOOP_AUTHENTICATOR_POD_LOOKUP_RATE_LIMIT = 50;
+
+  public static final String KUBE2HADOOP_AUTHENTICATOR_POD_LOOKUP_MAX_CONCURRENT =
+      KUBE2HADOOP_AUTHENTICATOR_POD_LOOKUP + "max-concurrent";
+  public static final Integer DEFAULT_KUBE2HADOOP_AUTHENTICATOR_POD_LOOKUP_MAX_CONCURRENT = 16;
+
 
   // Token renewer configurations
   public static final String KUBE2HADOOP_TOKEN_RENEWER = KUBE2HADOOP_PREFIX + "renewer.";
@@ -63,4 +235,79 @@ public class ConfigurationKeys {
   public static final String KUBE2HADOOP_TOKEN_RENEWAL_INTERVAL_IN_MILLISECONDS = KUBE2HADOOP_TOKEN_RENEWER + "interval";
   public static final Integer DEFAULT_KUBE2HADOOP_TOKEN_RENEWAL_INTERVAL_IN_MILLISECONDS = 1000 * 60 * 10;
 
+  public static final String KUBE2HADOOP_RENEWER_THREADS = KUBE2HADOOP_TOKEN_RENEWER + "threads";
+  public static final Integer DEFAULT_KUBE2HADOOP_RENEWER_THREADS = 8;
+
+  public static final String KUBE2HADOOP_RENEWER_MAX_CONCURRENCY_PER_NAMENODE =
+      KUBE2HADOOP_TOKEN_RENEWER + "max-concurrency-per-namenode";
+  public static final Integer DEFAULT_KUBE2HADOOP_RENEWER_MAX_CONCURRENCY_PER_NAMENODE = 4;
+
+  public static final String KUBE2HADOOP_RENEWER_RENEWAL_FRACTION = KUBE2HADOOP_TOKEN_RENEWER + "renewal-fraction";
+  public static final Double DEFAULT_KUBE2HADOOP_RENEWER_RENEWAL_FRACTION = 0.9;
+
+  public static final String KUBE2HADOOP_RENEWER_RENEWAL_JITTER = KUBE2HADOOP_TOKEN_RENEWER + "renewal-jitter";
+  public static final Double DEFAULT_KUBE2HADOOP_RENEWER_RENEWAL_JITTER = 0.1;
+
+  public static final String KUBE2HADOOP_RENEWER_RETRY_INTERVAL_IN_MILLISECONDS = KUBE2HADOOP_TOKEN_RENEWER + "retry-interval";
+  public static final Integer DEFAULT_KUBE2HADOOP_RENEWER_RETRY_INTERVAL_IN_MILLISECONDS = 1000 * 60;
+
+  public static final String KUBE2HADOOP_RENEWER_NAMENODE_RENEW_INTERVAL_IN_MILLISECONDS =
+      KUBE2HADOOP_TOKEN_RENEWER + "namenode-renew-interval";
+  public static final Long DEFAULT_KUBE2HADOOP_RENEWER_NAMENODE_RENEW_INTERVAL_IN_MILLISECONDS = 0L;
+
+  // Token cache configurations
+  public static final String KUBE2HADOOP_TOKEN_CACHE = KUBE2HADOOP_PREFIX + "token-cache.";
+
+  public static final String KUBE2HADOOP_TOKEN_CACHE_TYPE = KUBE2HADOOP_TOKEN_CACHE + "type";
+  public static final TokenCacheType DEFAULT_KUBE2HADOOP_TOKEN_CACHE_TYPE = TokenCacheType.LOCAL;
+
+  public static final String KUBE2HADOOP_TOKEN_CACHE_REPLICA_ID = KUBE2HADOOP_TOKEN_CACHE + "replica-id";
+
+  public static final String KUBE2HADOOP_TOKEN_CACHE_ZOOKEEPER = KUBE2HADOOP_TOKEN_CACHE + "zookeeper.";
+
+  public static final String KUBE2HADOOP_TOKEN_CACHE_ZOOKEEPER_QUORUM = KUBE2HADOOP_TOKEN_CACHE_ZOOKEEPER + "quorum";
+
+  public static final String KUBE2HADOOP_TOKEN_CACHE_ZOOKEEPER_ROOT = KUBE2HADOOP_TOKEN_CACHE_ZOOKEEPER + "root";
+  public static final String DEFAULT_KUBE2HADOOP_TOKEN_CACHE_ZOOKEEPER_ROOT = "/kube2hadoop/token-cache";
+
+  public static final String KUBE2HADOOP_TOKEN_CACHE_ZOOKEEPER_SESSION_TIMEOUT_IN_MILLISECONDS =
+      KUBE2HADOOP_TOKEN_CACHE_ZOOKEEPER + "session-timeout";
+  public static final Integer DEFAULT_KUBE2HADOOP_TOKEN_CACHE_ZOOKEEPER_SESSION_TIMEOUT_IN_MILLISECONDS = 1000 * 30;
+
+  public static final String KUBE2HADOOP_TOKEN_CACHE_ZOOKEEPER_OWNERSHIP =
+      KUBE2HADOOP_TOKEN_CACHE_ZOOKEEPER + "ownership";
+  public static final TokenOwnership DEFAULT_KUBE2HADOOP_TOKEN_CACHE_ZOOKEEPER_OWNERSHIP = TokenOwnership.PARTITIONED;
+
+  public static final String KUBE2HADOOP_TOKEN_CACHE_ZOOKEEPER_AUTH = KUBE2HADOOP_TOKEN_CACHE_ZOOKEEPER + "auth";
+
+  // Token release configurations
+  public static final String KUBE2HADOOP_TOKEN_RELEASE = KUBE2HADOOP_PREFIX + "token-release.";
+
+  public static final String KUBE2HADOOP_TOKEN_RELEASE_ENABLED = KUBE2HADOOP_TOKEN_RELEASE + "enabled";
+  public static final Boolean DEFAULT_KUBE2HADOOP_TOKEN_RELEASE_ENABLED = true;
+
+  public static final String KUBE2HADOOP_TOKEN_RELEASE_CANCEL_BATCH_SIZE =
+      KUBE2HADOOP_TOKEN_RELEASE + "cancel-batch-size";
+  public static final Integer DEFAULT_KUBE2HADOOP_TOKEN_RELEASE_CANCEL_BATCH_SIZE = 100;
+
+  public static final String KUBE2HADOOP_TOKEN_RELEASE_CANCEL_INTERVAL_IN_MILLISECONDS =
+      KUBE2HADOOP_TOKEN_RELEASE + "cancel-interval";
+  public static final Integer DEFAULT_KUBE2HADOOP_TOKEN_RELEASE_CANCEL_INTERVAL_IN_MILLISECONDS = 1000;
+
+  public static final String KUBE2HADOOP_TOKEN_RELEASE_MAX_TRACKED_CREDENTIALS =
+      KUBE2HADOOP_TOKEN_RELEASE + "max-tracked-credentials";
+  public static final Integer DEFAULT_KUBE2HADOOP_TOKEN_RELEASE_MAX_TRACKED_CREDENTIALS = 100000;
+
+  // Token cache journal configurations
+  public static final String KUBE2HADOOP_TOKEN_CACHE_JOURNAL = KUBE2HADOOP_PREFIX + "token-cache.journal.";
+
+  public static final String KUBE2HADOOP_TOKEN_CACHE_JOURNAL_DIR = KUBE2HADOOP_TOKEN_CACHE_JOURNAL + "dir";
+
+  public static final String KUBE2HADOOP_TOKEN_CACHE_JOURNAL_SYNC = KUBE2HADOOP_TOKEN_CACHE_JOURNAL + "sync";
+  public static final Boolean DEFAULT_KUBE2HADOOP_TOKEN_CACHE_JOURNAL_SYNC = true;
+
+  public static final String KUBE2HADOOP_TOKEN_CACHE_JOURNAL_COMPACTION_THRESHOLD =
+      KUBE2HADOOP_TOKEN_CACHE_JOURNAL + "compaction-threshold";
+  public static final Long DEFAULT_KUBE2HADOOP_TOKEN_CACHE_JOURNAL_COMPACTION_THRESHOLD = 100000L;
+
 }
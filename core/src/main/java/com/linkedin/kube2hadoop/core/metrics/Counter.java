@@ -0,0 +1,38 @@
+/**
+ * Copyright 2020 LinkedIn Corporation. All rights reserved. Licensed under the BSD-2 Clause license.
+ * See LICENSE in the project root for license information.
+ */
+
+package com.linkedin.kube2hadoop.core.metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * Monotonic counter backed by a {@code LongAdder}.
+ */
+public class Counter implements PrometheusMetrics.Sample {
+  private final LongAdder count = new LongAdder();
+
+  Counter() {
+  }
+
+  public void increment() {
+    count.increment();
+  }
+
+  public void add(long value) {
+    count.add(value);
+  }
+
+  public long get() {
+    return count.sum();
+  }
+
+  @Override
+  public void write(Writer writer, String name, String labels) throws IOException {
+    writer.write(name + labels + " " + count.sum() + "\n");
+  }
+}
@@ -0,0 +1,82 @@
+/**
+ * Copyright 2020 LinkedIn Corporation. All rights reserved. Licensed under the BSD-2 Clause license.
+ * See LICENSE in the project root for license information.
+ */
+
+package com.linkedin.kube2hadoop.core.metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * Latency histogram with fixed buckets. Recording is lock free: a linear scan of the bucket bounds and two
+ * {@code LongAdder} increments, so that concurrent request threads do not contend on a shared counter.
+ */
+public class Histogram implements PrometheusMetrics.Sample {
+  // Bucket upper bounds in seconds, the last bucket is +Inf
+  private static final double[] BUCKETS_IN_SECONDS =
+      {0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60};
+  private static final long[] BUCKETS_IN_NANOSECONDS = new long[BUCKETS_IN_SECONDS.length];
+
+  static {
+    for (int i = 0; i < BUCKETS_IN_SECONDS.length; i++) {
+      BUCKETS_IN_NANOSECONDS[i] = (long) (BUCKETS_IN_SECONDS[i] * TimeUnit.SECONDS.toNanos(1));
+    }
+  }
+
+  private final LongAdder[] bucketCounts = new LongAdder[BUCKETS_IN_SECONDS.length + 1];
+  private final LongAdder sumInNanoseconds = new LongAdder();
+
+  Histogram() {
+    for (int i = 0; i < bucketCounts.length; i++) {
+      bucketCounts[i] = new LongAdder();
+    }
+  }
+
+  /**
+   * Record a duration measured since {@code startTimeInNanoseconds}, as returned by {@code System.nanoTime()}.
+   * @param startTimeInNanoseconds start of the measured operation
+   */
+  public void recordSince(long startTimeInNanoseconds) {
+    record(System.nanoTime() - startTimeInNanoseconds);
+  }
+
+  /**
+   * @param durationInNanoseconds duration to record
+   */
+  public void record(long durationInNanoseconds) {
+    int bucket = 0;
+    while (bucket < BUCKETS_IN_NANOSECONDS.length && durationInNanoseconds > BUCKETS_IN_NANOSECONDS[bucket]) {
+      bucket++;
+    }
+    bucketCounts[bucket].increment();
+    sumInNanoseconds.add(durationInNanoseconds);
+  }
+
+  public long getCount() {
+    long count = 0;
+    for (LongAdder bucketCount : bucketCounts) {
+      count += bucketCount.sum();
+    }
+    return count;
+  }
+
+  public double getSumInSeconds() {
+    return sumInNanoseconds.sum() / (double) TimeUnit.SECONDS.toNanos(1);
+  }
+
+  @Override
+  public void write(Writer writer, String name, String labels) throws IOException {
+    long cumulativeCount = 0;
+    for (int i = 0; i < bucketCounts.length; i++) {
+      cumulativeCount += bucketCounts[i].sum();
+      String bound = i < BUCKETS_IN_SECONDS.length ? Double.toString(BUCKETS_IN_SECONDS[i]) : "+Inf";
+      writer.write(name + "_bucket" + PrometheusMetrics.withLabel(labels, "le", bound) + " " + cumulativeCount + "\n");
+    }
+    writer.write(name + "_sum" + labels + " " + getSumInSeconds() + "\n");
+    writer.write(name + "_count" + labels + " " + cumulativeCount + "\n");
+  }
+}
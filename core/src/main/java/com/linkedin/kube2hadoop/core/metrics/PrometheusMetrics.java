@@ -0,0 +1,200 @@
+/**
+ * Copyright 2020 LinkedIn Corporation. All rights reserved. Licensed under the BSD-2 Clause license.
+ * See LICENSE in the project root for license information.
+ */
+
+package com.linkedin.kube2hadoop.core.metrics;
+
+import com.linkedin.kube2hadoop.core.ErrorCode;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Supplier;
+
+
+/**
+ * Registry of the server metrics, rendered in the Prometheus text exposition format.
+ * Metrics are looked up once and kept by the instrumented code, recording a value never touches the registry.
+ * Gauges are read from the instrumented components when the metrics are rendered.
+ */
+public class PrometheusMetrics {
+  public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+  private static final PrometheusMetrics INSTANCE = new PrometheusMetrics();
+
+  private final ConcurrentMap<String, Family> families = new ConcurrentSkipListMap<>();
+  // Map of error code -> counter of the errors returned with it, registered upfront for every known error code
+  private final ConcurrentMap<Integer, Counter> errorCounters = new ConcurrentHashMap<>();
+
+  PrometheusMetrics() {
+    for (ErrorCode errorCode : ErrorCode.values()) {
+      errorCounters.put(errorCode.getCode(), newErrorCounter(errorCode.getCode()));
+    }
+  }
+
+  public static PrometheusMetrics getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * Get or create a counter.
+   * @param name metric name
+   * @param help metric description
+   * @param labels label names and values, alternating
+   * @return counter
+   */
+  public Counter counter(String name, String help, String... labels) {
+    return (Counter) getFamily(name, help, "counter").samples.computeIfAbsent(formatLabels(labels), k -> new Counter());
+  }
+
+  /**
+   * Get or create a latency histogram, in seconds.
+   * @param name metric name
+   * @param help metric description
+   * @param labels label names and values, alternating
+   * @return histogram
+   */
+  public Histogram histogram(String name, String help, String... labels) {
+    return (Histogram) getFamily(name, help, "histogram").samples
+        .computeIfAbsent(formatLabels(labels), k -> new Histogram());
+  }
+
+  /**
+   * Register a counter maintained by an instrumented component, replacing any with the same name and labels.
+   * @param name metric name
+   * @param help metric description
+   * @param value supplies the value of the counter when metrics are rendered
+   * @param labels label names and values, alternating
+   */
+  public void counter(String name, String help, Supplier<? extends Number> value, String... labels) {
+    register(name, help, "counter", value, labels);
+  }
+
+  /**
+   * Register a gauge, replacing any gauge with the same name and labels.
+   * @param name metric name
+   * @param help metric description
+   * @param value supplies the value of the gauge when metrics are rendered
+   * @param labels label names and values, alternating
+   */
+  public void gauge(String name, String help, Supplier<? extends Number> value, String... labels) {
+    register(name, help, "gauge", value, labels);
+  }
+
+  /**
+   * Remove the time series with the given labels, e.g. when the component it was registered for goes away.
+   * @param name metric name
+   * @param labels label names and values, alternating
+   */
+  public void remove(String name, String... labels) {
+    Family family = families.get(name);
+    if (family != null) {
+      family.samples.remove(formatLabels(labels));
+    }
+  }
+
+  private void register(String name, String help, String type, Supplier<? extends Number> value, String... labels) {
+    getFamily(name, help, type).samples.put(formatLabels(labels),
+        (writer, metricName, metricLabels) -> writer.write(metricName + metricLabels + " " + value.get() + "\n"));
+  }
+
+  /**
+   * Count an error returned to a client.
+   * @param errorCode error code of the response
+   */
+  public void recordError(int errorCode) {
+    Counter counter = errorCounters.get(errorCode);
+    if (counter == null) {
+      counter = errorCounters.computeIfAbsent(errorCode, this::newErrorCounter);
+    }
+    counter.increment();
+  }
+
+  private Counter newErrorCounter(int errorCode) {
+    return counter("kube2hadoop_errors_total", "Errors returned to clients, by error code",
+        "code", Integer.toString(errorCode), "error", getErrorName(errorCode));
+  }
+
+  private static String getErrorName(int errorCode) {
+    for (ErrorCode code : ErrorCode.values()) {
+      if (code.getCode() == errorCode) {
+        return code.name();
+      }
+    }
+    return "UNKNOWN";
+  }
+
+  /**
+   * Write all metrics in the Prometheus text exposition format.
+   * @param writer writer to write the metrics to
+   * @throws IOException if writing fails
+   */
+  public void write(Writer writer) throws IOException {
+    for (Family family : families.values()) {
+      writer.write("# HELP " + family.name + " " + family.help + "\n");
+      writer.write("# TYPE " + family.name + " " + family.type + "\n");
+      for (Map.Entry<String, Sample> sample : family.samples.entrySet()) {
+        sample.getValue().write(writer, family.name, sample.getKey());
+      }
+    }
+  }
+
+  @Override
+  public String toString() {
+    StringWriter writer = new StringWriter();
+    try {
+      write(writer);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return writer.toString();
+  }
+
+  private Family getFamily(String name, String help, String type) {
+    Family family = families.computeIfAbsent(name, k -> new Family(name, help, type));
+    if (!family.type.equals(type)) {
+      throw new IllegalArgumentException("Metric " + name + " is a " + family.type + ", not a " + type);
+    }
+    return family;
+  }
+
+  static String formatLabels(String... labels) {
+    if (labels.length % 2 != 0) {
+      throw new IllegalArgumentException("Labels must be name and value pairs");
+    }
+    String formatted = "";
+    for (int i = 0; i < labels.length; i += 2) {
+      formatted = withLabel(formatted, labels[i], labels[i + 1]);
+    }
+    return formatted;
+  }
+
+  static String withLabel(String labels, String name, String value) {
+    String label = name + "=\"" + value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n") + "\"";
+    return labels.isEmpty() ? "{" + label + "}" : labels.substring(0, labels.length() - 1) + "," + label + "}";
+  }
+
+  /**
+   * One time series, written under the name of its metric family with its pre-formatted labels.
+   */
+  interface Sample {
+    void write(Writer writer, String name, String labels) throws IOException;
+  }
+
+  private static class Family {
+    private final String name;
+    private final String help;
+    private final String type;
+    private final ConcurrentMap<String, Sample> samples = new ConcurrentSkipListMap<>();
+
+    private Family(String name, String help, String type) {
+      this.name = name;
+      this.help = help;
+      this.type = type;
+    }
+  }
+}
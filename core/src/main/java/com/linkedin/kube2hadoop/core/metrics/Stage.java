@@ -0,0 +1,37 @@
+/**
+ * Copyright 2020 LinkedIn Corporation. All rights reserved. Licensed under the BSD-2 Clause license.
+ * See LICENSE in the project root for license information.
+ */
+
+package com.linkedin.kube2hadoop.core.metrics;
+
+/**
+ * Stages of a token request, each with its own latency histogram.
+ * Usage: {@code long startTime = System.nanoTime(); ...; Stage.NAMENODE_FETCH.recordSince(startTime);}
+ */
+public enum Stage {
+  REQUEST("request"),
+  POD_AUTHENTICATION("pod_authentication"),
+  LDAP_LOOKUP("ldap_lookup"),
+  NAMENODE_FETCH("namenode_fetch"),
+  CREDENTIAL_ENCODING("credential_encoding"),
+  CACHE_INSERT("cache_insert");
+
+  private final Histogram histogram;
+
+  Stage(String stageName) {
+    this.histogram = PrometheusMetrics.getInstance().histogram("kube2hadoop_stage_latency_seconds",
+        "Latency of each stage of token requests in seconds", "stage", stageName);
+  }
+
+  /**
+   * @param startTimeInNanoseconds start of the stage, as returned by {@code System.nanoTime()}
+   */
+  public void recordSince(long startTimeInNanoseconds) {
+    histogram.recordSince(startTimeInNanoseconds);
+  }
+
+  public Histogram getHistogram() {
+    return histogram;
+  }
+}
@@ -0,0 +1,109 @@
+/**
+ * Copyright 2020 LinkedIn Corporation. All rights reserved. Licensed under the BSD-2 Clause license.
+ * See LICENSE in the project root for license information.
+ */
+
+package com.linkedin.kube2hadoop.core;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+
+public class TestSingleFlight {
+  @Test
+  public void testConcurrentCallsAreShared() throws Exception {
+    SingleFlight<String, String> singleFlight = new SingleFlight<>();
+    CountDownLatch callStarted = new CountDownLatch(1);
+    CountDownLatch releaseCall = new CountDownLatch(1);
+    AtomicInteger calls = new AtomicInteger();
+
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      Future<String> first = executor.submit(() -> singleFlight.execute("key", () -> {
+        calls.incrementAndGet();
+        callStarted.countDown();
+        awaitQuietly(releaseCall);
+        return "result";
+      }));
+      Assert.assertTrue(callStarted.await(10, TimeUnit.SECONDS));
+
+      Future<String> second = executor.submit(() -> singleFlight.execute("key", () -> {
+        calls.incrementAndGet();
+        return "other result";
+      }));
+      while (singleFlight.getSharedCount() == 0) {
+        Thread.sleep(10);
+      }
+      releaseCall.countDown();
+
+      Assert.assertEquals(first.get(10, TimeUnit.SECONDS), "result");
+      Assert.assertEquals(second.get(10, TimeUnit.SECONDS), "result");
+      Assert.assertEquals(calls.get(), 1);
+      Assert.assertEquals(singleFlight.getInFlightCount(), 0);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testCompletedCallsAreNotCached() {
+    SingleFlight<String, Integer> singleFlight = new SingleFlight<>();
+    AtomicInteger calls = new AtomicInteger();
+
+    Assert.assertEquals(singleFlight.execute("key", calls::incrementAndGet), Integer.valueOf(1));
+    Assert.assertEquals(singleFlight.execute("key", calls::incrementAndGet), Integer.valueOf(2));
+    Assert.assertEquals(singleFlight.getExecutedCount(), 2);
+  }
+
+  @Test
+  public void testWaitingCallsTimeOut() throws Exception {
+    SingleFlight<String, String> singleFlight = new SingleFlight<>(50L);
+    CountDownLatch callStarted = new CountDownLatch(1);
+    CountDownLatch releaseCall = new CountDownLatch(1);
+
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      Future<String> first = executor.submit(() -> singleFlight.execute("key", () -> {
+        callStarted.countDown();
+        awaitQuietly(releaseCall);
+        return "result";
+      }));
+      Assert.assertTrue(callStarted.await(10, TimeUnit.SECONDS));
+
+      try {
+        singleFlight.execute("key", () -> "other result");
+        Assert.fail("Expected the waiting call to time out");
+      } catch (TokenServiceException ex) {
+        Assert.assertEquals(ex.getErrorCode(), ErrorCode.REQUEST_TIMEOUT.getCode());
+      }
+      Assert.assertEquals(singleFlight.getTimedOutWaitCount(), 1);
+
+      releaseCall.countDown();
+      Assert.assertEquals(first.get(10, TimeUnit.SECONDS), "result");
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test(expectedExceptions = TokenServiceException.class)
+  public void testExceptionIsPropagated() {
+    SingleFlight<String, String> singleFlight = new SingleFlight<>();
+    singleFlight.execute("key", () -> {
+      throw new TokenServiceException("failed", ErrorCode.FAILED_TO_FETCH_HDFS_TOKEN);
+    });
+  }
+
+  private static void awaitQuietly(CountDownLatch latch) {
+    try {
+      latch.await(10, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -0,0 +1,69 @@
+/**
+ * Copyright 2020 LinkedIn Corporation. All rights reserved. Licensed under the BSD-2 Clause license.
+ * See LICENSE in the project root for license information.
+ */
+
+package com.linkedin.kube2hadoop.core.metrics;
+
+import com.linkedin.kube2hadoop.core.ErrorCode;
+import java.util.concurrent.TimeUnit;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+
+public class TestPrometheusMetrics {
+  @Test
+  public void testCounterAndGauge() {
+    PrometheusMetrics metrics = new PrometheusMetrics();
+    metrics.counter("requests_total", "Requests", "endpoint", "a").increment();
+    metrics.counter("requests_total", "Requests", "endpoint", "a").add(2);
+    metrics.counter("requests_total", "Requests", "endpoint", "b").increment();
+    metrics.gauge("size", "Size", () -> 42);
+    metrics.recordError(ErrorCode.INVALID_PARAMS.getCode());
+
+    String output = metrics.toString();
+    Assert.assertTrue(output.contains("# TYPE requests_total counter\n"));
+    Assert.assertTrue(output.contains("requests_total{endpoint=\"a\"} 3\n"));
+    Assert.assertTrue(output.contains("requests_total{endpoint=\"b\"} 1\n"));
+    Assert.assertTrue(output.contains("size 42\n"));
+    Assert.assertTrue(output.contains("kube2hadoop_errors_total{code=\"100\",error=\"INVALID_PARAMS\"} 1\n"));
+    // Known error codes are exposed before they are first returned
+    Assert.assertTrue(output.contains("kube2hadoop_errors_total{code=\"118\",error=\"REQUEST_TIMEOUT\"} 0\n"));
+  }
+
+  @Test
+  public void testRemove() {
+    PrometheusMetrics metrics = new PrometheusMetrics();
+    metrics.gauge("pods", "Pods", () -> 1, "namespace", "a");
+    metrics.gauge("pods", "Pods", () -> 2, "namespace", "b");
+    metrics.remove("pods", "namespace", "a");
+    metrics.remove("unknown");
+
+    String output = metrics.toString();
+    Assert.assertFalse(output.contains("pods{namespace=\"a\"}"));
+    Assert.assertTrue(output.contains("pods{namespace=\"b\"} 2\n"));
+  }
+
+  @Test
+  public void testHistogram() {
+    PrometheusMetrics metrics = new PrometheusMetrics();
+    Histogram histogram = metrics.histogram("latency_seconds", "Latency", "stage", "fetch");
+    histogram.record(TimeUnit.MILLISECONDS.toNanos(3));
+    histogram.record(TimeUnit.SECONDS.toNanos(120));
+
+    String output = metrics.toString();
+    Assert.assertTrue(output.contains("latency_seconds_bucket{stage=\"fetch\",le=\"0.0025\"} 0\n"));
+    Assert.assertTrue(output.contains("latency_seconds_bucket{stage=\"fetch\",le=\"0.005\"} 1\n"));
+    Assert.assertTrue(output.contains("latency_seconds_bucket{stage=\"fetch\",le=\"60.0\"} 1\n"));
+    Assert.assertTrue(output.contains("latency_seconds_bucket{stage=\"fetch\",le=\"+Inf\"} 2\n"));
+    Assert.assertTrue(output.contains("latency_seconds_count{stage=\"fetch\"} 2\n"));
+    Assert.assertEquals(histogram.getSumInSeconds(), 120.003, 1e-9);
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testConflictingTypes() {
+    PrometheusMetrics metrics = new PrometheusMetrics();
+    metrics.counter("metric", "Metric");
+    metrics.histogram("metric", "Metric");
+  }
+}
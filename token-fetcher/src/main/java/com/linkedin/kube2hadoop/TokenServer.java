@@ -6,8 +6,10 @@
 package com.linkedin.kube2hadoop;
 
 import com.linkedin.kube2hadoop.core.conf.ConfigurationKeys;
+import com.linkedin.kube2hadoop.servlets.BatchGetDelegationTokenServlet;
 import com.linkedin.kube2hadoop.servlets.GetDelegationTokenServlet;
 import com.linkedin.kube2hadoop.servlets.HealthServlet;
+import com.linkedin.kube2hadoop.servlets.MetricsServlet;
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.GnuParser;
 import org.apache.commons.cli.HelpFormatter;
@@ -54,13 +56,19 @@ public class TokenServer {
     // getDelegationToken endpoint
     GetDelegationTokenServlet getTokenServlet = new GetDelegationTokenServlet(conf);
     ServletHolder getTokenServletHolder = new ServletHolder(getTokenServlet);
+    getTokenServletHolder.setAsyncSupported(getTokenServlet.isAsyncEnabled());
+
+    // batchGetDelegationToken endpoint
+    ServletHolder batchGetTokenServletHolder = new ServletHolder(new BatchGetDelegationTokenServlet(conf));
 
     // health endpoint
     HealthServlet healthServlet = new HealthServlet(conf);
     ServletHolder healthServletHolder = new ServletHolder(healthServlet);
 
     context.addServlet(getTokenServletHolder, GET_DELEGATION_TOKEN_PATH);
+    context.addServlet(batchGetTokenServletHolder, BATCH_GET_DELEGATION_TOKEN_PATH);
     context.addServlet(healthServletHolder, HEALTH_PATH);
+    context.addServlet(new ServletHolder(new MetricsServlet()), METRICS_PATH);
 
     jetty.setHandler(context);
     jetty.start();
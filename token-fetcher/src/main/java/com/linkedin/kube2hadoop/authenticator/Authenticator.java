@@ -15,4 +15,11 @@ import org.apache.hadoop.conf.Configuration;
 public interface Authenticator {
   String getAuthenticatedUserID(AuthenticatorParameters params);
   Configuration getConfiguration();
+
+  /**
+   * Register a listener of terminated pods, for authenticators that keep track of pods.
+   * @param listener listener to notify of every terminated pod
+   */
+  default void addPodTerminationListener(PodTerminationListener listener) {
+  }
 }
@@ -11,11 +11,29 @@ import java.util.Map;
 
 public class AuthenticatorParameters {
   private Map<String, String[]> params;
+  private boolean trustedCaller = false;
 
   public AuthenticatorParameters(Map<String, String[]> params) {
     this.params = params;
   }
 
+  /**
+   * Parameters of a pod whose tokens are requested by a trusted caller (e.g. a launcher requesting tokens for a batch
+   * of pods) rather than by the pod itself, in which case the source IP of the request is not the pod's.
+   * This is deliberately not a request parameter: only the server can mark a caller as trusted.
+   * @param params parameters identifying the pod
+   * @return authenticator parameters
+   */
+  public static AuthenticatorParameters forTrustedCaller(Map<String, String[]> params) {
+    AuthenticatorParameters authenticatorParameters = new AuthenticatorParameters(params);
+    authenticatorParameters.trustedCaller = true;
+    return authenticatorParameters;
+  }
+
+  boolean isTrustedCaller() {
+    return trustedCaller;
+  }
+
   String getParamString(String key) {
     String[] values = params.get(key);
     if (values != null && values.length > 0) {
@@ -29,6 +47,10 @@ public class AuthenticatorParameters {
     params.put(key, new String[] {value});
   }
 
+  void removeParam(String key) {
+    params.remove(key);
+  }
+
   void addAllToParams(Map<String, String> paramMap) {
     paramMap.forEach(this::addParamString);
   }
@@ -9,9 +9,13 @@ import com.linkedin.kube2hadoop.core.Constants;
 import com.linkedin.kube2hadoop.core.ErrorCode;
 import com.linkedin.kube2hadoop.core.TokenServiceException;
 import com.linkedin.kube2hadoop.core.conf.ConfigurationKeys;
+import com.linkedin.kube2hadoop.core.metrics.PrometheusMetrics;
+import com.linkedin.kube2hadoop.core.metrics.Stage;
 import io.kubernetes.client.ApiClient;
 import io.kubernetes.client.ApiException;
 import io.kubernetes.client.apis.CoreV1Api;
+import io.kubernetes.client.models.V1ObjectMeta;
+import io.kubernetes.client.models.V1OwnerReference;
 import io.kubernetes.client.models.V1Pod;
 import io.kubernetes.client.util.Config;
 import io.kubernetes.client.util.Watch;
@@ -22,15 +26,19 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
-import org.apache.commons.lang3.tuple.ImmutablePair;
-import org.apache.commons.lang3.tuple.Pair;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
@@ -46,70 +54,118 @@ import static com.linkedin.kube2hadoop.core.Constants.*;
  * This Authenticator thus retrieve the latest metadata about a given pod either from the {@code watchCache} or a live
  * query to Kubernetes API server. If the IP address from the Kubernetes metadata matches the caller's metadata, the
  * user is considered authenticated.
+ * The cached metadata also records the job the pod belongs to under {@code Constants.JOB_ID}, taken from the
+ * configured job label or else from the pod's controller owner reference, so that pods of the same job can share
+ * credentials.
+ * Pods are dropped from the {@code watchCache} once deleted or terminated, and a namespace's pods once the namespace
+ * is no longer watched, so that the cache only holds live pods.
+ * The {@code podIPIndex} maps the IP address of every cached pod back to the pod, so that a pod can be authenticated
+ * by source IP alone when the caller omits the pod name, and a pod asking for another pod's tokens is rejected
+ * without querying the API server.
+ * Pods missing from the {@code watchCache} are looked up through a {@code LivePodLookup}, which coalesces and limits
+ * API server calls, and written through to the {@code watchCache} of their namespace if it is watched and the pod
+ * was read at a newer resource version than the watch last saw, so that a lookup racing the pod's deletion cannot
+ * add it back. Terminated pods found by live lookups are treated as not found.
  */
 public class KubernetesAuthenticator implements Authenticator {
   private static final Log LOG = LogFactory.getLog(KubernetesAuthenticator.class);
+  private static final String WATCH_CACHE_PODS_METRIC = "kube2hadoop_watch_cache_pods";
+  static final long UNKNOWN_RESOURCE_VERSION = 0L;
   private Configuration conf;
   private CoreV1Api api;
-  // Map of namespace -> (pod name -> (podIP, annotations))
-  private Map<String, Map<String, Pair<String, Map<String, String>>>> watchCache = new ConcurrentHashMap<>();
+  // Map of namespace -> (pod name -> pod metadata)
+  private Map<String, Map<String, PodMetadata>> watchCache = new ConcurrentHashMap<>();
+  private PodIPIndex podIPIndex = new PodIPIndex();
+  // Map of namespace -> last resource version seen by the watch
+  private Map<String, Long> watchResourceVersions = new ConcurrentHashMap<>();
+  private LivePodLookup livePodLookup;
   private Map<String, KubernetesNamespaceWatch> namespaceWatchCache = new ConcurrentHashMap<>();
+  // Namespaces labelled for watch, when pods are watched with a single cluster-wide watch
+  private Set<String> watchedNamespaces = ConcurrentHashMap.newKeySet();
+  private KubernetesNamespaceWatch clusterWatch;
   private List<String> blackListedSuperUsers;
+  private String jobLabel;
+  private Collection<String> retainedAnnotations;
+  private List<PodTerminationListener> podTerminationListeners = new CopyOnWriteArrayList<>();
 
   /**
    * First checks {@code watchCache}, if given pod name does not exist in {@code watchCache} (which could mean that the
    * watch haven't been updated or that the watch connection have broken), try to directly query api server with the
    * given namespace and pod name.
+   * If the pod name is omitted, the pod is looked up by source IP in the {@code podIPIndex} instead, and its namespace
+   * and name are added to {@code params}.
    * @param params Parameters passed to authenticate
    * @return authenticated user's ID
    */
   @Override
   public String getAuthenticatedUserID(AuthenticatorParameters params) {
+    long startTime = System.nanoTime();
+    try {
+      return authenticatePod(params);
+    } finally {
+      Stage.POD_AUTHENTICATION.recordSince(startTime);
+    }
+  }
+
+  private String authenticatePod(AuthenticatorParameters params) {
     String namespace = params.getParamString(Constants.NAMESPACE);
     String podName = params.getParamString(Constants.POD_NAME);
     String srcIP = params.getParamString(Constants.SRCIP);
 
-    Map<String, Pair<String, Map<String, String>>> namespaceCache = watchCache.get(namespace);
-    if (namespaceCache == null) {
-      namespaceCache = new ConcurrentHashMap<>();
-      watchCache.put(namespace, namespaceCache);
+    if (podName == null || podName.isEmpty()) {
+      // Trusted callers request tokens on behalf of pods, their source IP does not identify the pod
+      PodIPIndex.PodRef pod = params.isTrustedCaller() ? null : podIPIndex.get(srcIP);
+      if (pod == null || (namespace != null && !namespace.equals(pod.getNamespace()))) {
+        throw new TokenServiceException(
+            "Cannot find pod with IP: " + srcIP + (namespace == null ? "" : " in namespace " + namespace),
+            ErrorCode.KUBERNETES_POD_NOT_FOUND);
+      }
+      namespace = pod.getNamespace();
+      podName = pod.getPodName();
+      params.addParamString(Constants.NAMESPACE, namespace);
+      params.addParamString(Constants.POD_NAME, podName);
     }
-    Pair<String, Map<String, String>> podMetadata = namespaceCache.get(podName);
+
+    Map<String, PodMetadata> namespaceCache = watchCache.get(namespace);
+    PodMetadata podMetadata = namespaceCache == null ? null : namespaceCache.get(podName);
     if (podMetadata == null) {
-      // Query api server for namespace, podName
-      try {
-        podMetadata = getPodInfoByNamespaceAndPodName(namespace, podName);
-      } catch (ApiException | NullPointerException ex) {
+      // The source IP belongs to another known pod, no need to ask the api server
+      PodIPIndex.PodRef srcPod = params.isTrustedCaller() ? null : podIPIndex.get(srcIP);
+      if (srcPod != null && !srcPod.equals(new PodIPIndex.PodRef(namespace, podName))) {
         throw new TokenServiceException(
-            ex.getMessage(), ErrorCode.KUBERNETES_POD_CALL_EXCEPTION
-        );
+            "Failed to authenticate pod: " + podName + " where srcIP is: " + srcIP + " of pod: " + srcPod,
+            ErrorCode.KUBERNETES_AUTHENTICATION_EXCEPTION);
       }
+      // Query api server for namespace, podName
+      podMetadata = getLivePodLookup().lookup(namespace, podName);
+      cachePod(namespace, podName, podMetadata);
     }
 
-    if (podMetadata.getValue() == null || podMetadata.getValue().get(Constants.KUBERNETES_USER_ID) == null) {
+    if (podMetadata.getUserID() == null) {
       throw new TokenServiceException(
         ErrorCode.KUBERNETES_NO_USERID_EXCEPTION.getDescription(), ErrorCode.KUBERNETES_NO_USERID_EXCEPTION
       );
     }
 
-    if (podMetadata.getKey() == null) {
+    if (!podMetadata.hasPodIP()) {
       throw new TokenServiceException(
           "Cannot find pod: " + podName + " in namespace " + namespace, ErrorCode.KUBERNETES_POD_NOT_FOUND
       );
     }
 
-    // Authenticate via ip address
-    if (!podMetadata.getKey().equals(srcIP)) {
+    // Authenticate via ip address, unless the pod's tokens are requested by a trusted caller
+    if (!params.isTrustedCaller() && !podMetadata.hasPodIP(srcIP)) {
       throw new TokenServiceException(
           "Failed to authenticate pod: " + podName + " where srcIP is: " + srcIP
-              + " actual podIP: " + podMetadata.getKey(),
+              + " actual podIP: " + podMetadata.getPodIP(),
           ErrorCode.KUBERNETES_AUTHENTICATION_EXCEPTION);
     }
 
-    // Add annotations to params for AuthenticatorDecorators
-    params.addAllToParams(podMetadata.getValue());
+    // Add annotations to params for AuthenticatorDecorators, the job ID only ever comes from pod metadata
+    params.removeParam(Constants.JOB_ID);
+    podMetadata.addToParams(params);
 
-    return checkAgainstBlacklist(podMetadata.getValue().get(KUBERNETES_USER_ID));
+    return checkAgainstBlacklist(podMetadata.getUserID());
   }
 
   @Override
@@ -131,6 +187,10 @@ public class KubernetesAuthenticator implements Authenticator {
     String tokenFileLocation = conf.get(ConfigurationKeys.KUBE2HADOOP_TOKEN_FILE_LOCATION);
     String certFileLocation = conf.get(ConfigurationKeys.KUBE2HADOOP_CERT_LOCATION);
     blackListedSuperUsers = getBlackListedSuperUsers(conf);
+    jobLabel = conf.getTrimmed(ConfigurationKeys.KUBE2HADOOP_JOB_TOKEN_SHARING_JOB_LABEL);
+    retainedAnnotations = getRetainedAnnotations(conf);
+    livePodLookup = new LivePodLookup(conf, this::getPodInfoByNamespaceAndPodName);
+    registerLivePodLookupMetrics();
 
     ApiClient k8sClient = Config.fromToken(k8sUrl, getTokenString(tokenFileLocation));
     k8sClient.setSslCaCert(getCertInputStream(certFileLocation));
@@ -153,29 +213,114 @@ public class KubernetesAuthenticator implements Authenticator {
   }
 
   /**
-   * Run {@code KubernetesNamespaceLabelWatch}, capture any exceptions thrown and fail execution.
+   * Read the comma-separated list of pod annotations passed on to {@code AuthenticatorDecorator}s. The user and job
+   * IDs are always kept, and never taken from these annotations.
+   * @return annotation keys to retain in the watch cache
+   */
+  static Collection<String> getRetainedAnnotations(Configuration conf) {
+    Set<String> annotations = new HashSet<>(Arrays.asList(
+        conf.getTrimmedStrings(ConfigurationKeys.KUBE2HADOOP_WATCH_RETAINED_ANNOTATIONS,
+            ConfigurationKeys.DEFAULT_KUBE2HADOOP_WATCH_RETAINED_ANNOTATIONS)));
+    annotations.remove(Constants.KUBERNETES_USER_ID);
+    annotations.remove(Constants.JOB_ID);
+    return annotations;
+  }
+
+  void setRetainedAnnotations(Collection<String> retainedAnnotations) {
+    this.retainedAnnotations = retainedAnnotations;
+  }
+
+  void setApi(CoreV1Api api) {
+    this.api = api;
+  }
+
+  private void registerLivePodLookupMetrics() {
+    PrometheusMetrics metrics = PrometheusMetrics.getInstance();
+    metrics.counter("kube2hadoop_pod_lookups_total", "Live lookups of pods missing from the watch cache",
+        livePodLookup::getApiCallCount);
+    metrics.counter("kube2hadoop_pod_lookups_shared_total", "Live pod lookups sharing a lookup already in flight",
+        livePodLookup::getSharedLookupCount);
+    metrics.counter("kube2hadoop_pod_lookups_not_found_hits_total", "Live pod lookups of pods recently not found",
+        livePodLookup::getNotFoundHitCount);
+    metrics.counter("kube2hadoop_pod_lookups_rejected_total", "Live pod lookups rejected over a limit",
+        livePodLookup::getRejectedCallCount);
+  }
+
+  /**
+   * Run {@code KubernetesNamespaceLabelWatch}, which starts one namespace watch per labelled namespace, or with a
+   * cluster-wide watch, the single {@code KubernetesNamespaceWatch} watching the pods of every labelled namespace.
    */
   private void runWatchThread() {
+    if (conf.getBoolean(ConfigurationKeys.KUBE2HADOOP_WATCH_CLUSTER_WIDE,
+        ConfigurationKeys.DEFAULT_KUBE2HADOOP_WATCH_CLUSTER_WIDE)) {
+      clusterWatch = new KubernetesNamespaceWatch(this, null, conf);
+    }
     ExecutorService executor = Executors.newSingleThreadExecutor();
     executor.submit(new KubernetesNamespaceLabelWatch(this, conf));
+    executor.shutdown();
   }
 
   /**
    * Make call to Kubernetes API server to get pod information by namespace and pod name
    * @param namespace the namespace of the pod provided by the caller
    * @param podName the pod name provided by the caller
-   * @return pod ip address and annotation pair
-   * @throws ApiException exception thrown by the Kubernetes client
+   * @return pod metadata
+   * @throws ApiException exception thrown by the Kubernetes client, with code 404 if the pod has terminated, since
+   *          its IP address may already be reused by another pod
    * @throws NullPointerException exception thrown when the metadata from api server does not contain required
    *          annotation, or that the pod does not exist.
    */
-  Pair<String, Map<String, String>> getPodInfoByNamespaceAndPodName(String namespace, String podName)
+  PodMetadata getPodInfoByNamespaceAndPodName(String namespace, String podName)
       throws ApiException, NullPointerException {
     V1Pod podInfo = api.readNamespacedPodWithHttpInfo(podName, namespace, null, null, null)
         .getData();
+    if (isTerminated(podInfo)) {
+      throw new ApiException(LivePodLookup.HTTP_NOT_FOUND,
+          "Pod: " + podName + " in namespace " + namespace + " has terminated");
+    }
+
+    return getPodMetadata(podInfo.getMetadata(), podInfo.getStatus().getPodIP(), jobLabel, retainedAnnotations);
+  }
 
-    return new ImmutablePair<>(
-        podInfo.getStatus().getPodIP(), podInfo.getMetadata().getAnnotations());
+  /**
+   * The user ID annotation of a pod, the ID of the job the pod belongs to and its {@code retainedAnnotations}. The job
+   * ID is never taken from the pod's annotations, so that it cannot be set by the pod itself.
+   * @param metadata pod metadata
+   * @param podIP pod IP address, may be null
+   * @param jobLabel label identifying the job of a pod, may be null
+   * @param retainedAnnotations annotations to keep for {@code AuthenticatorDecorator}s
+   * @return pod metadata, with a null user ID if the pod has no user ID annotation
+   */
+  static PodMetadata getPodMetadata(V1ObjectMeta metadata, String podIP, String jobLabel,
+      Collection<String> retainedAnnotations) {
+    Map<String, String> annotations = metadata.getAnnotations();
+    String userID = annotations == null ? null : annotations.get(KUBERNETES_USER_ID);
+    return PodMetadata.of(podIP, userID, getJobID(metadata, jobLabel), annotations, retainedAnnotations,
+        parseResourceVersion(metadata.getResourceVersion()));
+  }
+
+  /**
+   * The job a pod belongs to: the value of {@code jobLabel} if the pod has that label, otherwise the controller
+   * owner reference of the pod (e.g. the TFJob or the ReplicaSet that created it).
+   * @param metadata pod metadata
+   * @param jobLabel label identifying the job of a pod, may be null
+   * @return job ID, null if the pod does not belong to a job
+   */
+  static String getJobID(V1ObjectMeta metadata, String jobLabel) {
+    if (jobLabel != null && !jobLabel.isEmpty() && metadata.getLabels() != null) {
+      String jobName = metadata.getLabels().get(jobLabel);
+      if (jobName != null) {
+        return jobLabel + "=" + jobName;
+      }
+    }
+    if (metadata.getOwnerReferences() != null) {
+      for (V1OwnerReference owner : metadata.getOwnerReferences()) {
+        if (Boolean.TRUE.equals(owner.isController())) {
+          return owner.getKind() + "/" + owner.getName() + "/" + owner.getUid();
+        }
+      }
+    }
+    return null;
   }
 
   String getTokenString(String tokenFileLocation) {
@@ -222,47 +367,298 @@ public class KubernetesAuthenticator implements Authenticator {
   }
 
   void updateWatchCache(Watch.Response<V1Pod> item) {
-    String podName = item.object.getMetadata().getName();
-    String namespace = item.object.getMetadata().getNamespace();
-    String podIP = item.object.getStatus().getPodIP();
-    Map<String, String> annotations = item.object.getMetadata().getAnnotations();
+    addOrUpdatePod(item.object);
+  }
 
-    String userID = null;
-    if (annotations != null) {
-      userID = annotations.get(KUBERNETES_USER_ID);
+  void addOrUpdatePod(V1Pod pod) {
+    String podName = pod.getMetadata().getName();
+    String namespace = pod.getMetadata().getNamespace();
+    observeResourceVersion(namespace, pod.getMetadata().getResourceVersion());
+    PodMetadata newPodMetadata = toPodMetadata(pod);
+    if (isTerminated(pod)) {
+      notifyPodTerminated(namespace, podName);
     }
 
-    if (userID != null) {
-      Map<String, Pair<String, Map<String, String>>> namespaceCache = getWatchCache().get(namespace);
-      if (namespaceCache == null) {
-        namespaceCache = new ConcurrentHashMap<>();
-      }
-      Pair<String, Map<String, String>> podMetadata = namespaceCache.get(podName);
+    if (newPodMetadata != null) {
+      String podIP = newPodMetadata.getPodIP();
+      String userID = newPodMetadata.getUserID();
+      Map<String, PodMetadata> namespaceCache = getOrCreateNamespaceCache(namespace);
+      PodMetadata podMetadata = namespaceCache.put(podName, newPodMetadata);
+      podIPIndex.update(namespace, podName, podMetadata, newPodMetadata);
       if (podMetadata == null) {
         LOG.info("Adding pod: " + podName + " from namespace: " + namespace
             + " with podIP=" + podIP + ", userID=" + userID + " into watch cache");
       } else {
         LOG.info("Updating watch cache at pod: " + podName + " from namespace: " + namespace
-            + " from podIP=" + podMetadata.getKey() + ", userID=" + podMetadata.getValue().get(KUBERNETES_USER_ID)
+            + " from podIP=" + podMetadata.getPodIP() + ", userID=" + podMetadata.getUserID()
             + " to podIP=" + podIP + ", userID=" + userID);
       }
-      podMetadata = new ImmutablePair<>(podIP, annotations);
-      namespaceCache.put(podName, podMetadata);
-      getWatchCache().put(namespace, namespaceCache);
+    } else if (removePod(namespace, podName)) {
+      LOG.info("Removed pod: " + podName + " from namespace: " + namespace + " from watch cache, pod is "
+          + (pod.getStatus() == null ? null : pod.getStatus().getPhase()));
     } else {
       LOG.debug("Skipping pod updates with no userID annotation");
     }
   }
 
-  Map<String, Map<String, Pair<String, Map<String, String>>>> getWatchCache() {
+  void deleteFromWatchCache(Watch.Response<V1Pod> item) {
+    String podName = item.object.getMetadata().getName();
+    String namespace = item.object.getMetadata().getNamespace();
+    observeResourceVersion(namespace, item.object.getMetadata().getResourceVersion());
+    if (removePod(namespace, podName)) {
+      LOG.info("Removed deleted pod: " + podName + " from namespace: " + namespace + " from watch cache");
+    }
+    notifyPodTerminated(namespace, podName);
+  }
+
+  @Override
+  public void addPodTerminationListener(PodTerminationListener listener) {
+    getPodTerminationListeners().add(listener);
+  }
+
+  private void notifyPodTerminated(String namespace, String podName) {
+    for (PodTerminationListener listener : getPodTerminationListeners()) {
+      try {
+        listener.onPodTerminated(namespace, podName);
+      } catch (RuntimeException ex) {
+        LOG.error("Pod termination listener failed on pod: " + podName + " in namespace " + namespace, ex);
+      }
+    }
+  }
+
+  /**
+   * Write a pod found by a live lookup through to the watch cache of its namespace, unless the namespace is not
+   * watched, in which case the pod would never be updated, or the watch already saw this state of the pod or a newer
+   * one, such as its deletion.
+   * The watch records the resource version of an event before applying it, and the pod is only added under the lock
+   * of its watch cache entry, so that a deletion applied concurrently either sees the pod or makes it skipped.
+   * Pods are not written through if the resource version of the pod or of the watch is unknown or not a number.
+   */
+  private void cachePod(String namespace, String podName, PodMetadata podMetadata) {
+    Map<String, PodMetadata> namespaceCache = watchCache.get(namespace);
+    if (namespaceCache == null || podMetadata.getUserID() == null || !podMetadata.hasPodIP()) {
+      return;
+    }
+    namespaceCache.computeIfAbsent(podName, name -> {
+      Long watchResourceVersion = watchResourceVersions.get(namespace);
+      if (watchCache.get(namespace) != namespaceCache || watchResourceVersion == null
+          || podMetadata.getResourceVersion() == UNKNOWN_RESOURCE_VERSION
+          || podMetadata.getResourceVersion() <= watchResourceVersion) {
+        LOG.debug("Skipping pod: " + podName + " from namespace: " + namespace
+            + " found by live lookup, the watch cache is up to date");
+        return null;
+      }
+      podIPIndex.add(namespace, podName, podMetadata);
+      LOG.info("Adding pod: " + podName + " from namespace: " + namespace + " found by live lookup into watch cache");
+      return podMetadata;
+    });
+  }
+
+  /**
+   * Record that the watch of {@code namespace} saw {@code resourceVersion}, before applying what it saw. Once the
+   * watch saw a resource version that is not a number, no pod is written through until the namespace is listed again.
+   * @param namespace Kubernetes namespace
+   * @param resourceVersion resource version of a pod event, may be null
+   */
+  private void observeResourceVersion(String namespace, String resourceVersion) {
+    watchResourceVersions.merge(namespace, toWatchResourceVersion(resourceVersion), Math::max);
+  }
+
+  private static long toWatchResourceVersion(String resourceVersion) {
+    long version = parseResourceVersion(resourceVersion);
+    return version == UNKNOWN_RESOURCE_VERSION ? Long.MAX_VALUE : version;
+  }
+
+  /**
+   * Kubernetes defines resource versions as opaque strings. This relies on the API server being backed by etcd, whose
+   * revisions are increasing integers handed out as resource versions, to order live lookups with watch events.
+   * @param resourceVersion resource version, may be null
+   * @return resource version as a number, {@code UNKNOWN_RESOURCE_VERSION} if null or not a positive number
+   */
+  static long parseResourceVersion(String resourceVersion) {
+    if (resourceVersion == null) {
+      return UNKNOWN_RESOURCE_VERSION;
+    }
+    try {
+      long version = Long.parseLong(resourceVersion);
+      return version > 0L ? version : UNKNOWN_RESOURCE_VERSION;
+    } catch (NumberFormatException ex) {
+      return UNKNOWN_RESOURCE_VERSION;
+    }
+  }
+
+  private boolean removePod(String namespace, String podName) {
+    Map<String, PodMetadata> namespaceCache = getWatchCache().get(namespace);
+    PodMetadata podMetadata = namespaceCache == null ? null : namespaceCache.remove(podName);
+    if (podMetadata == null) {
+      return false;
+    }
+    podIPIndex.remove(namespace, podName, podMetadata);
+    return true;
+  }
+
+  /**
+   * Replace the watch cache of {@code namespace} with {@code pods}, as listed from the Kubernetes API server. Pods
+   * not in the list are dropped from the watch cache.
+   * @param namespace Kubernetes namespace
+   * @param pods every pod in the namespace
+   * @param resourceVersion resource version of the list, may be null
+   */
+  void replaceNamespaceCache(String namespace, List<V1Pod> pods, String resourceVersion) {
+    // The list supersedes what the watch saw before
+    watchResourceVersions.put(namespace, toWatchResourceVersion(resourceVersion));
+    Map<String, PodMetadata> namespaceCache = new ConcurrentHashMap<>();
+    Set<String> listedPods = new HashSet<>();
+    for (V1Pod pod : pods) {
+      listedPods.add(pod.getMetadata().getName());
+      PodMetadata podMetadata = toPodMetadata(pod);
+      if (podMetadata != null) {
+        namespaceCache.put(pod.getMetadata().getName(), podMetadata);
+      } else if (isTerminated(pod)) {
+        notifyPodTerminated(namespace, pod.getMetadata().getName());
+      }
+    }
+    Map<String, PodMetadata> oldNamespaceCache = getWatchCache().put(namespace, namespaceCache);
+    if (oldNamespaceCache == null) {
+      registerNamespaceMetrics(namespace);
+      oldNamespaceCache = new HashMap<>();
+    }
+    // Index the listed pods before unindexing the dropped ones, so that unchanged pods can always be found by IP
+    for (Map.Entry<String, PodMetadata> pod : namespaceCache.entrySet()) {
+      podIPIndex.update(namespace, pod.getKey(), oldNamespaceCache.get(pod.getKey()), pod.getValue());
+    }
+    for (Map.Entry<String, PodMetadata> pod : oldNamespaceCache.entrySet()) {
+      if (!namespaceCache.containsKey(pod.getKey())) {
+        podIPIndex.remove(namespace, pod.getKey(), pod.getValue());
+      }
+      // Deleted while the watch was down
+      if (!listedPods.contains(pod.getKey())) {
+        notifyPodTerminated(namespace, pod.getKey());
+      }
+    }
+  }
+
+  /**
+   * Replace the watch cache of every watched namespace with {@code pods}, as listed from the Kubernetes API server by
+   * the cluster-wide watch. Pods of namespaces that are not watched are skipped, and watch caches of namespaces that
+   * are no longer watched are dropped.
+   * @param pods every pod in the cluster
+   * @param resourceVersion resource version of the list, may be null
+   */
+  void replaceWatchedNamespaceCaches(List<V1Pod> pods, String resourceVersion) {
+    Map<String, List<V1Pod>> podsByNamespace = new HashMap<>();
+    for (String namespace : getWatchedNamespaces()) {
+      podsByNamespace.put(namespace, new ArrayList<>());
+    }
+    for (V1Pod pod : pods) {
+      List<V1Pod> namespacePods = podsByNamespace.get(pod.getMetadata().getNamespace());
+      if (namespacePods != null) {
+        namespacePods.add(pod);
+      }
+    }
+    for (Map.Entry<String, List<V1Pod>> namespacePods : podsByNamespace.entrySet()) {
+      replaceNamespaceCache(namespacePods.getKey(), namespacePods.getValue(), resourceVersion);
+    }
+    for (String namespace : new ArrayList<>(getWatchCache().keySet())) {
+      if (!getWatchedNamespaces().contains(namespace)) {
+        removeNamespaceCache(namespace);
+      }
+    }
+  }
+
+  /**
+   * Drop the watch cache of a namespace that is no longer watched.
+   * @param namespace Kubernetes namespace
+   */
+  void removeNamespaceCache(String namespace) {
+    Map<String, PodMetadata> namespaceCache = getWatchCache().remove(namespace);
+    watchResourceVersions.remove(namespace);
+    if (namespaceCache != null) {
+      namespaceCache.forEach((podName, podMetadata) -> podIPIndex.remove(namespace, podName, podMetadata));
+      PrometheusMetrics.getInstance().remove(WATCH_CACHE_PODS_METRIC, "namespace", namespace);
+      LOG.info("Removed namespace: " + namespace + " from watch cache");
+    }
+  }
+
+  private Map<String, PodMetadata> getOrCreateNamespaceCache(String namespace) {
+    Map<String, PodMetadata> namespaceCache = getWatchCache().get(namespace);
+    if (namespaceCache == null) {
+      namespaceCache = new ConcurrentHashMap<>();
+      getWatchCache().put(namespace, namespaceCache);
+      registerNamespaceMetrics(namespace);
+    }
+    return namespaceCache;
+  }
+
+  private void registerNamespaceMetrics(String namespace) {
+    PrometheusMetrics.getInstance().gauge(WATCH_CACHE_PODS_METRIC, "Pods in the watch cache, by namespace",
+        () -> getNamespaceCacheSize(namespace), "namespace", namespace);
+  }
+
+  /**
+   * @param namespace Kubernetes namespace
+   * @return number of pods of {@code namespace} in the watch cache
+   */
+  int getNamespaceCacheSize(String namespace) {
+    Map<String, PodMetadata> namespaceCache = getWatchCache().get(namespace);
+    return namespaceCache == null ? 0 : namespaceCache.size();
+  }
+
+  /**
+   * @return pod metadata, null if the pod has no userID annotation or has terminated, in which case its IP address
+   *  may already be reused by another pod
+   */
+  private PodMetadata toPodMetadata(V1Pod pod) {
+    if (isTerminated(pod)) {
+      return null;
+    }
+    PodMetadata podMetadata = getPodMetadata(pod.getMetadata(),
+        pod.getStatus() == null ? null : pod.getStatus().getPodIP(), jobLabel, retainedAnnotations);
+    return podMetadata.getUserID() == null ? null : podMetadata;
+  }
+
+  private static boolean isTerminated(V1Pod pod) {
+    return pod.getStatus() != null && (POD_SUCCEEDED.equals(pod.getStatus().getPhase())
+        || POD_FAILED.equals(pod.getStatus().getPhase()));
+  }
+
+  Map<String, Map<String, PodMetadata>> getWatchCache() {
     return watchCache;
   }
 
-  void setWatchCache(Map<String, Map<String, Pair<String, Map<String, String>>>> watchCacheToSet) {
+  List<PodTerminationListener> getPodTerminationListeners() {
+    return podTerminationListeners;
+  }
+
+  /**
+   * Replace the watch cache, rebuild the {@code podIPIndex} from it and forget the resource versions seen by the watch.
+   */
+  void setWatchCache(Map<String, Map<String, PodMetadata>> watchCacheToSet) {
     watchCache = watchCacheToSet;
+    podIPIndex = PodIPIndex.of(watchCacheToSet);
+    watchResourceVersions = new ConcurrentHashMap<>();
+  }
+
+  LivePodLookup getLivePodLookup() {
+    return livePodLookup;
+  }
+
+  PodIPIndex getPodIPIndex() {
+    return podIPIndex;
   }
 
   Map<String, KubernetesNamespaceWatch> getNamespaceWatchCache() {
     return namespaceWatchCache;
   }
+
+  Set<String> getWatchedNamespaces() {
+    return watchedNamespaces;
+  }
+
+  /**
+   * @return the cluster-wide pod watch, null if pods are watched per namespace
+   */
+  KubernetesNamespaceWatch getClusterWatch() {
+    return clusterWatch;
+  }
 }
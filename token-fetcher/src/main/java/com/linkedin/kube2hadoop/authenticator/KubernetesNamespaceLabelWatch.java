@@ -5,15 +5,19 @@
 
 package com.linkedin.kube2hadoop.authenticator;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.gson.reflect.TypeToken;
 import com.linkedin.kube2hadoop.core.Constants;
+import com.linkedin.kube2hadoop.core.conf.ConfigurationKeys;
 import io.kubernetes.client.ApiException;
 import io.kubernetes.client.apis.CoreV1Api;
 import io.kubernetes.client.models.V1Namespace;
 import io.kubernetes.client.models.V1NamespaceList;
 import io.kubernetes.client.util.Watch;
+import java.io.Closeable;
 import java.io.IOException;
-import java.util.concurrent.Callable;
+import java.util.HashSet;
+import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import org.apache.commons.logging.Log;
@@ -21,94 +25,227 @@ import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
 
 
-class KubernetesNamespaceLabelWatch implements Callable {
+/**
+ * Watch namespaces, and watch the pods of those labelled with "iddecorator=enabled". Whether a namespace is labelled
+ * is decided from the namespace in the list or watch event itself, informer style:
+ * <ul>
+ *   <li>List every namespace page by page, watch the labelled ones and stop watching the others, including those
+ *   deleted since the last list.</li>
+ *   <li>Watch from the resource version of the list, and resume the watch from the last seen resource version
+ *   whenever the API server closes it.</li>
+ *   <li>List again when the resource version is too old (410 Gone), and every {@code resyncInterval}.</li>
+ *   <li>Retry failed lists and watches with exponential backoff, until closed.</li>
+ * </ul>
+ * With a cluster-wide pod watch, the pod watch is started once the first list has filled the watched namespaces, so
+ * that its own first list covers them all.
+ */
+class KubernetesNamespaceLabelWatch implements Runnable, Closeable {
   private static final Log LOG = LogFactory.getLog(KubernetesNamespaceLabelWatch.class);
+  private static final int HTTP_GONE = 410;
   private CoreV1Api api = new CoreV1Api();
 
   private KubernetesAuthenticator authenticator;
   private Configuration conf;
+  private volatile Watch<V1Namespace> namespaceWatch;
+
+  private final int pageSize;
+  private final int watchTimeoutSeconds;
+  private final long resyncInterval;
+  private final long initialBackoff;
+  private final long maxBackoff;
+  private volatile boolean running = true;
+  private boolean clusterWatchStarted = false;
 
   KubernetesNamespaceLabelWatch(KubernetesAuthenticator authenticator, Configuration conf) {
     this.authenticator = authenticator;
     this.conf = conf;
+    pageSize = conf.getInt(ConfigurationKeys.KUBE2HADOOP_WATCH_PAGE_SIZE,
+        ConfigurationKeys.DEFAULT_KUBE2HADOOP_WATCH_PAGE_SIZE);
+    watchTimeoutSeconds = conf.getInt(ConfigurationKeys.KUBE2HADOOP_WATCH_TIMEOUT_IN_SECONDS,
+        ConfigurationKeys.DEFAULT_KUBE2HADOOP_WATCH_TIMEOUT_IN_SECONDS);
+    resyncInterval = conf.getLong(ConfigurationKeys.KUBE2HADOOP_WATCH_RESYNC_INTERVAL_IN_MILLISECONDS,
+        ConfigurationKeys.DEFAULT_KUBE2HADOOP_WATCH_RESYNC_INTERVAL_IN_MILLISECONDS);
+    initialBackoff = conf.getLong(ConfigurationKeys.KUBE2HADOOP_WATCH_INITIAL_BACKOFF_IN_MILLISECONDS,
+        ConfigurationKeys.DEFAULT_KUBE2HADOOP_WATCH_INITIAL_BACKOFF_IN_MILLISECONDS);
+    maxBackoff = conf.getLong(ConfigurationKeys.KUBE2HADOOP_WATCH_MAX_BACKOFF_IN_MILLISECONDS,
+        ConfigurationKeys.DEFAULT_KUBE2HADOOP_WATCH_MAX_BACKOFF_IN_MILLISECONDS);
   }
 
   @Override
-  public Object call() throws Exception {
-    watchNamespaceLabels();
-    return null;
+  public void run() {
+    String resourceVersion = null;
+    long lastListDate = 0;
+    long backoff = initialBackoff;
+    while (running) {
+      try {
+        if (resourceVersion == null || System.currentTimeMillis() - lastListDate >= resyncInterval) {
+          resourceVersion = listNamespaces();
+          lastListDate = System.currentTimeMillis();
+          startClusterWatch();
+        }
+        resourceVersion = watchNamespaceLabels(resourceVersion);
+        backoff = initialBackoff;
+      } catch (ApiException ex) {
+        if (ex.getCode() == HTTP_GONE) {
+          LOG.info("Resource version of namespaces is too old, listing namespaces again in " + backoff + "ms");
+          resourceVersion = null;
+        } else {
+          LOG.error("Watch on namespaces failed, retrying in " + backoff + "ms", ex);
+        }
+        backoff = sleep(backoff);
+      } catch (IOException | RuntimeException ex) {
+        LOG.error("Watch on namespaces failed, retrying in " + backoff + "ms", ex);
+        backoff = sleep(backoff);
+      }
+    }
   }
 
   /**
-   * Watch on all namespace metadata changes
-   * @throws ApiException Kubernetes Client ApiException
-   * @throws IOException Kubernetes watch close exception
+   * @return the next backoff, or the current one if interrupted
    */
-  void watchNamespaceLabels() throws ApiException, IOException {
-    Watch<V1NamespaceList> namespaceWatch = Watch.createWatch(
-        io.kubernetes.client.Configuration.getDefaultApiClient(),
-        api.listNamespaceCall(null, null, null, null,
-            null, null, null, null, Boolean.TRUE,
-            null, null),
-        new TypeToken<Watch.Response<V1NamespaceList>>() { }.getType()
-    );
+  private long sleep(long backoff) {
     try {
-      for (Watch.Response<V1NamespaceList> item : namespaceWatch) {
-        V1NamespaceList namespaceList = item.object;
-        String namespace = null;
-        if (namespaceList.getMetadata() != null && namespaceList.getMetadata().getSelfLink() != null) {
-          namespace = getNamespaceFromSelfLink(namespaceList.getMetadata().getSelfLink());
-        }
+      Thread.sleep(backoff);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      running = false;
+      return backoff;
+    }
+    return Math.min(backoff * 2, maxBackoff);
+  }
 
-        LOG.debug(namespaceList.toString());
+  /**
+   * List every namespace {@code pageSize} at a time, watch the labelled ones and stop watching the others.
+   * @return resource version of the list
+   * @throws ApiException Kubernetes client API exception, with code 410 if the continue token expired
+   */
+  String listNamespaces() throws ApiException {
+    Set<String> listedNamespaces = new HashSet<>();
+    String resourceVersion = null;
+    String continueToken = null;
+    do {
+      V1NamespaceList page = listNamespacePage(continueToken);
+      for (V1Namespace namespace : page.getItems()) {
+        listedNamespaces.add(namespace.getMetadata().getName());
+        updateNamespace(namespace);
+      }
+      if (resourceVersion == null) {
+        resourceVersion = page.getMetadata().getResourceVersion();
+      }
+      continueToken = page.getMetadata().getContinue();
+    } while (continueToken != null && !continueToken.isEmpty());
 
+    // Namespaces deleted while the watch was down
+    Set<String> watched = new HashSet<>(authenticator.getNamespaceWatchCache().keySet());
+    watched.addAll(authenticator.getWatchedNamespaces());
+    for (String namespace : watched) {
+      if (!listedNamespaces.contains(namespace)) {
+        removeFromCacheIfExist(namespace);
+        LOG.info("Namespace: " + namespace + " no longer exists, removed from watch");
+      }
+    }
+    LOG.info("Listed " + listedNamespaces.size() + " namespaces at resource version " + resourceVersion);
+    return resourceVersion;
+  }
+
+  V1NamespaceList listNamespacePage(String continueToken) throws ApiException {
+    return api.listNamespace(null, null, continueToken, null, null, pageSize, null, null, Boolean.FALSE);
+  }
+
+  /**
+   * Watch on all namespace metadata changes, starting from {@code resourceVersion}, until the API server closes the
+   * watch.
+   * @param resourceVersion resource version to watch from
+   * @return last seen resource version
+   * @throws ApiException Kubernetes Client ApiException, or error event sent by the API server
+   * @throws IOException Kubernetes watch close exception
+   */
+  String watchNamespaceLabels(String resourceVersion) throws ApiException, IOException {
+    Watch<V1Namespace> watch = createWatch(resourceVersion);
+    namespaceWatch = watch;
+    try {
+      for (Watch.Response<V1Namespace> item : watch) {
+        if (item.type.equalsIgnoreCase("ERROR")) {
+          int code = item.status == null || item.status.getCode() == null ? 0 : item.status.getCode();
+          throw new ApiException(code, item.status == null ? "Unknown watch error" : item.status.getMessage());
+        }
+        if (!running) {
+          break;
+        }
+        if (item.object == null || item.object.getMetadata() == null) {
+          continue;
+        }
+        String namespace = item.object.getMetadata().getName();
         if (item.type.equalsIgnoreCase("ADDED") || item.type.equalsIgnoreCase("MODIFIED")) {
-          checkWatchThisNamespace(namespace);
+          updateNamespace(item.object);
         } else if (item.type.equalsIgnoreCase("DELETED")) {
           removeFromCacheIfExist(namespace);
           LOG.info("Namespace: " + namespace + " is deleted, removed from watch if currently watching");
         }
+        resourceVersion = item.object.getMetadata().getResourceVersion();
       }
     } finally {
-      namespaceWatch.close();
+      watch.close();
     }
+    return resourceVersion;
+  }
+
+  Watch<V1Namespace> createWatch(String resourceVersion) throws ApiException {
+    return Watch.createWatch(
+        io.kubernetes.client.Configuration.getDefaultApiClient(),
+        api.listNamespaceCall(null, null, null, null,
+            null, null, resourceVersion, watchTimeoutSeconds, Boolean.TRUE,
+            null, null),
+        new TypeToken<Watch.Response<V1Namespace>>() { }.getType()
+    );
   }
 
   /**
-   * Infer {@code namespace} from selfLink metadata entry
-   * @param selfLink selfLink
-   * @return namespace
+   * @param namespace Kubernetes namespace
+   * @return whether the namespace is labelled with "iddecorator=enabled"
    */
-  static String getNamespaceFromSelfLink(String selfLink) {
-    String[] namespaceSplits = selfLink.split("/");
-    return namespaceSplits[(namespaceSplits.length - 1)];
+  static boolean isLabelledForWatch(V1Namespace namespace) {
+    if (namespace.getMetadata() == null || namespace.getMetadata().getLabels() == null) {
+      return false;
+    }
+    String iddecoratorLabel = namespace.getMetadata().getLabels().get(Constants.IDDECORATOR_LABEL);
+    return iddecoratorLabel != null && iddecoratorLabel.equalsIgnoreCase("enabled");
   }
 
   /**
    * Check whether or not to watch the namespace. This is determined by whether the namespace is labelled with
    * "iddecorator=enabled". If the iddecorator label is disabled or does not exist, the corresponding
    * {@code NamespaceWatch} will be removed and the pod activity in {@param namespace} will no long be monitored.
-   * @param namespace Kubernetes namespace
+   * @param v1Namespace Kubernetes namespace, as listed or sent with a watch event
    */
-  private void checkWatchThisNamespace(String namespace) {
+  void updateNamespace(V1Namespace v1Namespace) {
+    String namespace = v1Namespace.getMetadata().getName();
+    if (!isLabelledForWatch(v1Namespace)) {
+      if (removeFromCacheIfExist(namespace)) {
+        LOG.info("Namespace: " + namespace + " isn't labelled for watch, removed from watch");
+      }
+      return;
+    }
+
     try {
-      V1Namespace v1Namespace = api.readNamespace(namespace, null, false, false);
-      if (v1Namespace.getMetadata() != null && v1Namespace.getMetadata().getLabels() != null) {
-        String iddecoratorLabel = v1Namespace.getMetadata().getLabels().get(Constants.IDDECORATOR_LABEL);
-        if (iddecoratorLabel != null && iddecoratorLabel.equalsIgnoreCase("enabled")) {
-          authenticator.getNamespaceWatchCache().computeIfAbsent(namespace, k -> {
-            KubernetesNamespaceWatch namespaceWatch = new KubernetesNamespaceWatch(authenticator, k, conf);
-            // launch one watch thread per namespace
-            ExecutorService executor = Executors.newSingleThreadExecutor();
-            executor.submit(namespaceWatch);
-            return namespaceWatch;
-          });
+      if (authenticator.getClusterWatch() != null) {
+        // the cluster-wide watch skipped the pods of this namespace until now, unless it has not listed pods yet
+        if (authenticator.getWatchedNamespaces().add(namespace)) {
+          if (clusterWatchStarted) {
+            authenticator.getClusterWatch().requestNamespaceList(namespace);
+          }
           LOG.info("Added new namespace to watch: " + namespace);
-          LOG.debug(v1Namespace.toString());
-        } else {
-          removeFromCacheIfExist(namespace);
-          LOG.info("Namespace: " + namespace + " isn't labelled for watch");
         }
+      } else {
+        authenticator.getNamespaceWatchCache().computeIfAbsent(namespace, k -> {
+          KubernetesNamespaceWatch namespaceWatch = new KubernetesNamespaceWatch(authenticator, k, conf);
+          // launch one watch thread per namespace
+          ExecutorService executor = Executors.newSingleThreadExecutor();
+          executor.submit(namespaceWatch);
+          executor.shutdown();
+          LOG.info("Added new namespace to watch: " + namespace);
+          return namespaceWatch;
+        });
       }
     } catch (Exception ex) {
       LOG.error("Watch on Namespace: " + namespace + " failed.", ex);
@@ -116,15 +253,48 @@ class KubernetesNamespaceLabelWatch implements Callable {
     }
   }
 
-  private void removeFromCacheIfExist(String namespace) {
-    authenticator.getNamespaceWatchCache().computeIfPresent(namespace, (k, v) -> {
+  /**
+   * Start the cluster-wide pod watch, if pods are watched cluster-wide and it is not started yet.
+   */
+  private void startClusterWatch() {
+    if (clusterWatchStarted || authenticator.getClusterWatch() == null) {
+      return;
+    }
+    ExecutorService executor = Executors.newSingleThreadExecutor(
+        new ThreadFactoryBuilder().setNameFormat("kube2hadoop-cluster-watch-%d").build());
+    executor.submit(authenticator.getClusterWatch());
+    executor.shutdown();
+    clusterWatchStarted = true;
+  }
+
+  /**
+   * Stop watching {@code namespace}.
+   * @return whether the namespace was watched
+   */
+  private boolean removeFromCacheIfExist(String namespace) {
+    KubernetesNamespaceWatch namespaceWatch = authenticator.getNamespaceWatchCache().remove(namespace);
+    boolean removed = namespaceWatch != null;
+    if (removed) {
       try {
-        v.close();
+        namespaceWatch.close();
       } catch (IOException e) {
         LOG.error(e);
       }
-      return null;
-    });
+      authenticator.removeNamespaceCache(namespace);
+    }
+    if (authenticator.getWatchedNamespaces().remove(namespace)) {
+      authenticator.removeNamespaceCache(namespace);
+      removed = true;
+    }
+    return removed;
   }
 
+  @Override
+  public void close() throws IOException {
+    running = false;
+    Watch<V1Namespace> watch = namespaceWatch;
+    if (watch != null) {
+      watch.close();
+    }
+  }
 }
@@ -6,80 +6,306 @@
 package com.linkedin.kube2hadoop.authenticator;
 
 import com.google.gson.reflect.TypeToken;
-import com.linkedin.kube2hadoop.core.ErrorCode;
-import com.linkedin.kube2hadoop.core.TokenServiceException;
 import com.linkedin.kube2hadoop.core.conf.ConfigurationKeys;
 import io.kubernetes.client.ApiException;
 import io.kubernetes.client.apis.CoreV1Api;
 import io.kubernetes.client.models.V1Pod;
+import io.kubernetes.client.models.V1PodList;
 import io.kubernetes.client.util.Watch;
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
 
 /**
- * Watch any pod changes (pod creation, deletion etc.) in the given {@code namespace}
+ * Watch any pod changes (pod creation, deletion etc.) in the given {@code namespace}, or in every namespace watched
+ * by the {@code KubernetesAuthenticator} for the cluster-wide watch, informer style:
+ * <ul>
+ *   <li>List every pod page by page and replace the watch cache of the namespace(s) with them.</li>
+ *   <li>Watch from the resource version of the list, and resume the watch from the last seen resource version
+ *   whenever the API server closes it.</li>
+ *   <li>List again when the resource version is too old (410 Gone), and every {@code resyncInterval}.</li>
+ *   <li>Retry failed lists and watches with exponential backoff, until closed.</li>
+ * </ul>
+ * Deleted pods are removed from the watch cache, and the namespace's watch cache is dropped once the watch is closed.
+ * The cluster-wide watch lists the pods of namespaces that became watched in its own thread, between two watches, so
+ * that the list never overwrites events applied in the meantime.
  */
 public class KubernetesNamespaceWatch implements Runnable, Closeable {
   private static final Log LOG = LogFactory.getLog(KubernetesNamespaceWatch.class);
+  private static final int HTTP_GONE = 410;
+
   private KubernetesAuthenticator authenticator;
   private String namespace;
   private Configuration conf;
-  private Watch<V1Pod> podWatch;
+  private volatile Watch<V1Pod> podWatch;
   private CoreV1Api api = new CoreV1Api();
 
+  private final String labelSelector;
+  private final int pageSize;
+  private final int watchTimeoutSeconds;
+  private final long resyncInterval;
+  private final long initialBackoff;
+  private final long maxBackoff;
+  private volatile boolean running = true;
+  // Namespaces that became watched, whose pods the cluster-wide watch has to list
+  private final Set<String> pendingNamespaces = ConcurrentHashMap.newKeySet();
+  private volatile boolean listRequested = false;
+
+  /**
+   * @param namespace namespace to watch, null for a cluster-wide watch of the namespaces in
+   *  {@code KubernetesAuthenticator.getWatchedNamespaces()}
+   */
   KubernetesNamespaceWatch(KubernetesAuthenticator authenticator, String namespace, Configuration conf) {
     this.authenticator = authenticator;
     this.namespace = namespace;
     this.conf = conf;
+    labelSelector = conf.get(ConfigurationKeys.KUBE2HADOOP_WATCH_LABEL_SELECTOR);
+    pageSize = conf.getInt(ConfigurationKeys.KUBE2HADOOP_WATCH_PAGE_SIZE,
+        ConfigurationKeys.DEFAULT_KUBE2HADOOP_WATCH_PAGE_SIZE);
+    watchTimeoutSeconds = conf.getInt(ConfigurationKeys.KUBE2HADOOP_WATCH_TIMEOUT_IN_SECONDS,
+        ConfigurationKeys.DEFAULT_KUBE2HADOOP_WATCH_TIMEOUT_IN_SECONDS);
+    resyncInterval = conf.getLong(ConfigurationKeys.KUBE2HADOOP_WATCH_RESYNC_INTERVAL_IN_MILLISECONDS,
+        ConfigurationKeys.DEFAULT_KUBE2HADOOP_WATCH_RESYNC_INTERVAL_IN_MILLISECONDS);
+    initialBackoff = conf.getLong(ConfigurationKeys.KUBE2HADOOP_WATCH_INITIAL_BACKOFF_IN_MILLISECONDS,
+        ConfigurationKeys.DEFAULT_KUBE2HADOOP_WATCH_INITIAL_BACKOFF_IN_MILLISECONDS);
+    maxBackoff = conf.getLong(ConfigurationKeys.KUBE2HADOOP_WATCH_MAX_BACKOFF_IN_MILLISECONDS,
+        ConfigurationKeys.DEFAULT_KUBE2HADOOP_WATCH_MAX_BACKOFF_IN_MILLISECONDS);
   }
 
   @Override
   public void run() {
+    String scope = namespace == null ? "all namespaces" : "namespace: " + namespace;
+    String resourceVersion = null;
+    long lastListDate = 0;
+    long backoff = initialBackoff;
+    while (running) {
+      try {
+        if (resourceVersion == null || System.currentTimeMillis() - lastListDate >= resyncInterval) {
+          // Listing every namespace covers the pending ones
+          pendingNamespaces.clear();
+          resourceVersion = listPods();
+          lastListDate = System.currentTimeMillis();
+        }
+        listPendingNamespaces();
+        resourceVersion = watchPods(resourceVersion);
+        backoff = initialBackoff;
+      } catch (ApiException ex) {
+        if (ex.getCode() == HTTP_GONE) {
+          // Backing off as well, so that an API server handing out resource versions it has already compacted is
+          // not relisted in a tight loop
+          LOG.info("Resource version of " + scope + " is too old, listing pods again in " + backoff + "ms");
+          resourceVersion = null;
+        } else {
+          LOG.error("Watch on " + scope + " failed, retrying in " + backoff + "ms", ex);
+        }
+        backoff = sleep(backoff);
+      } catch (IOException | RuntimeException ex) {
+        LOG.error("Watch on " + scope + " failed, retrying in " + backoff + "ms", ex);
+        backoff = sleep(backoff);
+      }
+    }
+
+    // Unless the namespace is being watched again already, its pods are no longer kept up to date
+    if (namespace != null && !authenticator.getNamespaceWatchCache().containsKey(namespace)) {
+      authenticator.removeNamespaceCache(namespace);
+    }
+  }
+
+  /**
+   * @return the next backoff, or the current one if interrupted
+   */
+  private long sleep(long backoff) {
     try {
-      podWatch = setWatchForNamespace(namespace);
-    } catch (ApiException | IOException ex) {
-      throw new TokenServiceException(ex.getMessage(), ErrorCode.KUBERNETES_WATCH_EXCEPTION);
+      Thread.sleep(backoff);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      running = false;
+      return backoff;
     }
+    return Math.min(backoff * 2, maxBackoff);
   }
 
   /**
-   * Setup watch call to Kubernetes API Server.
-   * To avoid watching the entire cluster's update, use {@code labelSelector} to filter out jobs that are outside of
-   * the scope.
+   * List every pod in the namespace, or in every namespace for the cluster-wide watch, and replace the watch cache of
+   * the watched namespaces with them.
+   * @return resource version of the list
+   * @throws ApiException Kubernetes client API exception, with code 410 if the continue token expired
+   */
+  String listPods() throws ApiException {
+    List<V1Pod> pods = new ArrayList<>();
+    String resourceVersion = listPods(namespace, pods);
+    if (!running) {
+      return resourceVersion;
+    }
+    if (namespace == null) {
+      authenticator.replaceWatchedNamespaceCaches(pods, resourceVersion);
+    } else {
+      authenticator.replaceNamespaceCache(namespace, pods, resourceVersion);
+    }
+    LOG.info("Listed " + pods.size() + " pods in " + (namespace == null ? "all namespaces" : "namespace: " + namespace)
+        + " at resource version " + resourceVersion);
+    return resourceVersion;
+  }
+
+  /**
+   * For the cluster-wide watch, have the watch thread fill the watch cache of a namespace that just became watched,
+   * whose pods were skipped until then. The current watch is stopped, and resumed once the namespace is listed.
+   * @param namespaceToList Kubernetes namespace
+   */
+  void requestNamespaceList(String namespaceToList) {
+    pendingNamespaces.add(namespaceToList);
+    listRequested = true;
+    Watch<V1Pod> watch = podWatch;
+    if (watch != null) {
+      try {
+        watch.close();
+      } catch (IOException e) {
+        LOG.warn("Failed to stop watch to list namespace: " + namespaceToList, e);
+      }
+    }
+  }
+
+  /**
+   * List the pending namespaces that are still watched. Namespaces that failed to list stay pending, and are listed
+   * again after the backoff.
    * @throws ApiException Kubernetes client API exception
-   * @throws IOException throws IOException when failed to close watch
    */
-  private Watch<V1Pod> setWatchForNamespace(String namespace) throws ApiException, IOException {
-    String labelSelector = conf.get(ConfigurationKeys.KUBE2HADOOP_WATCH_LABEL_SELECTOR);
+  private void listPendingNamespaces() throws ApiException {
+    listRequested = false;
+    for (String namespaceToList : new ArrayList<>(pendingNamespaces)) {
+      pendingNamespaces.remove(namespaceToList);
+      if (!authenticator.getWatchedNamespaces().contains(namespaceToList)) {
+        continue;
+      }
+      try {
+        listNamespace(namespaceToList);
+      } catch (ApiException | RuntimeException ex) {
+        pendingNamespaces.add(namespaceToList);
+        throw ex;
+      }
+    }
+  }
 
-    Watch<V1Pod> watch = Watch.createWatch(
-        io.kubernetes.client.Configuration.getDefaultApiClient(),
-        api.listNamespacedPodCall(namespace, null, null, null, null,
-            labelSelector, null, null, null, Boolean.TRUE,
-            null, null),
-        new TypeToken<Watch.Response<V1Pod>>() { }.getType());
+  /**
+   * Replace the watch cache of {@code namespaceToList} with its pods, unless it stopped being watched meanwhile.
+   * @param namespaceToList Kubernetes namespace
+   * @throws ApiException Kubernetes client API exception
+   */
+  void listNamespace(String namespaceToList) throws ApiException {
+    List<V1Pod> pods = new ArrayList<>();
+    String resourceVersion = listPods(namespaceToList, pods);
+    authenticator.replaceNamespaceCache(namespaceToList, pods, resourceVersion);
+    if (!authenticator.getWatchedNamespaces().contains(namespaceToList)) {
+      authenticator.removeNamespaceCache(namespaceToList);
+      return;
+    }
+    LOG.info("Listed " + pods.size() + " pods in newly watched namespace: " + namespaceToList
+        + " at resource version " + resourceVersion);
+  }
+
+  /**
+   * List pods {@code pageSize} at a time.
+   * @param namespaceToList namespace to list, null to list every namespace
+   * @param pods list to add the pods to
+   * @return resource version of the list
+   */
+  private String listPods(String namespaceToList, List<V1Pod> pods) throws ApiException {
+    String resourceVersion = null;
+    String continueToken = null;
+    do {
+      V1PodList page = namespaceToList == null
+          ? api.listPodForAllNamespaces(continueToken, null, null, labelSelector, pageSize, null, null, null,
+              Boolean.FALSE)
+          : api.listNamespacedPod(namespaceToList, null, null, continueToken, null,
+              labelSelector, pageSize, null, null, Boolean.FALSE);
+      pods.addAll(page.getItems());
+      if (resourceVersion == null) {
+        resourceVersion = page.getMetadata().getResourceVersion();
+      }
+      continueToken = page.getMetadata().getContinue();
+    } while (continueToken != null && !continueToken.isEmpty());
+    return resourceVersion;
+  }
 
+  /**
+   * Setup watch call to Kubernetes API Server, starting from {@code resourceVersion}, until the API server closes it.
+   * To avoid watching the entire cluster's update, use {@code labelSelector} to filter out jobs that are outside of
+   * the scope.
+   * @param resourceVersion resource version to watch from
+   * The watch also ends early when namespaces are to be listed.
+   * @return last seen resource version
+   * @throws ApiException Kubernetes client API exception, or error event sent by the API server
+   * @throws IOException throws IOException when failed to close watch
+   */
+  String watchPods(String resourceVersion) throws ApiException, IOException {
+    Watch<V1Pod> watch = createWatch(resourceVersion);
+    podWatch = watch;
     try {
+      // Requested before the watch could be closed
+      if (listRequested) {
+        return resourceVersion;
+      }
       for (Watch.Response<V1Pod> item : watch) {
-        if (item.type.equalsIgnoreCase("ADDED") || item.type.equalsIgnoreCase("MODIFIED")) {
+        if (item.type.equalsIgnoreCase("ERROR")) {
+          int code = item.status == null || item.status.getCode() == null ? 0 : item.status.getCode();
+          throw new ApiException(code, item.status == null ? "Unknown watch error" : item.status.getMessage());
+        }
+        if (!running || listRequested) {
+          break;
+        }
+        if (!isWatched(item.object)) {
+          LOG.debug("Skipping pod updates in unwatched namespace");
+        } else if (item.type.equalsIgnoreCase("ADDED") || item.type.equalsIgnoreCase("MODIFIED")) {
           authenticator.updateWatchCache(item);
+        } else if (item.type.equalsIgnoreCase("DELETED")) {
+          authenticator.deleteFromWatchCache(item);
         } else {
-          // TODO: implement cancel delegation token logic on DELETED
           LOG.debug("type: " + item.type + ". " + item.object.toString());
         }
+        if (item.object != null && item.object.getMetadata() != null) {
+          resourceVersion = item.object.getMetadata().getResourceVersion();
+        }
+      }
+    } catch (RuntimeException ex) {
+      // Watch closed to list namespaces, resumed from the last seen resource version
+      if (!listRequested) {
+        throw ex;
       }
     } finally {
       watch.close();
     }
+    return resourceVersion;
+  }
 
-    return watch;
+  private boolean isWatched(V1Pod pod) {
+    return namespace != null || pod == null || pod.getMetadata() == null
+        || authenticator.getWatchedNamespaces().contains(pod.getMetadata().getNamespace());
+  }
+
+  Watch<V1Pod> createWatch(String resourceVersion) throws ApiException {
+    return Watch.createWatch(
+        io.kubernetes.client.Configuration.getDefaultApiClient(),
+        namespace == null
+            ? api.listPodForAllNamespacesCall(null, null, null, labelSelector, null, null, resourceVersion,
+                watchTimeoutSeconds, Boolean.TRUE, null, null)
+            : api.listNamespacedPodCall(namespace, null, null, null, null,
+                labelSelector, null, resourceVersion, watchTimeoutSeconds, Boolean.TRUE,
+                null, null),
+        new TypeToken<Watch.Response<V1Pod>>() { }.getType());
   }
 
   @Override
   public void close() throws IOException {
-    podWatch.close();
+    running = false;
+    Watch<V1Pod> watch = podWatch;
+    if (watch != null) {
+      watch.close();
+    }
   }
 }
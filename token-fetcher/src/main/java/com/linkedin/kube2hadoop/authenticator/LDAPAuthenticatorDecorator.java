@@ -9,26 +9,41 @@ import com.linkedin.kube2hadoop.core.Constants;
 import com.linkedin.kube2hadoop.core.ErrorCode;
 import com.linkedin.kube2hadoop.core.TokenServiceException;
 import com.linkedin.kube2hadoop.core.conf.ConfigurationKeys;
-import java.util.ArrayList;
-import java.util.Hashtable;
-import java.util.List;
-import javax.naming.Context;
+import com.linkedin.kube2hadoop.core.metrics.PrometheusMetrics;
+import com.linkedin.kube2hadoop.core.metrics.Stage;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
 import javax.naming.NamingEnumeration;
 import javax.naming.NamingException;
 import javax.naming.directory.Attribute;
 import javax.naming.directory.Attributes;
 import javax.naming.directory.BasicAttributes;
-import javax.naming.directory.DirContext;
-import javax.naming.directory.InitialDirContext;
+import javax.naming.directory.SearchControls;
 import javax.naming.directory.SearchResult;
+import javax.naming.ldap.Control;
+import javax.naming.ldap.PagedResultsControl;
+import javax.naming.ldap.PagedResultsResponseControl;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
 
 
+/**
+ * Authenticates users to access headless accounts, based on the headless account's group members in LDAP.
+ * Memberships are cached in a {@code LDAPMembershipCache} unless {@code kube2hadoop.authenticator.ldap-cache.enabled}
+ * is false, and lookups reuse pooled connections to the configured LDAP servers through a
+ * {@code LDAPConnectionFactory}. When {@code kube2hadoop.authenticator.ldap-snapshot.enabled} is true, memberships are
+ * served from an {@code LDAPGroupSnapshot} of the whole group domain instead, once it is loaded.
+ */
 public class LDAPAuthenticatorDecorator implements Authenticator {
   private static final Log LOG = LogFactory.getLog(LDAPAuthenticatorDecorator.class);
   private Authenticator authenticator;
+  private LDAPConnectionFactory connectionFactory;
+  private LDAPMembershipCache membershipCache;
+  private LDAPGroupSnapshot groupSnapshot;
 
   /**
    * Authenticate user to access headless account.
@@ -44,7 +59,9 @@ public class LDAPAuthenticatorDecorator implements Authenticator {
     String doAs = params.getParamString(Constants.DO_AS);
     if (doAs != null) {
       // LDAP lookup
-      List<String> headlessAccountUsers = fetchUsersBehindHeadlessAccountFromLDAP(doAs);
+      long startTime = System.nanoTime();
+      Set<String> headlessAccountUsers = getUsersBehindHeadlessAccount(doAs);
+      Stage.LDAP_LOOKUP.recordSince(startTime);
 
       if (headlessAccountUsers.contains(authenticatedUser)) {
         LOG.info("Successfully authenticated user: " + authenticatedUser + " to access headless account: " + doAs);
@@ -65,55 +82,189 @@ public class LDAPAuthenticatorDecorator implements Authenticator {
     return authenticator.getConfiguration();
   }
 
+  @Override
+  public void addPodTerminationListener(PodTerminationListener listener) {
+    authenticator.addPodTerminationListener(listener);
+  }
+
   LDAPAuthenticatorDecorator(Authenticator authenticator) {
     super();
     this.authenticator = authenticator;
+    this.connectionFactory = new LDAPConnectionFactory(getConfiguration());
+    if (getConfiguration().getBoolean(ConfigurationKeys.KUBE2HADOOP_AUTHENTICATOR_LDAP_CACHE_ENABLED,
+        ConfigurationKeys.DEFAULT_KUBE2HADOOP_AUTHENTICATOR_LDAP_CACHE_ENABLED)) {
+      membershipCache = new LDAPMembershipCache(getConfiguration(), this::fetchUsersBehindHeadlessAccountFromLDAP);
+      registerMetrics();
+    }
+    if (getConfiguration().getBoolean(ConfigurationKeys.KUBE2HADOOP_AUTHENTICATOR_LDAP_SNAPSHOT_ENABLED,
+        ConfigurationKeys.DEFAULT_KUBE2HADOOP_AUTHENTICATOR_LDAP_SNAPSHOT_ENABLED)) {
+      groupSnapshot = new LDAPGroupSnapshot(getConfiguration(), this::fetchGroupsFromLDAP);
+      registerSnapshotMetrics();
+      groupSnapshot.start();
+    }
   }
 
-  private List<String> fetchUsersBehindHeadlessAccountFromLDAP(String uid) {
-    LOG.info("Fetch headless users from LDAP for " + uid);
-    List<String> users = new ArrayList<>();
+  private void registerMetrics() {
+    PrometheusMetrics metrics = PrometheusMetrics.getInstance();
+    metrics.counter("kube2hadoop_ldap_cache_hits_total", "Headless account memberships served from cache",
+        membershipCache::getHitCount);
+    metrics.counter("kube2hadoop_ldap_cache_misses_total", "Headless account memberships loaded on the request path",
+        membershipCache::getMissCount);
+    metrics.counter("kube2hadoop_ldap_cache_stale_hits_total", "Expired memberships served because LDAP did not answer",
+        membershipCache::getStaleHitCount);
+    metrics.counter("kube2hadoop_ldap_loads_total", "Headless account membership lookups in LDAP",
+        membershipCache::getLoadCount);
+    metrics.counter("kube2hadoop_ldap_load_failures_total", "Failed headless account membership lookups in LDAP",
+        membershipCache::getLoadFailureCount);
+    metrics.gauge("kube2hadoop_ldap_cache_size", "Headless accounts in cache", membershipCache::size);
+  }
 
-    Attributes attr = new BasicAttributes();
-    attr.put(Constants.CN_ATTR, uid);
+  private void registerSnapshotMetrics() {
+    PrometheusMetrics metrics = PrometheusMetrics.getInstance();
+    metrics.gauge("kube2hadoop_ldap_snapshot_groups", "Groups in the LDAP group snapshot", groupSnapshot::size);
+    metrics.counter("kube2hadoop_ldap_snapshot_full_syncs_total", "Full loads of the LDAP group snapshot",
+        groupSnapshot::getFullSyncCount);
+    metrics.counter("kube2hadoop_ldap_snapshot_incremental_syncs_total", "Incremental syncs of the LDAP group snapshot",
+        groupSnapshot::getIncrementalSyncCount);
+    metrics.counter("kube2hadoop_ldap_snapshot_sync_failures_total", "Failed syncs of the LDAP group snapshot",
+        groupSnapshot::getSyncFailureCount);
+  }
 
-    DirContext ctx = null;
+  private Set<String> getUsersBehindHeadlessAccount(String uid) {
+    if (groupSnapshot != null) {
+      Set<String> users = groupSnapshot.getMembers(uid);
+      if (users != null) {
+        return users;
+      }
+      LOG.info("LDAP group snapshot not loaded yet, look up " + uid + " in LDAP");
+    }
+    if (membershipCache != null) {
+      return membershipCache.getMembers(uid);
+    }
     try {
-      ctx = new InitialDirContext(createLdapEnv());
+      Set<String> users = fetchUsersBehindHeadlessAccountFromLDAP(uid);
+      return users == null ? new HashSet<>() : users;
+    } catch (NamingException e) {
+      LOG.error("Users not found. ", e);
+      return new HashSet<>();
+    }
+  }
+
+  /**
+   * @param uid headless account
+   * @return users behind the headless account, null if the headless account does not exist
+   * @throws NamingException if the LDAP lookup failed on every LDAP server
+   */
+  private Set<String> fetchUsersBehindHeadlessAccountFromLDAP(String uid) throws NamingException {
+    LOG.info("Fetch headless users from LDAP for " + uid);
+    Attributes attr = new BasicAttributes();
+    attr.put(Constants.CN_ATTR, uid);
+    String groupDomain = getConfiguration().get(ConfigurationKeys.KUBE2HAdOOP_AUTHENTICATOR_LDAP_GROUP_DOMAIN);
 
-      String groupDomain = getConfiguration().get(ConfigurationKeys.KUBE2HAdOOP_AUTHENTICATOR_LDAP_GROUP_DOMAIN);
+    return connectionFactory.execute(ctx -> {
       NamingEnumeration<SearchResult> results = ctx.search(groupDomain, attr);
-      if (!results.hasMore()) {
-        throw new NamingException();
-      }
-      while (results.hasMore()) {
-        Attribute result = results.next().getAttributes().get(Constants.MEM_UID_ATTR);
-        if (result != null) {
-          for (int i = 0; i < result.size(); i++) {
-            String account = result.get(i).toString();
-            users.add(account);
+      try {
+        if (!results.hasMore()) {
+          LOG.info("Headless account " + uid + " not found in LDAP");
+          return null;
+        }
+        Set<String> users = new HashSet<>();
+        while (results.hasMore()) {
+          Attribute result = results.next().getAttributes().get(Constants.MEM_UID_ATTR);
+          if (result != null) {
+            for (int i = 0; i < result.size(); i++) {
+              String account = result.get(i).toString();
+              users.add(account);
+            }
           }
         }
+        return users;
+      } finally {
+        // A pooled connection is only reused once its results are closed
+        results.close();
       }
-    } catch (NamingException e) {
-      LOG.error("Users not found. ", e);
-    } finally {
-      if (ctx != null) {
+    });
+  }
+
+  /**
+   * Fetch every group under the group domain, one page of {@code pageSize} groups at a time.
+   * @param modifiedSince only fetch groups modified at or after this LDAP generalized time, null to fetch every group
+   * @return groups and their users
+   * @throws NamingException if the LDAP lookup failed on every LDAP server
+   */
+  private LDAPGroupSnapshot.Groups fetchGroupsFromLDAP(String modifiedSince) throws NamingException {
+    String groupDomain = getConfiguration().get(ConfigurationKeys.KUBE2HAdOOP_AUTHENTICATOR_LDAP_GROUP_DOMAIN);
+    int pageSize = getConfiguration().getInt(ConfigurationKeys.KUBE2HADOOP_AUTHENTICATOR_LDAP_SNAPSHOT_PAGE_SIZE,
+        ConfigurationKeys.DEFAULT_KUBE2HADOOP_AUTHENTICATOR_LDAP_SNAPSHOT_PAGE_SIZE);
+    String filter = "(" + Constants.CN_ATTR + "=*)";
+    if (modifiedSince != null) {
+      filter = "(&" + filter + "(" + Constants.MODIFY_TIMESTAMP_ATTR + ">=" + modifiedSince + "))";
+    }
+    SearchControls controls = new SearchControls();
+    controls.setSearchScope(SearchControls.ONELEVEL_SCOPE);
+    // modifyTimestamp is an operational attribute, only returned when asked for
+    controls.setReturningAttributes(
+        new String[] {Constants.CN_ATTR, Constants.MEM_UID_ATTR, Constants.MODIFY_TIMESTAMP_ATTR});
+    String searchFilter = filter;
+
+    return connectionFactory.execute(ctx -> {
+      Map<String, Set<String>> groups = new HashMap<>();
+      String lastModified = null;
+      byte[] cookie = null;
+      do {
+        ctx.setRequestControls(new Control[] {createPagedResultsControl(pageSize, cookie)});
+        NamingEnumeration<SearchResult> results = ctx.search(groupDomain, searchFilter, controls);
         try {
-          ctx.close();
-        } catch (NamingException e) {
-          LOG.error("Encountered exception while closing context", e);
+          while (results.hasMore()) {
+            Attributes attributes = results.next().getAttributes();
+            Attribute cn = attributes.get(Constants.CN_ATTR);
+            if (cn == null) {
+              continue;
+            }
+            Set<String> users = new HashSet<>();
+            Attribute memberUids = attributes.get(Constants.MEM_UID_ATTR);
+            if (memberUids != null) {
+              for (int i = 0; i < memberUids.size(); i++) {
+                users.add(memberUids.get(i).toString());
+              }
+            }
+            groups.put(cn.get().toString(), users);
+
+            Attribute modifyTimestamp = attributes.get(Constants.MODIFY_TIMESTAMP_ATTR);
+            if (modifyTimestamp != null) {
+              String timestamp = modifyTimestamp.get().toString();
+              if (lastModified == null || timestamp.compareTo(lastModified) > 0) {
+                lastModified = timestamp;
+              }
+            }
+          }
+        } finally {
+          results.close();
         }
-      }
+        cookie = getPagedResultsCookie(ctx.getResponseControls());
+      } while (cookie != null && cookie.length > 0);
+      return new LDAPGroupSnapshot.Groups(groups, lastModified);
+    });
+  }
+
+  private static Control createPagedResultsControl(int pageSize, byte[] cookie) throws NamingException {
+    try {
+      return new PagedResultsControl(pageSize, cookie, Control.NONCRITICAL);
+    } catch (IOException e) {
+      NamingException namingException = new NamingException("Failed to create paged results control");
+      namingException.setRootCause(e);
+      throw namingException;
     }
-    return users;
   }
 
-  private Hashtable<String, String> createLdapEnv() {
-    Hashtable<String, String> env = new Hashtable<>();
-    String ldapProviderURL = getConfiguration().get(ConfigurationKeys.KUBE2HADOOP_AUTHENTICATOR_LDAP_PROVIDER_URL);
-    env.put(Context.INITIAL_CONTEXT_FACTORY, Constants.CONTEXT_FACTORY);
-    env.put(Context.PROVIDER_URL, ldapProviderURL);
-    return env;
+  private static byte[] getPagedResultsCookie(Control[] responseControls) {
+    if (responseControls != null) {
+      for (Control control : responseControls) {
+        if (control instanceof PagedResultsResponseControl) {
+          return ((PagedResultsResponseControl) control).getCookie();
+        }
+      }
+    }
+    return null;
   }
 }
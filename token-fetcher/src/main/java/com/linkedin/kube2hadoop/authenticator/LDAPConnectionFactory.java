@@ -0,0 +1,147 @@
+/**
+ * Copyright 2020 LinkedIn Corporation. All rights reserved. Licensed under the BSD-2 Clause license.
+ * See LICENSE in the project root for license information.
+ */
+
+package com.linkedin.kube2hadoop.authenticator;
+
+import com.linkedin.kube2hadoop.core.Constants;
+import com.linkedin.kube2hadoop.core.conf.ConfigurationKeys;
+import java.util.Hashtable;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.naming.Context;
+import javax.naming.InvalidNameException;
+import javax.naming.NameNotFoundException;
+import javax.naming.NamingException;
+import javax.naming.ldap.InitialLdapContext;
+import javax.naming.ldap.LdapContext;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+
+
+/**
+ * Runs LDAP operations against a list of LDAP servers with failover.
+ * <ul>
+ *   <li>Servers are tried starting from the last one that answered, so a failing server only costs one
+ *   connect or read timeout until it answers again.</li>
+ *   <li>When pooling is enabled, connections are returned to the JDK LDAP connection pool on close and reused by
+ *   later operations instead of opening a new TCP (and TLS) connection per lookup.</li>
+ * </ul>
+ */
+class LDAPConnectionFactory {
+  private static final Log LOG = LogFactory.getLog(LDAPConnectionFactory.class);
+
+  /**
+   * Opens a context to an LDAP server.
+   */
+  interface Connector {
+    LdapContext connect(Hashtable<String, String> env) throws NamingException;
+  }
+
+  /**
+   * LDAP operation run with an open context.
+   */
+  interface Operation<T> {
+    T run(LdapContext ctx) throws NamingException;
+  }
+
+  private final String[] providerURLs;
+  private final boolean poolEnabled;
+  private final long connectTimeout;
+  private final long readTimeout;
+  private final Connector connector;
+  private final AtomicInteger preferredProvider = new AtomicInteger();
+
+  LDAPConnectionFactory(Configuration conf) {
+    this(conf.getTrimmedStrings(ConfigurationKeys.KUBE2HADOOP_AUTHENTICATOR_LDAP_PROVIDER_URL),
+        conf.getBoolean(ConfigurationKeys.KUBE2HADOOP_AUTHENTICATOR_LDAP_POOL_ENABLED,
+            ConfigurationKeys.DEFAULT_KUBE2HADOOP_AUTHENTICATOR_LDAP_POOL_ENABLED),
+        conf.getLong(ConfigurationKeys.KUBE2HADOOP_AUTHENTICATOR_LDAP_CONNECT_TIMEOUT_IN_MILLISECONDS,
+            ConfigurationKeys.DEFAULT_KUBE2HADOOP_AUTHENTICATOR_LDAP_CONNECT_TIMEOUT_IN_MILLISECONDS),
+        conf.getLong(ConfigurationKeys.KUBE2HADOOP_AUTHENTICATOR_LDAP_READ_TIMEOUT_IN_MILLISECONDS,
+            ConfigurationKeys.DEFAULT_KUBE2HADOOP_AUTHENTICATOR_LDAP_READ_TIMEOUT_IN_MILLISECONDS),
+        env -> new InitialLdapContext(env, null));
+    if (poolEnabled) {
+      configurePool(conf.getInt(ConfigurationKeys.KUBE2HADOOP_AUTHENTICATOR_LDAP_POOL_MAX_SIZE,
+          ConfigurationKeys.DEFAULT_KUBE2HADOOP_AUTHENTICATOR_LDAP_POOL_MAX_SIZE),
+          conf.getLong(ConfigurationKeys.KUBE2HADOOP_AUTHENTICATOR_LDAP_POOL_IDLE_TIMEOUT_IN_MILLISECONDS,
+              ConfigurationKeys.DEFAULT_KUBE2HADOOP_AUTHENTICATOR_LDAP_POOL_IDLE_TIMEOUT_IN_MILLISECONDS));
+    }
+  }
+
+  LDAPConnectionFactory(String[] providerURLs, boolean poolEnabled, long connectTimeout, long readTimeout,
+      Connector connector) {
+    if (providerURLs.length == 0) {
+      throw new IllegalArgumentException("No LDAP provider URL configured");
+    }
+    this.providerURLs = providerURLs;
+    this.poolEnabled = poolEnabled;
+    this.connectTimeout = connectTimeout;
+    this.readTimeout = readTimeout;
+    this.connector = connector;
+  }
+
+  /**
+   * The JDK LDAP connection pool is configured through system properties, read once when the first pooled
+   * connection is created. Properties already set on the command line take precedence.
+   */
+  private static synchronized void configurePool(int maxSize, long idleTimeout) {
+    setPropertyIfAbsent(Constants.LDAP_CONNECT_POOL_MAX_SIZE, String.valueOf(maxSize));
+    setPropertyIfAbsent(Constants.LDAP_CONNECT_POOL_TIMEOUT, String.valueOf(idleTimeout));
+    setPropertyIfAbsent(Constants.LDAP_CONNECT_POOL_PROTOCOL, "plain ssl");
+  }
+
+  private static void setPropertyIfAbsent(String key, String value) {
+    if (System.getProperty(key) == null) {
+      System.setProperty(key, value);
+    }
+  }
+
+  /**
+   * Run {@code operation} against the preferred LDAP server, failing over to the next servers in order.
+   * The context is closed, and returned to the pool if pooling is enabled, once the operation completes.
+   * @param operation LDAP operation
+   * @return result of the operation
+   * @throws NamingException the last failure if the operation failed on every server
+   */
+  <T> T execute(Operation<T> operation) throws NamingException {
+    int first = preferredProvider.get();
+    NamingException lastException = null;
+    for (int i = 0; i < providerURLs.length; i++) {
+      int index = (first + i) % providerURLs.length;
+      LdapContext ctx = null;
+      try {
+        ctx = connector.connect(createLdapEnv(providerURLs[index]));
+        T result = operation.run(ctx);
+        preferredProvider.compareAndSet(first, index);
+        return result;
+      } catch (NameNotFoundException | InvalidNameException e) {
+        // Would fail the same way on every server
+        throw e;
+      } catch (NamingException e) {
+        LOG.warn("LDAP operation failed on " + providerURLs[index] + ": " + e);
+        lastException = e;
+      } finally {
+        if (ctx != null) {
+          try {
+            ctx.close();
+          } catch (NamingException e) {
+            LOG.error("Encountered exception while closing context", e);
+          }
+        }
+      }
+    }
+    throw lastException;
+  }
+
+  Hashtable<String, String> createLdapEnv(String providerURL) {
+    Hashtable<String, String> env = new Hashtable<>();
+    env.put(Context.INITIAL_CONTEXT_FACTORY, Constants.CONTEXT_FACTORY);
+    env.put(Context.PROVIDER_URL, providerURL);
+    env.put(Constants.LDAP_CONNECT_POOL, String.valueOf(poolEnabled));
+    env.put(Constants.LDAP_CONNECT_TIMEOUT, String.valueOf(connectTimeout));
+    env.put(Constants.LDAP_READ_TIMEOUT, String.valueOf(readTimeout));
+    return env;
+  }
+}
@@ -0,0 +1,198 @@
+/**
+ * Copyright 2020 LinkedIn Corporation. All rights reserved. Licensed under the BSD-2 Clause license.
+ * See LICENSE in the project root for license information.
+ */
+
+package com.linkedin.kube2hadoop.authenticator;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.linkedin.kube2hadoop.core.conf.ConfigurationKeys;
+import java.io.Closeable;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import javax.naming.NamingException;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+
+
+/**
+ * In-memory index of the users behind every group under the LDAP group domain, so that headless account
+ * authentication does not need any LDAP round trip on the request path.
+ * <ul>
+ *   <li>The whole group domain is loaded at startup and every {@code fullSyncInterval}, which also drops deleted
+ *   groups.</li>
+ *   <li>In between, every {@code syncInterval}, only groups with a {@code modifyTimestamp} later than the latest one
+ *   seen are fetched and merged. If the LDAP server does not return {@code modifyTimestamp}, every sync is a full
+ *   sync.</li>
+ * </ul>
+ * The index is replaced atomically, so readers never see a partially synced snapshot.
+ */
+class LDAPGroupSnapshot implements Runnable, Closeable {
+  private static final Log LOG = LogFactory.getLog(LDAPGroupSnapshot.class);
+
+  /**
+   * Loads groups and their users from LDAP.
+   */
+  interface Loader {
+    /**
+     * @param modifiedSince only load groups modified at or after this LDAP generalized time, null to load every group
+     * @return groups and their users
+     * @throws NamingException if the lookup failed
+     */
+    Groups load(String modifiedSince) throws NamingException;
+  }
+
+  static class Groups {
+    private final Map<String, Set<String>> members;
+    private final String lastModified;
+
+    /**
+     * @param members users behind each group
+     * @param lastModified latest {@code modifyTimestamp} among the groups, null if not returned by the LDAP server
+     */
+    Groups(Map<String, Set<String>> members, String lastModified) {
+      this.members = members;
+      this.lastModified = lastModified;
+    }
+  }
+
+  private final Loader loader;
+  private final long syncInterval;
+  private final long fullSyncInterval;
+  private final LongSupplier clock;
+  // Users belong to many groups, only keep one copy of each user name
+  private final Interner<String> userNames = Interners.newWeakInterner();
+  private ScheduledExecutorService syncExecutor;
+
+  private volatile Map<String, Set<String>> index;
+  // Only accessed by the sync thread
+  private String lastModified;
+  private long lastFullSyncDate;
+
+  private final LongAdder fullSyncs = new LongAdder();
+  private final LongAdder incrementalSyncs = new LongAdder();
+  private final LongAdder syncFailures = new LongAdder();
+
+  LDAPGroupSnapshot(Configuration conf, Loader loader) {
+    this(loader,
+        conf.getLong(ConfigurationKeys.KUBE2HADOOP_AUTHENTICATOR_LDAP_SNAPSHOT_SYNC_INTERVAL_IN_MILLISECONDS,
+            ConfigurationKeys.DEFAULT_KUBE2HADOOP_AUTHENTICATOR_LDAP_SNAPSHOT_SYNC_INTERVAL_IN_MILLISECONDS),
+        conf.getLong(ConfigurationKeys.KUBE2HADOOP_AUTHENTICATOR_LDAP_SNAPSHOT_FULL_SYNC_INTERVAL_IN_MILLISECONDS,
+            ConfigurationKeys.DEFAULT_KUBE2HADOOP_AUTHENTICATOR_LDAP_SNAPSHOT_FULL_SYNC_INTERVAL_IN_MILLISECONDS),
+        System::currentTimeMillis);
+  }
+
+  LDAPGroupSnapshot(Loader loader, long syncInterval, long fullSyncInterval, LongSupplier clock) {
+    this.loader = loader;
+    this.syncInterval = syncInterval;
+    this.fullSyncInterval = fullSyncInterval;
+    this.clock = clock;
+  }
+
+  /**
+   * Load the snapshot in the background, then keep it in sync every {@code syncInterval}.
+   */
+  void start() {
+    syncExecutor = Executors.newSingleThreadScheduledExecutor(
+        new ThreadFactoryBuilder().setDaemon(true).setNameFormat("ldap-group-sync-%d").build());
+    syncExecutor.scheduleWithFixedDelay(this, 0, syncInterval, TimeUnit.MILLISECONDS);
+  }
+
+  @Override
+  public void run() {
+    try {
+      sync();
+    } catch (NamingException | RuntimeException e) {
+      syncFailures.increment();
+      LOG.error("Failed to sync LDAP group snapshot", e);
+    }
+  }
+
+  void sync() throws NamingException {
+    long now = clock.getAsLong();
+    if (index == null || lastModified == null || now - lastFullSyncDate >= fullSyncInterval) {
+      Groups groups = loader.load(null);
+      index = compact(groups.members, Collections.emptyMap());
+      lastModified = groups.lastModified;
+      lastFullSyncDate = now;
+      fullSyncs.increment();
+      LOG.info("Loaded " + index.size() + " groups from LDAP");
+      return;
+    }
+
+    Groups groups = loader.load(lastModified);
+    if (!groups.members.isEmpty()) {
+      index = compact(groups.members, index);
+      LOG.info("Synced " + groups.members.size() + " groups modified since " + lastModified + " from LDAP");
+    }
+    if (groups.lastModified != null && groups.lastModified.compareTo(lastModified) > 0) {
+      lastModified = groups.lastModified;
+    }
+    incrementalSyncs.increment();
+  }
+
+  /**
+   * @return a new immutable index with the groups of {@code base} overridden by {@code updates}
+   */
+  private Map<String, Set<String>> compact(Map<String, Set<String>> updates, Map<String, Set<String>> base) {
+    Map<String, Set<String>> merged = new HashMap<>(base);
+    for (Map.Entry<String, Set<String>> group : updates.entrySet()) {
+      ImmutableSet.Builder<String> users = ImmutableSet.builder();
+      for (String user : group.getValue()) {
+        users.add(userNames.intern(user));
+      }
+      merged.put(group.getKey(), users.build());
+    }
+    return ImmutableMap.copyOf(merged);
+  }
+
+  /**
+   * @param headlessAccount headless account
+   * @return users behind the headless account, empty if the headless account does not exist, null if the snapshot
+   *  has not been loaded yet
+   */
+  Set<String> getMembers(String headlessAccount) {
+    Map<String, Set<String>> snapshot = index;
+    if (snapshot == null) {
+      return null;
+    }
+    Set<String> users = snapshot.get(headlessAccount);
+    return users == null ? Collections.emptySet() : users;
+  }
+
+  long size() {
+    Map<String, Set<String>> snapshot = index;
+    return snapshot == null ? 0 : snapshot.size();
+  }
+
+  long getFullSyncCount() {
+    return fullSyncs.sum();
+  }
+
+  long getIncrementalSyncCount() {
+    return incrementalSyncs.sum();
+  }
+
+  long getSyncFailureCount() {
+    return syncFailures.sum();
+  }
+
+  @Override
+  public void close() {
+    if (syncExecutor != null) {
+      syncExecutor.shutdownNow();
+    }
+  }
+}
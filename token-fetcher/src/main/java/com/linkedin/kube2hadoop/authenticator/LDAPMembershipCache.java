@@ -0,0 +1,230 @@
+/**
+ * Copyright 2020 LinkedIn Corporation. All rights reserved. Licensed under the BSD-2 Clause license.
+ * See LICENSE in the project root for license information.
+ */
+
+package com.linkedin.kube2hadoop.authenticator;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.linkedin.kube2hadoop.core.ErrorCode;
+import com.linkedin.kube2hadoop.core.TokenServiceException;
+import com.linkedin.kube2hadoop.core.conf.ConfigurationKeys;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import javax.naming.NamingException;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+
+
+/**
+ * Cache of the users behind each headless account, as loaded from LDAP.
+ * <ul>
+ *   <li>Memberships are served from memory for {@code ttl} after they were loaded, and headless accounts not found in
+ *   LDAP are remembered for {@code negativeTtl}.</li>
+ *   <li>A hit within {@code refreshAhead} of expiry reloads the membership of an existing headless account in the
+ *   background, so that frequently used headless accounts never expire on the request path.</li>
+ *   <li>An expired membership is reloaded on the request path, but if LDAP fails or does not answer within
+ *   {@code loadTimeout}, the expired membership is served for up to {@code maxStale} after expiry.</li>
+ * </ul>
+ * Concurrent loads of the same headless account are coalesced.
+ */
+class LDAPMembershipCache {
+  private static final Log LOG = LogFactory.getLog(LDAPMembershipCache.class);
+
+  /**
+   * Loads the users behind a headless account.
+   */
+  interface Loader {
+    /**
+     * @param headlessAccount headless account
+     * @return users behind the headless account, null if the headless account does not exist
+     * @throws NamingException if the lookup failed
+     */
+    Set<String> load(String headlessAccount) throws NamingException;
+  }
+
+  private final Loader loader;
+  private final long ttl;
+  private final long negativeTtl;
+  private final long refreshAhead;
+  private final long maxStale;
+  private final long loadTimeout;
+  private final Executor executor;
+  private final LongSupplier clock;
+
+  private final Cache<String, Membership> memberships;
+  private final ConcurrentMap<String, CompletableFuture<Membership>> inFlightLoads = new ConcurrentHashMap<>();
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder staleHits = new LongAdder();
+  private final LongAdder loads = new LongAdder();
+  private final LongAdder loadFailures = new LongAdder();
+
+  LDAPMembershipCache(Configuration conf, Loader loader) {
+    this(loader,
+        conf.getLong(ConfigurationKeys.KUBE2HADOOP_AUTHENTICATOR_LDAP_CACHE_TTL_IN_MILLISECONDS,
+            ConfigurationKeys.DEFAULT_KUBE2HADOOP_AUTHENTICATOR_LDAP_CACHE_TTL_IN_MILLISECONDS),
+        conf.getLong(ConfigurationKeys.KUBE2HADOOP_AUTHENTICATOR_LDAP_CACHE_NEGATIVE_TTL_IN_MILLISECONDS,
+            ConfigurationKeys.DEFAULT_KUBE2HADOOP_AUTHENTICATOR_LDAP_CACHE_NEGATIVE_TTL_IN_MILLISECONDS),
+        conf.getLong(ConfigurationKeys.KUBE2HADOOP_AUTHENTICATOR_LDAP_CACHE_REFRESH_AHEAD_IN_MILLISECONDS,
+            ConfigurationKeys.DEFAULT_KUBE2HADOOP_AUTHENTICATOR_LDAP_CACHE_REFRESH_AHEAD_IN_MILLISECONDS),
+        conf.getLong(ConfigurationKeys.KUBE2HADOOP_AUTHENTICATOR_LDAP_CACHE_MAX_STALE_IN_MILLISECONDS,
+            ConfigurationKeys.DEFAULT_KUBE2HADOOP_AUTHENTICATOR_LDAP_CACHE_MAX_STALE_IN_MILLISECONDS),
+        conf.getLong(ConfigurationKeys.KUBE2HADOOP_AUTHENTICATOR_LDAP_CACHE_LOAD_TIMEOUT_IN_MILLISECONDS,
+            ConfigurationKeys.DEFAULT_KUBE2HADOOP_AUTHENTICATOR_LDAP_CACHE_LOAD_TIMEOUT_IN_MILLISECONDS),
+        conf.getLong(ConfigurationKeys.KUBE2HADOOP_AUTHENTICATOR_LDAP_CACHE_MAX_SIZE,
+            ConfigurationKeys.DEFAULT_KUBE2HADOOP_AUTHENTICATOR_LDAP_CACHE_MAX_SIZE),
+        Executors.newFixedThreadPool(conf.getInt(ConfigurationKeys.KUBE2HADOOP_AUTHENTICATOR_LDAP_CACHE_THREADS,
+            ConfigurationKeys.DEFAULT_KUBE2HADOOP_AUTHENTICATOR_LDAP_CACHE_THREADS),
+            new ThreadFactoryBuilder().setDaemon(true).setNameFormat("ldap-membership-loader-%d").build()),
+        System::currentTimeMillis);
+  }
+
+  LDAPMembershipCache(Loader loader, long ttl, long negativeTtl, long refreshAhead, long maxStale, long loadTimeout,
+      long maxSize, Executor executor, LongSupplier clock) {
+    this.loader = loader;
+    this.ttl = ttl;
+    this.negativeTtl = negativeTtl;
+    this.refreshAhead = refreshAhead;
+    this.maxStale = maxStale;
+    this.loadTimeout = loadTimeout;
+    this.executor = executor;
+    this.clock = clock;
+    // Entries are dropped once they can no longer be served, even stale
+    this.memberships = CacheBuilder.newBuilder()
+        .maximumSize(maxSize)
+        .expireAfterWrite(Math.max(ttl, negativeTtl) + maxStale, TimeUnit.MILLISECONDS)
+        .build();
+  }
+
+  /**
+   * @param headlessAccount headless account
+   * @return users behind the headless account, empty if the headless account does not exist
+   * @throws TokenServiceException if the membership could not be loaded from LDAP and there is no cached one
+   */
+  Set<String> getMembers(String headlessAccount) throws TokenServiceException {
+    long now = clock.getAsLong();
+    Membership cached = memberships.getIfPresent(headlessAccount);
+    if (cached != null && now < cached.expirationDate) {
+      hits.increment();
+      if (cached.found && now >= cached.expirationDate - refreshAhead) {
+        load(headlessAccount);
+      }
+      return cached.members;
+    }
+
+    CompletableFuture<Membership> load = load(headlessAccount);
+    if (cached != null && now < cached.expirationDate + maxStale) {
+      try {
+        Membership membership = load.get(loadTimeout, TimeUnit.MILLISECONDS);
+        misses.increment();
+        return membership.members;
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } catch (ExecutionException | TimeoutException e) {
+        LOG.warn("Serving expired membership of " + headlessAccount + ", LDAP lookup did not complete: " + e);
+      }
+      staleHits.increment();
+      return cached.members;
+    }
+
+    misses.increment();
+    try {
+      return load.get().members;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new TokenServiceException("Interrupted while looking up " + headlessAccount + " in LDAP",
+          ErrorCode.LDAP_LOOKUP_EXCEPTION);
+    } catch (ExecutionException e) {
+      throw new TokenServiceException("Failed to look up " + headlessAccount + " in LDAP: " + e.getCause(),
+          ErrorCode.LDAP_LOOKUP_EXCEPTION);
+    }
+  }
+
+  /**
+   * Load the membership of {@code headlessAccount} in the background, unless it is already being loaded.
+   */
+  private CompletableFuture<Membership> load(String headlessAccount) {
+    CompletableFuture<Membership> future = new CompletableFuture<>();
+    CompletableFuture<Membership> inFlight = inFlightLoads.putIfAbsent(headlessAccount, future);
+    if (inFlight != null) {
+      return inFlight;
+    }
+
+    try {
+      executor.execute(() -> {
+        try {
+          loads.increment();
+          Set<String> members = loader.load(headlessAccount);
+          long now = clock.getAsLong();
+          Membership membership = members == null
+              ? new Membership(Collections.emptySet(), false, now + negativeTtl)
+              : new Membership(Collections.unmodifiableSet(new HashSet<>(members)), true, now + ttl);
+          memberships.put(headlessAccount, membership);
+          // Removed before completing, so that callers never pick up a completed load as in flight
+          inFlightLoads.remove(headlessAccount, future);
+          future.complete(membership);
+        } catch (NamingException | RuntimeException e) {
+          loadFailures.increment();
+          inFlightLoads.remove(headlessAccount, future);
+          future.completeExceptionally(e);
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      inFlightLoads.remove(headlessAccount, future);
+      future.completeExceptionally(e);
+    }
+    return future;
+  }
+
+  long getHitCount() {
+    return hits.sum();
+  }
+
+  long getMissCount() {
+    return misses.sum();
+  }
+
+  long getStaleHitCount() {
+    return staleHits.sum();
+  }
+
+  long getLoadCount() {
+    return loads.sum();
+  }
+
+  long getLoadFailureCount() {
+    return loadFailures.sum();
+  }
+
+  long size() {
+    return memberships.size();
+  }
+
+  private static class Membership {
+    private final Set<String> members;
+    private final boolean found;
+    private final long expirationDate;
+
+    private Membership(Set<String> members, boolean found, long expirationDate) {
+      this.members = members;
+      this.found = found;
+      this.expirationDate = expirationDate;
+    }
+  }
+}
@@ -0,0 +1,181 @@
+/**
+ * Copyright 2020 LinkedIn Corporation. All rights reserved. Licensed under the BSD-2 Clause license.
+ * See LICENSE in the project root for license information.
+ */
+
+package com.linkedin.kube2hadoop.authenticator;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.linkedin.kube2hadoop.core.ErrorCode;
+import com.linkedin.kube2hadoop.core.SingleFlight;
+import com.linkedin.kube2hadoop.core.TokenServiceException;
+import com.linkedin.kube2hadoop.core.conf.ConfigurationKeys;
+import io.kubernetes.client.ApiException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+
+
+/**
+ * Live lookups of pods missing from the {@code KubernetesAuthenticator} watch cache, guarding the API server against
+ * a stampede of lookups when the watch cache falls behind:
+ * <ul>
+ *   <li>Concurrent lookups of the same pod are coalesced into one API server call.</li>
+ *   <li>Pods not found are remembered for {@code notFoundTtl}.</li>
+ *   <li>API server calls are limited to {@code rateLimit} per second and {@code maxConcurrent} at a time, lookups
+ *   over either limit fail right away.</li>
+ * </ul>
+ */
+class LivePodLookup {
+  private static final Log LOG = LogFactory.getLog(LivePodLookup.class);
+  static final int HTTP_NOT_FOUND = 404;
+  private static final long MAX_NOT_FOUND_PODS = 10000L;
+
+  /**
+   * Looks up a pod on the Kubernetes API server.
+   */
+  interface Loader {
+    /**
+     * @param namespace namespace of the pod
+     * @param podName name of the pod
+     * @return pod metadata
+     * @throws ApiException exception thrown by the Kubernetes client, with code 404 if the pod does not exist
+     */
+    PodMetadata load(String namespace, String podName) throws ApiException;
+  }
+
+  private final Loader loader;
+  private final long notFoundTtl;
+  private final int rateLimit;
+  private final LongSupplier clock;
+
+  private final SingleFlight<String, PodMetadata> lookups = new SingleFlight<>();
+  // Map of namespace/pod name -> date until which the pod is considered not found
+  private final Cache<String, Long> notFoundPods;
+  private final Semaphore concurrentCalls;
+  private final LongAdder apiCalls = new LongAdder();
+  private final LongAdder notFoundHits = new LongAdder();
+  private final LongAdder rejectedCalls = new LongAdder();
+
+  // Token bucket of API server calls, refilled at {@code rateLimit} per second
+  private double availablePermits;
+  private long lastRefillDate;
+
+  LivePodLookup(Configuration conf, Loader loader) {
+    this(loader,
+        conf.getLong(ConfigurationKeys.KUBE2HADOOP_AUTHENTICATOR_POD_LOOKUP_NOT_FOUND_TTL_IN_MILLISECONDS,
+            ConfigurationKeys.DEFAULT_KUBE2HADOOP_AUTHENTICATOR_POD_LOOKUP_NOT_FOUND_TTL_IN_MILLISECONDS),
+        conf.getInt(ConfigurationKeys.KUBE2HADOOP_AUTHENTICATOR_POD_LOOKUP_RATE_LIMIT,
+            ConfigurationKeys.DEFAULT_KUBE2HADOOP_AUTHENTICATOR_POD_LOOKUP_RATE_LIMIT),
+        conf.getInt(ConfigurationKeys.KUBE2HADOOP_AUTHENTICATOR_POD_LOOKUP_MAX_CONCURRENT,
+            ConfigurationKeys.DEFAULT_KUBE2HADOOP_AUTHENTICATOR_POD_LOOKUP_MAX_CONCURRENT),
+        System::currentTimeMillis);
+  }
+
+  /**
+   * @param rateLimit API server calls per second, unlimited if not positive
+   * @param maxConcurrent API server calls in flight, unlimited if not positive
+   */
+  LivePodLookup(Loader loader, long notFoundTtl, int rateLimit, int maxConcurrent, LongSupplier clock) {
+    this.loader = loader;
+    this.notFoundTtl = notFoundTtl;
+    this.rateLimit = rateLimit;
+    this.clock = clock;
+    this.concurrentCalls = maxConcurrent > 0 ? new Semaphore(maxConcurrent) : null;
+    this.notFoundPods = CacheBuilder.newBuilder().maximumSize(MAX_NOT_FOUND_PODS).build();
+    this.availablePermits = rateLimit;
+    this.lastRefillDate = clock.getAsLong();
+  }
+
+  /**
+   * @param namespace namespace of the pod
+   * @param podName name of the pod
+   * @return pod metadata
+   * @throws TokenServiceException if the pod does not exist, the lookup is over the limits or the API server call
+   *  failed
+   */
+  PodMetadata lookup(String namespace, String podName) throws TokenServiceException {
+    String key = namespace + "/" + podName;
+    Long notFoundUntil = notFoundPods.getIfPresent(key);
+    if (notFoundUntil != null) {
+      if (clock.getAsLong() < notFoundUntil) {
+        notFoundHits.increment();
+        throw podNotFound(namespace, podName);
+      }
+      notFoundPods.invalidate(key);
+    }
+    return lookups.execute(key, () -> load(namespace, podName, key));
+  }
+
+  private PodMetadata load(String namespace, String podName, String key) {
+    if (!tryAcquirePermit()) {
+      rejectedCalls.increment();
+      throw new TokenServiceException("Too many live lookups of pods missing from the watch cache, rejecting pod: "
+          + podName + " in namespace " + namespace, ErrorCode.TOO_MANY_REQUESTS);
+    }
+    if (concurrentCalls != null && !concurrentCalls.tryAcquire()) {
+      rejectedCalls.increment();
+      throw new TokenServiceException("Too many live lookups of pods missing from the watch cache in flight, "
+          + "rejecting pod: " + podName + " in namespace " + namespace, ErrorCode.TOO_MANY_REQUESTS);
+    }
+    try {
+      apiCalls.increment();
+      return loader.load(namespace, podName);
+    } catch (ApiException ex) {
+      if (ex.getCode() == HTTP_NOT_FOUND) {
+        LOG.info("Pod: " + podName + " not found in namespace " + namespace + ", remembering it for "
+            + notFoundTtl + "ms");
+        notFoundPods.put(key, clock.getAsLong() + notFoundTtl);
+        throw podNotFound(namespace, podName);
+      }
+      throw new TokenServiceException(ex.getMessage(), ErrorCode.KUBERNETES_POD_CALL_EXCEPTION);
+    } catch (NullPointerException ex) {
+      throw new TokenServiceException(ex.getMessage(), ErrorCode.KUBERNETES_POD_CALL_EXCEPTION);
+    } finally {
+      if (concurrentCalls != null) {
+        concurrentCalls.release();
+      }
+    }
+  }
+
+  private synchronized boolean tryAcquirePermit() {
+    if (rateLimit <= 0) {
+      return true;
+    }
+    long now = clock.getAsLong();
+    availablePermits = Math.min(rateLimit,
+        availablePermits + (now - lastRefillDate) * rateLimit / (double) TimeUnit.SECONDS.toMillis(1));
+    lastRefillDate = now;
+    if (availablePermits < 1) {
+      return false;
+    }
+    availablePermits--;
+    return true;
+  }
+
+  private static TokenServiceException podNotFound(String namespace, String podName) {
+    return new TokenServiceException("Cannot find pod: " + podName + " in namespace " + namespace,
+        ErrorCode.KUBERNETES_POD_NOT_FOUND);
+  }
+
+  long getApiCallCount() {
+    return apiCalls.sum();
+  }
+
+  long getSharedLookupCount() {
+    return lookups.getSharedCount();
+  }
+
+  long getNotFoundHitCount() {
+    return notFoundHits.sum();
+  }
+
+  long getRejectedCallCount() {
+    return rejectedCalls.sum();
+  }
+}
@@ -0,0 +1,149 @@
+/**
+ * Copyright 2020 LinkedIn Corporation. All rights reserved. Licensed under the BSD-2 Clause license.
+ * See LICENSE in the project root for license information.
+ */
+
+package com.linkedin.kube2hadoop.authenticator;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.net.InetAddresses;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+/**
+ * Reverse index of the {@code KubernetesAuthenticator} watch cache, from pod IP address to the pods holding it, so
+ * that a request can be matched to its pod by source address alone.
+ * An IP address is normally held by a single pod, but it can be held by several for a while: when it is reused by a
+ * rescheduled pod before the termination of its previous holder is seen, or for pods on the host network. Such an
+ * address does not identify a pod, until the pods that no longer hold it are removed.
+ */
+final class PodIPIndex {
+  // Map of pod IP -> pods holding it
+  private final Map<String, Set<PodRef>> pods = new ConcurrentHashMap<>();
+
+  /**
+   * @param watchCache watch cache to index, namespace -> (pod name -> pod metadata)
+   * @return index of the pods in {@code watchCache}
+   */
+  static PodIPIndex of(Map<String, Map<String, PodMetadata>> watchCache) {
+    PodIPIndex index = new PodIPIndex();
+    for (Map.Entry<String, Map<String, PodMetadata>> namespaceCache : watchCache.entrySet()) {
+      for (Map.Entry<String, PodMetadata> pod : namespaceCache.getValue().entrySet()) {
+        index.add(namespaceCache.getKey(), pod.getKey(), pod.getValue());
+      }
+    }
+    return index;
+  }
+
+  /**
+   * Index a pod, no-op if its IP address is not assigned yet.
+   */
+  void add(String namespace, String podName, PodMetadata podMetadata) {
+    String podIP = podMetadata.getPodIP();
+    if (podIP == null) {
+      return;
+    }
+    PodRef pod = new PodRef(namespace, podName);
+    pods.compute(podIP, (ip, holders) -> {
+      if (holders == null) {
+        return ImmutableSet.of(pod);
+      }
+      return holders.contains(pod) ? holders : ImmutableSet.<PodRef>builder().addAll(holders).add(pod).build();
+    });
+  }
+
+  /**
+   * Remove a pod from the index, no-op if its IP address is not assigned or already held by other pods only.
+   */
+  void remove(String namespace, String podName, PodMetadata podMetadata) {
+    String podIP = podMetadata.getPodIP();
+    if (podIP == null) {
+      return;
+    }
+    PodRef pod = new PodRef(namespace, podName);
+    pods.computeIfPresent(podIP, (ip, holders) -> {
+      if (!holders.contains(pod)) {
+        return holders;
+      }
+      ImmutableSet.Builder<PodRef> remaining = ImmutableSet.builder();
+      holders.stream().filter(holder -> !holder.equals(pod)).forEach(remaining::add);
+      Set<PodRef> remainingHolders = remaining.build();
+      return remainingHolders.isEmpty() ? null : remainingHolders;
+    });
+  }
+
+  /**
+   * Re-index a pod whose metadata changed from {@code oldPodMetadata}, which may be null for a new pod.
+   */
+  void update(String namespace, String podName, PodMetadata oldPodMetadata, PodMetadata newPodMetadata) {
+    if (oldPodMetadata != null && !Objects.equals(oldPodMetadata.getPodIP(), newPodMetadata.getPodIP())) {
+      remove(namespace, podName, oldPodMetadata);
+    }
+    add(namespace, podName, newPodMetadata);
+  }
+
+  /**
+   * @param ip IP address, in any textual form
+   * @return the pod holding {@code ip}, null if no pod or several pods hold it
+   */
+  PodRef get(String ip) {
+    if (ip == null || !InetAddresses.isInetAddress(ip)) {
+      return null;
+    }
+    Set<PodRef> holders = pods.get(InetAddresses.toAddrString(InetAddresses.forString(ip)));
+    return holders == null || holders.size() != 1 ? null : holders.iterator().next();
+  }
+
+  /**
+   * @return number of indexed IP addresses
+   */
+  int size() {
+    return pods.size();
+  }
+
+  /**
+   * Namespace and name of a pod.
+   */
+  static final class PodRef {
+    private final String namespace;
+    private final String podName;
+
+    PodRef(String namespace, String podName) {
+      this.namespace = namespace;
+      this.podName = podName;
+    }
+
+    String getNamespace() {
+      return namespace;
+    }
+
+    String getPodName() {
+      return podName;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof PodRef)) {
+        return false;
+      }
+      PodRef podRef = (PodRef) o;
+      return namespace.equals(podRef.namespace) && podName.equals(podRef.podName);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(namespace, podName);
+    }
+
+    @Override
+    public String toString() {
+      return namespace + "/" + podName;
+    }
+  }
+}
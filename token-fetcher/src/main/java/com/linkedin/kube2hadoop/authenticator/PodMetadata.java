@@ -0,0 +1,163 @@
+/**
+ * Copyright 2020 LinkedIn Corporation. All rights reserved. Licensed under the BSD-2 Clause license.
+ * See LICENSE in the project root for license information.
+ */
+
+package com.linkedin.kube2hadoop.authenticator;
+
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+import com.google.common.net.InetAddresses;
+import com.linkedin.kube2hadoop.core.Constants;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * What the {@code KubernetesAuthenticator} keeps about a pod: its IP address, the user who launched it, the job it
+ * belongs to, the few annotations used by {@code AuthenticatorDecorator}s and the resource version they were read at.
+ * The IP address is kept as raw bytes, user and job IDs are interned since many pods share them, and annotations are
+ * kept in a flat key/value array rather than a map, so that the watch cache can hold hundreds of thousands of pods.
+ */
+final class PodMetadata {
+  private static final Interner<String> STRINGS = Interners.newWeakInterner();
+  private static final String[] NO_ANNOTATIONS = new String[0];
+
+  private final byte[] podIP;
+  private final String userID;
+  private final String jobID;
+  // Retained annotation keys and values, alternating
+  private final String[] annotations;
+  private final long resourceVersion;
+
+  PodMetadata(String podIP, String userID, String jobID, Map<String, String> annotations) {
+    this(podIP, userID, jobID, annotations, 0L);
+  }
+
+  /**
+   * @param podIP pod IP address, null if not assigned yet
+   * @param userID user who launched the pod, null if the pod has no userID annotation
+   * @param jobID ID of the job the pod belongs to, may be null
+   * @param annotations retained annotations
+   * @param resourceVersion resource version of the pod, 0 if unknown
+   */
+  PodMetadata(String podIP, String userID, String jobID, Map<String, String> annotations, long resourceVersion) {
+    this.podIP = podIP == null || !InetAddresses.isInetAddress(podIP)
+        ? null : InetAddresses.forString(podIP).getAddress();
+    this.userID = intern(userID);
+    this.jobID = intern(jobID);
+    if (annotations.isEmpty()) {
+      this.annotations = NO_ANNOTATIONS;
+    } else {
+      List<String> keyValues = new ArrayList<>(annotations.size() * 2);
+      for (Map.Entry<String, String> annotation : annotations.entrySet()) {
+        keyValues.add(intern(annotation.getKey()));
+        keyValues.add(intern(annotation.getValue()));
+      }
+      this.annotations = keyValues.toArray(new String[0]);
+    }
+    this.resourceVersion = resourceVersion;
+  }
+
+  /**
+   * @param podIP pod IP address, may be null
+   * @param userID user who launched the pod, may be null
+   * @param jobID ID of the job the pod belongs to, may be null
+   * @param podAnnotations all the pod's annotations, may be null
+   * @param retainedAnnotations keys of the annotations to retain
+   * @param resourceVersion resource version of the pod, 0 if unknown
+   * @return pod metadata retaining only {@code retainedAnnotations}
+   */
+  static PodMetadata of(String podIP, String userID, String jobID, Map<String, String> podAnnotations,
+      Collection<String> retainedAnnotations, long resourceVersion) {
+    Map<String, String> annotations = new HashMap<>();
+    if (podAnnotations != null) {
+      for (String key : retainedAnnotations) {
+        String value = podAnnotations.get(key);
+        if (value != null) {
+          annotations.put(key, value);
+        }
+      }
+    }
+    return new PodMetadata(podIP, userID, jobID, annotations, resourceVersion);
+  }
+
+  private static String intern(String value) {
+    return value == null ? null : STRINGS.intern(value);
+  }
+
+  /**
+   * @return pod IP address, null if not assigned
+   */
+  String getPodIP() {
+    if (podIP == null) {
+      return null;
+    }
+    try {
+      return InetAddresses.toAddrString(InetAddress.getByAddress(podIP));
+    } catch (UnknownHostException e) {
+      // Only thrown for addresses of illegal length, which InetAddresses never returns
+      throw new IllegalStateException(e);
+    }
+  }
+
+  boolean hasPodIP() {
+    return podIP != null;
+  }
+
+  /**
+   * @param ip IP address
+   * @return whether {@code ip} is the pod's IP address
+   */
+  boolean hasPodIP(String ip) {
+    return podIP != null && ip != null && InetAddresses.isInetAddress(ip)
+        && Arrays.equals(podIP, InetAddresses.forString(ip).getAddress());
+  }
+
+  String getUserID() {
+    return userID;
+  }
+
+  String getJobID() {
+    return jobID;
+  }
+
+  /**
+   * @return resource version of the pod the metadata was read at, 0 if unknown
+   */
+  long getResourceVersion() {
+    return resourceVersion;
+  }
+
+  String getAnnotation(String key) {
+    for (int i = 0; i < annotations.length; i += 2) {
+      if (annotations[i].equals(key)) {
+        return annotations[i + 1];
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Add the user ID under {@code Constants.KUBERNETES_USER_ID}, the job ID under {@code Constants.JOB_ID} and the
+   * retained annotations to {@code params}, for {@code AuthenticatorDecorator}s.
+   * @param params authenticator parameters
+   */
+  void addToParams(AuthenticatorParameters params) {
+    for (int i = 0; i < annotations.length; i += 2) {
+      params.addParamString(annotations[i], annotations[i + 1]);
+    }
+    if (userID != null) {
+      params.addParamString(Constants.KUBERNETES_USER_ID, userID);
+    }
+    if (jobID != null) {
+      params.addParamString(Constants.JOB_ID, jobID);
+    }
+  }
+}
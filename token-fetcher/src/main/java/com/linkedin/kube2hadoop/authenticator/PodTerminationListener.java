@@ -0,0 +1,18 @@
+/**
+ * Copyright 2020 LinkedIn Corporation. All rights reserved. Licensed under the BSD-2 Clause license.
+ * See LICENSE in the project root for license information.
+ */
+
+package com.linkedin.kube2hadoop.authenticator;
+
+/**
+ * Notified of pods that will no longer request tokens, i.e. pods that were deleted or whose containers all terminated.
+ */
+public interface PodTerminationListener {
+  /**
+   * Called from the watch threads, possibly several times for the same pod.
+   * @param namespace namespace of the pod
+   * @param podName name of the pod
+   */
+  void onPodTerminated(String namespace, String podName);
+}
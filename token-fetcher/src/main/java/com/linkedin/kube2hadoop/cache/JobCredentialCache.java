@@ -0,0 +1,101 @@
+/**
+ * Copyright 2020 LinkedIn Corporation. All rights reserved. Licensed under the BSD-2 Clause license.
+ * See LICENSE in the project root for license information.
+ */
+
+package com.linkedin.kube2hadoop.cache;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.linkedin.kube2hadoop.core.conf.ConfigurationKeys;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+
+
+/**
+ * Credentials shared by all the pods of a job, keyed by (namespace, job, proxy user, token kinds).
+ * A credential is handed out again as long as all of its tokens are still renewed by the {@code TokenCache} (tokens
+ * found invalid during renewal are removed from it), and for at most {@code kube2hadoop.job-token-sharing.max-age}
+ * after it was fetched, so that pods started late in a long running job still get tokens far from their max lifetime.
+ */
+public class JobCredentialCache {
+  private static final Log LOG = LogFactory.getLog(JobCredentialCache.class);
+
+  private final Cache<String, SharedCredential> credentials;
+  private final Predicate<TokenInfo> isTokenValid;
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+
+  public JobCredentialCache(Configuration conf, TokenCache tokenCache) {
+    this(conf.getLong(ConfigurationKeys.KUBE2HADOOP_JOB_TOKEN_SHARING_MAX_SIZE,
+        ConfigurationKeys.DEFAULT_KUBE2HADOOP_JOB_TOKEN_SHARING_MAX_SIZE),
+        conf.getLong(ConfigurationKeys.KUBE2HADOOP_JOB_TOKEN_SHARING_MAX_AGE_IN_MILLISECONDS,
+            ConfigurationKeys.DEFAULT_KUBE2HADOOP_JOB_TOKEN_SHARING_MAX_AGE_IN_MILLISECONDS),
+        tokenCache::containsToken);
+  }
+
+  JobCredentialCache(long maxSize, long maxAgeInMilliseconds, Predicate<TokenInfo> isTokenValid) {
+    this.credentials = CacheBuilder.newBuilder()
+        .maximumSize(maxSize)
+        .expireAfterWrite(maxAgeInMilliseconds, TimeUnit.MILLISECONDS)
+        .build();
+    this.isTokenValid = isTokenValid;
+  }
+
+  /**
+   * @param jobKey key of the job credential
+   * @return base64 encoded credential shared by the job, null if there is none or it is no longer valid
+   */
+  public String get(String jobKey) {
+    SharedCredential credential = credentials.getIfPresent(jobKey);
+    if (credential != null && !credential.tokenInfos.stream().allMatch(isTokenValid)) {
+      LOG.info("Tokens of shared credential " + jobKey + " are no longer renewed, dropping it");
+      credentials.asMap().remove(jobKey, credential);
+      credential = null;
+    }
+
+    if (credential == null) {
+      misses.increment();
+      return null;
+    }
+    hits.increment();
+    return credential.encodedCredential;
+  }
+
+  /**
+   * Share a freshly fetched credential with the other pods of the job.
+   * @param jobKey key of the job credential
+   * @param encodedCredential base64 encoded credential
+   * @param tokenInfos tokens of the credential, as added to the {@code TokenCache}
+   */
+  public void put(String jobKey, String encodedCredential, List<TokenInfo> tokenInfos) {
+    credentials.put(jobKey, new SharedCredential(encodedCredential, tokenInfos));
+  }
+
+  public long size() {
+    return credentials.size();
+  }
+
+  public long getHitCount() {
+    return hits.sum();
+  }
+
+  public long getMissCount() {
+    return misses.sum();
+  }
+
+  private static class SharedCredential {
+    private final String encodedCredential;
+    private final List<TokenInfo> tokenInfos;
+
+    private SharedCredential(String encodedCredential, List<TokenInfo> tokenInfos) {
+      this.encodedCredential = encodedCredential;
+      this.tokenInfos = tokenInfos;
+    }
+  }
+}
@@ -0,0 +1,95 @@
+/**
+ * Copyright 2020 LinkedIn Corporation. All rights reserved. Licensed under the BSD-2 Clause license.
+ * See LICENSE in the project root for license information.
+ */
+
+package com.linkedin.kube2hadoop.cache;
+
+import com.linkedin.kube2hadoop.core.conf.ConfigurationKeys;
+import com.linkedin.kube2hadoop.core.metrics.PrometheusMetrics;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+
+
+/**
+ * {@code LocalTokenCache} persisted to a {@code TokenJournal} in {@code kube2hadoop.token-cache.journal.dir}, so that
+ * tokens keep being renewed across restarts of the token fetcher. The journal is replayed when the cache is created,
+ * and every later addition, renewal and removal is appended to it off the request path.
+ */
+public class JournaledTokenCache extends LocalTokenCache {
+  private static final Log LOG = LogFactory.getLog(JournaledTokenCache.class);
+  private static final String JOURNAL_FILE_NAME = "tokens.journal";
+
+  private final TokenJournal journal;
+
+  public JournaledTokenCache(Configuration conf) {
+    super(conf);
+    journal = new TokenJournal(new File(conf.get(ConfigurationKeys.KUBE2HADOOP_TOKEN_CACHE_JOURNAL_DIR),
+        JOURNAL_FILE_NAME),
+        conf.getBoolean(ConfigurationKeys.KUBE2HADOOP_TOKEN_CACHE_JOURNAL_SYNC,
+            ConfigurationKeys.DEFAULT_KUBE2HADOOP_TOKEN_CACHE_JOURNAL_SYNC),
+        conf.getLong(ConfigurationKeys.KUBE2HADOOP_TOKEN_CACHE_JOURNAL_COMPACTION_THRESHOLD,
+            ConfigurationKeys.DEFAULT_KUBE2HADOOP_TOKEN_CACHE_JOURNAL_COMPACTION_THRESHOLD));
+
+    long startTime = System.currentTimeMillis();
+    List<TokenInfo> tokens;
+    try {
+      tokens = journal.open(startTime);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Failed to open token journal", e);
+    }
+    // Already in the journal, schedule them without logging them again
+    tokens.forEach(super::addToken);
+    LOG.info("Recovered " + tokens.size() + " tokens from " + journal.getRecordCount() + " journal records in "
+        + (System.currentTimeMillis() - startTime) + "ms");
+
+    PrometheusMetrics metrics = PrometheusMetrics.getInstance();
+    metrics.counter("kube2hadoop_token_journal_records_total", "Records appended to the token journal",
+        journal::getWrittenRecordCount);
+    metrics.counter("kube2hadoop_token_journal_batches_total", "Batches of records written to the token journal",
+        journal::getWrittenBatchCount);
+    metrics.counter("kube2hadoop_token_journal_write_failures_total", "Failed token journal writes",
+        journal::getWriteFailureCount);
+    metrics.counter("kube2hadoop_token_journal_compactions_total", "Token journal compactions",
+        journal::getCompactionCount);
+    metrics.gauge("kube2hadoop_token_journal_size_records", "Records in the token journal", journal::getRecordCount);
+  }
+
+  @Override
+  public void stopRenewer() {
+    super.stopRenewer();
+    try {
+      journal.close();
+    } catch (IOException e) {
+      LOG.error("Failed to close token journal", e);
+    }
+  }
+
+  @Override
+  public void addToken(TokenInfo tokenInfo) {
+    super.addToken(tokenInfo);
+    journal.logAdd(tokenInfo);
+  }
+
+  @Override
+  public void removeToken(TokenInfo tokenInfo) {
+    super.removeToken(tokenInfo);
+    journal.logRemove(tokenInfo);
+  }
+
+  /**
+   * Persist the expiration and last renewal dates of a token that went through renewal.
+   */
+  @Override
+  public void rescheduleToken(TokenInfo tokenInfo) {
+    super.rescheduleToken(tokenInfo);
+    if (containsToken(tokenInfo)) {
+      journal.logUpdate(tokenInfo);
+    }
+  }
+}
@@ -6,11 +6,9 @@
 package com.linkedin.kube2hadoop.cache;
 
 import com.linkedin.kube2hadoop.core.conf.ConfigurationKeys;
+import com.linkedin.kube2hadoop.service.TokenRenewalScheduler;
 import com.linkedin.kube2hadoop.service.TokenRenewalService;
-import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
-import java.util.Timer;
 import org.apache.hadoop.conf.Configuration;
 
 
@@ -20,53 +18,70 @@ import org.apache.hadoop.conf.Configuration;
  */
 public class LocalTokenCache implements TokenCache {
   private Configuration conf;
-  private List<TokenInfo> tokensCache;
-  private Timer renewerTimer;
+  private TokenRenewalIndex tokensCache;
+  private RenewalPolicy renewalPolicy;
+  private TokenRenewalScheduler renewalScheduler;
+  private TokenRenewalService tokenRenewalService;
 
   public LocalTokenCache(Configuration conf) {
     super();
     this.conf = conf;
-    tokensCache = Collections.synchronizedList(new ArrayList<>());
+    tokensCache = new TokenRenewalIndex();
+    renewalPolicy = new RenewalPolicy(conf);
 
-    // Launched a timed task to renew tokens in the background
+    // Launch a scheduler to renew tokens in the background as they become due
     long tokenRenewalInterval = conf.getLong(ConfigurationKeys.KUBE2HADOOP_TOKEN_RENEWAL_INTERVAL_IN_MILLISECONDS,
         ConfigurationKeys.DEFAULT_KUBE2HADOOP_TOKEN_RENEWAL_INTERVAL_IN_MILLISECONDS);
-    renewerTimer = new Timer(true);
-    TokenRenewalService trs = new TokenRenewalService(this.conf, this);
-    renewerTimer.scheduleAtFixedRate(trs, 0, tokenRenewalInterval);
+    tokenRenewalService = new TokenRenewalService(this.conf, this);
+    renewalScheduler = new TokenRenewalScheduler(this, tokenRenewalService, tokenRenewalInterval);
+    renewalScheduler.start();
   }
 
   public void stopRenewer() {
-    renewerTimer.cancel();
-    renewerTimer.purge();
+    renewalScheduler.close();
+    tokenRenewalService.shutdown();
+  }
+
+  public TokenRenewalService getTokenRenewalService() {
+    return tokenRenewalService;
   }
 
   /**
-   * Retrieve a list of tokens needed for renewal at a specific time (now)
+   * Retrieve a list of tokens needed for renewal at a specific time (now). Only the due tokens are visited, in order
+   * of renewal date. The returned tokens are out of the renewal schedule until passed to {@link #rescheduleToken}.
    * Note: Most of the time the Tokens inside a {@code TokenInfo} object should have the similar expiration date,
    *  however, if one token has a closer expiration date than others, all the tokens for that user will be renewed.
    * @return list of tokens for renewal
    */
   @Override
   public List<TokenInfo> getTokensForRenewal() {
-    long now = System.currentTimeMillis();
-    List<TokenInfo> tokensToRenew = new ArrayList<>();
-    for (TokenInfo tokenInfo : tokensCache) {
-      if (tokenInfo.needsRenewal(now)) {
-        tokensToRenew.add(tokenInfo);
-      }
-    }
-
-    return tokensToRenew;
+    return tokensCache.pollDue(System.currentTimeMillis());
   }
 
   @Override
   public void addToken(TokenInfo tokenInfo) {
-    tokensCache.add(tokenInfo);
+    tokenInfo.setRenewalPolicy(renewalPolicy);
+    tokensCache.schedule(tokenInfo);
+    renewalScheduler.onTokenScheduled(tokenInfo.getNextRenewalDate());
   }
 
   @Override
   public void removeToken(TokenInfo tokenInfo) {
     tokensCache.remove(tokenInfo);
   }
+
+  @Override
+  public void rescheduleToken(TokenInfo tokenInfo) {
+    tokensCache.reschedule(tokenInfo);
+  }
+
+  @Override
+  public long getNextRenewalDate() {
+    return tokensCache.getNextRenewalDate();
+  }
+
+  @Override
+  public boolean containsToken(TokenInfo tokenInfo) {
+    return tokensCache.contains(tokenInfo);
+  }
 }
@@ -0,0 +1,351 @@
+/**
+ * Copyright 2020 LinkedIn Corporation. All rights reserved. Licensed under the BSD-2 Clause license.
+ * See LICENSE in the project root for license information.
+ */
+
+package com.linkedin.kube2hadoop.cache;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.linkedin.kube2hadoop.core.conf.ConfigurationKeys;
+import com.linkedin.kube2hadoop.core.metrics.PrometheusMetrics;
+import java.io.Closeable;
+import java.security.PrivilegedExceptionAction;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.security.UserGroupInformation;
+
+
+/**
+ * Ties the tokens of the {@code TokenCache} to the pods they were handed out to. Once every pod that received a
+ * credential is terminated, its tokens are removed from the {@code TokenCache}, so that they are no longer renewed,
+ * and cancelled in the background, so that the NameNode drops them before their max lifetime.
+ * Cancellations are sent in batches of at most {@code cancelBatchSize} tokens every {@code cancelInterval}.
+ * Pods are only tracked in memory: credentials handed out before a restart are renewed until they fail renewal.
+ * Credentials whose tokens all left the {@code TokenCache} or passed their max date are pruned periodically, so that
+ * credentials of pods whose termination was never seen are not tracked forever. At most {@code maxTrackedCredentials}
+ * credentials are tracked, credentials fetched past that are handed out untracked and renewed until they expire.
+ */
+public class PodTokenTracker implements Runnable, Closeable {
+  private static final Log LOG = LogFactory.getLog(PodTokenTracker.class);
+  private static final int MAX_PENDING_CANCELLATIONS = 100000;
+  private static final long PRUNE_INTERVAL_IN_MILLISECONDS = TimeUnit.MINUTES.toMillis(1);
+  // Released credentials are remembered long enough for requests sharing their fetch to see they were released
+  private static final int MAX_RELEASED_CREDENTIALS = 10000;
+  private static final long RELEASED_CREDENTIAL_TTL_IN_MILLISECONDS = TimeUnit.MINUTES.toMillis(10);
+
+  /**
+   * Cancels a token on the NameNode that issued it.
+   */
+  interface Canceller {
+    void cancel(TokenInfo tokenInfo) throws Exception;
+  }
+
+  private final TokenCache tokenCache;
+  private final Canceller canceller;
+  private final int cancelBatchSize;
+  private final long cancelInterval;
+  private final int maxTrackedCredentials;
+
+  // Map of encoded credential -> pods it was handed out to, guarded by this
+  private final Map<String, TrackedCredential> credentials = new HashMap<>();
+  // Map of namespace/pod name -> encoded credentials handed out to the pod, guarded by this
+  private final Map<String, Set<String>> credentialsByPod = new HashMap<>();
+  private final Cache<String, Boolean> releasedCredentials = CacheBuilder.newBuilder()
+      .maximumSize(MAX_RELEASED_CREDENTIALS)
+      .expireAfterWrite(RELEASED_CREDENTIAL_TTL_IN_MILLISECONDS, TimeUnit.MILLISECONDS)
+      .build();
+  private final BlockingQueue<TokenInfo> pendingCancellations = new LinkedBlockingQueue<>(MAX_PENDING_CANCELLATIONS);
+  private final LongAdder releasedTokens = new LongAdder();
+  private final LongAdder cancelledTokens = new LongAdder();
+  private final LongAdder failedCancellations = new LongAdder();
+  private final LongAdder droppedCancellations = new LongAdder();
+  private final LongAdder prunedCredentials = new LongAdder();
+  private final LongAdder untrackedCredentials = new LongAdder();
+
+  private volatile boolean running = true;
+  private Thread cancellerThread;
+
+  public PodTokenTracker(Configuration conf, TokenCache tokenCache) {
+    this(tokenCache, tokenInfo -> UserGroupInformation.getLoginUser().doAs(
+        (PrivilegedExceptionAction<Void>) () -> {
+          tokenInfo.getToken().cancel(conf);
+          return null;
+        }),
+        conf.getInt(ConfigurationKeys.KUBE2HADOOP_TOKEN_RELEASE_CANCEL_BATCH_SIZE,
+            ConfigurationKeys.DEFAULT_KUBE2HADOOP_TOKEN_RELEASE_CANCEL_BATCH_SIZE),
+        conf.getLong(ConfigurationKeys.KUBE2HADOOP_TOKEN_RELEASE_CANCEL_INTERVAL_IN_MILLISECONDS,
+            ConfigurationKeys.DEFAULT_KUBE2HADOOP_TOKEN_RELEASE_CANCEL_INTERVAL_IN_MILLISECONDS),
+        conf.getInt(ConfigurationKeys.KUBE2HADOOP_TOKEN_RELEASE_MAX_TRACKED_CREDENTIALS,
+            ConfigurationKeys.DEFAULT_KUBE2HADOOP_TOKEN_RELEASE_MAX_TRACKED_CREDENTIALS));
+
+    PrometheusMetrics metrics = PrometheusMetrics.getInstance();
+    metrics.counter("kube2hadoop_token_release_released_tokens_total",
+        "Tokens dropped from the token cache after their pods terminated", releasedTokens::sum);
+    metrics.counter("kube2hadoop_token_release_cancelled_tokens_total", "Released tokens cancelled",
+        cancelledTokens::sum);
+    metrics.counter("kube2hadoop_token_release_failed_cancellations_total", "Released tokens that failed to cancel",
+        failedCancellations::sum);
+    metrics.counter("kube2hadoop_token_release_dropped_cancellations_total",
+        "Released tokens left to expire, the cancellation queue being full", droppedCancellations::sum);
+    metrics.gauge("kube2hadoop_token_release_pending_cancellations", "Released tokens waiting for cancellation",
+        pendingCancellations::size);
+    metrics.gauge("kube2hadoop_token_release_tracked_pods", "Pods holding tracked credentials",
+        this::getTrackedPodCount);
+    metrics.gauge("kube2hadoop_token_release_tracked_credentials", "Credentials tracked until their pods terminate",
+        this::getTrackedCredentialCount);
+    metrics.counter("kube2hadoop_token_release_pruned_credentials_total",
+        "Tracked credentials dropped once their tokens were no longer renewed", prunedCredentials::sum);
+    metrics.counter("kube2hadoop_token_release_untracked_credentials_total",
+        "Credentials handed out untracked, too many credentials being tracked", untrackedCredentials::sum);
+  }
+
+  PodTokenTracker(TokenCache tokenCache, Canceller canceller, int cancelBatchSize, long cancelInterval) {
+    this(tokenCache, canceller, cancelBatchSize, cancelInterval,
+        ConfigurationKeys.DEFAULT_KUBE2HADOOP_TOKEN_RELEASE_MAX_TRACKED_CREDENTIALS);
+  }
+
+  PodTokenTracker(TokenCache tokenCache, Canceller canceller, int cancelBatchSize, long cancelInterval,
+      int maxTrackedCredentials) {
+    this.tokenCache = tokenCache;
+    this.canceller = canceller;
+    this.cancelBatchSize = Math.max(1, cancelBatchSize);
+    this.cancelInterval = cancelInterval;
+    this.maxTrackedCredentials = maxTrackedCredentials;
+  }
+
+  public void start() {
+    cancellerThread = new Thread(this, "token-canceller");
+    cancellerThread.setDaemon(true);
+    cancellerThread.start();
+  }
+
+  /**
+   * Track a freshly fetched credential, before it is handed out, unless {@code maxTrackedCredentials} credentials are
+   * tracked already.
+   * @param encodedCredential base64 encoded credential
+   * @param tokenInfos tokens of the credential, as added to the {@code TokenCache}
+   */
+  public synchronized void register(String encodedCredential, List<TokenInfo> tokenInfos) {
+    if (credentials.size() >= maxTrackedCredentials && !credentials.containsKey(encodedCredential)) {
+      untrackedCredentials.increment();
+      LOG.warn("Tracking " + credentials.size() + " credentials already, handing out credential of user: "
+          + (tokenInfos.isEmpty() ? null : tokenInfos.get(0).getTokenOwner()) + " untracked");
+      return;
+    }
+    credentials.putIfAbsent(encodedCredential, new TrackedCredential(tokenInfos));
+  }
+
+  /**
+   * Record that a credential was handed out to a pod.
+   * @param namespace namespace of the pod
+   * @param podName name of the pod
+   * @param encodedCredential base64 encoded credential
+   * @return false if the credential was released, its tokens must not be handed out anymore
+   */
+  public synchronized boolean onHandedOut(String namespace, String podName, String encodedCredential) {
+    TrackedCredential credential = credentials.get(encodedCredential);
+    if (credential == null) {
+      // Released, or handed out untracked
+      return releasedCredentials.getIfPresent(encodedCredential) == null;
+    }
+    String podKey = namespace + "/" + podName;
+    credential.pods.add(podKey);
+    credentialsByPod.computeIfAbsent(podKey, k -> new HashSet<>()).add(encodedCredential);
+    return true;
+  }
+
+  /**
+   * Release the credentials of which {@code podName} was the last holder. Their tokens are removed from the
+   * {@code TokenCache} right away, so that the credentials are not handed out again, and queued for cancellation.
+   * @param namespace namespace of the pod
+   * @param podName name of the pod
+   */
+  public void onPodTerminated(String namespace, String podName) {
+    List<TokenInfo> released = new ArrayList<>();
+    synchronized (this) {
+      String podKey = namespace + "/" + podName;
+      Set<String> podCredentials = credentialsByPod.remove(podKey);
+      if (podCredentials == null) {
+        return;
+      }
+      for (String encodedCredential : podCredentials) {
+        TrackedCredential credential = credentials.get(encodedCredential);
+        credential.pods.remove(podKey);
+        if (credential.pods.isEmpty()) {
+          credentials.remove(encodedCredential);
+          releasedCredentials.put(encodedCredential, Boolean.TRUE);
+          credential.tokenInfos.forEach(tokenCache::removeToken);
+          released.addAll(credential.tokenInfos);
+        }
+      }
+    }
+    if (released.isEmpty()) {
+      return;
+    }
+    LOG.info("Releasing " + released.size() + " tokens handed out to terminated pod: " + podName + " in namespace "
+        + namespace);
+    releasedTokens.add(released.size());
+    for (TokenInfo tokenInfo : released) {
+      if (!pendingCancellations.offer(tokenInfo)) {
+        droppedCancellations.increment();
+      }
+    }
+  }
+
+  @Override
+  public void run() {
+    long nextPruneDate = System.currentTimeMillis() + PRUNE_INTERVAL_IN_MILLISECONDS;
+    while (running) {
+      try {
+        if (System.currentTimeMillis() >= nextPruneDate) {
+          prune(System.currentTimeMillis());
+          nextPruneDate = System.currentTimeMillis() + PRUNE_INTERVAL_IN_MILLISECONDS;
+        }
+        if (cancelBatch(PRUNE_INTERVAL_IN_MILLISECONDS) > 0) {
+          Thread.sleep(cancelInterval);
+        }
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        return;
+      } catch (RuntimeException ex) {
+        LOG.error("Failed to release tokens", ex);
+      }
+    }
+  }
+
+  /**
+   * Stop tracking the credentials whose tokens all left the {@code TokenCache}, e.g. after failing renewal, or passed
+   * their max date. Their tokens are already no longer renewed, so they are neither removed nor cancelled.
+   * Tokens are looked up outside of the lock, so that hand outs are not held up by a large prune.
+   * @param now current time in milliseconds
+   * @return number of credentials no longer tracked
+   */
+  int prune(long now) {
+    Map<String, TrackedCredential> snapshot;
+    synchronized (this) {
+      snapshot = new HashMap<>(credentials);
+    }
+    List<String> expired = new ArrayList<>();
+    for (Map.Entry<String, TrackedCredential> credential : snapshot.entrySet()) {
+      if (credential.getValue().isExpired(tokenCache, now)) {
+        expired.add(credential.getKey());
+      }
+    }
+
+    int pruned = 0;
+    synchronized (this) {
+      for (String encodedCredential : expired) {
+        TrackedCredential credential = credentials.get(encodedCredential);
+        if (credential != snapshot.get(encodedCredential)) {
+          continue;
+        }
+        credentials.remove(encodedCredential);
+        for (String podKey : credential.pods) {
+          Set<String> podCredentials = credentialsByPod.get(podKey);
+          podCredentials.remove(encodedCredential);
+          if (podCredentials.isEmpty()) {
+            credentialsByPod.remove(podKey);
+          }
+        }
+        pruned++;
+      }
+    }
+    if (pruned > 0) {
+      LOG.info("Stopped tracking " + pruned + " credentials whose tokens are no longer renewed");
+      prunedCredentials.add(pruned);
+    }
+    return pruned;
+  }
+
+  /**
+   * Cancel up to {@code cancelBatchSize} released tokens, waiting for one if there is none.
+   * @return number of tokens cancelled
+   */
+  int cancelBatch() throws InterruptedException {
+    return cancelBatch(Long.MAX_VALUE);
+  }
+
+  /**
+   * Cancel up to {@code cancelBatchSize} released tokens, waiting up to {@code timeout} for one if there is none.
+   * @param timeout time to wait for a released token in milliseconds
+   * @return number of tokens cancelled, 0 if none was released in time
+   */
+  int cancelBatch(long timeout) throws InterruptedException {
+    TokenInfo first = pendingCancellations.poll(timeout, TimeUnit.MILLISECONDS);
+    if (first == null) {
+      return 0;
+    }
+    List<TokenInfo> batch = new ArrayList<>();
+    batch.add(first);
+    pendingCancellations.drainTo(batch, cancelBatchSize - 1);
+    int cancelled = 0;
+    for (TokenInfo tokenInfo : batch) {
+      if (tokenInfo.isPastMaxDate(System.currentTimeMillis())) {
+        // Already expired on the NameNode
+        continue;
+      }
+      try {
+        canceller.cancel(tokenInfo);
+        cancelled++;
+      } catch (InterruptedException ex) {
+        throw ex;
+      } catch (Exception ex) {
+        // Left to expire on the NameNode
+        failedCancellations.increment();
+        LOG.warn("Unable to cancel token of user: " + tokenInfo.getTokenOwner() + ". " + ex.getMessage());
+      }
+    }
+    cancelledTokens.add(cancelled);
+    LOG.info("Cancelled " + cancelled + " of " + batch.size() + " released tokens");
+    return cancelled;
+  }
+
+  @Override
+  public void close() {
+    running = false;
+    if (cancellerThread != null) {
+      cancellerThread.interrupt();
+    }
+  }
+
+  synchronized int getTrackedPodCount() {
+    return credentialsByPod.size();
+  }
+
+  synchronized int getTrackedCredentialCount() {
+    return credentials.size();
+  }
+
+  int getPendingCancellationCount() {
+    return pendingCancellations.size();
+  }
+
+  private static class TrackedCredential {
+    private final List<TokenInfo> tokenInfos;
+    private final Set<String> pods = new HashSet<>();
+
+    private TrackedCredential(List<TokenInfo> tokenInfos) {
+      this.tokenInfos = tokenInfos;
+    }
+
+    /**
+     * @return whether none of the tokens is renewed anymore
+     */
+    private boolean isExpired(TokenCache tokenCache, long now) {
+      return tokenInfos.stream()
+          .allMatch(tokenInfo -> tokenInfo.isPastMaxDate(now) || !tokenCache.containsToken(tokenInfo));
+    }
+  }
+}
@@ -0,0 +1,213 @@
+/**
+ * Copyright 2020 LinkedIn Corporation. All rights reserved. Licensed under the BSD-2 Clause license.
+ * See LICENSE in the project root for license information.
+ */
+
+package com.linkedin.kube2hadoop.cache;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalNotification;
+import com.linkedin.kube2hadoop.core.ErrorCode;
+import com.linkedin.kube2hadoop.core.TokenServiceException;
+import com.linkedin.kube2hadoop.core.conf.ConfigurationKeys;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.security.UserGroupInformation;
+
+
+/**
+ * Size and TTL bounded cache of proxy {@code UserGroupInformation}, keyed by the name of the user being proxied.
+ * Proxy users are created at most once per key without a global lock, and the {@code FileSystem} instances cached
+ * by Hadoop for a proxy user are closed once the proxy user is removed from this cache and no fetch uses it anymore.
+ */
+public class ProxyUserCache {
+  private static final Log LOG = LogFactory.getLog(ProxyUserCache.class);
+
+  private final Cache<String, ProxyUser> ugiCache;
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+
+  public ProxyUserCache(Configuration conf) {
+    this(conf.getLong(ConfigurationKeys.KUBE2HADOOP_PROXY_USER_CACHE_MAX_SIZE,
+        ConfigurationKeys.DEFAULT_KUBE2HADOOP_PROXY_USER_CACHE_MAX_SIZE),
+        conf.getLong(ConfigurationKeys.KUBE2HADOOP_PROXY_USER_CACHE_TTL_IN_MILLISECONDS,
+            ConfigurationKeys.DEFAULT_KUBE2HADOOP_PROXY_USER_CACHE_TTL_IN_MILLISECONDS));
+  }
+
+  ProxyUserCache(long maxSize, long ttlInMilliseconds) {
+    ugiCache = CacheBuilder.newBuilder()
+        .maximumSize(maxSize)
+        .expireAfterAccess(ttlInMilliseconds, TimeUnit.MILLISECONDS)
+        .removalListener(this::onRemoval)
+        .build();
+  }
+
+  /**
+   * Acquire the proxy user for {@code userToProxy}, creating it with the login user as the real user if absent.
+   * The proxy user must be closed once the caller is done with it.
+   * @param userToProxy user to proxy as
+   * @return ProxyUser
+   * @throws TokenServiceException throws exception when failed to create the proxy user
+   */
+  public ProxyUser acquireProxiedUser(final String userToProxy) throws TokenServiceException {
+    return acquire(userToProxy, () -> {
+      LOG.info("proxy user " + userToProxy + " not exist. Creating new proxy user");
+      UserGroupInformation ugi = UserGroupInformation.createProxyUser(userToProxy,
+          UserGroupInformation.getLoginUser());
+      LOG.info("ugi username: " + ugi.getUserName());
+      return ugi;
+    });
+  }
+
+  /**
+   * Acquire the cached proxy user, or create it with {@code creator}. Concurrent callers for the same key wait for a
+   * single creation, callers for other keys are not blocked.
+   * @param userToProxy user to proxy as
+   * @param creator creates the proxy user on a cache miss
+   * @return ProxyUser, to be closed once the caller is done with it
+   * @throws TokenServiceException throws exception when failed to create the proxy user
+   */
+  ProxyUser acquire(String userToProxy, Callable<UserGroupInformation> creator) throws TokenServiceException {
+    while (true) {
+      boolean[] created = new boolean[1];
+      ProxyUser proxyUser;
+      try {
+        proxyUser = ugiCache.get(userToProxy, () -> {
+          created[0] = true;
+          return new ProxyUser(userToProxy, creator.call());
+        });
+      } catch (ExecutionException | RuntimeException e) {
+        Throwable cause = e.getCause() != null ? e.getCause() : e;
+        throw new TokenServiceException(cause.toString(), ErrorCode.FAILED_TO_CREATE_PROXY_USER);
+      }
+      if (proxyUser.retain()) {
+        if (created[0]) {
+          misses.increment();
+        } else {
+          hits.increment();
+        }
+        return proxyUser;
+      }
+      // Removed from the cache since it was looked up, its file systems are being closed
+      ugiCache.asMap().remove(userToProxy, proxyUser);
+    }
+  }
+
+  private void onRemoval(RemovalNotification<String, ProxyUser> notification) {
+    if (notification.wasEvicted()) {
+      evictions.increment();
+    }
+    LOG.info("Removing proxy user " + notification.getKey() + " from cache, cause: " + notification.getCause());
+    if (notification.getValue() != null) {
+      notification.getValue().onRemoved();
+    }
+  }
+
+  public void invalidateAll() {
+    ugiCache.invalidateAll();
+  }
+
+  public long size() {
+    return ugiCache.size();
+  }
+
+  public long getHitCount() {
+    return hits.sum();
+  }
+
+  public long getMissCount() {
+    return misses.sum();
+  }
+
+  public long getEvictionCount() {
+    return evictions.sum();
+  }
+
+  /**
+   * Proxy user acquired from the cache. Hadoop caches {@code FileSystem} instances (and their NameNode connections)
+   * per {@code UserGroupInformation}, which would otherwise never be closed; they are closed once the proxy user has
+   * left the cache and the last fetch using it has released it, so that no fetch sees its file system closed.
+   */
+  public static final class ProxyUser implements Closeable {
+    private final String userName;
+    private final UserGroupInformation ugi;
+    // Guarded by this
+    private int references = 0;
+    private boolean removed = false;
+
+    private ProxyUser(String userName, UserGroupInformation ugi) {
+      this.userName = userName;
+      this.ugi = ugi;
+    }
+
+    public UserGroupInformation getUgi() {
+      return ugi;
+    }
+
+    /**
+     * Take another reference to a proxy user the caller holds, for work that may outlive the caller's use of it.
+     * @return this proxy user, to be closed once the work is done
+     */
+    public synchronized ProxyUser share() {
+      if (references <= 0) {
+        throw new IllegalStateException("Proxy user " + userName + " is not held");
+      }
+      references++;
+      return this;
+    }
+
+    private synchronized boolean retain() {
+      if (removed) {
+        return false;
+      }
+      references++;
+      return true;
+    }
+
+    private void onRemoved() {
+      synchronized (this) {
+        removed = true;
+        if (references > 0) {
+          return;
+        }
+      }
+      closeFileSystems();
+    }
+
+    /**
+     * Release the proxy user, closing its file systems if it left the cache while in use.
+     */
+    @Override
+    public void close() {
+      synchronized (this) {
+        references--;
+        if (!removed || references > 0) {
+          return;
+        }
+      }
+      closeFileSystems();
+    }
+
+    synchronized int getReferenceCount() {
+      return references;
+    }
+
+    private void closeFileSystems() {
+      try {
+        FileSystem.closeAllForUGI(ugi);
+      } catch (IOException e) {
+        LOG.warn("Failed to close file systems for proxy user " + userName, e);
+      }
+    }
+  }
+}
@@ -0,0 +1,33 @@
+/**
+ * Copyright 2020 LinkedIn Corporation. All rights reserved. Licensed under the BSD-2 Clause license.
+ * See LICENSE in the project root for license information.
+ */
+
+package com.linkedin.kube2hadoop.cache;
+
+import java.io.Closeable;
+
+
+/**
+ * Exclusive lease on the renewal of shared tokens, held by at most one token fetcher replica at a time.
+ */
+public interface RenewalLease extends Closeable {
+  /**
+   * Notified when this replica acquires or loses the lease.
+   */
+  interface Listener {
+    void onLeaseChanged(boolean held);
+  }
+
+  /**
+   * Start competing for the lease.
+   * @param listener notified of every change of the lease
+   */
+  void start(Listener listener) throws Exception;
+
+  /**
+   * Checked right before each renewal, so that a replica stops renewing as soon as it learns that it lost the lease.
+   * @return whether this replica holds the lease
+   */
+  boolean isHeld();
+}
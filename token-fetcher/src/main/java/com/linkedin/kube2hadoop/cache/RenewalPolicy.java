@@ -0,0 +1,75 @@
+/**
+ * Copyright 2020 LinkedIn Corporation. All rights reserved. Licensed under the BSD-2 Clause license.
+ * See LICENSE in the project root for license information.
+ */
+
+package com.linkedin.kube2hadoop.cache;
+
+import com.linkedin.kube2hadoop.core.conf.ConfigurationKeys;
+import java.util.concurrent.ThreadLocalRandom;
+import org.apache.hadoop.conf.Configuration;
+
+
+/**
+ * Decides when a token is renewed: after a configured fraction of the time between its last renewal and its
+ * expiration date, shortened by a random jitter so that tokens issued together are not renewed together.
+ * Tokens never renewed are expected to expire one NameNode renew interval after they were issued, if the renew
+ * interval is configured with {@code kube2hadoop.renewer.namenode-renew-interval}. The NameNode does not expose it,
+ * and the {@code dfs.namenode.delegation.token.renew-interval} of the token fetcher's configuration is not trusted to
+ * match it, since tokens would expire before their first renewal if it were longer.
+ */
+public class RenewalPolicy {
+  public static final RenewalPolicy DEFAULT = new RenewalPolicy(0.9, 0.0);
+
+  private final double renewalFraction;
+  private final double renewalJitter;
+  private final long renewInterval;
+
+  public RenewalPolicy(Configuration conf) {
+    this(conf.getDouble(ConfigurationKeys.KUBE2HADOOP_RENEWER_RENEWAL_FRACTION,
+        ConfigurationKeys.DEFAULT_KUBE2HADOOP_RENEWER_RENEWAL_FRACTION),
+        conf.getDouble(ConfigurationKeys.KUBE2HADOOP_RENEWER_RENEWAL_JITTER,
+            ConfigurationKeys.DEFAULT_KUBE2HADOOP_RENEWER_RENEWAL_JITTER),
+        conf.getLong(ConfigurationKeys.KUBE2HADOOP_RENEWER_NAMENODE_RENEW_INTERVAL_IN_MILLISECONDS,
+            ConfigurationKeys.DEFAULT_KUBE2HADOOP_RENEWER_NAMENODE_RENEW_INTERVAL_IN_MILLISECONDS));
+  }
+
+  RenewalPolicy(double renewalFraction, double renewalJitter) {
+    this(renewalFraction, renewalJitter,
+        ConfigurationKeys.DEFAULT_KUBE2HADOOP_RENEWER_NAMENODE_RENEW_INTERVAL_IN_MILLISECONDS);
+  }
+
+  RenewalPolicy(double renewalFraction, double renewalJitter, long renewInterval) {
+    if (renewalFraction <= 0 || renewalFraction > 1) {
+      throw new IllegalArgumentException("Renewal fraction must be in (0, 1], got: " + renewalFraction);
+    }
+    if (renewalJitter < 0 || renewalJitter >= 1) {
+      throw new IllegalArgumentException("Renewal jitter must be in [0, 1), got: " + renewalJitter);
+    }
+    this.renewalFraction = renewalFraction;
+    this.renewalJitter = renewalJitter;
+    this.renewInterval = renewInterval;
+  }
+
+  /**
+   * @return time after which the NameNode expires a token that is not renewed in milliseconds, 0 if unknown
+   */
+  public long getRenewInterval() {
+    return renewInterval;
+  }
+
+  /**
+   * Pick the renewal date of a token, uniformly between {@code (1 - jitter) * fraction} and {@code fraction} of
+   * the time between {@code lastRenewalDate} and {@code expirationDate}.
+   * @param lastRenewalDate time of the last renewal in milliseconds
+   * @param expirationDate expiration date in milliseconds
+   * @return next renewal date in milliseconds
+   */
+  public long getNextRenewalDate(long lastRenewalDate, long expirationDate) {
+    double fraction = renewalFraction;
+    if (renewalJitter > 0) {
+      fraction *= 1 - renewalJitter * ThreadLocalRandom.current().nextDouble();
+    }
+    return lastRenewalDate + (long) ((expirationDate - lastRenewalDate) * fraction);
+  }
+}
@@ -12,4 +12,32 @@ public interface TokenCache {
   List<TokenInfo> getTokensForRenewal();
   void addToken(TokenInfo tokenInfo);
   void removeToken(TokenInfo tokenInfo);
+
+  /**
+   * Put a token handed out by {@link #getTokensForRenewal()} back in the renewal schedule once a renewal attempt
+   * has completed. Tokens removed in the meantime are not added back.
+   * @param tokenInfo token that went through renewal
+   */
+  void rescheduleToken(TokenInfo tokenInfo);
+
+  /**
+   * @return earliest renewal date of the scheduled tokens in milliseconds, {@code Long.MAX_VALUE} if there is none
+   */
+  long getNextRenewalDate();
+
+  /**
+   * @param tokenInfo token to look up
+   * @return whether the token is still renewed by this cache, i.e. it was added and has not been removed since
+   */
+  boolean containsToken(TokenInfo tokenInfo);
+
+  /**
+   * Checked right before renewing a token handed out by {@link #getTokensForRenewal()}, so that a token fetcher
+   * replica that lost the renewal of the token to another replica in the meantime does not renew it as well.
+   * @param tokenInfo token about to be renewed
+   * @return whether this cache is still responsible for renewing the token
+   */
+  default boolean canRenew(TokenInfo tokenInfo) {
+    return true;
+  }
 }
@@ -6,20 +6,31 @@
 package com.linkedin.kube2hadoop.cache;
 
 import com.linkedin.kube2hadoop.core.Constants;
+import java.io.IOException;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.security.token.Token;
+import org.apache.hadoop.security.token.TokenIdentifier;
+import org.apache.hadoop.security.token.delegation.AbstractDelegationTokenIdentifier;
 
 
 /**
- * Wrapper class for {@code Token} class. Keeps track of expiration date of the token
+ * Wrapper class for {@code Token} class. Keeps track of expiration date of the token.
+ * Renewal state is read and written under the object monitor, since renewals run on a pool of worker threads.
  */
 public class TokenInfo {
+  private static final Log LOG = LogFactory.getLog(TokenInfo.class);
   private Token token;
   private Map<String, String> identifiableInfo;
   private long expirationDate = 0L;
   private long lastRenewalDate = 0L;
+  private long nextRenewalDate = 0L;
+  // Date past which the token cannot be renewed, 0 if unknown
+  private long maxDate = 0L;
+  private RenewalPolicy renewalPolicy = RenewalPolicy.DEFAULT;
 
   public TokenInfo(Map<String, String> identifiableInfo, Token token) {
     this.token = token;
@@ -32,14 +43,75 @@ public class TokenInfo {
   }
 
   /**
-   * Renew token immediately after getting the token to get the expiration date;
-   * then renew it when approaching 90% of the expiration date
+   * Renew token immediately after getting the token to get the expiration date, unless it can be derived from the token
+   * identifier and the configured NameNode renew interval; then renew it at the date picked by its
+   * {@code RenewalPolicy} (by default 90% of the expiration date)
    * @param now current time in millisecond
    * @return whether or not to renew the tokens
    */
-  public boolean needsRenewal(long now) {
-    return expirationDate == 0L
-        || (expirationDate - lastRenewalDate) * 0.9 + lastRenewalDate < now;
+  public synchronized boolean needsRenewal(long now) {
+    return nextRenewalDate < now;
+  }
+
+  /**
+   * @return date at which the tokens should be renewed in millisecond, 0 if they have never been renewed
+   */
+  public synchronized long getNextRenewalDate() {
+    return nextRenewalDate;
+  }
+
+  /**
+   * Set the policy deciding when the tokens are renewed, and recompute the next renewal date with it.
+   * A delegation token that was never renewed is scheduled from the issue date in its identifier, if the policy knows
+   * the NameNode renew interval.
+   * @param renewalPolicy renewal policy
+   */
+  public synchronized void setRenewalPolicy(RenewalPolicy renewalPolicy) {
+    this.renewalPolicy = renewalPolicy;
+    readIdentifier();
+    if (expirationDate != 0L) {
+      scheduleNextRenewal();
+    }
+  }
+
+  /**
+   * Read the issue and max dates of a delegation token from its identifier, tokens of other kinds are left as is.
+   */
+  private void readIdentifier() {
+    if (maxDate != 0L || token == null) {
+      return;
+    }
+    TokenIdentifier identifier;
+    try {
+      identifier = token.decodeIdentifier();
+    } catch (IOException | RuntimeException ex) {
+      LOG.debug("Unable to decode identifier of token for user: " + getTokenOwner() + ". " + ex.getMessage());
+      return;
+    }
+    if (!(identifier instanceof AbstractDelegationTokenIdentifier)) {
+      return;
+    }
+    long issueDate = ((AbstractDelegationTokenIdentifier) identifier).getIssueDate();
+    long identifierMaxDate = ((AbstractDelegationTokenIdentifier) identifier).getMaxDate();
+    if (issueDate <= 0L || identifierMaxDate <= issueDate) {
+      return;
+    }
+    maxDate = identifierMaxDate;
+    if (expirationDate == 0L && renewalPolicy.getRenewInterval() > 0L) {
+      setExpirationDate(Math.min(issueDate + renewalPolicy.getRenewInterval(), maxDate), issueDate);
+    }
+  }
+
+  /**
+   * Renew the token at the date picked by its {@code RenewalPolicy}, or at its max date once renewals can no longer
+   * extend it, so that it is dropped without asking the NameNode.
+   */
+  private void scheduleNextRenewal() {
+    if (maxDate != 0L && expirationDate >= maxDate) {
+      nextRenewalDate = maxDate;
+    } else {
+      nextRenewalDate = renewalPolicy.getNextRenewalDate(lastRenewalDate, expirationDate);
+    }
   }
 
   /**
@@ -48,7 +120,7 @@ public class TokenInfo {
    * @param expirationDate expiration date in milliseconds
    * @param renewalDate time of the renewal in milliseconds
    */
-  public void setExpirationDate(long expirationDate, long renewalDate) {
+  public synchronized void setExpirationDate(long expirationDate, long renewalDate) {
     if (renewalDate == this.lastRenewalDate) {
       if (expirationDate < this.expirationDate) {
         this.expirationDate = expirationDate;
@@ -57,6 +129,18 @@ public class TokenInfo {
         this.expirationDate = expirationDate;
         this.lastRenewalDate = renewalDate;
     }
+    if (this.expirationDate != 0L) {
+      scheduleNextRenewal();
+    }
+  }
+
+  /**
+   * Retry a failed renewal at {@code retryDate}, but no later than the expiration date while it is ahead.
+   * @param retryDate time of the next renewal attempt in milliseconds
+   * @param now current time in milliseconds
+   */
+  public synchronized void deferRenewal(long retryDate, long now) {
+    nextRenewalDate = expirationDate <= now ? retryDate : Math.min(retryDate, expirationDate);
   }
 
 
@@ -68,14 +152,29 @@ public class TokenInfo {
     return this.identifiableInfo;
   }
 
-  public long getExpirationDate() {
+  public synchronized long getExpirationDate() {
     return this.expirationDate;
   }
 
-  public long getLastRenewalDate() {
+  public synchronized long getLastRenewalDate() {
     return this.lastRenewalDate;
   }
 
+  /**
+   * @return date past which the token cannot be renewed in milliseconds, 0 if unknown
+   */
+  public synchronized long getMaxDate() {
+    return this.maxDate;
+  }
+
+  /**
+   * @param now current time in millisecond
+   * @return whether the token reached its max date, any renewal would fail
+   */
+  public synchronized boolean isPastMaxDate(long now) {
+    return maxDate != 0L && now >= maxDate;
+  }
+
   /**
    * Create a list of {@code TokenInfo} that contains tokens from the same job instance
    * @param identifiableInfo key value pairs of
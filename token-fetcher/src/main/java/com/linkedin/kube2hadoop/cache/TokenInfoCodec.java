@@ -0,0 +1,89 @@
+/**
+ * Copyright 2020 LinkedIn Corporation. All rights reserved. Licensed under the BSD-2 Clause license.
+ * See LICENSE in the project root for license information.
+ */
+
+package com.linkedin.kube2hadoop.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import org.apache.hadoop.security.token.Token;
+
+
+/**
+ * Binary encoding of {@code TokenInfo}, shared by the token caches persisting tokens outside of the JVM.
+ */
+final class TokenInfoCodec {
+  private TokenInfoCodec() {
+  }
+
+  /**
+   * @return the token, its identifiable info and its renewal dates
+   */
+  static byte[] encode(TokenInfo tokenInfo) throws IOException {
+    ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(buffer);
+    tokenInfo.getToken().write(out);
+    writeIdentifiableInfo(out, tokenInfo.getIdentifiableInfo());
+    writeRenewalDates(out, tokenInfo);
+    out.flush();
+    return buffer.toByteArray();
+  }
+
+  static TokenInfo decode(byte[] bytes) throws IOException {
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+    Token token = readToken(in);
+    TokenInfo tokenInfo = new TokenInfo(readIdentifiableInfo(in), token);
+    readRenewalDates(in, tokenInfo);
+    return tokenInfo;
+  }
+
+  static Token readToken(DataInput in) throws IOException {
+    Token token = new Token();
+    token.readFields(in);
+    return token;
+  }
+
+  static void writeIdentifiableInfo(DataOutput out, Map<String, String> identifiableInfo) throws IOException {
+    out.writeInt(identifiableInfo.size());
+    for (Map.Entry<String, String> entry : identifiableInfo.entrySet()) {
+      out.writeUTF(entry.getKey());
+      out.writeUTF(entry.getValue());
+    }
+  }
+
+  static Map<String, String> readIdentifiableInfo(DataInput in) throws IOException {
+    int size = in.readInt();
+    Map<String, String> identifiableInfo = new HashMap<>();
+    for (int i = 0; i < size; i++) {
+      identifiableInfo.put(in.readUTF(), in.readUTF());
+    }
+    return identifiableInfo;
+  }
+
+  static void writeRenewalDates(DataOutput out, TokenInfo tokenInfo) throws IOException {
+    // Both dates are read under the TokenInfo monitor, so that they belong to the same renewal
+    synchronized (tokenInfo) {
+      out.writeLong(tokenInfo.getExpirationDate());
+      out.writeLong(tokenInfo.getLastRenewalDate());
+    }
+  }
+
+  /**
+   * Read renewal dates written by {@link #writeRenewalDates} into {@code tokenInfo}, unless it was never renewed.
+   */
+  static void readRenewalDates(DataInput in, TokenInfo tokenInfo) throws IOException {
+    long expirationDate = in.readLong();
+    long lastRenewalDate = in.readLong();
+    if (expirationDate != 0L) {
+      tokenInfo.setExpirationDate(expirationDate, lastRenewalDate);
+    }
+  }
+}
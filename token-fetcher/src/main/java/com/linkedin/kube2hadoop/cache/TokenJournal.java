@@ -0,0 +1,430 @@
+/**
+ * Copyright 2020 LinkedIn Corporation. All rights reserved. Licensed under the BSD-2 Clause license.
+ * See LICENSE in the project root for license information.
+ */
+
+package com.linkedin.kube2hadoop.cache;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileAttribute;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.security.token.Token;
+
+
+/**
+ * Append-only journal of the tokens in a {@code TokenCache}, so that they survive a restart of the token fetcher.
+ * <ul>
+ *   <li>Every token addition, renewal and removal is appended as a record, made of its length, its CRC32 and its
+ *   payload. Records are queued by the caller and written by a single writer thread, which writes all the queued
+ *   records at once and syncs them to disk once per batch (group commit).</li>
+ *   <li>On startup, the journal is replayed up to the first truncated or corrupt record, which is where the last run
+ *   stopped writing, and the tail is discarded.</li>
+ *   <li>Once the journal holds more than {@code compactionThreshold} records and more than twice as many records as
+ *   live tokens, it is compacted: the live tokens are written to a new journal, which atomically replaces the
+ *   current one.</li>
+ * </ul>
+ * Tokens are persisted with their identifiable info, expiration date and last renewal date, so that their renewal
+ * resumes on schedule after a restart. The journal holds live credentials, so on file systems supporting POSIX
+ * permissions its files are only readable by their owner, and its directory only accessible by its owner.
+ */
+class TokenJournal implements Closeable {
+  private static final Log LOG = LogFactory.getLog(TokenJournal.class);
+  private static final int MAGIC = 0x4b32484a;
+  private static final int VERSION = 1;
+  private static final int MAX_RECORD_LENGTH = 1024 * 1024;
+  private static final byte ADD = 1;
+  private static final byte UPDATE = 2;
+  private static final byte REMOVE = 3;
+  private static final Set<PosixFilePermission> FILE_PERMISSIONS = PosixFilePermissions.fromString("rw-------");
+  private static final Set<PosixFilePermission> DIRECTORY_PERMISSIONS = PosixFilePermissions.fromString("rwx------");
+  private static final boolean POSIX =
+      FileSystems.getDefault().supportedFileAttributeViews().contains("posix");
+
+  private final File journalFile;
+  private final boolean sync;
+  private final long compactionThreshold;
+
+  private final BlockingQueue<Op> pendingOps = new LinkedBlockingQueue<>();
+  // Live tokens as of the records written so far, only accessed by the writer thread once the journal is open
+  private final Map<Token, TokenInfo> liveTokens = new LinkedHashMap<>();
+  private FileChannel channel;
+  private volatile long recordCount;
+  private Thread writerThread;
+  private volatile boolean running;
+
+  private final LongAdder writtenRecords = new LongAdder();
+  private final LongAdder writtenBatches = new LongAdder();
+  private final LongAdder writeFailures = new LongAdder();
+  private final LongAdder compactions = new LongAdder();
+
+  /**
+   * @param journalFile journal file, created if it does not exist
+   * @param sync whether to sync each batch of records to disk before writing the next one
+   * @param compactionThreshold minimum number of records in the journal before it is compacted
+   */
+  TokenJournal(File journalFile, boolean sync, long compactionThreshold) {
+    this.journalFile = journalFile;
+    this.sync = sync;
+    this.compactionThreshold = compactionThreshold;
+  }
+
+  /**
+   * Replay the journal and start appending to it.
+   * @param now current time in milliseconds, tokens expired by then are not returned
+   * @return tokens in the journal, with their expiration and last renewal dates
+   * @throws IOException if the journal cannot be read or written
+   */
+  List<TokenInfo> open(long now) throws IOException {
+    File parent = journalFile.getAbsoluteFile().getParentFile();
+    if (parent != null && !parent.isDirectory()) {
+      if (POSIX) {
+        Files.createDirectories(parent.toPath(), PosixFilePermissions.asFileAttribute(DIRECTORY_PERMISSIONS));
+      } else if (!parent.mkdirs()) {
+        throw new IOException("Cannot create journal directory: " + parent);
+      }
+    }
+    if (journalFile.exists()) {
+      // Journals written before their permissions were restricted
+      if (POSIX) {
+        Files.setPosixFilePermissions(journalFile.toPath(), FILE_PERMISSIONS);
+      }
+      replay();
+      channel = FileChannel.open(journalFile.toPath(), StandardOpenOption.WRITE);
+      channel.position(channel.size());
+    } else {
+      channel = createJournal(journalFile);
+    }
+
+    List<TokenInfo> tokens = new ArrayList<>();
+    for (TokenInfo tokenInfo : liveTokens.values()) {
+      if (tokenInfo.getExpirationDate() == 0L || tokenInfo.getExpirationDate() > now) {
+        tokens.add(tokenInfo);
+      }
+    }
+    // Expired tokens are not renewed anymore, forget them at the next compaction
+    liveTokens.values().retainAll(tokens);
+
+    running = true;
+    writerThread = new Thread(this::writeLoop, "token-journal-writer");
+    writerThread.setDaemon(true);
+    writerThread.start();
+    return tokens;
+  }
+
+  void logAdd(TokenInfo tokenInfo) {
+    log(ADD, tokenInfo);
+  }
+
+  void logUpdate(TokenInfo tokenInfo) {
+    log(UPDATE, tokenInfo);
+  }
+
+  void logRemove(TokenInfo tokenInfo) {
+    log(REMOVE, tokenInfo);
+  }
+
+  private void log(byte type, TokenInfo tokenInfo) {
+    if (running) {
+      pendingOps.add(new Op(type, tokenInfo));
+    }
+  }
+
+  /**
+   * Replay the records of the journal into {@code liveTokens}, and discard the tail past the last valid record.
+   */
+  private void replay() throws IOException {
+    long validLength;
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(journalFile)))) {
+      if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+        throw new IOException("Not a token journal, or unsupported version: " + journalFile);
+      }
+      validLength = 8;
+      while (true) {
+        byte[] payload = readRecord(in);
+        if (payload == null) {
+          break;
+        }
+        apply(payload);
+        recordCount++;
+        validLength += 8 + payload.length;
+      }
+    }
+
+    long length = journalFile.length();
+    if (validLength < length) {
+      LOG.warn("Discarding " + (length - validLength) + " bytes of truncated or corrupt records at the end of "
+          + journalFile);
+      try (FileChannel truncated = FileChannel.open(journalFile.toPath(), StandardOpenOption.WRITE)) {
+        truncated.truncate(validLength);
+      }
+    }
+  }
+
+  /**
+   * @return payload of the next record, null at the end of the journal or at the first truncated or corrupt record
+   */
+  private static byte[] readRecord(DataInputStream in) throws IOException {
+    try {
+      int length = in.readInt();
+      int checksum = in.readInt();
+      if (length <= 0 || length > MAX_RECORD_LENGTH) {
+        return null;
+      }
+      byte[] payload = new byte[length];
+      in.readFully(payload);
+      return checksum(payload) == checksum ? payload : null;
+    } catch (EOFException e) {
+      return null;
+    }
+  }
+
+  private void apply(byte[] payload) throws IOException {
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+    byte type = in.readByte();
+    Token token = TokenInfoCodec.readToken(in);
+    if (type == REMOVE) {
+      liveTokens.remove(token);
+      return;
+    }
+
+    TokenInfo tokenInfo;
+    if (type == ADD) {
+      tokenInfo = new TokenInfo(TokenInfoCodec.readIdentifiableInfo(in), token);
+      liveTokens.put(token, tokenInfo);
+    } else {
+      tokenInfo = liveTokens.get(token);
+      if (tokenInfo == null) {
+        return;
+      }
+    }
+    TokenInfoCodec.readRenewalDates(in, tokenInfo);
+  }
+
+  private void writeLoop() {
+    List<Op> batch = new ArrayList<>();
+    while (running || !pendingOps.isEmpty()) {
+      try {
+        Op op = pendingOps.poll(100, TimeUnit.MILLISECONDS);
+        if (op == null) {
+          continue;
+        }
+        batch.add(op);
+        pendingOps.drainTo(batch);
+        writeBatch(batch);
+        if (recordCount > compactionThreshold && recordCount > 2L * liveTokens.size()) {
+          compact();
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      } catch (IOException | RuntimeException e) {
+        writeFailures.increment();
+        LOG.error("Failed to write " + batch.size() + " records to token journal " + journalFile, e);
+      } finally {
+        batch.clear();
+      }
+    }
+  }
+
+  private void writeBatch(List<Op> batch) throws IOException {
+    ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(buffer);
+    int records = 0;
+    for (Op op : batch) {
+      Token token = op.tokenInfo.getToken();
+      if (op.type == ADD) {
+        liveTokens.put(token, op.tokenInfo);
+      } else if (op.type == REMOVE) {
+        if (liveTokens.remove(token) == null) {
+          continue;
+        }
+      } else if (!liveTokens.containsKey(token)) {
+        continue;
+      }
+      writeRecord(out, encode(op.type, op.tokenInfo));
+      records++;
+    }
+    long position = channel.position();
+    try {
+      channel.write(ByteBuffer.wrap(buffer.toByteArray()));
+      if (sync) {
+        channel.force(false);
+      }
+    } catch (IOException e) {
+      // Drop the partial batch, so that later records are not appended after a corrupt one
+      channel.truncate(position);
+      channel.position(position);
+      throw e;
+    }
+    recordCount += records;
+    writtenRecords.add(records);
+    writtenBatches.increment();
+  }
+
+  /**
+   * Write the live tokens to a new journal, and replace the current journal with it. The channel of the new journal
+   * follows it through the move and becomes the one appended to, so that the current journal stays open and appended
+   * to if the compaction fails at any point.
+   */
+  private void compact() throws IOException {
+    long startTime = System.currentTimeMillis();
+    File compactedFile = new File(journalFile.getPath() + ".compacting");
+    FileChannel compacted = createJournal(compactedFile);
+    try {
+      ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+      DataOutputStream out = new DataOutputStream(buffer);
+      for (TokenInfo tokenInfo : liveTokens.values()) {
+        writeRecord(out, encode(ADD, tokenInfo));
+      }
+      compacted.write(ByteBuffer.wrap(buffer.toByteArray()));
+      compacted.force(true);
+      Files.move(compactedFile.toPath(), journalFile.toPath(), StandardCopyOption.ATOMIC_MOVE,
+          StandardCopyOption.REPLACE_EXISTING);
+    } catch (IOException | RuntimeException e) {
+      compacted.close();
+      Files.deleteIfExists(compactedFile.toPath());
+      throw e;
+    }
+    FileChannel oldChannel = channel;
+    channel = compacted;
+    try {
+      oldChannel.close();
+    } catch (IOException e) {
+      LOG.warn("Failed to close replaced token journal " + journalFile, e);
+    }
+
+    LOG.info("Compacted token journal from " + recordCount + " to " + liveTokens.size() + " records in "
+        + (System.currentTimeMillis() - startTime) + "ms");
+    recordCount = liveTokens.size();
+    compactions.increment();
+  }
+
+  /**
+   * Create a journal holding only its header, replacing any previous file so that it gets the owner-only permissions.
+   */
+  private static FileChannel createJournal(File file) throws IOException {
+    Path path = file.toPath();
+    Files.deleteIfExists(path);
+    Set<OpenOption> options = new HashSet<>(Arrays.asList(StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE));
+    FileChannel newChannel = POSIX
+        ? FileChannel.open(path, options, PosixFilePermissions.asFileAttribute(FILE_PERMISSIONS))
+        : FileChannel.open(path, options, new FileAttribute<?>[0]);
+    ByteBuffer header = ByteBuffer.allocate(8).putInt(MAGIC).putInt(VERSION);
+    header.flip();
+    try {
+      newChannel.write(header);
+    } catch (IOException e) {
+      newChannel.close();
+      throw e;
+    }
+    return newChannel;
+  }
+
+  private static byte[] encode(byte type, TokenInfo tokenInfo) throws IOException {
+    ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(buffer);
+    out.writeByte(type);
+    tokenInfo.getToken().write(out);
+    if (type == ADD) {
+      TokenInfoCodec.writeIdentifiableInfo(out, tokenInfo.getIdentifiableInfo());
+    }
+    if (type != REMOVE) {
+      TokenInfoCodec.writeRenewalDates(out, tokenInfo);
+    }
+    out.flush();
+    return buffer.toByteArray();
+  }
+
+  private static void writeRecord(DataOutputStream out, byte[] payload) throws IOException {
+    out.writeInt(payload.length);
+    out.writeInt(checksum(payload));
+    out.write(payload);
+  }
+
+  private static int checksum(byte[] payload) {
+    CRC32 crc = new CRC32();
+    crc.update(payload, 0, payload.length);
+    return (int) crc.getValue();
+  }
+
+  /**
+   * Write the pending records and close the journal.
+   */
+  @Override
+  public void close() throws IOException {
+    running = false;
+    if (writerThread != null) {
+      try {
+        writerThread.join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    if (channel != null) {
+      channel.force(true);
+      channel.close();
+    }
+  }
+
+  long getRecordCount() {
+    return recordCount;
+  }
+
+  long getWrittenRecordCount() {
+    return writtenRecords.sum();
+  }
+
+  long getWrittenBatchCount() {
+    return writtenBatches.sum();
+  }
+
+  long getWriteFailureCount() {
+    return writeFailures.sum();
+  }
+
+  long getCompactionCount() {
+    return compactions.sum();
+  }
+
+  private static final class Op {
+    private final byte type;
+    private final TokenInfo tokenInfo;
+
+    private Op(byte type, TokenInfo tokenInfo) {
+      this.type = type;
+      this.tokenInfo = tokenInfo;
+    }
+  }
+}
@@ -0,0 +1,133 @@
+/**
+ * Copyright 2020 LinkedIn Corporation. All rights reserved. Licensed under the BSD-2 Clause license.
+ * See LICENSE in the project root for license information.
+ */
+
+package com.linkedin.kube2hadoop.cache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.hadoop.security.token.Token;
+
+
+/**
+ * Index of {@code TokenInfo} ordered by next renewal date, with a hash index by token for O(1) lookup.
+ * Polling due tokens is O(due), scheduling and removal are O(log n). All operations are lock free across tokens;
+ * operations on the same token are serialized by the hash index.
+ */
+class TokenRenewalIndex {
+  private final ConcurrentMap<Token, Entry> entriesByToken = new ConcurrentHashMap<>();
+  private final ConcurrentSkipListSet<Entry> entriesByRenewalDate = new ConcurrentSkipListSet<>();
+  private final AtomicLong sequence = new AtomicLong();
+
+  /**
+   * Add {@code tokenInfo} to the index at its next renewal date, replacing any entry for the same token.
+   * @param tokenInfo token to schedule
+   */
+  void schedule(TokenInfo tokenInfo) {
+    entriesByToken.compute(tokenInfo.getToken(), (token, current) -> {
+      if (current != null) {
+        entriesByRenewalDate.remove(current);
+      }
+      return newEntry(tokenInfo);
+    });
+  }
+
+  /**
+   * Re-index {@code tokenInfo} at its next renewal date. Tokens removed in the meantime are not added back.
+   * @param tokenInfo token to reschedule
+   * @return whether the token is still in the index
+   */
+  boolean reschedule(TokenInfo tokenInfo) {
+    return entriesByToken.computeIfPresent(tokenInfo.getToken(), (token, current) -> {
+      entriesByRenewalDate.remove(current);
+      return newEntry(tokenInfo);
+    }) != null;
+  }
+
+  /**
+   * Remove {@code tokenInfo} from the index.
+   * @param tokenInfo token to remove
+   * @return whether the token was in the index
+   */
+  boolean remove(TokenInfo tokenInfo) {
+    Entry[] removed = new Entry[1];
+    entriesByToken.computeIfPresent(tokenInfo.getToken(), (token, current) -> {
+      entriesByRenewalDate.remove(current);
+      removed[0] = current;
+      return null;
+    });
+    return removed[0] != null;
+  }
+
+  /**
+   * Take all tokens whose next renewal date is before {@code now} out of the renewal order. They stay in the hash
+   * index, and are put back in order by {@link #reschedule(TokenInfo)}.
+   * @param now current time in millisecond
+   * @return tokens due for renewal, earliest first
+   */
+  List<TokenInfo> pollDue(long now) {
+    List<TokenInfo> dueTokens = new ArrayList<>();
+    for (Entry entry : entriesByRenewalDate) {
+      if (entry.renewalDate >= now) {
+        break;
+      }
+      if (entriesByRenewalDate.remove(entry)) {
+        dueTokens.add(entry.tokenInfo);
+      }
+    }
+    return dueTokens;
+  }
+
+  /**
+   * @return earliest scheduled renewal date, or {@code Long.MAX_VALUE} if nothing is scheduled
+   */
+  long getNextRenewalDate() {
+    try {
+      return entriesByRenewalDate.first().renewalDate;
+    } catch (NoSuchElementException e) {
+      return Long.MAX_VALUE;
+    }
+  }
+
+  boolean contains(TokenInfo tokenInfo) {
+    return entriesByToken.containsKey(tokenInfo.getToken());
+  }
+
+  int size() {
+    return entriesByToken.size();
+  }
+
+  private Entry newEntry(TokenInfo tokenInfo) {
+    Entry entry = new Entry(tokenInfo, tokenInfo.getNextRenewalDate(), sequence.incrementAndGet());
+    entriesByRenewalDate.add(entry);
+    return entry;
+  }
+
+  /**
+   * Immutable position of a token in the renewal order. The sequence number breaks ties between tokens due at the
+   * same time.
+   */
+  private static final class Entry implements Comparable<Entry> {
+    private final TokenInfo tokenInfo;
+    private final long renewalDate;
+    private final long sequence;
+
+    private Entry(TokenInfo tokenInfo, long renewalDate, long sequence) {
+      this.tokenInfo = tokenInfo;
+      this.renewalDate = renewalDate;
+      this.sequence = sequence;
+    }
+
+    @Override
+    public int compareTo(Entry other) {
+      int cmp = Long.compare(renewalDate, other.renewalDate);
+      return cmp != 0 ? cmp : Long.compare(sequence, other.sequence);
+    }
+  }
+}
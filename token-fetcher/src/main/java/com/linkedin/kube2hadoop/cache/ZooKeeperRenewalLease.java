@@ -0,0 +1,61 @@
+/**
+ * Copyright 2020 LinkedIn Corporation. All rights reserved. Licensed under the BSD-2 Clause license.
+ * See LICENSE in the project root for license information.
+ */
+
+package com.linkedin.kube2hadoop.cache;
+
+import java.io.IOException;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.recipes.leader.LeaderLatch;
+import org.apache.curator.framework.recipes.leader.LeaderLatchListener;
+
+
+/**
+ * {@code RenewalLease} elected through ZooKeeper. The lease is held by the replica with the oldest ephemeral
+ * sequential znode under the lease path. It is given up as soon as the connection to ZooKeeper is suspended, and taken
+ * over by the next replica once the session of the holder expires.
+ */
+class ZooKeeperRenewalLease implements RenewalLease {
+  private static final Log LOG = LogFactory.getLog(ZooKeeperRenewalLease.class);
+
+  private final LeaderLatch latch;
+  private final String replicaId;
+
+  ZooKeeperRenewalLease(CuratorFramework client, String leasePath, String replicaId) {
+    this.latch = new LeaderLatch(client, leasePath, replicaId);
+    this.replicaId = replicaId;
+  }
+
+  @Override
+  public void start(Listener listener) throws Exception {
+    latch.addListener(new LeaderLatchListener() {
+      @Override
+      public void isLeader() {
+        LOG.info("Replica " + replicaId + " acquired the renewal lease");
+        listener.onLeaseChanged(true);
+      }
+
+      @Override
+      public void notLeader() {
+        LOG.info("Replica " + replicaId + " lost the renewal lease");
+        listener.onLeaseChanged(false);
+      }
+    });
+    latch.start();
+  }
+
+  @Override
+  public boolean isHeld() {
+    return latch.hasLeadership();
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (latch.getState() == LeaderLatch.State.STARTED) {
+      latch.close();
+    }
+  }
+}
@@ -0,0 +1,561 @@
+/**
+ * Copyright 2020 LinkedIn Corporation. All rights reserved. Licensed under the BSD-2 Clause license.
+ * See LICENSE in the project root for license information.
+ */
+
+package com.linkedin.kube2hadoop.cache;
+
+import com.google.common.hash.Hashing;
+import com.linkedin.kube2hadoop.core.ErrorCode;
+import com.linkedin.kube2hadoop.core.TokenServiceException;
+import com.linkedin.kube2hadoop.core.conf.ConfigurationKeys;
+import com.linkedin.kube2hadoop.core.metrics.PrometheusMetrics;
+import com.linkedin.kube2hadoop.service.TokenRenewalScheduler;
+import com.linkedin.kube2hadoop.service.TokenRenewalService;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.framework.api.ACLProvider;
+import org.apache.curator.framework.api.PathAndBytesable;
+import org.apache.curator.framework.recipes.cache.ChildData;
+import org.apache.curator.framework.recipes.cache.PathChildrenCache;
+import org.apache.curator.framework.recipes.cache.PathChildrenCacheEvent;
+import org.apache.curator.framework.recipes.nodes.PersistentEphemeralNode;
+import org.apache.curator.retry.ExponentialBackoffRetry;
+import org.apache.curator.utils.CloseableUtils;
+import org.apache.curator.utils.ZKPaths;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.WritableUtils;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.ZooDefs;
+import org.apache.zookeeper.data.ACL;
+
+
+/**
+ * Token cache shared by the replicas of the token fetcher through ZooKeeper, so that tokens handed out by any replica
+ * keep being renewed while replicas come and go.
+ * <ul>
+ *   <li>Each token is stored in a znode {@code <root>/tokens/<token id>}, along with its identifiable info and its
+ *   renewal dates, which are updated after each renewal.</li>
+ *   <li>Each replica registers an ephemeral znode {@code <root>/replicas/<replica id>} for the lifetime of its
+ *   ZooKeeper session.</li>
+ *   <li>With {@code PARTITIONED} ownership, each token is renewed by a single replica, picked among the registered
+ *   replicas by rendezvous hashing. When a replica joins or leaves, only the tokens it owns, or will own, move, and
+ *   every replica reaches the same assignment from its view of the registered replicas, without coordination.
+ *   Replicas may disagree on the registered replicas for the time it takes to propagate the change, so a token may be
+ *   renewed twice, which is harmless, or renewed late by up to that time.</li>
+ *   <li>With {@code LEADER} ownership, all tokens are renewed by the replica holding the {@code RenewalLease}.</li>
+ * </ul>
+ * Ownership is checked again right before each renewal, so that a replica stops renewing the tokens it lost as soon as
+ * it learns about it.
+ * The token znodes hold secrets: once the client authenticates, with the credentials of
+ * {@code kube2hadoop.token-cache.zookeeper.auth} or through SASL, the root and every znode under it are created with
+ * {@code CREATOR_ALL_ACL}, so that only replicas authenticated as the same identity can read or change them.
+ */
+public class ZooKeeperTokenCache implements TokenCache {
+  private static final Log LOG = LogFactory.getLog(ZooKeeperTokenCache.class);
+  private static final String TOKENS = "tokens";
+  private static final String REPLICAS = "replicas";
+  private static final String LEASE = "lease";
+  private static final int CONNECTION_TIMEOUT_IN_MILLISECONDS = 1000 * 15;
+  private static final int RETRY_BASE_SLEEP_IN_MILLISECONDS = 1000;
+  private static final int MAX_RETRIES = 3;
+  private static final String SASL_AUTH = "sasl";
+
+  private final CuratorFramework client;
+  private final String replicaId;
+  private final String tokensPath;
+  private final RenewalPolicy renewalPolicy;
+  private final PersistentEphemeralNode replicaNode;
+  private final PathChildrenCache replicaNodes;
+  private final PathChildrenCache tokenNodes;
+  // Lease gating the renewal of all tokens, null if tokens are partitioned across replicas
+  private final RenewalLease lease;
+
+  // Map of token id -> token, for all tokens of the cache
+  private final ConcurrentMap<String, TokenInfo> tokens = new ConcurrentHashMap<>();
+  // Tokens renewed by this replica
+  private final TokenRenewalIndex ownedTokens = new TokenRenewalIndex();
+  private volatile List<String> replicas = Collections.emptyList();
+
+  private final LongAdder rebalances = new LongAdder();
+  private final LongAdder writeFailures = new LongAdder();
+
+  private TokenRenewalScheduler renewalScheduler;
+  private TokenRenewalService tokenRenewalService;
+
+  public ZooKeeperTokenCache(Configuration conf) {
+    this(newClient(conf),
+        conf.getTrimmed(ConfigurationKeys.KUBE2HADOOP_TOKEN_CACHE_ZOOKEEPER_ROOT,
+            ConfigurationKeys.DEFAULT_KUBE2HADOOP_TOKEN_CACHE_ZOOKEEPER_ROOT),
+        getReplicaId(conf), new RenewalPolicy(conf),
+        conf.getEnum(ConfigurationKeys.KUBE2HADOOP_TOKEN_CACHE_ZOOKEEPER_OWNERSHIP,
+            ConfigurationKeys.DEFAULT_KUBE2HADOOP_TOKEN_CACHE_ZOOKEEPER_OWNERSHIP));
+
+    // Launch a scheduler to renew owned tokens in the background as they become due
+    long tokenRenewalInterval = conf.getLong(ConfigurationKeys.KUBE2HADOOP_TOKEN_RENEWAL_INTERVAL_IN_MILLISECONDS,
+        ConfigurationKeys.DEFAULT_KUBE2HADOOP_TOKEN_RENEWAL_INTERVAL_IN_MILLISECONDS);
+    tokenRenewalService = new TokenRenewalService(conf, this);
+    renewalScheduler = new TokenRenewalScheduler(this, tokenRenewalService, tokenRenewalInterval);
+    renewalScheduler.start();
+
+    PrometheusMetrics metrics = PrometheusMetrics.getInstance();
+    metrics.gauge("kube2hadoop_token_cache_tokens", "Tokens in the shared token cache", tokens::size);
+    metrics.gauge("kube2hadoop_token_cache_owned_tokens", "Tokens of the shared token cache renewed by this replica",
+        ownedTokens::size);
+    metrics.gauge("kube2hadoop_token_cache_replicas", "Replicas sharing the token cache", () -> replicas.size());
+    if (lease != null) {
+      metrics.gauge("kube2hadoop_token_cache_lease_held", "Whether this replica holds the renewal lease",
+          () -> lease.isHeld() ? 1 : 0);
+    }
+    metrics.counter("kube2hadoop_token_cache_rebalances_total", "Reassignments of tokens across replicas",
+        rebalances::sum);
+    metrics.counter("kube2hadoop_token_cache_write_failures_total", "Failed writes to the shared token cache",
+        writeFailures::sum);
+  }
+
+  ZooKeeperTokenCache(CuratorFramework client, String rootPath, String replicaId, RenewalPolicy renewalPolicy,
+      ConfigurationKeys.TokenOwnership ownership) {
+    this(client, rootPath, replicaId, renewalPolicy, ownership == ConfigurationKeys.TokenOwnership.LEADER
+        ? new ZooKeeperRenewalLease(client, ZKPaths.makePath(rootPath, LEASE), replicaId) : null);
+  }
+
+  /**
+   * Start sharing tokens under {@code rootPath}, without renewing them. Returns once the tokens and replicas already
+   * registered have been loaded, and this replica has been registered.
+   * @param client started ZooKeeper client, closed along with the cache
+   * @param lease lease gating the renewal of all tokens, closed along with the cache, or {@code null} to partition
+   *  tokens across replicas
+   */
+  ZooKeeperTokenCache(CuratorFramework client, String rootPath, String replicaId, RenewalPolicy renewalPolicy,
+      RenewalLease lease) {
+    this.client = client;
+    this.lease = lease;
+    this.replicaId = replicaId;
+    this.renewalPolicy = renewalPolicy;
+    this.tokensPath = ZKPaths.makePath(rootPath, TOKENS);
+    String replicasPath = ZKPaths.makePath(rootPath, REPLICAS);
+
+    tokenNodes = new PathChildrenCache(client, tokensPath, true);
+    tokenNodes.getListenable().addListener((c, event) -> onTokenEvent(event));
+    replicaNodes = new PathChildrenCache(client, replicasPath, false);
+    replicaNodes.getListenable().addListener((c, event) -> onReplicaEvent(event));
+    replicaNode = new PersistentEphemeralNode(client, PersistentEphemeralNode.Mode.EPHEMERAL,
+        ZKPaths.makePath(replicasPath, replicaId), replicaId.getBytes(StandardCharsets.UTF_8));
+    try {
+      createRoot(client, rootPath);
+      tokenNodes.start(PathChildrenCache.StartMode.BUILD_INITIAL_CACHE);
+      for (ChildData data : tokenNodes.getCurrentData()) {
+        onTokenChanged(data);
+      }
+      replicaNodes.start(PathChildrenCache.StartMode.BUILD_INITIAL_CACHE);
+      replicaNode.start();
+      if (!replicaNode.waitForInitialCreate(CONNECTION_TIMEOUT_IN_MILLISECONDS, TimeUnit.MILLISECONDS)) {
+        throw new IOException("Timed out registering replica " + replicaId + " in " + replicasPath);
+      }
+      if (lease != null) {
+        lease.start(held -> reassign());
+      }
+    } catch (Exception e) {
+      close();
+      throw new IllegalStateException("Failed to start ZooKeeper token cache under " + rootPath, e);
+    }
+    onReplicasChanged();
+    LOG.info("Replica " + replicaId + " sharing " + tokens.size() + " tokens with " + replicas);
+  }
+
+  /**
+   * Create the ancestors of {@code rootPath} that do not exist with open ACLs, since they may be shared with other
+   * applications and hold no secret, then the root itself with the ACL of the client.
+   */
+  private static void createRoot(CuratorFramework client, String rootPath) throws Exception {
+    int separator = 0;
+    while ((separator = rootPath.indexOf('/', separator + 1)) > 0) {
+      createIfMissing(client.create().withACL(ZooDefs.Ids.OPEN_ACL_UNSAFE), rootPath.substring(0, separator));
+    }
+    createIfMissing(client.create(), rootPath);
+  }
+
+  private static void createIfMissing(PathAndBytesable<String> create, String path) throws Exception {
+    try {
+      create.forPath(path, new byte[0]);
+    } catch (KeeperException.NodeExistsException e) {
+      // Created by another replica or application
+    }
+  }
+
+  /**
+   * Create and start the ZooKeeper client, authenticated and creating znodes under the root with
+   * {@code CREATOR_ALL_ACL} if {@code kube2hadoop.token-cache.zookeeper.auth} is set.
+   */
+  static CuratorFramework newClient(Configuration conf) {
+    String quorum = conf.getTrimmed(ConfigurationKeys.KUBE2HADOOP_TOKEN_CACHE_ZOOKEEPER_QUORUM, "");
+    if (quorum.isEmpty()) {
+      throw new IllegalArgumentException(ConfigurationKeys.KUBE2HADOOP_TOKEN_CACHE_ZOOKEEPER_QUORUM
+          + " is required by the ZOOKEEPER token cache");
+    }
+    int sessionTimeout = conf.getInt(
+        ConfigurationKeys.KUBE2HADOOP_TOKEN_CACHE_ZOOKEEPER_SESSION_TIMEOUT_IN_MILLISECONDS,
+        ConfigurationKeys.DEFAULT_KUBE2HADOOP_TOKEN_CACHE_ZOOKEEPER_SESSION_TIMEOUT_IN_MILLISECONDS);
+    CuratorFrameworkFactory.Builder builder = CuratorFrameworkFactory.builder()
+        .connectString(quorum)
+        .sessionTimeoutMs(sessionTimeout)
+        .connectionTimeoutMs(CONNECTION_TIMEOUT_IN_MILLISECONDS)
+        .retryPolicy(new ExponentialBackoffRetry(RETRY_BASE_SLEEP_IN_MILLISECONDS, MAX_RETRIES));
+
+    String auth = getAuth(conf);
+    if (auth.isEmpty()) {
+      LOG.warn(ConfigurationKeys.KUBE2HADOOP_TOKEN_CACHE_ZOOKEEPER_AUTH + " is not set, tokens are stored in "
+          + "ZooKeeper readable by anyone");
+    } else {
+      if (!auth.equalsIgnoreCase(SASL_AUTH)) {
+        int separator = auth.indexOf(':');
+        if (separator <= 0) {
+          throw new IllegalArgumentException(ConfigurationKeys.KUBE2HADOOP_TOKEN_CACHE_ZOOKEEPER_AUTH
+              + " must be " + SASL_AUTH + " or <scheme>:<credentials>, e.g. digest:<user>:<password>");
+        }
+        builder.authorization(auth.substring(0, separator),
+            auth.substring(separator + 1).getBytes(StandardCharsets.UTF_8));
+      }
+      builder.aclProvider(new CreatorOnlyACLProvider(conf.getTrimmed(
+          ConfigurationKeys.KUBE2HADOOP_TOKEN_CACHE_ZOOKEEPER_ROOT,
+          ConfigurationKeys.DEFAULT_KUBE2HADOOP_TOKEN_CACHE_ZOOKEEPER_ROOT)));
+    }
+    CuratorFramework client = builder.build();
+    client.start();
+    return client;
+  }
+
+  /**
+   * Read the ZooKeeper credentials through the configured credential providers, falling back to the configuration.
+   */
+  private static String getAuth(Configuration conf) {
+    try {
+      char[] auth = conf.getPassword(ConfigurationKeys.KUBE2HADOOP_TOKEN_CACHE_ZOOKEEPER_AUTH);
+      return auth == null ? "" : new String(auth).trim();
+    } catch (IOException e) {
+      throw new UncheckedIOException("Failed to read " + ConfigurationKeys.KUBE2HADOOP_TOKEN_CACHE_ZOOKEEPER_AUTH, e);
+    }
+  }
+
+  private static String getReplicaId(Configuration conf) {
+    String replicaId = conf.getTrimmed(ConfigurationKeys.KUBE2HADOOP_TOKEN_CACHE_REPLICA_ID, "");
+    if (!replicaId.isEmpty()) {
+      return replicaId;
+    }
+    try {
+      return InetAddress.getLocalHost().getHostName();
+    } catch (IOException e) {
+      throw new UncheckedIOException("Failed to resolve replica id from host name", e);
+    }
+  }
+
+  /**
+   * @param tokenId id of a token
+   * @param replicas ids of the registered replicas
+   * @return id of the replica renewing the token, i.e. the replica with the highest hash of the token and replica ids,
+   *  {@code null} if there is no replica
+   */
+  static String getOwner(String tokenId, Collection<String> replicas) {
+    String owner = null;
+    long maxWeight = Long.MIN_VALUE;
+    for (String replica : replicas) {
+      long weight = Hashing.murmur3_128().newHasher()
+          .putString(tokenId)
+          .putString(replica)
+          .hash().asLong();
+      if (owner == null || weight > maxWeight || (weight == maxWeight && replica.compareTo(owner) < 0)) {
+        owner = replica;
+        maxWeight = weight;
+      }
+    }
+    return owner;
+  }
+
+  /**
+   * @return hex encoded hash of the serialized token, naming its znode
+   */
+  static String getTokenId(TokenInfo tokenInfo) {
+    return Hashing.sha1().hashBytes(WritableUtils.toByteArray(tokenInfo.getToken())).toString();
+  }
+
+  private boolean isOwned(String tokenId) {
+    if (lease != null) {
+      return lease.isHeld();
+    }
+    return replicaId.equals(getOwner(tokenId, replicas));
+  }
+
+  private void onTokenEvent(PathChildrenCacheEvent event) {
+    switch (event.getType()) {
+      case CHILD_ADDED:
+      case CHILD_UPDATED:
+        onTokenChanged(event.getData());
+        break;
+      case CHILD_REMOVED:
+        TokenInfo tokenInfo = tokens.remove(ZKPaths.getNodeFromPath(event.getData().getPath()));
+        if (tokenInfo != null) {
+          ownedTokens.remove(tokenInfo);
+        }
+        break;
+      default:
+        break;
+    }
+  }
+
+  /**
+   * Merge a token added or renewed by any replica into the cache. Renewal dates only move forward, so that stale
+   * notifications, such as the echo of a write from this replica, do not undo a later renewal.
+   */
+  private void onTokenChanged(ChildData data) {
+    String tokenId = ZKPaths.getNodeFromPath(data.getPath());
+    TokenInfo stored;
+    try {
+      stored = TokenInfoCodec.decode(data.getData());
+    } catch (IOException e) {
+      LOG.error("Failed to decode token " + tokenId + ", ignoring it", e);
+      return;
+    }
+    stored.setRenewalPolicy(renewalPolicy);
+    TokenInfo current = tokens.putIfAbsent(tokenId, stored);
+    if (current == null) {
+      if (isOwned(tokenId)) {
+        scheduleOwned(stored);
+      }
+      return;
+    }
+    boolean renewed;
+    synchronized (current) {
+      renewed = stored.getLastRenewalDate() > current.getLastRenewalDate();
+      if (renewed) {
+        current.setExpirationDate(stored.getExpirationDate(), stored.getLastRenewalDate());
+      }
+    }
+    if (renewed) {
+      ownedTokens.reschedule(current);
+    }
+  }
+
+  private void onReplicaEvent(PathChildrenCacheEvent event) {
+    switch (event.getType()) {
+      case CHILD_ADDED:
+      case CHILD_REMOVED:
+        onReplicasChanged();
+        break;
+      default:
+        break;
+    }
+  }
+
+  private synchronized void onReplicasChanged() {
+    List<String> registered = new ArrayList<>();
+    for (ChildData data : replicaNodes.getCurrentData()) {
+      registered.add(ZKPaths.getNodeFromPath(data.getPath()));
+    }
+    Collections.sort(registered);
+    if (registered.equals(replicas)) {
+      return;
+    }
+    replicas = Collections.unmodifiableList(registered);
+    LOG.info("Replicas changed to " + replicas);
+    reassign();
+  }
+
+  /**
+   * Recompute the tokens renewed by this replica, after a change of the registered replicas or of the lease.
+   */
+  private synchronized void reassign() {
+    int acquired = 0;
+    int released = 0;
+    for (Map.Entry<String, TokenInfo> entry : tokens.entrySet()) {
+      boolean owned = isOwned(entry.getKey());
+      if (owned && !ownedTokens.contains(entry.getValue())) {
+        scheduleOwned(entry.getValue());
+        acquired++;
+      } else if (!owned && ownedTokens.remove(entry.getValue())) {
+        released++;
+      }
+    }
+    rebalances.increment();
+    LOG.info("Replica " + replicaId + " took over " + acquired + " tokens and handed over " + released + " tokens");
+  }
+
+  private void scheduleOwned(TokenInfo tokenInfo) {
+    ownedTokens.schedule(tokenInfo);
+    if (renewalScheduler != null) {
+      renewalScheduler.onTokenScheduled(tokenInfo.getNextRenewalDate());
+    }
+  }
+
+  public void stopRenewer() {
+    if (renewalScheduler != null) {
+      renewalScheduler.close();
+      tokenRenewalService.shutdown();
+    }
+    close();
+  }
+
+  /**
+   * Deregister this replica, handing over its tokens to the other replicas.
+   */
+  void close() {
+    CloseableUtils.closeQuietly(lease);
+    CloseableUtils.closeQuietly(replicaNode);
+    CloseableUtils.closeQuietly(replicaNodes);
+    CloseableUtils.closeQuietly(tokenNodes);
+    CloseableUtils.closeQuietly(client);
+  }
+
+  public TokenRenewalService getTokenRenewalService() {
+    return tokenRenewalService;
+  }
+
+  /**
+   * @return tokens renewed by this replica that are due for renewal
+   */
+  @Override
+  public List<TokenInfo> getTokensForRenewal() {
+    return ownedTokens.pollDue(System.currentTimeMillis());
+  }
+
+  /**
+   * Store the token in ZooKeeper before handing it out, so that it is renewed even if this replica goes away.
+   * @throws TokenServiceException if the token could not be stored
+   */
+  @Override
+  public void addToken(TokenInfo tokenInfo) {
+    tokenInfo.setRenewalPolicy(renewalPolicy);
+    String tokenId = getTokenId(tokenInfo);
+    // Known before the write, so that its notification is merged into this token rather than a decoded copy
+    tokens.put(tokenId, tokenInfo);
+    try {
+      byte[] data = TokenInfoCodec.encode(tokenInfo);
+      try {
+        client.create().creatingParentsIfNeeded().forPath(ZKPaths.makePath(tokensPath, tokenId), data);
+      } catch (KeeperException.NodeExistsException e) {
+        client.setData().forPath(ZKPaths.makePath(tokensPath, tokenId), data);
+      }
+    } catch (Exception e) {
+      tokens.remove(tokenId, tokenInfo);
+      writeFailures.increment();
+      throw new TokenServiceException("Failed to store token " + tokenInfo.getToken() + " in ZooKeeper: "
+          + e.getMessage(), ErrorCode.TOKEN_CACHE_EXCEPTION);
+    }
+    if (isOwned(tokenId)) {
+      scheduleOwned(tokenInfo);
+    }
+  }
+
+  @Override
+  public void removeToken(TokenInfo tokenInfo) {
+    String tokenId = getTokenId(tokenInfo);
+    tokens.remove(tokenId);
+    ownedTokens.remove(tokenInfo);
+    try {
+      client.delete().guaranteed().inBackground().forPath(ZKPaths.makePath(tokensPath, tokenId));
+    } catch (Exception e) {
+      writeFailures.increment();
+      LOG.error("Failed to remove token " + tokenInfo.getToken() + " from ZooKeeper", e);
+    }
+  }
+
+  /**
+   * Publish the renewal dates of a token that went through renewal to the other replicas, and put it back in the
+   * renewal schedule if this replica still owns it.
+   */
+  @Override
+  public void rescheduleToken(TokenInfo tokenInfo) {
+    ownedTokens.reschedule(tokenInfo);
+    String tokenId = getTokenId(tokenInfo);
+    if (!tokens.containsKey(tokenId)) {
+      return;
+    }
+    try {
+      client.setData().inBackground((c, event) -> {
+        if (event.getResultCode() != KeeperException.Code.OK.intValue()) {
+          writeFailures.increment();
+          LOG.warn("Failed to store renewal of token " + tokenId + " in ZooKeeper: "
+              + KeeperException.Code.get(event.getResultCode()));
+        }
+      }).forPath(ZKPaths.makePath(tokensPath, tokenId), TokenInfoCodec.encode(tokenInfo));
+    } catch (Exception e) {
+      writeFailures.increment();
+      LOG.error("Failed to store renewal of token " + tokenId + " in ZooKeeper", e);
+    }
+  }
+
+  @Override
+  public boolean canRenew(TokenInfo tokenInfo) {
+    return isOwned(getTokenId(tokenInfo));
+  }
+
+  @Override
+  public long getNextRenewalDate() {
+    return ownedTokens.getNextRenewalDate();
+  }
+
+  /**
+   * @return whether the token is in the cache, whichever replica renews it
+   */
+  @Override
+  public boolean containsToken(TokenInfo tokenInfo) {
+    return tokens.containsKey(getTokenId(tokenInfo));
+  }
+
+  /**
+   * @return this cache's copy of {@code tokenInfo}, {@code null} if it is not in the cache
+   */
+  TokenInfo getTokenInfo(TokenInfo tokenInfo) {
+    return tokens.get(getTokenId(tokenInfo));
+  }
+
+  List<String> getReplicas() {
+    return replicas;
+  }
+
+  int getOwnedTokenCount() {
+    return ownedTokens.size();
+  }
+
+  int getTokenCount() {
+    return tokens.size();
+  }
+
+  /**
+   * Gives the root of the token cache and every znode under it {@code CREATOR_ALL_ACL}, and open ACLs to any other
+   * znode. Curator asks for the ACL of the deepest path when it creates missing parents, so ancestors of the root are
+   * created beforehand by {@link #createRoot}.
+   */
+  static final class CreatorOnlyACLProvider implements ACLProvider {
+    private final String rootPath;
+
+    CreatorOnlyACLProvider(String rootPath) {
+      this.rootPath = rootPath;
+    }
+
+    @Override
+    public List<ACL> getDefaultAcl() {
+      return ZooDefs.Ids.CREATOR_ALL_ACL;
+    }
+
+    @Override
+    public List<ACL> getAclForPath(String path) {
+      return path.equals(rootPath) || path.startsWith(rootPath + "/")
+          ? ZooDefs.Ids.CREATOR_ALL_ACL : ZooDefs.Ids.OPEN_ACL_UNSAFE;
+    }
+  }
+}
@@ -0,0 +1,320 @@
+/**
+ * Copyright 2020 LinkedIn Corporation. All rights reserved. Licensed under the BSD-2 Clause license.
+ * See LICENSE in the project root for license information.
+ */
+
+package com.linkedin.kube2hadoop.service;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.linkedin.kube2hadoop.cache.ProxyUserCache;
+import com.linkedin.kube2hadoop.core.ErrorCode;
+import com.linkedin.kube2hadoop.core.TokenServiceException;
+import com.linkedin.kube2hadoop.core.conf.ConfigurationKeys;
+import com.linkedin.kube2hadoop.core.metrics.PrometheusMetrics;
+import java.io.IOException;
+import java.net.URI;
+import java.security.PrivilegedExceptionAction;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.CommonConfigurationKeys;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.security.Credentials;
+import org.apache.hadoop.security.UserGroupInformation;
+import org.apache.hadoop.security.token.Token;
+import org.apache.log4j.Logger;
+
+
+/**
+ * Fetches delegation tokens from the default file system and any additional NameNodes / nameservices configured in
+ * {@code kube2hadoop.namenodes} (HA nameservices and router-based federation URIs work the same way). NameNodes are
+ * called concurrently, each call running as the proxy user, and the tokens are merged into a single
+ * {@code Credentials}, so that the fetch takes as long as the slowest NameNode rather than the sum of all of them.
+ * When any NameNode fails, the tokens fetched from the others are cancelled rather than left in the NameNodes until
+ * their max date. Slow NameNodes are bounded by the IPC timeout: fetches are never interrupted, which would close
+ * the IPC connection shared with other fetches. Unless IPC pings are configured, the IPC client stops pinging and
+ * times calls out after the fetch timeout, which is how Hadoop 2.7 clients bound calls to a hung NameNode. A fetch
+ * that outlives its request keeps holding the proxy user, so that its file systems are not closed under it.
+ */
+public class NameNodeTokenFetcher {
+  private static final Logger LOG = Logger.getLogger(NameNodeTokenFetcher.class);
+
+  private final Configuration conf;
+  private final String tokenRenewer;
+  private final List<URI> nameNodes;
+  private final long fetchTimeout;
+  private final ExecutorService fetchExecutor;
+  private final Map<String, NameNodeStats> nameNodeStats = new ConcurrentHashMap<>();
+
+  public NameNodeTokenFetcher(Configuration conf, String tokenRenewer) {
+    this.conf = new Configuration(conf);
+    this.tokenRenewer = tokenRenewer;
+    this.nameNodes = getNameNodes(conf);
+    this.fetchTimeout = conf.getLong(ConfigurationKeys.KUBE2HADOOP_NAMENODE_FETCH_TIMEOUT_IN_MILLISECONDS,
+        ConfigurationKeys.DEFAULT_KUBE2HADOOP_NAMENODE_FETCH_TIMEOUT_IN_MILLISECONDS);
+    if (this.conf.get(CommonConfigurationKeys.IPC_CLIENT_PING_KEY) == null) {
+      // Calls to a hung NameNode end with the fetch instead of holding a fetch thread: without pings, the socket
+      // times out after the ping interval
+      this.conf.setBoolean(CommonConfigurationKeys.IPC_CLIENT_PING_KEY, false);
+      this.conf.setInt(CommonConfigurationKeys.IPC_PING_INTERVAL_KEY, (int) Math.min(fetchTimeout, Integer.MAX_VALUE));
+    }
+    int fetchThreads = conf.getInt(ConfigurationKeys.KUBE2HADOOP_NAMENODE_FETCH_THREADS,
+        ConfigurationKeys.DEFAULT_KUBE2HADOOP_NAMENODE_FETCH_THREADS);
+    this.fetchExecutor = Executors.newFixedThreadPool(fetchThreads,
+        new ThreadFactoryBuilder().setDaemon(true).setNameFormat("namenode-token-fetcher-%d").build());
+    LOG.info("Fetching delegation tokens from NameNodes: " + nameNodes);
+
+    for (URI nameNode : nameNodes) {
+      NameNodeStats stats = getStats(nameNode.toString());
+      PrometheusMetrics metrics = PrometheusMetrics.getInstance();
+      metrics.counter("kube2hadoop_namenode_token_fetches_total", "Delegation tokens fetched, by NameNode",
+          stats::getFetchCount, "namenode", nameNode.toString());
+      metrics.counter("kube2hadoop_namenode_token_fetch_failures_total", "Failed delegation token fetches, by NameNode",
+          stats::getFailureCount, "namenode", nameNode.toString());
+      metrics.gauge("kube2hadoop_namenode_token_fetch_last_latency_milliseconds",
+          "Latency of the last delegation token fetch, by NameNode", stats::getLastLatencyInMilliseconds,
+          "namenode", nameNode.toString());
+    }
+  }
+
+  /**
+   * The default file system, followed by the additional NameNodes from configuration, without duplicates.
+   * @param conf kube2hadoop configuration with Hadoop configuration
+   * @return NameNode URIs to fetch tokens from
+   */
+  static List<URI> getNameNodes(Configuration conf) {
+    Set<URI> uris = new LinkedHashSet<>();
+    uris.add(FileSystem.getDefaultUri(conf));
+    for (String nameNode : conf.getTrimmedStrings(ConfigurationKeys.KUBE2HADOOP_NAMENODES)) {
+      if (!nameNode.isEmpty()) {
+        uris.add(URI.create(nameNode));
+      }
+    }
+    return Collections.unmodifiableList(new ArrayList<>(uris));
+  }
+
+  /**
+   * Fetch delegation tokens from every NameNode as {@code proxyUser}, and add them to {@code cred}.
+   * @param proxyUser proxy user to fetch the tokens as, held by the caller until this returns, and by each
+   *  fetch until it completes
+   * @param userToProxy name of the proxy user
+   * @param cred credentials to add the tokens to
+   * @throws TokenServiceException if tokens could not be fetched from any of the NameNodes
+   */
+  public void fetchTokens(ProxyUserCache.ProxyUser proxyUser, String userToProxy, Credentials cred)
+      throws TokenServiceException {
+    if (nameNodes.size() == 1) {
+      cred.addAll(fetchToken(proxyUser.getUgi(), userToProxy, nameNodes.get(0)));
+      return;
+    }
+
+    List<Fetch> fetches = new ArrayList<>();
+    for (URI nameNode : nameNodes) {
+      Fetch fetch = new Fetch(userToProxy);
+      ProxyUserCache.ProxyUser fetchProxyUser = proxyUser.share();
+      fetch.future = fetchExecutor.submit(() -> {
+        try (ProxyUserCache.ProxyUser user = fetchProxyUser) {
+          return fetch.complete(fetchToken(user.getUgi(), userToProxy, nameNode));
+        }
+      });
+      fetches.add(fetch);
+    }
+
+    List<String> failures = new ArrayList<>();
+    List<Credentials> fetched = new ArrayList<>();
+    long deadline = System.currentTimeMillis() + fetchTimeout;
+    for (int i = 0; i < fetches.size(); i++) {
+      try {
+        fetched.add(fetches.get(i).future.get(Math.max(0L, deadline - System.currentTimeMillis()),
+            TimeUnit.MILLISECONDS));
+      } catch (ExecutionException ex) {
+        failures.add(nameNodes.get(i) + ": " + ex.getCause().getMessage());
+      } catch (TimeoutException ex) {
+        failures.add(nameNodes.get(i) + ": timed out after " + fetchTimeout + "ms");
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        abandon(fetches);
+        throw new TokenServiceException("Interrupted while fetching HDFS tokens for " + userToProxy,
+            ErrorCode.FAILED_TO_FETCH_HDFS_TOKEN);
+      }
+    }
+
+    if (!failures.isEmpty()) {
+      abandon(fetches);
+      throw new TokenServiceException("Failed to fetch HDFS token for " + userToProxy + " from "
+          + String.join(", ", failures), ErrorCode.FAILED_TO_FETCH_HDFS_TOKEN);
+    }
+    fetched.forEach(cred::addAll);
+  }
+
+  /**
+   * Cancel the tokens of a failed fetch: the ones already fetched right away, the ones still being fetched as soon
+   * as they are.
+   */
+  private void abandon(List<Fetch> fetches) {
+    for (Fetch fetch : fetches) {
+      Credentials fetched = fetch.abandon();
+      if (fetched != null) {
+        cancelTokens(fetched, fetch.userToProxy);
+      }
+    }
+  }
+
+  /**
+   * Cancel orphaned tokens as the login user, their renewer. Failures are logged, the tokens are left to expire.
+   * @param cred tokens to cancel
+   * @param userToProxy owner of the tokens
+   */
+  void cancelTokens(Credentials cred, String userToProxy) {
+    for (Token<?> token : cred.getAllTokens()) {
+      try {
+        UserGroupInformation.getLoginUser().doAs((PrivilegedExceptionAction<Void>) () -> {
+          token.cancel(conf);
+          return null;
+        });
+        LOG.info("Cancelled orphaned token of " + userToProxy + " from " + token.getService());
+      } catch (Exception ex) {
+        LOG.warn("Unable to cancel orphaned token of " + userToProxy + " from " + token.getService() + ". "
+            + ex.getMessage());
+      }
+    }
+  }
+
+  Credentials fetchToken(UserGroupInformation proxyUgi, String userToProxy, URI nameNode) {
+    NameNodeStats stats = getStats(nameNode.toString());
+    long startTime = System.currentTimeMillis();
+    try {
+      Credentials cred = proxyUgi.doAs(new PrivilegedExceptionAction<Credentials>() {
+        @Override
+        public Credentials run() throws IOException {
+          LOG.debug("Fetching delegation token as privileged user from " + nameNode);
+          return fetchNameNodeToken(userToProxy, nameNode);
+        }
+      });
+      stats.record(System.currentTimeMillis() - startTime);
+      return cred;
+    } catch (Exception e) {
+      stats.failures.increment();
+      if (e instanceof TokenServiceException) {
+        throw (TokenServiceException) e;
+      }
+      throw new TokenServiceException("Failed to get hadoop tokens from " + nameNode + "! "
+          + e.getMessage() + e.getCause(), ErrorCode.FAILED_TO_FETCH_HDFS_TOKEN);
+    }
+  }
+
+  private Credentials fetchNameNodeToken(String userToProxy, URI nameNode) throws IOException {
+    final FileSystem fs = FileSystem.get(nameNode, conf);
+    // check if we get the correct FS, and most importantly, the conf
+    LOG.info("Getting DFS token from " + fs.getUri());
+
+    Credentials cred = new Credentials();
+    final Token<?>[] fsTokens = fs.addDelegationTokens(tokenRenewer, cred);
+
+    if (fsTokens.length == 0) {
+      throw new TokenServiceException(
+          "Failed to fetch HDFS token for " + userToProxy + " from " + nameNode, ErrorCode.FAILED_TO_FETCH_HDFS_TOKEN);
+    }
+
+    for (final Token<?> fsToken : fsTokens) {
+      LOG.info(String.format(
+          "DFS token from namenode fetched, token kind: %s, token service: %s",
+          fsToken.getKind(), fsToken.getService()));
+    }
+    return cred;
+  }
+
+  private NameNodeStats getStats(String nameNode) {
+    return nameNodeStats.computeIfAbsent(nameNode, k -> new NameNodeStats());
+  }
+
+  /**
+   * @return latency and failure accounting, keyed by NameNode URI
+   */
+  public Map<String, NameNodeStats> getNameNodeStats() {
+    return Collections.unmodifiableMap(nameNodeStats);
+  }
+
+  public void shutdown() {
+    fetchExecutor.shutdownNow();
+  }
+
+  /**
+   * Fetch from a single NameNode, whose tokens are cancelled by the fetching thread if the request was abandoned
+   * before they arrived.
+   */
+  private class Fetch {
+    private final String userToProxy;
+    private Future<Credentials> future;
+    // Guarded by this
+    private Credentials fetched;
+    private boolean abandoned = false;
+
+    private Fetch(String userToProxy) {
+      this.userToProxy = userToProxy;
+    }
+
+    private Credentials complete(Credentials cred) {
+      synchronized (this) {
+        if (!abandoned) {
+          fetched = cred;
+          return cred;
+        }
+      }
+      cancelTokens(cred, userToProxy);
+      return cred;
+    }
+
+    /**
+     * @return the tokens fetched so far, null if they are still being fetched and will be cancelled on arrival
+     */
+    private synchronized Credentials abandon() {
+      abandoned = true;
+      return fetched;
+    }
+  }
+
+  /**
+   * Token fetch accounting for a single NameNode.
+   */
+  public static class NameNodeStats {
+    private final LongAdder fetches = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder totalLatencyInMilliseconds = new LongAdder();
+    private volatile long lastLatencyInMilliseconds = 0L;
+
+    private void record(long latencyInMilliseconds) {
+      fetches.increment();
+      totalLatencyInMilliseconds.add(latencyInMilliseconds);
+      lastLatencyInMilliseconds = latencyInMilliseconds;
+    }
+
+    public long getFetchCount() {
+      return fetches.sum();
+    }
+
+    public long getFailureCount() {
+      return failures.sum();
+    }
+
+    public long getTotalLatencyInMilliseconds() {
+      return totalLatencyInMilliseconds.sum();
+    }
+
+    public long getLastLatencyInMilliseconds() {
+      return lastLatencyInMilliseconds;
+    }
+  }
+}
@@ -10,50 +10,65 @@ import com.google.common.collect.ImmutableMap;
 import com.linkedin.kube2hadoop.authenticator.Authenticator;
 import com.linkedin.kube2hadoop.authenticator.AuthenticatorFactory;
 import com.linkedin.kube2hadoop.authenticator.AuthenticatorParameters;
+import com.linkedin.kube2hadoop.cache.JobCredentialCache;
+import com.linkedin.kube2hadoop.cache.JournaledTokenCache;
 import com.linkedin.kube2hadoop.cache.LocalTokenCache;
+import com.linkedin.kube2hadoop.cache.PodTokenTracker;
+import com.linkedin.kube2hadoop.cache.ProxyUserCache;
 import com.linkedin.kube2hadoop.cache.TokenCache;
 import com.linkedin.kube2hadoop.cache.TokenInfo;
+import com.linkedin.kube2hadoop.cache.ZooKeeperTokenCache;
 import com.linkedin.kube2hadoop.core.Constants;
 import com.linkedin.kube2hadoop.core.ErrorCode;
+import com.linkedin.kube2hadoop.core.SingleFlight;
 import com.linkedin.kube2hadoop.core.TokenServiceException;
 import com.linkedin.kube2hadoop.core.conf.ConfigurationKeys;
+import com.linkedin.kube2hadoop.core.metrics.PrometheusMetrics;
+import com.linkedin.kube2hadoop.core.metrics.Stage;
 import java.io.ByteArrayOutputStream;
 import java.io.DataOutputStream;
 import java.io.File;
 import java.io.IOException;
-import java.security.PrivilegedExceptionAction;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Base64;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 import org.apache.directory.server.kerberos.shared.keytab.Keytab;
 import org.apache.hadoop.conf.Configuration;
-import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.security.Credentials;
 import org.apache.hadoop.security.SecurityUtil;
 import org.apache.hadoop.security.UserGroupInformation;
-import org.apache.hadoop.security.token.Token;
 
 import org.apache.log4j.Logger;
 
 
 /**
  * Responsible for fetching hadoop delegation token on behalf of the user
+ * When {@code kube2hadoop.job-token-sharing.enabled} is set, the pods of a job share one credential per proxy user and
+ * token kinds, so a job with hundreds of workers fetches and renews one set of tokens instead of one per pod.
  */
 public class TokenFetcherService {
   private static volatile TokenFetcherService tfsInstance = null;
   private static final Logger LOG = Logger.getLogger(TokenFetcherService.class);
   public static final List<String> SUPPORTED_TOKEN_KINDS = ImmutableList.of(Constants.HDFS_DELEGATION_TOKEN);
+  private static final String JOB_KEY_PREFIX = "job:";
 
   private final Configuration conf;
   private UserGroupInformation loginUser;
-  private Map<String, UserGroupInformation> userUgiCache = new HashMap<>();
+  private ProxyUserCache proxyUserCache;
   private Authenticator authenticator;
   private TokenCache tokenCache;
   private String tokenRenewer;
+  private NameNodeTokenFetcher nameNodeTokenFetcher;
+  private final SingleFlight<String, String> tokenRequests;
+  private JobCredentialCache jobCredentialCache;
+  private PodTokenTracker podTokenTracker;
 
   /**
    * {@code TokenFetcherService} constructor
@@ -96,14 +111,71 @@ public class TokenFetcherService {
           "Failed to login with kerberos: " + e.getMessage(), ErrorCode.FAILED_TO_LOGIN_WITH_KERBEROS);
     }
 
+    // Requests sharing a fetch give up with the request, instead of waiting on a hung NameNode indefinitely
+    tokenRequests = new SingleFlight<>(conf.getLong(
+        ConfigurationKeys.KUBE2HADOOP_ASYNC_REQUEST_TIMEOUT_IN_MILLISECONDS,
+        ConfigurationKeys.DEFAULT_KUBE2HADOOP_ASYNC_REQUEST_TIMEOUT_IN_MILLISECONDS));
+    proxyUserCache = new ProxyUserCache(conf);
+    nameNodeTokenFetcher = new NameNodeTokenFetcher(this.conf, tokenRenewer);
+
     // TODO: read authenticator configurations
     AuthenticatorFactory authFactory = new AuthenticatorFactory();
     authenticator = authFactory.getAuthenticator(ConfigurationKeys.AuthenticationPlatform.KUBERNETES,
         Arrays.asList(ConfigurationKeys.AuthenticationDecorators.LDAP), conf);
 
-    // TODO: read configuration to determine the type of cache to initialize
-    LOG.info("Initializing LocalTokenCache...");
-    tokenCache = new LocalTokenCache(conf);
+    ConfigurationKeys.TokenCacheType tokenCacheType = conf.getEnum(ConfigurationKeys.KUBE2HADOOP_TOKEN_CACHE_TYPE,
+        ConfigurationKeys.DEFAULT_KUBE2HADOOP_TOKEN_CACHE_TYPE);
+    if (tokenCacheType == ConfigurationKeys.TokenCacheType.ZOOKEEPER) {
+      LOG.info("Initializing ZooKeeperTokenCache...");
+      tokenCache = new ZooKeeperTokenCache(conf);
+    } else if (conf.getTrimmed(ConfigurationKeys.KUBE2HADOOP_TOKEN_CACHE_JOURNAL_DIR, "").isEmpty()) {
+      LOG.info("Initializing LocalTokenCache...");
+      tokenCache = new LocalTokenCache(conf);
+    } else {
+      LOG.info("Initializing JournaledTokenCache...");
+      tokenCache = new JournaledTokenCache(conf);
+    }
+
+    if (conf.getBoolean(ConfigurationKeys.KUBE2HADOOP_JOB_TOKEN_SHARING_ENABLED,
+        ConfigurationKeys.DEFAULT_KUBE2HADOOP_JOB_TOKEN_SHARING_ENABLED)) {
+      LOG.info("Sharing credentials across pods of the same job");
+      jobCredentialCache = new JobCredentialCache(conf, tokenCache);
+    }
+
+    if (conf.getBoolean(ConfigurationKeys.KUBE2HADOOP_TOKEN_RELEASE_ENABLED,
+        ConfigurationKeys.DEFAULT_KUBE2HADOOP_TOKEN_RELEASE_ENABLED)) {
+      LOG.info("Releasing tokens of terminated pods");
+      podTokenTracker = new PodTokenTracker(conf, tokenCache);
+      podTokenTracker.start();
+      authenticator.addPodTerminationListener(podTokenTracker::onPodTerminated);
+    }
+
+    registerMetrics();
+  }
+
+  private void registerMetrics() {
+    PrometheusMetrics metrics = PrometheusMetrics.getInstance();
+    metrics.counter("kube2hadoop_proxy_user_cache_hits_total", "Proxy user cache hits", proxyUserCache::getHitCount);
+    metrics.counter("kube2hadoop_proxy_user_cache_misses_total", "Proxy user cache misses",
+        proxyUserCache::getMissCount);
+    metrics.counter("kube2hadoop_proxy_user_cache_evictions_total", "Proxy users evicted by size or TTL",
+        proxyUserCache::getEvictionCount);
+    metrics.gauge("kube2hadoop_proxy_user_cache_size", "Proxy users in cache", proxyUserCache::size);
+    metrics.counter("kube2hadoop_token_fetches_total", "Token fetches executed for token requests",
+        tokenRequests::getExecutedCount);
+    metrics.counter("kube2hadoop_token_fetches_shared_total", "Token requests that shared a fetch already in flight",
+        tokenRequests::getSharedCount);
+    metrics.counter("kube2hadoop_token_fetches_wait_timeouts_total",
+        "Token requests that timed out waiting for a fetch already in flight", tokenRequests::getTimedOutWaitCount);
+    metrics.gauge("kube2hadoop_token_fetches_in_flight", "Token fetches in flight", tokenRequests::getInFlightCount);
+    if (jobCredentialCache != null) {
+      metrics.counter("kube2hadoop_job_credential_cache_hits_total",
+          "Credentials handed out from a job's shared credential", jobCredentialCache::getHitCount);
+      metrics.counter("kube2hadoop_job_credential_cache_misses_total",
+          "Job credential lookups without a valid credential", jobCredentialCache::getMissCount);
+      metrics.gauge("kube2hadoop_job_credential_cache_size", "Shared job credentials in cache",
+          jobCredentialCache::size);
+    }
   }
 
   public static TokenFetcherService getInstance(Configuration conf) throws TokenServiceException {
@@ -119,6 +191,33 @@ public class TokenFetcherService {
     return tfsInstance;
   }
 
+  public ProxyUserCache getProxyUserCache() {
+    return proxyUserCache;
+  }
+
+  public NameNodeTokenFetcher getNameNodeTokenFetcher() {
+    return nameNodeTokenFetcher;
+  }
+
+  public SingleFlight<String, String> getTokenRequests() {
+    return tokenRequests;
+  }
+
+  void setAuthenticator(Authenticator authenticator) {
+    this.authenticator = authenticator;
+  }
+
+  void setPodTokenTracker(PodTokenTracker podTokenTracker) {
+    this.podTokenTracker = podTokenTracker;
+  }
+
+  /**
+   * @return credentials shared by the pods of a job, null if job-level token sharing is disabled
+   */
+  public JobCredentialCache getJobCredentialCache() {
+    return jobCredentialCache;
+  }
+
   /**
    * Read the keytab file and retrieve the keytab's principal name
    * @param keytabLocation keytab file location
@@ -148,22 +247,204 @@ public class TokenFetcherService {
       throw new TokenServiceException(ErrorCode.INVALID_PARAMS.getDescription(), ErrorCode.INVALID_PARAMS);
     }
 
-    Credentials cred = new Credentials();
-
     String userToProxy = authenticator.getAuthenticatedUserID(new AuthenticatorParameters(params));
     LOG.info("User to proxy is: " + userToProxy);
 
-    goFetchDelegationTokens(userToProxy, params.get(Constants.TOKEN_KINDS), cred);
+    // Requests are authenticated individually, identical authenticated requests in flight share one fetch
+    String namespace = params.get(Constants.NAMESPACE)[0];
+    String podName = params.get(Constants.POD_NAME)[0];
+    String[] tokenKinds = params.get(Constants.TOKEN_KINDS);
+    String[] jobID = params.get(Constants.JOB_ID);
+    if (jobCredentialCache != null && jobID != null) {
+      return getJobDelegationTokens(namespace, podName, jobID[0], userToProxy, tokenKinds);
+    }
+    String credential = tokenRequests.execute(getTokenRequestKey(namespace, podName, userToProxy, tokenKinds),
+        () -> fetchDelegationTokens(namespace, podName, null, userToProxy, tokenKinds));
+    return handOut(namespace, podName, credential,
+        () -> fetchDelegationTokens(namespace, podName, null, userToProxy, tokenKinds));
+  }
+
+  /**
+   * Hand out the credential shared by the pods of job {@code jobID}, fetching it if there is no valid one yet.
+   * Pods of the job requesting it concurrently share one fetch.
+   */
+  private String getJobDelegationTokens(String namespace, String podName, String jobID, String userToProxy,
+      String[] tokenKinds) {
+    String jobKey = getTokenRequestKey(namespace, jobID, userToProxy, tokenKinds);
+    String sharedCredential = jobCredentialCache.get(jobKey);
+    // The last pod of the job holding the credential may have terminated since, releasing it
+    if (sharedCredential != null && trackHandOut(namespace, podName, sharedCredential)) {
+      LOG.info("Handing out credential shared by job: " + jobID + " to pod: " + podName);
+      return sharedCredential;
+    }
+
+    String credential = tokenRequests.execute(JOB_KEY_PREFIX + jobKey, () -> {
+      String fetchedCredential = jobCredentialCache.get(jobKey);
+      if (fetchedCredential == null) {
+        fetchedCredential = fetchDelegationTokens(namespace, podName, jobID, userToProxy, tokenKinds);
+      }
+      return fetchedCredential;
+    });
+    return handOut(namespace, podName, credential,
+        () -> fetchDelegationTokens(namespace, podName, jobID, userToProxy, tokenKinds));
+  }
+
+  /**
+   * Hand out a credential obtained through {@code tokenRequests} to a pod. The pod that shared the fetch may have
+   * terminated since, releasing the credential, in which case the pod is handed out a credential of its own.
+   * @param credential credential from the shared fetch
+   * @param refetch fetches a credential for the pod alone
+   * @return base64 encoded credential
+   * @throws TokenServiceException if the credential fetched for the pod alone was released as well
+   */
+  private String handOut(String namespace, String podName, String credential, Supplier<String> refetch) {
+    if (trackHandOut(namespace, podName, credential)) {
+      return credential;
+    }
+    LOG.info("Shared credential was released before it was handed out to pod: " + podName + " in namespace "
+        + namespace + ", fetching a new one");
+    String ownCredential = refetch.get();
+    if (!trackHandOut(namespace, podName, ownCredential)) {
+      throw new TokenServiceException("Tokens of pod: " + podName + " in namespace " + namespace
+          + " were released before they could be handed out", ErrorCode.INTERNAL_ERROR);
+    }
+    return ownCredential;
+  }
+
+  /**
+   * Record that {@code credential} was handed out to a pod, so that its tokens are released once every pod that
+   * received it is terminated.
+   * @return false if the tokens of the credential were released in the meantime
+   */
+  private boolean trackHandOut(String namespace, String podName, String credential) {
+    return podTokenTracker == null || podTokenTracker.onHandedOut(namespace, podName, credential);
+  }
+
+  /**
+   * Key identifying identical token requests: same pod, same user to proxy and same set of token kinds
+   */
+  static String getTokenRequestKey(String namespace, String podName, String userToProxy, String[] tokenKinds) {
+    String sortedTokenKinds = tokenKinds == null ? ""
+        : Arrays.stream(tokenKinds).sorted().distinct().collect(Collectors.joining(","));
+    return String.join("/", namespace, podName, userToProxy, sortedTokenKinds);
+  }
+
+  /**
+   * Get delegation tokens for a batch of pods on behalf of a trusted caller, e.g. a launcher prefetching credentials
+   * for all the pods of a gang. Every pod is authenticated against its metadata, except for the source IP check.
+   * Authenticated pods are grouped by namespace, proxy user and token kinds, and tokens are fetched once per group,
+   * one group after the other on the calling thread. Groups are not fetched on the NameNode fetch executor, whose
+   * threads the fetch of each group waits on.
+   * Results are handed to {@code handler} as soon as they are known, failed pods do not fail the rest of the batch.
+   * @param batch parameters of each pod: namespace, pod name and token kinds
+   * @param handler receives the result for each pod, by index in {@code batch}
+   */
+  public void getDelegationTokens(List<Map<String, String[]>> batch, BatchResultHandler handler) {
+    Map<String, BatchGroup> groups = new LinkedHashMap<>();
+    for (int i = 0; i < batch.size(); i++) {
+      Map<String, String[]> params = batch.get(i);
+      try {
+        if (!validateParams(params)) {
+          throw new TokenServiceException(ErrorCode.INVALID_PARAMS.getDescription(), ErrorCode.INVALID_PARAMS);
+        }
+        String userToProxy = authenticator.getAuthenticatedUserID(AuthenticatorParameters.forTrustedCaller(params));
+        String namespace = params.get(Constants.NAMESPACE)[0];
+        String[] tokenKinds = params.get(Constants.TOKEN_KINDS);
+        groups.computeIfAbsent(getTokenRequestKey(namespace, "", userToProxy, tokenKinds),
+            key -> new BatchGroup(namespace, userToProxy, tokenKinds)).add(i, params.get(Constants.POD_NAME)[0]);
+      } catch (TokenServiceException tse) {
+        handler.onError(i, tse);
+      }
+    }
+
+    for (BatchGroup group : groups.values()) {
+      LOG.info("Fetching tokens for " + group.indices.size() + " pods of user " + group.userToProxy
+          + " in namespace " + group.namespace);
+      String tokenStr;
+      try {
+        tokenStr = fetchDelegationTokens(group.namespace, group.podName, null, group.userToProxy, group.tokenKinds);
+      } catch (TokenServiceException tse) {
+        group.indices.forEach(i -> handler.onError(i, tse));
+        continue;
+      }
+      for (int j = 0; j < group.indices.size(); j++) {
+        int index = group.indices.get(j);
+        String podName = group.podNames.get(j);
+        try {
+          handler.onToken(index, handOut(group.namespace, podName, tokenStr,
+              () -> fetchDelegationTokens(group.namespace, podName, null, group.userToProxy, group.tokenKinds)));
+        } catch (TokenServiceException tse) {
+          handler.onError(index, tse);
+        }
+      }
+    }
+  }
+
+  /**
+   * Receives the per-pod results of a batch token request.
+   */
+  public interface BatchResultHandler {
+    void onToken(int index, String tokenStr);
+
+    void onError(int index, TokenServiceException error);
+  }
+
+  /**
+   * Pods of a batch sharing namespace, proxy user and token kinds, which are given the same tokens.
+   */
+  private static class BatchGroup {
+    private final String namespace;
+    private final String userToProxy;
+    private final String[] tokenKinds;
+    private final List<Integer> indices = new ArrayList<>();
+    private final List<String> podNames = new ArrayList<>();
+    private String podName;
+
+    private BatchGroup(String namespace, String userToProxy, String[] tokenKinds) {
+      this.namespace = namespace;
+      this.userToProxy = userToProxy;
+      this.tokenKinds = tokenKinds;
+    }
+
+    private void add(int index, String podName) {
+      if (indices.isEmpty()) {
+        this.podName = podName;
+      }
+      indices.add(index);
+      podNames.add(podName);
+    }
+  }
+
+  String fetchDelegationTokens(String namespace, String podName, String jobID, String userToProxy,
+      String[] tokenKinds) {
+    Credentials cred = new Credentials();
+    goFetchDelegationTokens(userToProxy, tokenKinds, cred);
 
     // Add the delegation tokens to {@code TokenCache}
-    List<TokenInfo> tokenInfos = TokenInfo.getTokenInfos(ImmutableMap.of(
-        Constants.NAMESPACE, params.get(Constants.NAMESPACE)[0],
-        Constants.POD_NAME, params.get(Constants.POD_NAME)[0],
-        Constants.PROXY_USER, userToProxy),
+    Map<String, String> identifiableInfo = new HashMap<>();
+    identifiableInfo.put(Constants.NAMESPACE, namespace);
+    identifiableInfo.put(Constants.POD_NAME, podName);
+    identifiableInfo.put(Constants.PROXY_USER, userToProxy);
+    if (jobID != null) {
+      identifiableInfo.put(Constants.JOB_ID, jobID);
+    }
+    List<TokenInfo> tokenInfos = TokenInfo.getTokenInfos(ImmutableMap.copyOf(identifiableInfo),
         new ArrayList<>(cred.getAllTokens()));
+    long startTime = System.nanoTime();
     tokenInfos.forEach(tokenInfo -> tokenCache.addToken(tokenInfo));
+    Stage.CACHE_INSERT.recordSince(startTime);
 
-    return encodeCredentialsToBase64(cred);
+    startTime = System.nanoTime();
+    String encodedCredential = encodeCredentialsToBase64(cred);
+    Stage.CREDENTIAL_ENCODING.recordSince(startTime);
+    if (podTokenTracker != null) {
+      podTokenTracker.register(encodedCredential, tokenInfos);
+    }
+    if (jobID != null) {
+      jobCredentialCache.put(getTokenRequestKey(namespace, jobID, userToProxy, tokenKinds), encodedCredential,
+          tokenInfos);
+    }
+    return encodedCredential;
   }
 
   /**
@@ -197,90 +478,16 @@ public class TokenFetcherService {
   }
 
   private void fetchDelegationTokenViaSuperUser(final String userToProxy, final Credentials cred) {
-    try {
-      UserGroupInformation proxyUgi = getProxiedUser(userToProxy);
-      LOG.info("Proxy Ugi for " + userToProxy + ": " + proxyUgi.toString());
-
-      proxyUgi.doAs(new PrivilegedExceptionAction<Void>() {
-        @Override
-        public Void run() throws Exception {
-          LOG.debug("Fetching delegation token as privileged user");
-          getToken(userToProxy);
-          return null;
-        }
-
-        private void getToken(final String userToProxy) throws IOException, TokenServiceException {
-          fetchNameNodeToken(userToProxy, cred);
-        }
-      });
-    } catch (final Exception e) {
-      throw new TokenServiceException("Failed to get hadoop tokens! "
-          + e.getMessage() + e.getCause(), ErrorCode.FAILED_TO_FETCH_HDFS_TOKEN);
-    } catch (final Throwable t) {
-      throw new TokenServiceException("Failed to get hadoop tokens! "
-          + t.getMessage() + t.getCause(), ErrorCode.FAILED_TO_FETCH_HDFS_TOKEN);
-    }
-  }
+    try (ProxyUserCache.ProxyUser proxyUser = proxyUserCache.acquireProxiedUser(userToProxy)) {
+      LOG.info("Proxy Ugi for " + userToProxy + ": " + proxyUser.getUgi().toString());
 
-  /**
-   * Create a proxied user based on the explicit user name
-   * @param userToProxy user to proxy as
-   * @return UserGroupInformation
-   * @throws TokenServiceException throws exception when failed to create the proxy user
-   */
-  private synchronized UserGroupInformation getProxiedUser(final String userToProxy)
-      throws TokenServiceException {
-    UserGroupInformation ugi = this.userUgiCache.get(userToProxy);
-    if (ugi == null) {
-      LOG.info("proxy user " + userToProxy
-          + " not exist. Creating new proxy user");
+      long startTime = System.nanoTime();
       try {
-        ugi =
-            UserGroupInformation.createProxyUser(userToProxy,
-                UserGroupInformation.getLoginUser());
-        LOG.info("ugi username: " + ugi.getUserName());
-      } catch (final IOException e) {
-        throw new TokenServiceException(e.toString(), ErrorCode.FAILED_TO_CREATE_PROXY_USER);
+        nameNodeTokenFetcher.fetchTokens(proxyUser, userToProxy, cred);
+      } finally {
+        Stage.NAMENODE_FETCH.recordSince(startTime);
       }
-      this.userUgiCache.putIfAbsent(userToProxy, ugi);
-    }
-    return ugi;
-  }
-
-  private void fetchNameNodeToken(String userToProxy, Credentials cred) throws IOException {
-    final FileSystem fs = FileSystem.get(TokenFetcherService.this.conf);
-    // check if we get the correct FS, and most importantly, the conf
-    LOG.info("Getting DFS token from " + fs.getUri());
-
-    final Token<?>[] fsTokens =
-        fs.addDelegationTokens(tokenRenewer, cred);
-
-    if (fsTokens.length == 0) {
-      throw new TokenServiceException(
-          "Failed to fetch HDFS token for " + userToProxy, ErrorCode.FAILED_TO_FETCH_HDFS_TOKEN);
-    }
-
-    for (final Token<?> fsToken : fsTokens) {
-      LOG.info(String.format(
-          "DFS token from namenode fetched, token kind: %s, token service: %s",
-          fsToken.getKind(), fsToken.getService()));
     }
-
-    //TODO: getting additional name nodes tokens
-//    if ((nameNodeAddr != null) && (nameNodeAddr.length() > 0)) {
-//      LOG.info("Fetching token(s) for other namenode(s): " + nameNodeAddr);
-//      System.out.println("Fetching token(s) for other namenode(s): " + nameNodeAddr);
-//      final String[] nameNodeArr = nameNodeAddr.split(",");
-//      final Path[] ps = new Path[nameNodeArr.length];
-//      for (int i = 0; i < ps.length; i++) {
-//        ps[i] = new Path(nameNodeArr[i].trim());
-//      }
-//      TokenCache.obtainTokensForNamenodes(cred, ps, this.conf);
-//      LOG.info("Successfully fetched tokens for: " + nameNodeAddr);
-//    } else {
-//      LOG.info(
-//          "Other name node was not configured");
-//    }
   }
 
   /**
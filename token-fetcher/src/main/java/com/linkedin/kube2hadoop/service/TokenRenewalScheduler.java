@@ -0,0 +1,99 @@
+/**
+ * Copyright 2020 LinkedIn Corporation. All rights reserved. Licensed under the BSD-2 Clause license.
+ * See LICENSE in the project root for license information.
+ */
+
+package com.linkedin.kube2hadoop.service;
+
+import com.linkedin.kube2hadoop.cache.TokenCache;
+import java.io.Closeable;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+
+/**
+ * Runs {@code TokenRenewalService} passes when the earliest token in the {@code TokenCache} is due, instead of at a
+ * fixed rate. The scheduler sleeps until the next renewal date (or at most {@code maxPassInterval}), and is woken up
+ * as soon as a token due earlier than that is added.
+ */
+public class TokenRenewalScheduler implements Runnable, Closeable {
+  private static final Log LOG = LogFactory.getLog(TokenRenewalScheduler.class);
+  private final TokenCache tokenCache;
+  private final Runnable renewalPass;
+  private final long maxPassInterval;
+
+  private final Object lock = new Object();
+  private volatile long wakeUpDate = Long.MAX_VALUE;
+  private boolean wokenUp = false;
+  private volatile boolean running = true;
+  private Thread schedulerThread;
+
+  public TokenRenewalScheduler(TokenCache tokenCache, Runnable renewalPass, long maxPassInterval) {
+    this.tokenCache = tokenCache;
+    this.renewalPass = renewalPass;
+    this.maxPassInterval = maxPassInterval;
+  }
+
+  public void start() {
+    schedulerThread = new Thread(this, "token-renewal-scheduler");
+    schedulerThread.setDaemon(true);
+    schedulerThread.start();
+  }
+
+  @Override
+  public void run() {
+    while (running) {
+      try {
+        renewalPass.run();
+      } catch (RuntimeException ex) {
+        LOG.error("Token renewal pass failed", ex);
+      }
+
+      try {
+        awaitNextRenewal();
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+    }
+  }
+
+  /**
+   * Notify the scheduler that a token was scheduled for renewal at {@code renewalDate}. Wakes the scheduler up if it
+   * was sleeping past that date.
+   * @param renewalDate renewal date of the new token in milliseconds
+   */
+  public void onTokenScheduled(long renewalDate) {
+    // Cheap volatile check first so that request threads rarely touch the lock
+    if (renewalDate < wakeUpDate) {
+      synchronized (lock) {
+        if (renewalDate < wakeUpDate) {
+          wokenUp = true;
+          lock.notifyAll();
+        }
+      }
+    }
+  }
+
+  private void awaitNextRenewal() throws InterruptedException {
+    synchronized (lock) {
+      long now = System.currentTimeMillis();
+      wakeUpDate = Math.min(tokenCache.getNextRenewalDate(), now + maxPassInterval);
+      while (running && !wokenUp && now < wakeUpDate) {
+        lock.wait(wakeUpDate - now);
+        now = System.currentTimeMillis();
+      }
+      wokenUp = false;
+      // Tokens added while a pass is running will wake the next wait up immediately
+      wakeUpDate = Long.MAX_VALUE;
+    }
+  }
+
+  @Override
+  public void close() {
+    running = false;
+    synchronized (lock) {
+      lock.notifyAll();
+    }
+  }
+}
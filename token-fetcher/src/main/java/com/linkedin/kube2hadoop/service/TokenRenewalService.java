@@ -5,12 +5,24 @@
 
 package com.linkedin.kube2hadoop.service;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.linkedin.kube2hadoop.cache.TokenCache;
 import com.linkedin.kube2hadoop.cache.TokenInfo;
+import com.linkedin.kube2hadoop.core.conf.ConfigurationKeys;
+import com.linkedin.kube2hadoop.core.metrics.PrometheusMetrics;
 import java.io.IOException;
 import java.security.PrivilegedExceptionAction;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
-import java.util.TimerTask;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
@@ -19,34 +31,146 @@ import org.apache.hadoop.security.token.SecretManager;
 
 
 /**
- * Token Renewal Task that runs in a scheduled interval
+ * Token Renewal Task, run by {@code TokenRenewalScheduler} whenever tokens are due for renewal.
+ * Due tokens are renewed in parallel on a bounded worker pool. Tokens are grouped by the NameNode (token service)
+ * that issued them, and at most a configured number of workers renew tokens against the same NameNode at a time.
  */
-public class TokenRenewalService extends TimerTask {
+public class TokenRenewalService implements Runnable {
   private static final Log LOG = LogFactory.getLog(TokenRenewalService.class);
   private Configuration conf;
   private TokenCache tokenCache;
+  private ExecutorService renewalExecutor;
+  private int maxConcurrencyPerNameNode;
+  private long retryInterval;
+
+  private final LongAdder renewedTokens = new LongAdder();
+  private final LongAdder failedRenewals = new LongAdder();
+  private final LongAdder invalidTokens = new LongAdder();
+  private final LongAdder fencedRenewals = new LongAdder();
+  private final LongAdder expiredTokens = new LongAdder();
+  private volatile long lastPassDurationInMilliseconds = 0L;
+  private volatile int lastPassTokenCount = 0;
 
   public TokenRenewalService(Configuration conf, TokenCache tokenCache) {
     this.conf = conf;
     this.tokenCache = tokenCache;
+
+    int renewerThreads = conf.getInt(ConfigurationKeys.KUBE2HADOOP_RENEWER_THREADS,
+        ConfigurationKeys.DEFAULT_KUBE2HADOOP_RENEWER_THREADS);
+    maxConcurrencyPerNameNode = Math.max(1, conf.getInt(
+        ConfigurationKeys.KUBE2HADOOP_RENEWER_MAX_CONCURRENCY_PER_NAMENODE,
+        ConfigurationKeys.DEFAULT_KUBE2HADOOP_RENEWER_MAX_CONCURRENCY_PER_NAMENODE));
+    retryInterval = conf.getLong(ConfigurationKeys.KUBE2HADOOP_RENEWER_RETRY_INTERVAL_IN_MILLISECONDS,
+        ConfigurationKeys.DEFAULT_KUBE2HADOOP_RENEWER_RETRY_INTERVAL_IN_MILLISECONDS);
+    renewalExecutor = Executors.newFixedThreadPool(renewerThreads,
+        new ThreadFactoryBuilder().setDaemon(true).setNameFormat("token-renewer-%d").build());
+
+    PrometheusMetrics metrics = PrometheusMetrics.getInstance();
+    metrics.counter("kube2hadoop_renewer_renewed_tokens_total", "Tokens renewed", this::getRenewedTokenCount);
+    metrics.counter("kube2hadoop_renewer_failed_renewals_total", "Token renewals failed and retried later",
+        this::getFailedRenewalCount);
+    metrics.counter("kube2hadoop_renewer_invalid_tokens_total", "Tokens removed from cache as invalid",
+        this::getInvalidTokenCount);
+    metrics.counter("kube2hadoop_renewer_fenced_renewals_total", "Token renewals skipped after losing the token "
+        + "to another replica", this::getFencedRenewalCount);
+    metrics.counter("kube2hadoop_renewer_expired_tokens_total", "Tokens removed from cache at their max date",
+        this::getExpiredTokenCount);
+    metrics.gauge("kube2hadoop_renewer_last_pass_duration_milliseconds", "Duration of the last renewal pass",
+        this::getLastPassDurationInMilliseconds);
+    metrics.gauge("kube2hadoop_renewer_last_pass_tokens", "Tokens renewed in the last renewal pass",
+        this::getLastPassTokenCount);
   }
 
+  /**
+   * Renew all due tokens and wait for the renewals to finish, so that consecutive passes never overlap.
+   */
+  @Override
   public void run() {
+    long passStartTime = System.currentTimeMillis();
     List<TokenInfo> tokensToRenew = tokenCache.getTokensForRenewal();
     LOG.info("TokenRenewalService finished scanning, found " + tokensToRenew.size() + " tokens to renew.");
+
+    // Group due tokens by NameNode, and drain each group with a bounded number of workers
+    Map<String, Queue<TokenInfo>> tokensByNameNode = new HashMap<>();
     for (TokenInfo tokenInfo : tokensToRenew) {
+      tokensByNameNode.computeIfAbsent(getNameNode(tokenInfo), k -> new ConcurrentLinkedQueue<>()).add(tokenInfo);
+    }
+
+    List<Future<?>> workers = new ArrayList<>();
+    for (Queue<TokenInfo> tokens : tokensByNameNode.values()) {
+      int workerCount = Math.min(maxConcurrencyPerNameNode, tokens.size());
+      for (int i = 0; i < workerCount; i++) {
+        workers.add(renewalExecutor.submit(() -> renewAll(tokens)));
+      }
+    }
+
+    for (Future<?> worker : workers) {
       try {
-        renewDelegationToken(tokenInfo);
-        LOG.debug("Successfully renewed token for user: " + tokenInfo.getTokenOwner());
-      } catch (SecretManager.InvalidToken ex) {
-        LOG.info("Unable to further renew token for user: " + tokenInfo.getTokenOwner()
-            + ", token is invalid. " + ex.getMessage());
-        // Remove invalid token
-        tokenCache.removeToken(tokenInfo);
-      } catch (Exception ex) {
-        LOG.error("Unable to renew token for user: " + tokenInfo.getTokenOwner(), ex);
+        worker.get();
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        LOG.warn("Interrupted while waiting for token renewals to finish");
+        break;
+      } catch (ExecutionException ex) {
+        LOG.error("Token renewal worker failed", ex.getCause());
       }
     }
+
+    lastPassTokenCount = tokensToRenew.size();
+    lastPassDurationInMilliseconds = System.currentTimeMillis() - passStartTime;
+    if (!tokensToRenew.isEmpty()) {
+      LOG.info("TokenRenewalService renewed " + lastPassTokenCount + " tokens against " + tokensByNameNode.size()
+          + " NameNodes in " + lastPassDurationInMilliseconds + "ms ("
+          + lastPassTokenCount * 1000L / Math.max(1L, lastPassDurationInMilliseconds) + " tokens/s)");
+    }
+  }
+
+  /**
+   * Stop the renewal workers. Renewals in flight are interrupted.
+   */
+  public void shutdown() {
+    renewalExecutor.shutdownNow();
+  }
+
+  private void renewAll(Queue<TokenInfo> tokens) {
+    for (TokenInfo tokenInfo = tokens.poll(); tokenInfo != null; tokenInfo = tokens.poll()) {
+      renew(tokenInfo);
+    }
+  }
+
+  private void renew(TokenInfo tokenInfo) {
+    if (!tokenCache.canRenew(tokenInfo)) {
+      fencedRenewals.increment();
+      // Left out of the renewal schedule, the token is dropped from this cache along with its ownership
+      LOG.debug("Skipping renewal of token for user: " + tokenInfo.getTokenOwner() + ", renewed by another replica");
+      return;
+    }
+    if (tokenInfo.isPastMaxDate(System.currentTimeMillis())) {
+      expiredTokens.increment();
+      // The NameNode rejects renewals past the max date, no need to ask
+      LOG.info("Unable to further renew token for user: " + tokenInfo.getTokenOwner() + ", token reached its max date");
+      tokenCache.removeToken(tokenInfo);
+      return;
+    }
+    try {
+      renewDelegationToken(tokenInfo);
+      renewedTokens.increment();
+      LOG.debug("Successfully renewed token for user: " + tokenInfo.getTokenOwner());
+    } catch (SecretManager.InvalidToken ex) {
+      invalidTokens.increment();
+      LOG.info("Unable to further renew token for user: " + tokenInfo.getTokenOwner()
+          + ", token is invalid. " + ex.getMessage());
+      // Remove invalid token
+      tokenCache.removeToken(tokenInfo);
+    } catch (Exception ex) {
+      failedRenewals.increment();
+      LOG.error("Unable to renew token for user: " + tokenInfo.getTokenOwner(), ex);
+      long now = System.currentTimeMillis();
+      tokenInfo.deferRenewal(now + retryInterval, now);
+    } finally {
+      // No-op for tokens removed above
+      tokenCache.rescheduleToken(tokenInfo);
+    }
   }
 
   private void renewDelegationToken(TokenInfo tokenInfo) throws IOException, InterruptedException {
@@ -61,4 +185,42 @@ public class TokenRenewalService extends TimerTask {
       }
     });
   }
+
+  /**
+   * NameNode that issued the token, as recorded in the token service (e.g. host:port or ha-hdfs:nameservice)
+   */
+  static String getNameNode(TokenInfo tokenInfo) {
+    if (tokenInfo.getToken() == null || tokenInfo.getToken().getService() == null) {
+      return "";
+    }
+    return tokenInfo.getToken().getService().toString();
+  }
+
+  public long getRenewedTokenCount() {
+    return renewedTokens.sum();
+  }
+
+  public long getFailedRenewalCount() {
+    return failedRenewals.sum();
+  }
+
+  public long getInvalidTokenCount() {
+    return invalidTokens.sum();
+  }
+
+  public long getFencedRenewalCount() {
+    return fencedRenewals.sum();
+  }
+
+  public long getExpiredTokenCount() {
+    return expiredTokens.sum();
+  }
+
+  public long getLastPassDurationInMilliseconds() {
+    return lastPassDurationInMilliseconds;
+  }
+
+  public int getLastPassTokenCount() {
+    return lastPassTokenCount;
+  }
 }
@@ -0,0 +1,212 @@
+/**
+ * Copyright 2020 LinkedIn Corporation. All rights reserved. Licensed under the BSD-2 Clause license.
+ * See LICENSE in the project root for license information.
+ */
+
+package com.linkedin.kube2hadoop.servlets;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.linkedin.kube2hadoop.core.Constants;
+import com.linkedin.kube2hadoop.core.ErrorCode;
+import com.linkedin.kube2hadoop.core.TokenServiceException;
+import com.linkedin.kube2hadoop.core.Utils;
+import com.linkedin.kube2hadoop.core.conf.ConfigurationKeys;
+import com.linkedin.kube2hadoop.core.metrics.Counter;
+import com.linkedin.kube2hadoop.core.metrics.PrometheusMetrics;
+import com.linkedin.kube2hadoop.service.TokenFetcherService;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.ws.rs.core.MediaType;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.util.MachineList;
+
+
+/**
+ * Jetty servlet for batch getDelegationToken calls, made by launchers and operators on behalf of the pods they start.
+ * The request body lists the pods, with the token kinds shared by all of them:
+ * <pre>
+ *   {"token-kinds": ["HDFS_DELEGATION_TOKEN"], "pods": [{"namespace": "ns", "pod-name": "pod-0"}, ...]}
+ * </pre>
+ * and the response streams one JSON object per line and per pod, with either its {@code Token} or its
+ * {@code ErrorCode}, in the order the results become available.
+ * Since the caller is not the pod, only callers listed in {@code kube2hadoop.batch.allowed-callers} are served.
+ * Tokens are fetched once per group of pods sharing namespace, proxy user and token kinds, one group after the other on
+ * the request thread, so {@code kube2hadoop.batch.max-pods} bounds how long a request holds a Jetty thread: up to one
+ * NameNode fetch timeout per group, and per pod whose shared tokens were released before they were handed out.
+ */
+public class BatchGetDelegationTokenServlet extends HttpServlet {
+  public static final Log LOG = LogFactory.getLog(BatchGetDelegationTokenServlet.class);
+  private static final JsonFactory JSON_FACTORY = new JsonFactory();
+  private static final String NDJSON = "application/x-ndjson";
+  private static final Counter REQUESTS = PrometheusMetrics.getInstance().counter("kube2hadoop_requests_total",
+      "Requests received, by endpoint", "endpoint", "batchGetDelegationToken");
+  private static final Counter BATCH_PODS = PrometheusMetrics.getInstance().counter("kube2hadoop_batch_pods_total",
+      "Pods requested through batch requests");
+
+  private final Configuration conf;
+  private final MachineList allowedCallers;
+  private final int maxPods;
+
+  public BatchGetDelegationTokenServlet(final Configuration conf) {
+    this.conf = conf;
+    this.allowedCallers = new MachineList(conf.getTrimmed(ConfigurationKeys.KUBE2HADOOP_BATCH_ALLOWED_CALLERS, ""));
+    this.maxPods = conf.getInt(ConfigurationKeys.KUBE2HADOOP_BATCH_MAX_PODS,
+        ConfigurationKeys.DEFAULT_KUBE2HADOOP_BATCH_MAX_PODS);
+  }
+
+  protected void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    REQUESTS.increment();
+    long requestStartTime = System.currentTimeMillis();
+    String srcIP = request.getRemoteAddr();
+    if (!allowedCallers.includes(srcIP)) {
+      LOG.error("Rejecting batch request from caller " + srcIP + " not in "
+          + ConfigurationKeys.KUBE2HADOOP_BATCH_ALLOWED_CALLERS);
+      writeErrorResponse(response, HttpServletResponse.SC_FORBIDDEN, ErrorCode.BATCH_CALLER_NOT_ALLOWED);
+      return;
+    }
+
+    List<Map<String, String[]>> batch;
+    try {
+      batch = parseBatch(request.getReader());
+    } catch (IOException | TokenServiceException ex) {
+      LOG.error("Invalid batch request from caller " + srcIP + ": " + ex.getMessage());
+      writeErrorResponse(response, HttpServletResponse.SC_BAD_REQUEST, ErrorCode.INVALID_PARAMS);
+      return;
+    }
+    if (batch.size() > maxPods) {
+      LOG.error("Rejecting batch request from caller " + srcIP + " for " + batch.size() + " pods, more than "
+          + maxPods);
+      writeErrorResponse(response, HttpServletResponse.SC_BAD_REQUEST, ErrorCode.INVALID_PARAMS);
+      return;
+    }
+    LOG.info("Received batch request from caller " + srcIP + " for " + batch.size() + " pods");
+    BATCH_PODS.add(batch.size());
+
+    response.setContentType(NDJSON);
+    response.setStatus(HttpServletResponse.SC_OK);
+    try (JsonGenerator generator = JSON_FACTORY.createGenerator(response.getWriter())) {
+      generator.setRootValueSeparator(new SerializedString("\n"));
+      TokenFetcherService.getInstance(conf).getDelegationTokens(batch, new TokenFetcherService.BatchResultHandler() {
+        @Override
+        public void onToken(int index, String tokenStr) {
+          writeResult(generator, batch.get(index), "Token", tokenStr);
+        }
+
+        @Override
+        public void onError(int index, TokenServiceException error) {
+          LOG.error("Unable to fetch token for pod " + batch.get(index).get(Constants.POD_NAME)[0]
+              + " due to error " + error.getErrorCode() + ": " + error.getErrorMsg());
+          PrometheusMetrics.getInstance().recordError(error.getErrorCode());
+          writeResult(generator, batch.get(index), "ErrorCode", Integer.toString(error.getErrorCode()));
+        }
+      });
+      generator.writeRaw('\n');
+    } catch (UncheckedIOException ex) {
+      throw ex.getCause();
+    }
+
+    LOG.info("Tokens fetched for batch of " + batch.size() + " pods from caller " + srcIP + " in "
+        + (System.currentTimeMillis() - requestStartTime) + "ms");
+  }
+
+  /**
+   * Parse the batch request body into the parameters of each pod, as they would be given to getDelegationToken.
+   */
+  static List<Map<String, String[]>> parseBatch(Reader body) throws IOException {
+    String[] tokenKinds = new String[]{Constants.HDFS_DELEGATION_TOKEN};
+    List<Map<String, String[]>> batch = new ArrayList<>();
+    try (JsonParser parser = JSON_FACTORY.createParser(body)) {
+      expect(parser.nextToken(), JsonToken.START_OBJECT);
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        String field = parser.getCurrentName();
+        if (Constants.TOKEN_KINDS.equals(field)) {
+          tokenKinds = parseStringArray(parser);
+        } else if (Constants.PODS.equals(field)) {
+          expect(parser.nextToken(), JsonToken.START_ARRAY);
+          while (parser.nextToken() == JsonToken.START_OBJECT) {
+            batch.add(parsePod(parser));
+          }
+          expect(parser.getCurrentToken(), JsonToken.END_ARRAY);
+        } else {
+          parser.nextToken();
+          parser.skipChildren();
+        }
+      }
+      expect(parser.getCurrentToken(), JsonToken.END_OBJECT);
+    }
+
+    for (Map<String, String[]> params : batch) {
+      params.put(Constants.TOKEN_KINDS, tokenKinds);
+    }
+    return batch;
+  }
+
+  private static Map<String, String[]> parsePod(JsonParser parser) throws IOException {
+    Map<String, String[]> params = new HashMap<>();
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String field = parser.getCurrentName();
+      expect(parser.nextToken(), JsonToken.VALUE_STRING);
+      if (Constants.NAMESPACE.equals(field) || Constants.POD_NAME.equals(field)) {
+        params.put(field, new String[]{parser.getText()});
+      }
+    }
+    if (!params.containsKey(Constants.NAMESPACE) || !params.containsKey(Constants.POD_NAME)) {
+      throw new TokenServiceException("Pod entry without namespace or pod name", ErrorCode.INVALID_PARAMS);
+    }
+    return params;
+  }
+
+  private static String[] parseStringArray(JsonParser parser) throws IOException {
+    List<String> values = new ArrayList<>();
+    expect(parser.nextToken(), JsonToken.START_ARRAY);
+    while (parser.nextToken() == JsonToken.VALUE_STRING) {
+      values.add(parser.getText());
+    }
+    expect(parser.getCurrentToken(), JsonToken.END_ARRAY);
+    return values.toArray(new String[0]);
+  }
+
+  private static void expect(JsonToken actual, JsonToken expected) {
+    if (actual != expected) {
+      throw new TokenServiceException("Expected " + expected + " but found " + actual, ErrorCode.INVALID_PARAMS);
+    }
+  }
+
+  /**
+   * Write the result for one pod and flush it, so the caller can hand it to the pod right away.
+   */
+  private static void writeResult(JsonGenerator generator, Map<String, String[]> params, String key, String value) {
+    try {
+      generator.writeStartObject();
+      generator.writeStringField(Constants.NAMESPACE, params.get(Constants.NAMESPACE)[0]);
+      generator.writeStringField(Constants.POD_NAME, params.get(Constants.POD_NAME)[0]);
+      generator.writeStringField(key, value);
+      generator.writeEndObject();
+      generator.flush();
+    } catch (IOException ex) {
+      throw new UncheckedIOException(ex);
+    }
+  }
+
+  private static void writeErrorResponse(HttpServletResponse response, int status, ErrorCode errorCode)
+      throws IOException {
+    PrometheusMetrics.getInstance().recordError(errorCode.getCode());
+    response.setContentType(MediaType.APPLICATION_JSON);
+    response.setStatus(status);
+    response.getWriter().println(Utils.genJsonString("ErrorCode", Integer.toString(errorCode.getCode())));
+  }
+}
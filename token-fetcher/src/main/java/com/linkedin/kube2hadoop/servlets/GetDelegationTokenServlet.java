@@ -5,14 +5,28 @@
 
 package com.linkedin.kube2hadoop.servlets;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.linkedin.kube2hadoop.core.Constants;
 import com.linkedin.kube2hadoop.core.ErrorCode;
 import com.linkedin.kube2hadoop.core.TokenServiceException;
 import com.linkedin.kube2hadoop.core.Utils;
+import com.linkedin.kube2hadoop.core.conf.ConfigurationKeys;
+import com.linkedin.kube2hadoop.core.metrics.Counter;
+import com.linkedin.kube2hadoop.core.metrics.PrometheusMetrics;
+import com.linkedin.kube2hadoop.core.metrics.Stage;
 import com.linkedin.kube2hadoop.service.TokenFetcherService;
 import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -23,21 +37,51 @@ import org.apache.hadoop.conf.Configuration;
 
 
 /**
- * Jetty servlet for getDelegationToken calls
+ * Jetty servlet for getDelegationToken calls.
+ * When {@code kube2hadoop.async.enabled} is set, requests are put in asynchronous mode and completed by a dedicated
+ * pool of workers, so the Jetty thread is returned immediately. The number of pending requests is capped, and requests
+ * that are not completed within the request timeout are answered with {@code ErrorCode.REQUEST_TIMEOUT}.
  */
 public class GetDelegationTokenServlet extends HttpServlet {
   public static final Log LOG = LogFactory.getLog(GetDelegationTokenServlet.class);
+  private static final Counter REQUESTS = PrometheusMetrics.getInstance().counter("kube2hadoop_requests_total",
+      "Requests received, by endpoint", "endpoint", "getDelegationToken");
   private final Configuration conf;
+  private ExecutorService asyncExecutor;
+  private Semaphore inFlightRequests;
+  private long asyncRequestTimeout;
 
 
   public GetDelegationTokenServlet(final Configuration conf) {
     this.conf = conf;
+    if (conf.getBoolean(ConfigurationKeys.KUBE2HADOOP_ASYNC_ENABLED,
+        ConfigurationKeys.DEFAULT_KUBE2HADOOP_ASYNC_ENABLED)) {
+      int asyncThreads = conf.getInt(ConfigurationKeys.KUBE2HADOOP_ASYNC_THREADS,
+          ConfigurationKeys.DEFAULT_KUBE2HADOOP_ASYNC_THREADS);
+      asyncExecutor = Executors.newFixedThreadPool(asyncThreads,
+          new ThreadFactoryBuilder().setDaemon(true).setNameFormat("get-delegation-token-%d").build());
+      int maxInFlightRequests = conf.getInt(ConfigurationKeys.KUBE2HADOOP_ASYNC_MAX_IN_FLIGHT_REQUESTS,
+          ConfigurationKeys.DEFAULT_KUBE2HADOOP_ASYNC_MAX_IN_FLIGHT_REQUESTS);
+      inFlightRequests = new Semaphore(maxInFlightRequests);
+      PrometheusMetrics.getInstance().gauge("kube2hadoop_async_in_flight_requests",
+          "Asynchronous getDelegationToken requests being processed",
+          () -> maxInFlightRequests - inFlightRequests.availablePermits());
+      asyncRequestTimeout = conf.getLong(ConfigurationKeys.KUBE2HADOOP_ASYNC_REQUEST_TIMEOUT_IN_MILLISECONDS,
+          ConfigurationKeys.DEFAULT_KUBE2HADOOP_ASYNC_REQUEST_TIMEOUT_IN_MILLISECONDS);
+    }
   }
 
+  /**
+   * @return whether requests are handled asynchronously, in which case the servlet must be registered with async
+   *  support
+   */
+  public boolean isAsyncEnabled() {
+    return asyncExecutor != null;
+  }
 
   protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
-    // TODO: move to metrics
-    long requestStartTime = System.currentTimeMillis();
+    REQUESTS.increment();
+    long requestStartTime = System.nanoTime();
 
     Map<String, String[]> params = new HashMap<>(request.getParameterMap());
     params.put(Constants.SRCIP, new String[]{getSrcIP(request)});
@@ -50,32 +94,158 @@ public class GetDelegationTokenServlet extends HttpServlet {
         + podName + ", to get delegation token for token kinds: "
         + (tokenKinds == null ? Constants.HDFS_DELEGATION_TOKEN : String.join(",", tokenKinds)));
 
+    if (isAsyncEnabled()) {
+      handleRequestAsync(request, response, params, podName, requestStartTime);
+    } else {
+      handleRequest(response, params, podName, requestStartTime);
+    }
+  }
+
+  private void handleRequest(HttpServletResponse response, Map<String, String[]> params, String podName,
+      long requestStartTime) throws IOException {
     TokenFetcherService tfsInstance = TokenFetcherService.getInstance(conf);
     try {
       String tokenStr = tfsInstance.getDelegationTokens(params);
-
-      // compose response
-      response.setContentType(MediaType.APPLICATION_JSON);
-      response.setStatus(HttpServletResponse.SC_OK);
-      response.getWriter().println(Utils.genJsonString("Token", tokenStr));
-
-      long requestEndTime = System.currentTimeMillis();
-      LOG.info("Tokens fetched for pod: " + podName + " in " + (requestEndTime - requestStartTime) + "ms");
+      writeTokenResponse(response, tokenStr, podName, requestStartTime);
     } catch (TokenServiceException tse) {
       LOG.error("Unable to fetch token due to error " + tse.getErrorCode() + ": " + tse.getErrorMsg());
 
       // throw {@code TokenServiceException} to fail Token Service when Kubernetes Watch breaks
       if (tse.getErrorCode() == ErrorCode.KUBERNETES_WATCH_EXCEPTION.getCode()) {
+        PrometheusMetrics.getInstance().recordError(tse.getErrorCode());
         throw new TokenServiceException(tse.getErrorMsg(), ErrorCode.KUBERNETES_WATCH_EXCEPTION);
       }
 
       // compose response with ErrorCode
-      response.setContentType(MediaType.APPLICATION_JSON);
-      response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
-      response.getWriter().println(Utils.genJsonString("ErrorCode", Integer.toString(tse.getErrorCode())));
+      writeErrorResponse(response, HttpServletResponse.SC_BAD_REQUEST, tse.getErrorCode());
+    } finally {
+      Stage.REQUEST.recordSince(requestStartTime);
     }
   }
 
+  /**
+   * Start asynchronous processing of the request and hand it off to {@code asyncExecutor}. Whichever of the worker
+   * and the timeout listener first claims {@code responded} writes the response.
+   */
+  private void handleRequestAsync(HttpServletRequest request, HttpServletResponse response,
+      Map<String, String[]> params, String podName, long requestStartTime) throws IOException {
+    if (!inFlightRequests.tryAcquire()) {
+      LOG.warn("Rejecting request from pod: " + podName + ", too many requests in flight");
+      writeErrorResponse(response, HttpServletResponse.SC_SERVICE_UNAVAILABLE, ErrorCode.TOO_MANY_REQUESTS.getCode());
+      Stage.REQUEST.recordSince(requestStartTime);
+      return;
+    }
+
+    AsyncContext asyncContext = request.startAsync();
+    asyncContext.setTimeout(asyncRequestTimeout);
+    AtomicBoolean responded = new AtomicBoolean(false);
+    asyncContext.addListener(new AsyncListener() {
+      @Override
+      public void onTimeout(AsyncEvent event) throws IOException {
+        if (responded.compareAndSet(false, true)) {
+          LOG.error("Request from pod: " + podName + " timed out after " + asyncRequestTimeout + "ms");
+          writeErrorResponse((HttpServletResponse) event.getSuppliedResponse(),
+              HttpServletResponse.SC_GATEWAY_TIMEOUT, ErrorCode.REQUEST_TIMEOUT.getCode());
+          event.getAsyncContext().complete();
+          Stage.REQUEST.recordSince(requestStartTime);
+        }
+      }
+
+      @Override
+      public void onComplete(AsyncEvent event) {
+      }
+
+      @Override
+      public void onError(AsyncEvent event) {
+      }
+
+      @Override
+      public void onStartAsync(AsyncEvent event) {
+      }
+    });
+
+    try {
+      asyncExecutor.submit(() -> {
+        try {
+          completeRequest(asyncContext, params, podName, requestStartTime, responded);
+        } finally {
+          inFlightRequests.release();
+        }
+      });
+    } catch (RejectedExecutionException ex) {
+      inFlightRequests.release();
+      if (responded.compareAndSet(false, true)) {
+        writeErrorResponse(response, HttpServletResponse.SC_SERVICE_UNAVAILABLE, ErrorCode.TOO_MANY_REQUESTS.getCode());
+        asyncContext.complete();
+        Stage.REQUEST.recordSince(requestStartTime);
+      }
+    }
+  }
+
+  private void completeRequest(AsyncContext asyncContext, Map<String, String[]> params, String podName,
+      long requestStartTime, AtomicBoolean responded) {
+    // Skip requests that timed out while waiting in the queue
+    if (responded.get()) {
+      return;
+    }
+
+    String tokenStr = null;
+    TokenServiceException error = null;
+    try {
+      tokenStr = TokenFetcherService.getInstance(conf).getDelegationTokens(params);
+    } catch (TokenServiceException tse) {
+      LOG.error("Unable to fetch token due to error " + tse.getErrorCode() + ": " + tse.getErrorMsg());
+      error = tse;
+    } catch (RuntimeException ex) {
+      // Answered here, the async context would otherwise stay open until the request timeout
+      LOG.error("Unexpected error while fetching token for pod: " + podName, ex);
+      error = new TokenServiceException(ex.toString(), ErrorCode.INTERNAL_ERROR);
+    }
+
+    if (!responded.compareAndSet(false, true)) {
+      LOG.warn("Dropping response to pod: " + podName + ", request already timed out");
+      return;
+    }
+
+    HttpServletResponse response = (HttpServletResponse) asyncContext.getResponse();
+    try {
+      if (error == null) {
+        writeTokenResponse(response, tokenStr, podName, requestStartTime);
+      } else if (error.getErrorCode() == ErrorCode.KUBERNETES_WATCH_EXCEPTION.getCode()) {
+        // Same outcome as the exception thrown out of the synchronous path
+        PrometheusMetrics.getInstance().recordError(error.getErrorCode());
+        response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, error.getErrorMsg());
+      } else if (error.getErrorCode() == ErrorCode.INTERNAL_ERROR.getCode()) {
+        writeErrorResponse(response, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, error.getErrorCode());
+      } else {
+        writeErrorResponse(response, HttpServletResponse.SC_BAD_REQUEST, error.getErrorCode());
+      }
+    } catch (IOException ex) {
+      LOG.error("Failed to write response to pod: " + podName, ex);
+    } finally {
+      asyncContext.complete();
+      Stage.REQUEST.recordSince(requestStartTime);
+    }
+  }
+
+  private static void writeTokenResponse(HttpServletResponse response, String tokenStr, String podName,
+      long requestStartTime) throws IOException {
+    // compose response
+    response.setContentType(MediaType.APPLICATION_JSON);
+    response.setStatus(HttpServletResponse.SC_OK);
+    response.getWriter().println(Utils.genJsonString("Token", tokenStr));
+
+    LOG.info("Tokens fetched for pod: " + podName + " in "
+        + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - requestStartTime) + "ms");
+  }
+
+  private static void writeErrorResponse(HttpServletResponse response, int status, int errorCode) throws IOException {
+    PrometheusMetrics.getInstance().recordError(errorCode);
+    response.setContentType(MediaType.APPLICATION_JSON);
+    response.setStatus(status);
+    response.getWriter().println(Utils.genJsonString("ErrorCode", Integer.toString(errorCode)));
+  }
+
   private String getSrcIP(HttpServletRequest request) {
     return request.getRemoteAddr();
   }
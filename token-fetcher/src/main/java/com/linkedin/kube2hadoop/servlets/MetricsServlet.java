@@ -5,35 +5,22 @@
 
 package com.linkedin.kube2hadoop.servlets;
 
-//import com.linkedin.kube2hadoop.core.metrics.PrometheusMetrics;
-//import com.linkedin.kube2hadoop.core.metrics.ServletMetric;
-import com.linkedin.kube2hadoop.core.Utils;
+import com.linkedin.kube2hadoop.core.metrics.PrometheusMetrics;
 import java.io.IOException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 
+/**
+ * Exposes the server metrics in the Prometheus text format: request rate, errors by {@code ErrorCode}, latency
+ * histograms for each stage of token requests, and the state of the caches and of the token renewer.
+ */
 public class MetricsServlet extends HttpServlet {
 
   protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
-    // TODO:  display collected metrics in Prometheus format
-    response.setContentType("application/json");
+    response.setContentType(PrometheusMetrics.CONTENT_TYPE);
     response.setStatus(HttpServletResponse.SC_OK);
-    response.getWriter().println(Utils.genStatusJsonString("ok"));
-  }
-
-//  private void registerMetricsByClass(Class metricClass) {
-//    ServletMetric metrics;
-//  }
-
-  // TODO: Collect metrics and display in Prometheus format
-  private static String getPrometheusMetrics() {
-//    ServletMetric metrics = GetDelegationTokenServlet.getMetrics();
-//    PrometheusMetrics prometheusMetrics = new PrometheusMetrics();
-//    prometheusMetrics.updateMetrics();
-
-//    return prometheusMetrics.toString();
-    return null;
+    PrometheusMetrics.getInstance().write(response.getWriter());
   }
 }
@@ -7,19 +7,25 @@ package com.linkedin.kube2hadoop.authenticator;
 
 import com.google.common.collect.ImmutableMap;
 import com.linkedin.kube2hadoop.core.Constants;
+import com.linkedin.kube2hadoop.core.ErrorCode;
 import com.linkedin.kube2hadoop.core.TokenServiceException;
 import com.linkedin.kube2hadoop.core.conf.ConfigurationKeys;
 import io.kubernetes.client.ApiException;
+import io.kubernetes.client.ApiResponse;
+import io.kubernetes.client.apis.CoreV1Api;
 import io.kubernetes.client.models.V1ObjectMeta;
+import io.kubernetes.client.models.V1OwnerReference;
 import io.kubernetes.client.models.V1Pod;
 import io.kubernetes.client.models.V1PodStatus;
 import io.kubernetes.client.util.Watch;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import org.apache.commons.lang3.tuple.ImmutablePair;
-import org.apache.commons.lang3.tuple.Pair;
+import java.util.concurrent.CopyOnWriteArrayList;
 import org.apache.hadoop.conf.Configuration;
 import org.testng.Assert;
 import org.testng.annotations.BeforeMethod;
@@ -44,9 +50,24 @@ public class TestKubernetesAuthenticator {
     when(authenticator.checkAgainstBlacklist(any())).thenCallRealMethod();
     when(authenticator.getBlackListedSuperUsers(any())).thenCallRealMethod();
     doCallRealMethod().when(authenticator).setWatchCache(any());
+    doCallRealMethod().when(authenticator).setRetainedAnnotations(any());
     doCallRealMethod().when(authenticator).updateWatchCache(any());
+    doCallRealMethod().when(authenticator).addOrUpdatePod(any());
+    doCallRealMethod().when(authenticator).replaceNamespaceCache(any(), any(), any());
+    doCallRealMethod().when(authenticator).deleteFromWatchCache(any());
+    doCallRealMethod().when(authenticator).removeNamespaceCache(any());
+    doCallRealMethod().when(authenticator).replaceWatchedNamespaceCaches(any(), any());
+    doCallRealMethod().when(authenticator).setApi(any());
+    when(authenticator.getNamespaceCacheSize(any())).thenCallRealMethod();
+    when(authenticator.getPodIPIndex()).thenCallRealMethod();
+    when(authenticator.getPodTerminationListeners()).thenReturn(new CopyOnWriteArrayList<>());
+    doCallRealMethod().when(authenticator).addPodTerminationListener(any());
+    LivePodLookup livePodLookup = new LivePodLookup(authenticator::getPodInfoByNamespaceAndPodName, 1000L, 0, 0,
+        System::currentTimeMillis);
+    when(authenticator.getLivePodLookup()).thenReturn(livePodLookup);
 
     authenticator.setWatchCache(new HashMap<>());
+    authenticator.setRetainedAnnotations(Collections.singleton(Constants.DO_AS));
   }
 
   @Test
@@ -66,11 +87,11 @@ public class TestKubernetesAuthenticator {
 
     authenticator.updateWatchCache(item);
 
-    Map<String, Map<String, Pair<String, Map<String, String>>>> watchCache = authenticator.getWatchCache();
+    Map<String, Map<String, PodMetadata>> watchCache = authenticator.getWatchCache();
     Assert.assertEquals(watchCache.size(), 1);
     Assert.assertEquals(watchCache.get(namespace).size(), 1);
-    Assert.assertEquals(watchCache.get(namespace).get(podName).getValue().get(Constants.KUBERNETES_USER_ID), userID);
-    Assert.assertEquals(watchCache.get(namespace).get(podName).getKey(), podIP);
+    Assert.assertEquals(watchCache.get(namespace).get(podName).getUserID(), userID);
+    Assert.assertEquals(watchCache.get(namespace).get(podName).getPodIP(), podIP);
   }
 
   @Test
@@ -86,16 +107,93 @@ public class TestKubernetesAuthenticator {
     authenticator.updateWatchCache(item);
     authenticator.updateWatchCache(updatedItem);
 
-    Map<String, Map<String, Pair<String, Map<String, String>>>> watchCache = authenticator.getWatchCache();
+    Map<String, Map<String, PodMetadata>> watchCache = authenticator.getWatchCache();
     Assert.assertEquals(watchCache.size(), 1);
     Assert.assertEquals(watchCache.get(namespace).size(), 1);
-    Assert.assertEquals(watchCache.get(namespace).get(podName).getValue().get(Constants.KUBERNETES_USER_ID), userID);
-    Assert.assertEquals(watchCache.get(namespace).get(podName).getKey(), updatedPodIP);
+    Assert.assertEquals(watchCache.get(namespace).get(podName).getUserID(), userID);
+    Assert.assertEquals(watchCache.get(namespace).get(podName).getPodIP(), updatedPodIP);
+  }
+
+  @Test
+  public void testReplaceNamespaceCache() {
+    Map<String, String> annotations = new HashMap<>();
+    annotations.put(Constants.KUBERNETES_USER_ID, userID);
+    authenticator.updateWatchCache(mockWatchResponse("deletedPod", namespace, podIP, annotations));
+
+    V1Pod pod = mockWatchResponse(podName, namespace, podIP, annotations).object;
+    V1Pod podWithoutUserID = mockWatchResponse("otherPod", namespace, podIP, null).object;
+    authenticator.replaceNamespaceCache(namespace, Arrays.asList(pod, podWithoutUserID), "1");
+
+    Map<String, PodMetadata> namespaceCache = authenticator.getWatchCache().get(namespace);
+    Assert.assertEquals(namespaceCache.size(), 1);
+    Assert.assertEquals(namespaceCache.get(podName).getPodIP(), podIP);
+  }
+
+  @Test
+  public void testEvictDeletedAndTerminatedPods() {
+    Map<String, String> annotations = new HashMap<>();
+    annotations.put(Constants.KUBERNETES_USER_ID, userID);
+    Watch.Response<V1Pod> item = mockWatchResponse(podName, namespace, podIP, annotations);
+    Watch.Response<V1Pod> otherItem = mockWatchResponse("otherPod", namespace, podIP, annotations);
+    authenticator.updateWatchCache(item);
+    authenticator.updateWatchCache(otherItem);
+    Assert.assertEquals(authenticator.getNamespaceCacheSize(namespace), 2);
+
+    authenticator.deleteFromWatchCache(item);
+    Assert.assertEquals(authenticator.getNamespaceCacheSize(namespace), 1);
+
+    when(otherItem.object.getStatus().getPhase()).thenReturn(Constants.POD_SUCCEEDED);
+    authenticator.updateWatchCache(otherItem);
+    Assert.assertEquals(authenticator.getNamespaceCacheSize(namespace), 0);
+
+    authenticator.removeNamespaceCache(namespace);
+    Assert.assertFalse(authenticator.getWatchCache().containsKey(namespace));
+  }
+
+  @Test
+  public void testNotifyTerminatedPods() {
+    List<String> terminatedPods = new ArrayList<>();
+    authenticator.addPodTerminationListener((podNamespace, terminatedPod) -> terminatedPods.add(terminatedPod));
+    Map<String, String> annotations = new HashMap<>();
+    annotations.put(Constants.KUBERNETES_USER_ID, userID);
+    Watch.Response<V1Pod> item = mockWatchResponse(podName, namespace, podIP, annotations);
+    Watch.Response<V1Pod> succeededItem = mockWatchResponse("succeededPod", namespace, "10.0.150.1", annotations);
+    authenticator.updateWatchCache(item);
+    authenticator.updateWatchCache(succeededItem);
+    authenticator.updateWatchCache(mockWatchResponse("relistedPod", namespace, "10.0.150.2", annotations));
+    Assert.assertTrue(terminatedPods.isEmpty());
+
+    when(succeededItem.object.getStatus().getPhase()).thenReturn(Constants.POD_SUCCEEDED);
+    authenticator.updateWatchCache(succeededItem);
+    authenticator.deleteFromWatchCache(item);
+    Assert.assertEquals(terminatedPods, Arrays.asList("succeededPod", podName));
+
+    // Pods missing from a relist were deleted while the watch was down
+    authenticator.replaceNamespaceCache(namespace, Collections.emptyList(), null);
+    Assert.assertEquals(terminatedPods, Arrays.asList("succeededPod", podName, "relistedPod"));
+  }
+
+  @Test
+  public void testReplaceWatchedNamespaceCaches() {
+    Map<String, String> annotations = new HashMap<>();
+    annotations.put(Constants.KUBERNETES_USER_ID, userID);
+    String unwatchedNamespace = "unwatchedNamespace";
+    authenticator.updateWatchCache(mockWatchResponse(podName, unwatchedNamespace, podIP, annotations));
+    when(authenticator.getWatchedNamespaces()).thenReturn(new HashSet<>(Arrays.asList(namespace, "emptyNamespace")));
+
+    authenticator.replaceWatchedNamespaceCaches(Arrays.asList(
+        mockWatchResponse(podName, namespace, podIP, annotations).object,
+        mockWatchResponse("otherPod", unwatchedNamespace, podIP, annotations).object), null);
+
+    Assert.assertEquals(authenticator.getWatchCache().keySet(),
+        new HashSet<>(Arrays.asList(namespace, "emptyNamespace")));
+    Assert.assertEquals(authenticator.getNamespaceCacheSize(namespace), 1);
+    Assert.assertEquals(authenticator.getNamespaceCacheSize("emptyNamespace"), 0);
   }
 
   @Test
   public void testGetAuthenticatedUserIDPass() {
-    Map<String, Map<String, Pair<String, Map<String, String>>>> watchCache =
+    Map<String, Map<String, PodMetadata>> watchCache =
         makeWatchCache(podName, namespace, userID, podIP);
     AuthenticatorParameters params = makeAuthenticatorParameters(podName, namespace, podIP);
 
@@ -118,7 +216,7 @@ public class TestKubernetesAuthenticator {
     String fakeSrcIP = "10.0.150.1";
     String realSrcIP = "10.0.150.0";
 
-    Map<String, Map<String, Pair<String, Map<String, String>>>> watchCache =
+    Map<String, Map<String, PodMetadata>> watchCache =
         makeWatchCache(podName, namespace, userID, realSrcIP);
     AuthenticatorParameters params = makeAuthenticatorParameters(podName, namespace, fakeSrcIP);
 
@@ -126,11 +224,189 @@ public class TestKubernetesAuthenticator {
     authenticator.getAuthenticatedUserID(params);
   }
 
+  @Test
+  public void testGetAuthenticatedUserIDBySrcIP() {
+    authenticator.setWatchCache(makeWatchCache(podName, namespace, userID, podIP));
+    AuthenticatorParameters params = makeAuthenticatorParameters(null, null, podIP);
+
+    Assert.assertEquals(authenticator.getAuthenticatedUserID(params), userID);
+    Assert.assertEquals(params.getParamString(Constants.NAMESPACE), namespace);
+    Assert.assertEquals(params.getParamString(Constants.POD_NAME), podName);
+  }
+
+  @Test(expectedExceptions = TokenServiceException.class,
+      expectedExceptionsMessageRegExp = "Cannot find pod with IP: .*")
+  public void testGetAuthenticatedUserIDByUnknownSrcIP() {
+    authenticator.setWatchCache(makeWatchCache(podName, namespace, userID, podIP));
+    authenticator.getAuthenticatedUserID(makeAuthenticatorParameters(null, null, "10.0.150.1"));
+  }
+
+  @Test
+  public void testRejectSrcIPOfOtherPodWithoutApiCall() throws ApiException {
+    authenticator.setWatchCache(makeWatchCache(podName, namespace, userID, podIP));
+    try {
+      authenticator.getAuthenticatedUserID(makeAuthenticatorParameters("otherPod", namespace, podIP));
+      Assert.fail("Expected authentication to fail");
+    } catch (TokenServiceException ex) {
+      Assert.assertEquals(ex.getErrorCode(), ErrorCode.KUBERNETES_AUTHENTICATION_EXCEPTION.getCode());
+    }
+    verify(authenticator, never()).getPodInfoByNamespaceAndPodName(any(), any());
+  }
+
+  @Test
+  public void testPodIPIndexFollowsIPReuse() {
+    Map<String, String> annotations = new HashMap<>();
+    annotations.put(Constants.KUBERNETES_USER_ID, userID);
+    Watch.Response<V1Pod> item = mockWatchResponse(podName, namespace, podIP, annotations);
+    Watch.Response<V1Pod> rescheduledItem = mockWatchResponse("rescheduledPod", namespace, podIP, annotations);
+    PodIPIndex.PodRef rescheduledPod = new PodIPIndex.PodRef(namespace, "rescheduledPod");
+
+    authenticator.updateWatchCache(item);
+    Assert.assertEquals(authenticator.getPodIPIndex().get(podIP), new PodIPIndex.PodRef(namespace, podName));
+
+    // The IP is reused before the deletion of its previous pod is seen
+    authenticator.updateWatchCache(rescheduledItem);
+    Assert.assertNull(authenticator.getPodIPIndex().get(podIP));
+
+    authenticator.deleteFromWatchCache(item);
+    Assert.assertEquals(authenticator.getPodIPIndex().get(podIP), rescheduledPod);
+
+    when(rescheduledItem.object.getStatus().getPodIP()).thenReturn("10.0.150.1");
+    authenticator.updateWatchCache(rescheduledItem);
+    Assert.assertNull(authenticator.getPodIPIndex().get(podIP));
+    Assert.assertEquals(authenticator.getPodIPIndex().get("10.0.150.1"), rescheduledPod);
+
+    authenticator.removeNamespaceCache(namespace);
+    Assert.assertEquals(authenticator.getPodIPIndex().size(), 0);
+  }
+
+  @Test
+  public void testReplaceNamespaceCacheReindexesPods() {
+    Map<String, String> annotations = new HashMap<>();
+    annotations.put(Constants.KUBERNETES_USER_ID, userID);
+    authenticator.updateWatchCache(mockWatchResponse("deletedPod", namespace, "10.0.150.1", annotations));
+    authenticator.updateWatchCache(mockWatchResponse(podName, namespace, podIP, annotations));
+
+    authenticator.replaceNamespaceCache(namespace,
+        Arrays.asList(mockWatchResponse(podName, namespace, podIP, annotations).object), null);
+    Assert.assertNull(authenticator.getPodIPIndex().get("10.0.150.1"));
+    Assert.assertEquals(authenticator.getPodIPIndex().get(podIP), new PodIPIndex.PodRef(namespace, podName));
+  }
+
+  @Test
+  public void testWriteThroughLivePodLookups() throws ApiException {
+    Map<String, String> annotations = new HashMap<>();
+    annotations.put(Constants.KUBERNETES_USER_ID, userID);
+    authenticator.replaceNamespaceCache(namespace,
+        Arrays.asList(mockWatchResponse("otherPod", namespace, "10.0.150.1", annotations).object), "1");
+    doReturn(new PodMetadata(podIP, userID, null, new HashMap<>(), 2L))
+        .when(authenticator).getPodInfoByNamespaceAndPodName(namespace, podName);
+
+    AuthenticatorParameters params = makeAuthenticatorParameters(podName, namespace, podIP);
+    Assert.assertEquals(authenticator.getAuthenticatedUserID(params), userID);
+    Assert.assertEquals(authenticator.getWatchCache().get(namespace).get(podName).getPodIP(), podIP);
+    Assert.assertEquals(authenticator.getAuthenticatedUserID(params), userID);
+    verify(authenticator, times(1)).getPodInfoByNamespaceAndPodName(namespace, podName);
+
+    // Pods of unwatched namespaces are not cached, they would never be updated
+    String unwatchedPodIP = "10.0.150.2";
+    doReturn(new PodMetadata(unwatchedPodIP, userID, null, new HashMap<>(), 2L))
+        .when(authenticator).getPodInfoByNamespaceAndPodName("unwatchedNamespace", podName);
+    Assert.assertEquals(authenticator.getAuthenticatedUserID(
+        makeAuthenticatorParameters(podName, "unwatchedNamespace", unwatchedPodIP)), userID);
+    Assert.assertFalse(authenticator.getWatchCache().containsKey("unwatchedNamespace"));
+    Assert.assertNull(authenticator.getPodIPIndex().get(unwatchedPodIP));
+  }
+
+  @Test
+  public void testSkipWriteThroughOfPodsTheWatchIsAheadOf() throws ApiException {
+    Map<String, String> annotations = new HashMap<>();
+    annotations.put(Constants.KUBERNETES_USER_ID, userID);
+    authenticator.replaceNamespaceCache(namespace, Collections.emptyList(), "5");
+    AuthenticatorParameters params = makeAuthenticatorParameters(podName, namespace, podIP);
+
+    // Read before the namespace was listed
+    doReturn(new PodMetadata(podIP, userID, null, new HashMap<>(), 4L))
+        .when(authenticator).getPodInfoByNamespaceAndPodName(namespace, podName);
+    authenticator.getAuthenticatedUserID(params);
+    Assert.assertEquals(authenticator.getNamespaceCacheSize(namespace), 0);
+
+    // Deleted once the lookup read it, but before the lookup returned
+    Watch.Response<V1Pod> deleted = mockWatchResponse(podName, namespace, podIP, annotations);
+    when(deleted.object.getMetadata().getResourceVersion()).thenReturn("7");
+    doAnswer(invocation -> {
+      authenticator.deleteFromWatchCache(deleted);
+      return new PodMetadata(podIP, userID, null, new HashMap<>(), 6L);
+    }).when(authenticator).getPodInfoByNamespaceAndPodName(namespace, podName);
+    authenticator.getAuthenticatedUserID(params);
+    Assert.assertEquals(authenticator.getNamespaceCacheSize(namespace), 0);
+    Assert.assertNull(authenticator.getPodIPIndex().get(podIP));
+
+    // Recreated, the watch is behind
+    doReturn(new PodMetadata(podIP, userID, null, new HashMap<>(), 8L))
+        .when(authenticator).getPodInfoByNamespaceAndPodName(namespace, podName);
+    authenticator.getAuthenticatedUserID(params);
+    Assert.assertEquals(authenticator.getNamespaceCacheSize(namespace), 1);
+    Assert.assertEquals(authenticator.getPodIPIndex().get(podIP), new PodIPIndex.PodRef(namespace, podName));
+  }
+
+  @Test
+  public void testSkipWriteThroughWithoutNumericResourceVersions() throws ApiException {
+    AuthenticatorParameters params = makeAuthenticatorParameters(podName, namespace, podIP);
+    doReturn(new PodMetadata(podIP, userID, null, new HashMap<>(), 2L))
+        .when(authenticator).getPodInfoByNamespaceAndPodName(namespace, podName);
+    authenticator.replaceNamespaceCache(namespace, Collections.emptyList(), "not-a-number");
+    authenticator.getAuthenticatedUserID(params);
+    Assert.assertEquals(authenticator.getNamespaceCacheSize(namespace), 0);
+
+    doReturn(new PodMetadata(podIP, userID, null, new HashMap<>(), 0L))
+        .when(authenticator).getPodInfoByNamespaceAndPodName(namespace, podName);
+    authenticator.replaceNamespaceCache(namespace, Collections.emptyList(), "1");
+    authenticator.getAuthenticatedUserID(params);
+    Assert.assertEquals(authenticator.getNamespaceCacheSize(namespace), 0);
+  }
+
+  @Test
+  public void testLivePodLookupRejectsTerminatedPods() throws ApiException {
+    CoreV1Api api = mock(CoreV1Api.class);
+    V1Pod pod = mockWatchResponse(podName, namespace, podIP,
+        ImmutableMap.of(Constants.KUBERNETES_USER_ID, userID)).object;
+    when(pod.getStatus().getPhase()).thenReturn("Succeeded");
+    when(api.readNamespacedPodWithHttpInfo(podName, namespace, null, null, null))
+        .thenReturn(new ApiResponse<>(200, new HashMap<>(), pod));
+    authenticator.setApi(api);
+    doCallRealMethod().when(authenticator).getPodInfoByNamespaceAndPodName(namespace, podName);
+    authenticator.setWatchCache(makeWatchCache("otherPod", namespace, userID, "10.0.150.1"));
+
+    try {
+      authenticator.getAuthenticatedUserID(makeAuthenticatorParameters(podName, namespace, podIP));
+      Assert.fail("Expected authentication to fail");
+    } catch (TokenServiceException ex) {
+      Assert.assertEquals(ex.getErrorCode(), ErrorCode.KUBERNETES_POD_NOT_FOUND.getCode());
+    }
+    Assert.assertEquals(authenticator.getNamespaceCacheSize(namespace), 1);
+  }
+
+  @Test
+  public void testGetAuthenticatedUserIDForTrustedCaller() {
+    String callerIP = "10.0.150.1";
+
+    Map<String, Map<String, PodMetadata>> watchCache =
+        makeWatchCache(podName, namespace, userID, podIP);
+    Map<String, String[]> params = new HashMap<>();
+    params.put(Constants.NAMESPACE, new String[]{namespace});
+    params.put(Constants.POD_NAME, new String[]{podName});
+    params.put(Constants.SRCIP, new String[]{callerIP});
+
+    authenticator.setWatchCache(watchCache);
+    Assert.assertEquals(authenticator.getAuthenticatedUserID(AuthenticatorParameters.forTrustedCaller(params)), userID);
+  }
+
   @Test(expectedExceptions = TokenServiceException.class,
       expectedExceptionsMessageRegExp = "Cannot find userID information in pod annotation")
   public void testGetPodInfoByNamespaceAndPodNameReturnsEmptyAnnotations() throws ApiException {
     when(authenticator.getPodInfoByNamespaceAndPodName(namespace, podName))
-        .thenReturn(new ImmutablePair<>(podIP, new HashMap<>()));
+        .thenReturn(new PodMetadata(podIP, null, null, new HashMap<>()));
 
     AuthenticatorParameters params = makeAuthenticatorParameters(podName, namespace, podIP);
     authenticator.getAuthenticatedUserID(params);
@@ -140,18 +416,60 @@ public class TestKubernetesAuthenticator {
       expectedExceptionsMessageRegExp = "Cannot find pod: .* in namespace .*")
   public void testGetPodInfoByNamespaceAndPodNameReturnsNullPodIP() throws ApiException {
     when(authenticator.getPodInfoByNamespaceAndPodName(namespace, podName))
-        .thenReturn(new ImmutablePair<>(null, ImmutableMap.of(Constants.KUBERNETES_USER_ID, userID)));
+        .thenReturn(new PodMetadata(null, userID, null, new HashMap<>()));
 
     AuthenticatorParameters params = makeAuthenticatorParameters(podName, namespace, podIP);
     authenticator.getAuthenticatedUserID(params);
   }
 
   @Test
-  public void testGetNamespaceFromSelfLink() {
-    String selfLink = "/api/v1/namespaces/namespace-watch-test";
-    String namespace = "namespace-watch-test";
+  public void testGetPodMetadataWithJobID() {
+    String jobLabel = "training.kubeflow.org/job-name";
+    V1OwnerReference controller = new V1OwnerReference().controller(true).kind("TFJob").name("job").uid("uid");
+    V1ObjectMeta metadata = new V1ObjectMeta()
+        .annotations(ImmutableMap.of(Constants.KUBERNETES_USER_ID, userID, Constants.JOB_ID, "spoofed"))
+        .ownerReferences(Arrays.asList(new V1OwnerReference().controller(false).kind("Other"), controller));
+
+    PodMetadata podMetadata = getPodMetadata(metadata, jobLabel);
+    Assert.assertEquals(podMetadata.getUserID(), userID);
+    Assert.assertEquals(podMetadata.getJobID(), "TFJob/job/uid");
+    Assert.assertNull(podMetadata.getAnnotation(Constants.JOB_ID));
+
+    metadata.labels(ImmutableMap.of(jobLabel, "labeled-job"));
+    Assert.assertEquals(getPodMetadata(metadata, jobLabel).getJobID(), jobLabel + "=labeled-job");
+
+    metadata.labels(null).ownerReferences(null);
+    Assert.assertNull(getPodMetadata(metadata, jobLabel).getJobID());
+  }
 
-    Assert.assertEquals(KubernetesNamespaceLabelWatch.getNamespaceFromSelfLink(selfLink), namespace);
+  @Test
+  public void testPodMetadataRetainsOnlyConfiguredAnnotations() {
+    V1ObjectMeta metadata = new V1ObjectMeta().annotations(ImmutableMap.of(
+        Constants.KUBERNETES_USER_ID, userID, Constants.DO_AS, "headless", "unused", "value"));
+    PodMetadata podMetadata = KubernetesAuthenticator.getPodMetadata(metadata, "10.0.150.0", null,
+        Collections.singleton(Constants.DO_AS));
+    Assert.assertEquals(podMetadata.getAnnotation(Constants.DO_AS), "headless");
+    Assert.assertNull(podMetadata.getAnnotation("unused"));
+
+    AuthenticatorParameters params = makeAuthenticatorParameters(podName, namespace, podIP);
+    podMetadata.addToParams(params);
+    Assert.assertEquals(params.getParamString(Constants.KUBERNETES_USER_ID), userID);
+    Assert.assertEquals(params.getParamString(Constants.DO_AS), "headless");
+    Assert.assertNull(params.getParamString("unused"));
+  }
+
+  @Test
+  public void testPodMetadataComparesIPAddresses() {
+    PodMetadata podMetadata = new PodMetadata("fd00:0:0:0:0:0:0:1", userID, null, new HashMap<>());
+    Assert.assertEquals(podMetadata.getPodIP(), "fd00::1");
+    Assert.assertTrue(podMetadata.hasPodIP("fd00::1"));
+    Assert.assertFalse(podMetadata.hasPodIP("fd00::2"));
+    Assert.assertFalse(podMetadata.hasPodIP("not-an-ip"));
+    Assert.assertFalse(new PodMetadata(null, userID, null, new HashMap<>()).hasPodIP(podIP));
+  }
+
+  private static PodMetadata getPodMetadata(V1ObjectMeta metadata, String jobLabel) {
+    return KubernetesAuthenticator.getPodMetadata(metadata, null, jobLabel, Collections.emptySet());
   }
 
   private Watch.Response<V1Pod> mockWatchResponse(String podName, String namespace, String podIP,
@@ -182,13 +500,11 @@ public class TestKubernetesAuthenticator {
     return new AuthenticatorParameters(params);
   }
 
-  private Map<String, Map<String, Pair<String, Map<String, String>>>> makeWatchCache(
+  private Map<String, Map<String, PodMetadata>> makeWatchCache(
       String podName, String namespace, String userID, String srcIP) {
-    Map<String, Map<String, Pair<String, Map<String, String>>>> watchCache = new HashMap<>();
-    Map<String, Pair<String, Map<String, String>>> namespacedCache = new HashMap<>();
-    Map<String, String> annotations = new HashMap<>();
-    annotations.put(Constants.KUBERNETES_USER_ID, userID);
-    namespacedCache.put(podName, new ImmutablePair<>(srcIP, annotations));
+    Map<String, Map<String, PodMetadata>> watchCache = new HashMap<>();
+    Map<String, PodMetadata> namespacedCache = new HashMap<>();
+    namespacedCache.put(podName, new PodMetadata(srcIP, userID, null, new HashMap<>()));
     watchCache.put(namespace, namespacedCache);
 
     return watchCache;
@@ -0,0 +1,115 @@
+/**
+ * Copyright 2020 LinkedIn Corporation. All rights reserved. Licensed under the BSD-2 Clause license.
+ * See LICENSE in the project root for license information.
+ */
+
+package com.linkedin.kube2hadoop.authenticator;
+
+import com.google.common.collect.ImmutableMap;
+import com.linkedin.kube2hadoop.core.Constants;
+import io.kubernetes.client.ApiException;
+import io.kubernetes.client.models.V1ListMeta;
+import io.kubernetes.client.models.V1Namespace;
+import io.kubernetes.client.models.V1NamespaceList;
+import io.kubernetes.client.models.V1ObjectMeta;
+import io.kubernetes.client.util.Watch;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import org.apache.hadoop.conf.Configuration;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static org.mockito.Mockito.*;
+
+
+public class TestKubernetesNamespaceLabelWatch {
+  KubernetesAuthenticator authenticator;
+  KubernetesNamespaceWatch clusterWatch;
+  Set<String> watchedNamespaces;
+  KubernetesNamespaceLabelWatch labelWatch;
+
+  @BeforeMethod
+  public void setup() {
+    authenticator = mock(KubernetesAuthenticator.class);
+    clusterWatch = mock(KubernetesNamespaceWatch.class);
+    watchedNamespaces = new HashSet<>();
+    when(authenticator.getNamespaceWatchCache()).thenReturn(new ConcurrentHashMap<>());
+    when(authenticator.getWatchedNamespaces()).thenReturn(watchedNamespaces);
+    when(authenticator.getClusterWatch()).thenReturn(clusterWatch);
+    labelWatch = spy(new KubernetesNamespaceLabelWatch(authenticator, new Configuration(false)));
+  }
+
+  @Test
+  public void testListNamespaces() throws ApiException {
+    watchedNamespaces.add("deletedNamespace");
+    doReturn(namespaceList("1", "next", namespace("labelled", "enabled"), namespace("unlabelled", null)))
+        .when(labelWatch).listNamespacePage(null);
+    doReturn(namespaceList("2", null, namespace("disabled", "disabled")))
+        .when(labelWatch).listNamespacePage("next");
+
+    Assert.assertEquals(labelWatch.listNamespaces(), "1");
+    Assert.assertEquals(watchedNamespaces, Collections.singleton("labelled"));
+    verify(authenticator).removeNamespaceCache("deletedNamespace");
+    // the cluster-wide watch lists the pods of every watched namespace when it starts
+    verify(clusterWatch, never()).requestNamespaceList(any());
+  }
+
+  @Test
+  public void testWatchEventsDecideFromPayload() throws ApiException, IOException {
+    Watch.Response<V1Namespace> labelled = watchResponse("ADDED", namespace("labelled", "enabled"), "2");
+    Watch.Response<V1Namespace> unlabelled = watchResponse("MODIFIED", namespace("labelled", null), "3");
+    Watch.Response<V1Namespace> relabelled = watchResponse("MODIFIED", namespace("labelled", "Enabled"), "4");
+    Watch.Response<V1Namespace> deleted = watchResponse("DELETED", namespace("labelled", "enabled"), "5");
+    doReturn(mockWatch(Arrays.asList(labelled, unlabelled, relabelled))).when(labelWatch).createWatch("1");
+    doReturn(mockWatch(Collections.singletonList(deleted))).when(labelWatch).createWatch("4");
+
+    Assert.assertEquals(labelWatch.watchNamespaceLabels("1"), "4");
+    Assert.assertEquals(watchedNamespaces, Collections.singleton("labelled"));
+    verify(authenticator, times(1)).removeNamespaceCache("labelled");
+
+    Assert.assertEquals(labelWatch.watchNamespaceLabels("4"), "5");
+    Assert.assertTrue(watchedNamespaces.isEmpty());
+    verify(authenticator, times(2)).removeNamespaceCache("labelled");
+  }
+
+  @Test
+  public void testIsLabelledForWatch() {
+    Assert.assertTrue(KubernetesNamespaceLabelWatch.isLabelledForWatch(namespace("ns", "ENABLED")));
+    Assert.assertFalse(KubernetesNamespaceLabelWatch.isLabelledForWatch(namespace("ns", "disabled")));
+    Assert.assertFalse(KubernetesNamespaceLabelWatch.isLabelledForWatch(namespace("ns", null)));
+    Assert.assertFalse(KubernetesNamespaceLabelWatch.isLabelledForWatch(new V1Namespace()));
+  }
+
+  private V1Namespace namespace(String name, String iddecoratorLabel) {
+    V1ObjectMeta metadata = new V1ObjectMeta().name(name);
+    if (iddecoratorLabel != null) {
+      metadata.labels(ImmutableMap.of(Constants.IDDECORATOR_LABEL, iddecoratorLabel));
+    }
+    return new V1Namespace().metadata(metadata);
+  }
+
+  private V1NamespaceList namespaceList(String resourceVersion, String continueToken, V1Namespace... namespaces) {
+    return new V1NamespaceList().items(Arrays.asList(namespaces))
+        .metadata(new V1ListMeta().resourceVersion(resourceVersion)._continue(continueToken));
+  }
+
+  private Watch<V1Namespace> mockWatch(List<Watch.Response<V1Namespace>> events) {
+    Watch<V1Namespace> watch = mock(Watch.class);
+    when(watch.iterator()).thenReturn(events.iterator());
+    return watch;
+  }
+
+  private Watch.Response<V1Namespace> watchResponse(String type, V1Namespace namespace, String resourceVersion) {
+    Watch.Response<V1Namespace> item = mock(Watch.Response.class);
+    item.type = type;
+    namespace.getMetadata().resourceVersion(resourceVersion);
+    item.object = namespace;
+    return item;
+  }
+}
@@ -0,0 +1,152 @@
+/**
+ * Copyright 2020 LinkedIn Corporation. All rights reserved. Licensed under the BSD-2 Clause license.
+ * See LICENSE in the project root for license information.
+ */
+
+package com.linkedin.kube2hadoop.authenticator;
+
+import com.linkedin.kube2hadoop.core.conf.ConfigurationKeys;
+import io.kubernetes.client.ApiException;
+import io.kubernetes.client.models.V1ObjectMeta;
+import io.kubernetes.client.models.V1Pod;
+import io.kubernetes.client.models.V1Status;
+import io.kubernetes.client.util.Watch;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import org.apache.hadoop.conf.Configuration;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static org.mockito.Mockito.*;
+
+
+public class TestKubernetesNamespaceWatch {
+  String namespace = "testNamespace";
+
+  KubernetesAuthenticator authenticator;
+  KubernetesNamespaceWatch namespaceWatch;
+
+  @BeforeMethod
+  public void setup() throws ApiException {
+    authenticator = mock(KubernetesAuthenticator.class);
+    when(authenticator.getNamespaceWatchCache()).thenReturn(new ConcurrentHashMap<>());
+    Configuration conf = new Configuration(false);
+    conf.setLong(ConfigurationKeys.KUBE2HADOOP_WATCH_INITIAL_BACKOFF_IN_MILLISECONDS, 1L);
+    namespaceWatch = spy(new KubernetesNamespaceWatch(authenticator, namespace, conf));
+    doReturn(mockWatch(Collections.emptyList())).when(namespaceWatch).createWatch(any());
+  }
+
+  @Test
+  public void testWatchFromLastSeenResourceVersion() throws ApiException, IOException {
+    Watch.Response<V1Pod> added = mockWatchResponse("ADDED", "2");
+    Watch.Response<V1Pod> modified = mockWatchResponse("MODIFIED", "3");
+    doReturn(mockWatch(Arrays.asList(added, modified))).when(namespaceWatch).createWatch("1");
+
+    Assert.assertEquals(namespaceWatch.watchPods("1"), "3");
+    verify(authenticator).updateWatchCache(added);
+    verify(authenticator).updateWatchCache(modified);
+  }
+
+  @Test
+  public void testClusterWideWatchSkipsUnwatchedNamespaces() throws ApiException, IOException {
+    Configuration conf = new Configuration(false);
+    KubernetesNamespaceWatch clusterWatch = spy(new KubernetesNamespaceWatch(authenticator, null, conf));
+    Watch.Response<V1Pod> watched = mockWatchResponse("ADDED", "2");
+    Watch.Response<V1Pod> unwatched = mockWatchResponse("ADDED", "3");
+    unwatched.object.getMetadata().setNamespace("otherNamespace");
+    doReturn(mockWatch(Arrays.asList(watched, unwatched))).when(clusterWatch).createWatch("1");
+    when(authenticator.getWatchedNamespaces()).thenReturn(Collections.singleton(namespace));
+
+    Assert.assertEquals(clusterWatch.watchPods("1"), "3");
+    verify(authenticator).updateWatchCache(watched);
+    verify(authenticator, never()).updateWatchCache(unwatched);
+  }
+
+  @Test
+  public void testClusterWideWatchListsNewlyWatchedNamespaces() throws ApiException, IOException {
+    Configuration conf = new Configuration(false);
+    conf.setLong(ConfigurationKeys.KUBE2HADOOP_WATCH_INITIAL_BACKOFF_IN_MILLISECONDS, 1L);
+    KubernetesNamespaceWatch clusterWatch = spy(new KubernetesNamespaceWatch(authenticator, null, conf));
+    when(authenticator.getWatchedNamespaces()).thenReturn(Collections.singleton(namespace));
+    doAnswer(invocation -> {
+      clusterWatch.requestNamespaceList(namespace);
+      clusterWatch.requestNamespaceList("unwatchedNamespace");
+      return "1";
+    }).when(clusterWatch).listPods();
+    // Failed lists are retried before watching
+    doThrow(new ApiException(500, "unavailable")).doNothing().when(clusterWatch).listNamespace(namespace);
+    doAnswer(invocation -> {
+      clusterWatch.close();
+      return mockWatch(Collections.emptyList());
+    }).when(clusterWatch).createWatch("1");
+
+    clusterWatch.run();
+    verify(clusterWatch, times(2)).listNamespace(namespace);
+    verify(clusterWatch, never()).listNamespace("unwatchedNamespace");
+    verify(clusterWatch, times(1)).createWatch("1");
+  }
+
+  @Test
+  public void testDeletedPods() throws ApiException, IOException {
+    Watch.Response<V1Pod> deleted = mockWatchResponse("DELETED", "2");
+    doReturn(mockWatch(Collections.singletonList(deleted))).when(namespaceWatch).createWatch("1");
+
+    namespaceWatch.watchPods("1");
+    verify(authenticator).deleteFromWatchCache(deleted);
+  }
+
+  @Test
+  public void testRemoveNamespaceCacheWhenClosed() throws ApiException, IOException {
+    doAnswer(invocation -> {
+      namespaceWatch.close();
+      return "1";
+    }).when(namespaceWatch).listPods();
+
+    namespaceWatch.run();
+    verify(authenticator).removeNamespaceCache(namespace);
+  }
+
+  @Test
+  public void testListAgainWhenResourceVersionIsGone() throws ApiException, IOException {
+    Watch.Response<V1Pod> gone = mock(Watch.Response.class);
+    gone.type = "ERROR";
+    gone.status = new V1Status().code(410).message("too old resource version");
+    doReturn(mockWatch(Collections.singletonList(gone))).when(namespaceWatch).createWatch("1");
+    doReturn("1").doAnswer(invocation -> {
+      namespaceWatch.close();
+      return "4";
+    }).when(namespaceWatch).listPods();
+
+    namespaceWatch.run();
+    verify(namespaceWatch, times(2)).listPods();
+    verify(namespaceWatch).createWatch("4");
+  }
+
+  @Test
+  public void testRetryWhenListFails() throws ApiException, IOException {
+    doThrow(new ApiException(500, "unavailable")).doAnswer(invocation -> {
+      namespaceWatch.close();
+      return "1";
+    }).when(namespaceWatch).listPods();
+
+    namespaceWatch.run();
+    verify(namespaceWatch, times(2)).listPods();
+  }
+
+  private Watch<V1Pod> mockWatch(List<Watch.Response<V1Pod>> events) {
+    Watch<V1Pod> watch = mock(Watch.class);
+    when(watch.iterator()).thenReturn(events.iterator());
+    return watch;
+  }
+
+  private Watch.Response<V1Pod> mockWatchResponse(String type, String resourceVersion) {
+    Watch.Response<V1Pod> item = mock(Watch.Response.class);
+    item.type = type;
+    item.object = new V1Pod().metadata(new V1ObjectMeta().namespace(namespace).resourceVersion(resourceVersion));
+    return item;
+  }
+}
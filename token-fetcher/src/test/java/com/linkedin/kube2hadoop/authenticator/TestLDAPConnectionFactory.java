@@ -0,0 +1,86 @@
+/**
+ * Copyright 2020 LinkedIn Corporation. All rights reserved. Licensed under the BSD-2 Clause license.
+ * See LICENSE in the project root for license information.
+ */
+
+package com.linkedin.kube2hadoop.authenticator;
+
+import com.linkedin.kube2hadoop.core.Constants;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import javax.naming.CommunicationException;
+import javax.naming.Context;
+import javax.naming.NameNotFoundException;
+import javax.naming.NamingException;
+import javax.naming.ldap.LdapContext;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static org.mockito.Mockito.*;
+
+
+public class TestLDAPConnectionFactory {
+  private static final String[] PROVIDER_URLS = {"ldap://ldap1:389", "ldap://ldap2:389", "ldap://ldap3:389"};
+
+  List<String> connected;
+  Set<String> down;
+  LDAPConnectionFactory factory;
+
+  @BeforeMethod
+  public void setup() {
+    connected = new ArrayList<>();
+    down = new HashSet<>();
+    factory = new LDAPConnectionFactory(PROVIDER_URLS, true, 1000L, 1000L, env -> {
+      String url = env.get(Context.PROVIDER_URL);
+      connected.add(url);
+      if (down.contains(url)) {
+        throw new CommunicationException(url + " is down");
+      }
+      return mock(LdapContext.class);
+    });
+  }
+
+  @Test
+  public void testCreateLdapEnv() {
+    Assert.assertEquals(factory.createLdapEnv(PROVIDER_URLS[0]).get(Constants.LDAP_CONNECT_POOL), "true");
+    Assert.assertEquals(factory.createLdapEnv(PROVIDER_URLS[0]).get(Constants.LDAP_READ_TIMEOUT), "1000");
+  }
+
+  @Test
+  public void testFailoverAndStickToWorkingServer() throws NamingException {
+    down.add(PROVIDER_URLS[0]);
+    Assert.assertEquals(factory.execute(ctx -> "result"), "result");
+    Assert.assertEquals(factory.execute(ctx -> "result"), "result");
+    Assert.assertEquals(connected, Arrays.asList(PROVIDER_URLS[0], PROVIDER_URLS[1], PROVIDER_URLS[1]));
+  }
+
+  @Test
+  public void testCloseContext() throws NamingException {
+    LdapContext[] opened = new LdapContext[1];
+    factory.execute(ctx -> opened[0] = ctx);
+    verify(opened[0]).close();
+  }
+
+  @Test(expectedExceptions = CommunicationException.class)
+  public void testFailWhenAllServersDown() throws NamingException {
+    down.addAll(Arrays.asList(PROVIDER_URLS));
+    factory.execute(ctx -> "result");
+  }
+
+  @Test
+  public void testNoFailoverOnNameNotFound() {
+    try {
+      factory.execute(ctx -> {
+        throw new NameNotFoundException();
+      });
+      Assert.fail("Expected NameNotFoundException");
+    } catch (NamingException e) {
+      Assert.assertTrue(e instanceof NameNotFoundException);
+    }
+    Assert.assertEquals(connected, Arrays.asList(PROVIDER_URLS[0]));
+  }
+}
@@ -0,0 +1,108 @@
+/**
+ * Copyright 2020 LinkedIn Corporation. All rights reserved. Licensed under the BSD-2 Clause license.
+ * See LICENSE in the project root for license information.
+ */
+
+package com.linkedin.kube2hadoop.authenticator;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.naming.NamingException;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+
+public class TestLDAPGroupSnapshot {
+  private static final long FULL_SYNC_INTERVAL = 1000L;
+
+  AtomicLong now;
+  List<String> loads;
+  Map<String, Set<String>> groups;
+  String lastModified;
+  LDAPGroupSnapshot snapshot;
+
+  @BeforeMethod
+  public void setup() {
+    now = new AtomicLong(0L);
+    loads = new ArrayList<>();
+    groups = ImmutableMap.<String, Set<String>>of("headless", ImmutableSet.of("testUser"));
+    lastModified = "20201016000000Z";
+    snapshot = new LDAPGroupSnapshot(this::load, 100L, FULL_SYNC_INTERVAL, now::get);
+  }
+
+  private LDAPGroupSnapshot.Groups load(String modifiedSince) throws NamingException {
+    loads.add(modifiedSince);
+    if (groups == null) {
+      throw new NamingException("LDAP is down");
+    }
+    return new LDAPGroupSnapshot.Groups(groups, lastModified);
+  }
+
+  @Test
+  public void testNotLoaded() {
+    Assert.assertNull(snapshot.getMembers("headless"));
+  }
+
+  @Test
+  public void testFullSync() throws NamingException {
+    snapshot.sync();
+    Assert.assertEquals(snapshot.getMembers("headless"), ImmutableSet.of("testUser"));
+    Assert.assertTrue(snapshot.getMembers("unknown").isEmpty());
+    Assert.assertEquals(snapshot.getFullSyncCount(), 1);
+  }
+
+  @Test
+  public void testIncrementalSync() throws NamingException {
+    snapshot.sync();
+    groups = ImmutableMap.<String, Set<String>>of("otherHeadless", ImmutableSet.of("otherUser"));
+    lastModified = "20201016000100Z";
+    now.set(100L);
+    snapshot.sync();
+
+    Assert.assertEquals(loads.get(1), "20201016000000Z");
+    Assert.assertEquals(snapshot.getMembers("headless"), ImmutableSet.of("testUser"));
+    Assert.assertEquals(snapshot.getMembers("otherHeadless"), ImmutableSet.of("otherUser"));
+    Assert.assertEquals(snapshot.getIncrementalSyncCount(), 1);
+
+    snapshot.sync();
+    Assert.assertEquals(loads.get(2), "20201016000100Z");
+  }
+
+  @Test
+  public void testFullSyncDropsDeletedGroups() throws NamingException {
+    snapshot.sync();
+    groups = ImmutableMap.<String, Set<String>>of("otherHeadless", ImmutableSet.of("otherUser"));
+    now.set(FULL_SYNC_INTERVAL);
+    snapshot.sync();
+
+    Assert.assertNull(loads.get(1));
+    Assert.assertTrue(snapshot.getMembers("headless").isEmpty());
+    Assert.assertEquals(snapshot.getFullSyncCount(), 2);
+  }
+
+  @Test
+  public void testFullSyncWithoutModifyTimestamp() throws NamingException {
+    lastModified = null;
+    snapshot.sync();
+    snapshot.sync();
+    Assert.assertNull(loads.get(1));
+    Assert.assertEquals(snapshot.getFullSyncCount(), 2);
+  }
+
+  @Test
+  public void testKeepSnapshotWhenSyncFails() throws NamingException {
+    snapshot.sync();
+    groups = null;
+    now.set(FULL_SYNC_INTERVAL);
+    snapshot.run();
+
+    Assert.assertEquals(snapshot.getMembers("headless"), ImmutableSet.of("testUser"));
+    Assert.assertEquals(snapshot.getSyncFailureCount(), 1);
+  }
+}
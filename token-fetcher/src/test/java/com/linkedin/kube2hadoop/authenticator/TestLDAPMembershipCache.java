@@ -0,0 +1,133 @@
+/**
+ * Copyright 2020 LinkedIn Corporation. All rights reserved. Licensed under the BSD-2 Clause license.
+ * See LICENSE in the project root for license information.
+ */
+
+package com.linkedin.kube2hadoop.authenticator;
+
+import com.google.common.collect.ImmutableSet;
+import com.linkedin.kube2hadoop.core.TokenServiceException;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.naming.NamingException;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+
+public class TestLDAPMembershipCache {
+  private static final long TTL = 1000L;
+  private static final long NEGATIVE_TTL = 100L;
+  private static final long REFRESH_AHEAD = 200L;
+  private static final long MAX_STALE = 5000L;
+
+  AtomicLong now;
+  AtomicInteger loads;
+  AtomicReference<Set<String>> members;
+
+  @BeforeMethod
+  public void setup() {
+    now = new AtomicLong(0L);
+    loads = new AtomicInteger();
+    members = new AtomicReference<>(ImmutableSet.of("testUser"));
+  }
+
+  private LDAPMembershipCache makeCache(LDAPMembershipCache.Loader loader) {
+    return new LDAPMembershipCache(loader, TTL, NEGATIVE_TTL, REFRESH_AHEAD, MAX_STALE, 100L, 100L, Runnable::run,
+        now::get);
+  }
+
+  private Set<String> load(String headlessAccount) throws NamingException {
+    loads.incrementAndGet();
+    if (members.get() == null) {
+      throw new NamingException("LDAP is down");
+    }
+    return "unknown".equals(headlessAccount) ? null : members.get();
+  }
+
+  @Test
+  public void testServeFromCacheUntilExpiry() {
+    LDAPMembershipCache cache = makeCache(this::load);
+    Assert.assertEquals(cache.getMembers("headless"), ImmutableSet.of("testUser"));
+    now.set(TTL - REFRESH_AHEAD - 1);
+    Assert.assertEquals(cache.getMembers("headless"), ImmutableSet.of("testUser"));
+    Assert.assertEquals(loads.get(), 1);
+
+    // A hit close to expiry refreshes the membership
+    members.set(ImmutableSet.of("otherUser"));
+    now.set(TTL - 1);
+    Assert.assertEquals(cache.getMembers("headless"), ImmutableSet.of("testUser"));
+    Assert.assertEquals(loads.get(), 2);
+    Assert.assertEquals(cache.getMembers("headless"), ImmutableSet.of("otherUser"));
+  }
+
+  @Test
+  public void testNegativeCaching() {
+    LDAPMembershipCache cache = makeCache(this::load);
+    Assert.assertTrue(cache.getMembers("unknown").isEmpty());
+    Assert.assertTrue(cache.getMembers("unknown").isEmpty());
+    Assert.assertEquals(loads.get(), 1);
+
+    now.set(NEGATIVE_TTL);
+    Assert.assertTrue(cache.getMembers("unknown").isEmpty());
+    Assert.assertEquals(loads.get(), 2);
+  }
+
+  @Test
+  public void testServeStaleWhenLDAPFails() {
+    LDAPMembershipCache cache = makeCache(this::load);
+    cache.getMembers("headless");
+
+    members.set(null);
+    now.set(TTL);
+    Assert.assertEquals(cache.getMembers("headless"), ImmutableSet.of("testUser"));
+    Assert.assertEquals(cache.getStaleHitCount(), 1);
+    Assert.assertEquals(cache.getLoadFailureCount(), 1);
+  }
+
+  @Test(expectedExceptions = TokenServiceException.class)
+  public void testFailWhenLDAPFailsPastMaxStale() {
+    LDAPMembershipCache cache = makeCache(this::load);
+    cache.getMembers("headless");
+
+    members.set(null);
+    now.set(TTL + MAX_STALE);
+    cache.getMembers("headless");
+  }
+
+  @Test
+  public void testServeStaleWhenLDAPIsSlow() throws InterruptedException {
+    CountDownLatch releaseLoad = new CountDownLatch(1);
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      LDAPMembershipCache cache = new LDAPMembershipCache(headlessAccount -> {
+        if (loads.incrementAndGet() > 1) {
+          awaitQuietly(releaseLoad);
+        }
+        return ImmutableSet.of("user" + loads.get());
+      }, TTL, NEGATIVE_TTL, REFRESH_AHEAD, MAX_STALE, 10L, 100L, executor, now::get);
+      Assert.assertEquals(cache.getMembers("headless"), ImmutableSet.of("user1"));
+
+      now.set(TTL);
+      Assert.assertEquals(cache.getMembers("headless"), ImmutableSet.of("user1"));
+      Assert.assertEquals(cache.getStaleHitCount(), 1);
+      releaseLoad.countDown();
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private static void awaitQuietly(CountDownLatch latch) {
+    try {
+      latch.await(10, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -0,0 +1,126 @@
+/**
+ * Copyright 2020 LinkedIn Corporation. All rights reserved. Licensed under the BSD-2 Clause license.
+ * See LICENSE in the project root for license information.
+ */
+
+package com.linkedin.kube2hadoop.authenticator;
+
+import com.linkedin.kube2hadoop.core.ErrorCode;
+import com.linkedin.kube2hadoop.core.TokenServiceException;
+import io.kubernetes.client.ApiException;
+import java.util.HashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+
+public class TestLivePodLookup {
+  private static final long NOT_FOUND_TTL = 1000L;
+
+  String namespace = "testNamespace";
+  String podName = "testPod";
+
+  AtomicLong now;
+  AtomicInteger calls;
+  PodMetadata pod;
+
+  @BeforeMethod
+  public void setup() {
+    now = new AtomicLong(0L);
+    calls = new AtomicInteger();
+    pod = new PodMetadata("10.0.150.0", "testUser", null, new HashMap<>());
+  }
+
+  private LivePodLookup.Loader loader(boolean found) {
+    return (namespace, podName) -> {
+      calls.incrementAndGet();
+      if (!found) {
+        throw new ApiException(404, "not found");
+      }
+      return pod;
+    };
+  }
+
+  @Test
+  public void testRememberPodsNotFound() {
+    LivePodLookup lookup = new LivePodLookup(loader(false), NOT_FOUND_TTL, 0, 0, now::get);
+    assertErrorCode(lookup, ErrorCode.KUBERNETES_POD_NOT_FOUND);
+    assertErrorCode(lookup, ErrorCode.KUBERNETES_POD_NOT_FOUND);
+    Assert.assertEquals(calls.get(), 1);
+    Assert.assertEquals(lookup.getNotFoundHitCount(), 1);
+
+    now.set(NOT_FOUND_TTL);
+    assertErrorCode(lookup, ErrorCode.KUBERNETES_POD_NOT_FOUND);
+    Assert.assertEquals(calls.get(), 2);
+  }
+
+  @Test
+  public void testRateLimit() {
+    LivePodLookup lookup = new LivePodLookup(loader(true), NOT_FOUND_TTL, 2, 0, now::get);
+    Assert.assertSame(lookup.lookup(namespace, podName), pod);
+    Assert.assertSame(lookup.lookup(namespace, podName), pod);
+    assertErrorCode(lookup, ErrorCode.TOO_MANY_REQUESTS);
+    Assert.assertEquals(lookup.getRejectedCallCount(), 1);
+
+    now.set(500L);
+    Assert.assertSame(lookup.lookup(namespace, podName), pod);
+    Assert.assertEquals(lookup.getApiCallCount(), 3);
+  }
+
+  @Test
+  public void testCoalesceAndCapConcurrentLookups() throws Exception {
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    LivePodLookup lookup = new LivePodLookup((namespace, podName) -> {
+      calls.incrementAndGet();
+      started.countDown();
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      return pod;
+    }, NOT_FOUND_TTL, 0, 1, now::get);
+
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      Future<PodMetadata> first = executor.submit(() -> lookup.lookup(namespace, podName));
+      Assert.assertTrue(started.await(10, TimeUnit.SECONDS));
+      Future<PodMetadata> shared = executor.submit(() -> lookup.lookup(namespace, podName));
+
+      // A lookup of another pod is over the concurrency cap
+      try {
+        lookup.lookup(namespace, "otherPod");
+        Assert.fail("Expected the lookup to be rejected");
+      } catch (TokenServiceException ex) {
+        Assert.assertEquals(ex.getErrorCode(), ErrorCode.TOO_MANY_REQUESTS.getCode());
+      }
+
+      while (lookup.getSharedLookupCount() == 0) {
+        Thread.sleep(10);
+      }
+      release.countDown();
+      Assert.assertSame(first.get(10, TimeUnit.SECONDS), pod);
+      Assert.assertSame(shared.get(10, TimeUnit.SECONDS), pod);
+      Assert.assertEquals(calls.get(), 1);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private void assertErrorCode(LivePodLookup lookup, ErrorCode errorCode) {
+    try {
+      lookup.lookup(namespace, podName);
+      Assert.fail("Expected the lookup to fail");
+    } catch (TokenServiceException ex) {
+      Assert.assertEquals(ex.getErrorCode(), errorCode.getCode());
+    }
+  }
+}
@@ -0,0 +1,46 @@
+/**
+ * Copyright 2020 LinkedIn Corporation. All rights reserved. Licensed under the BSD-2 Clause license.
+ * See LICENSE in the project root for license information.
+ */
+
+package com.linkedin.kube2hadoop.cache;
+
+import com.google.common.collect.ImmutableMap;
+import com.linkedin.kube2hadoop.core.Constants;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.security.token.Token;
+import org.apache.hadoop.security.token.TokenIdentifier;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+
+public class TestJobCredentialCache {
+  @Test
+  public void testShareWhileTokensAreRenewed() {
+    TokenInfo tokenInfo = new TokenInfo(ImmutableMap.of(Constants.PROXY_USER, "testUser"),
+        new Token<TokenIdentifier>(new byte[0], new byte[0], new Text(Constants.HDFS_DELEGATION_TOKEN), new Text()));
+    Set<TokenInfo> renewedTokens = new HashSet<>(Collections.singleton(tokenInfo));
+    JobCredentialCache cache = new JobCredentialCache(10, 60000, renewedTokens::contains);
+
+    Assert.assertNull(cache.get("job"));
+    cache.put("job", "credential", Collections.singletonList(tokenInfo));
+    Assert.assertEquals(cache.get("job"), "credential");
+    Assert.assertEquals(cache.getHitCount(), 1);
+
+    renewedTokens.remove(tokenInfo);
+    Assert.assertNull(cache.get("job"));
+    Assert.assertEquals(cache.size(), 0);
+    Assert.assertEquals(cache.getMissCount(), 2);
+  }
+
+  @Test
+  public void testExpireAfterMaxAge() throws InterruptedException {
+    JobCredentialCache cache = new JobCredentialCache(10, 1, tokenInfo -> true);
+    cache.put("job", "credential", Collections.emptyList());
+    Thread.sleep(10);
+    Assert.assertNull(cache.get("job"));
+  }
+}
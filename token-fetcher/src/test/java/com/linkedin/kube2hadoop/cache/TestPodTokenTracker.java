@@ -0,0 +1,146 @@
+/**
+ * Copyright 2020 LinkedIn Corporation. All rights reserved. Licensed under the BSD-2 Clause license.
+ * See LICENSE in the project root for license information.
+ */
+
+package com.linkedin.kube2hadoop.cache;
+
+import com.google.common.collect.ImmutableMap;
+import com.linkedin.kube2hadoop.core.Constants;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.security.token.Token;
+import org.apache.hadoop.security.token.TokenIdentifier;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static org.mockito.Mockito.*;
+
+
+public class TestPodTokenTracker {
+  String namespace = "testNamespace";
+
+  TokenCache tokenCache;
+  List<TokenInfo> cancelledTokens;
+  PodTokenTracker tracker;
+
+  @BeforeMethod
+  public void setup() {
+    tokenCache = mock(TokenCache.class);
+    cancelledTokens = new ArrayList<>();
+    tracker = new PodTokenTracker(tokenCache, cancelledTokens::add, 2, 0L);
+  }
+
+  @Test
+  public void testReleaseTokensOfLastTerminatedPod() throws InterruptedException {
+    TokenInfo tokenInfo = makeTokenInfo("token");
+    TokenInfo otherTokenInfo = makeTokenInfo("otherToken");
+    tracker.register("credential", Arrays.asList(tokenInfo, otherTokenInfo));
+    Assert.assertTrue(tracker.onHandedOut(namespace, "pod-1", "credential"));
+    Assert.assertTrue(tracker.onHandedOut(namespace, "pod-2", "credential"));
+    Assert.assertEquals(tracker.getTrackedPodCount(), 2);
+
+    tracker.onPodTerminated(namespace, "pod-1");
+    tracker.onPodTerminated(namespace, "unknown-pod");
+    verify(tokenCache, never()).removeToken(any());
+    Assert.assertEquals(tracker.getPendingCancellationCount(), 0);
+
+    tracker.onPodTerminated(namespace, "pod-2");
+    verify(tokenCache).removeToken(tokenInfo);
+    verify(tokenCache).removeToken(otherTokenInfo);
+    Assert.assertEquals(tracker.getTrackedPodCount(), 0);
+    Assert.assertEquals(tracker.getTrackedCredentialCount(), 0);
+
+    // Released credentials are not handed out again
+    Assert.assertFalse(tracker.onHandedOut(namespace, "pod-3", "credential"));
+
+    Assert.assertEquals(tracker.cancelBatch(), 2);
+    Assert.assertEquals(cancelledTokens, Arrays.asList(tokenInfo, otherTokenInfo));
+  }
+
+  @Test
+  public void testPodHoldingSeveralCredentials() {
+    TokenInfo tokenInfo = makeTokenInfo("token");
+    TokenInfo sharedTokenInfo = makeTokenInfo("sharedToken");
+    tracker.register("credential", Arrays.asList(tokenInfo));
+    tracker.register("sharedCredential", Arrays.asList(sharedTokenInfo));
+    tracker.onHandedOut(namespace, "pod-1", "credential");
+    tracker.onHandedOut(namespace, "pod-1", "sharedCredential");
+    tracker.onHandedOut(namespace, "pod-2", "sharedCredential");
+
+    tracker.onPodTerminated(namespace, "pod-1");
+    verify(tokenCache).removeToken(tokenInfo);
+    verify(tokenCache, never()).removeToken(sharedTokenInfo);
+    Assert.assertEquals(tracker.getTrackedCredentialCount(), 1);
+    Assert.assertEquals(tracker.getPendingCancellationCount(), 1);
+  }
+
+  @Test
+  public void testCancelInBatches() throws InterruptedException {
+    tracker = new PodTokenTracker(tokenCache, tokenInfo -> {
+      if (tokenInfo.getToken().getIdentifier().length == 0) {
+        throw new IOException("Token not found");
+      }
+      cancelledTokens.add(tokenInfo);
+    }, 2, 0L);
+    tracker.register("credential", Arrays.asList(makeTokenInfo("token1"), makeTokenInfo(""),
+        makeTokenInfo("token2")));
+    tracker.onHandedOut(namespace, "pod", "credential");
+    tracker.onPodTerminated(namespace, "pod");
+    Assert.assertEquals(tracker.getPendingCancellationCount(), 3);
+
+    // Failed cancellations are left to expire
+    Assert.assertEquals(tracker.cancelBatch(), 1);
+    Assert.assertEquals(tracker.getPendingCancellationCount(), 1);
+    Assert.assertEquals(tracker.cancelBatch(), 1);
+    Assert.assertEquals(tracker.getPendingCancellationCount(), 0);
+    Assert.assertEquals(cancelledTokens.size(), 2);
+  }
+
+  @Test
+  public void testPruneCredentialsNoLongerRenewed() {
+    TokenInfo renewedTokenInfo = makeTokenInfo("renewedToken");
+    TokenInfo removedTokenInfo = makeTokenInfo("removedToken");
+    when(tokenCache.containsToken(renewedTokenInfo)).thenReturn(true);
+    tracker.register("renewedCredential", Arrays.asList(renewedTokenInfo, removedTokenInfo));
+    tracker.register("removedCredential", Arrays.asList(removedTokenInfo));
+    tracker.onHandedOut(namespace, "pod-1", "renewedCredential");
+    tracker.onHandedOut(namespace, "pod-1", "removedCredential");
+    tracker.onHandedOut(namespace, "pod-2", "removedCredential");
+
+    Assert.assertEquals(tracker.prune(System.currentTimeMillis()), 1);
+    Assert.assertEquals(tracker.getTrackedCredentialCount(), 1);
+    Assert.assertEquals(tracker.getTrackedPodCount(), 1);
+
+    // Pruned credentials are not released again, their tokens are already no longer renewed
+    tracker.onPodTerminated(namespace, "pod-2");
+    Assert.assertEquals(tracker.getPendingCancellationCount(), 0);
+    tracker.onPodTerminated(namespace, "pod-1");
+    verify(tokenCache).removeToken(renewedTokenInfo);
+    Assert.assertEquals(tracker.getTrackedPodCount(), 0);
+  }
+
+  @Test
+  public void testHandOutUntrackedCredentialsPastMaxTrackedCredentials() {
+    tracker = new PodTokenTracker(tokenCache, cancelledTokens::add, 2, 0L, 1);
+    TokenInfo tokenInfo = makeTokenInfo("token");
+    TokenInfo untrackedTokenInfo = makeTokenInfo("untrackedToken");
+    tracker.register("credential", Arrays.asList(tokenInfo));
+    tracker.register("untrackedCredential", Arrays.asList(untrackedTokenInfo));
+    Assert.assertEquals(tracker.getTrackedCredentialCount(), 1);
+
+    Assert.assertTrue(tracker.onHandedOut(namespace, "pod-1", "untrackedCredential"));
+    tracker.onPodTerminated(namespace, "pod-1");
+    verify(tokenCache, never()).removeToken(any());
+  }
+
+  private TokenInfo makeTokenInfo(String identifier) {
+    Token<TokenIdentifier> token = new Token<>(identifier.getBytes(), new byte[0],
+        new Text(Constants.HDFS_DELEGATION_TOKEN), new Text("namenode:8020"));
+    return new TokenInfo(ImmutableMap.of(Constants.PROXY_USER, "testUser"), token);
+  }
+}
@@ -0,0 +1,67 @@
+/**
+ * Copyright 2020 LinkedIn Corporation. All rights reserved. Licensed under the BSD-2 Clause license.
+ * See LICENSE in the project root for license information.
+ */
+
+package com.linkedin.kube2hadoop.cache;
+
+import com.linkedin.kube2hadoop.core.TokenServiceException;
+import java.io.IOException;
+import org.apache.hadoop.security.UserGroupInformation;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+
+public class TestProxyUserCache {
+  @Test
+  public void testCreateProxyUserOnce() {
+    ProxyUserCache cache = new ProxyUserCache(10, 60000);
+    ProxyUserCache.ProxyUser first = cache.acquire("testUser",
+        () -> UserGroupInformation.createRemoteUser("testUser"));
+    ProxyUserCache.ProxyUser second = cache.acquire("testUser",
+        () -> UserGroupInformation.createRemoteUser("testUser"));
+
+    Assert.assertSame(first, second);
+    Assert.assertEquals(first.getReferenceCount(), 2);
+    Assert.assertEquals(cache.getMissCount(), 1);
+    Assert.assertEquals(cache.getHitCount(), 1);
+    Assert.assertEquals(cache.size(), 1);
+  }
+
+  @Test
+  public void testEvictWhenFull() {
+    ProxyUserCache cache = new ProxyUserCache(1, 60000);
+    cache.acquire("testUser1", () -> UserGroupInformation.createRemoteUser("testUser1")).close();
+    cache.acquire("testUser2", () -> UserGroupInformation.createRemoteUser("testUser2")).close();
+
+    Assert.assertEquals(cache.size(), 1);
+    Assert.assertEquals(cache.getEvictionCount(), 1);
+    Assert.assertEquals(cache.getMissCount(), 2);
+  }
+
+  @Test
+  public void testEvictedProxyUserInUse() {
+    ProxyUserCache cache = new ProxyUserCache(10, 60000);
+    ProxyUserCache.ProxyUser inUse = cache.acquire("testUser",
+        () -> UserGroupInformation.createRemoteUser("testUser"));
+    cache.invalidateAll();
+
+    // An evicted proxy user is not handed out again, a new one is created
+    ProxyUserCache.ProxyUser fresh = cache.acquire("testUser",
+        () -> UserGroupInformation.createRemoteUser("testUser"));
+    Assert.assertNotSame(fresh, inUse);
+    Assert.assertEquals(cache.getMissCount(), 2);
+
+    Assert.assertEquals(inUse.getReferenceCount(), 1);
+    inUse.close();
+    Assert.assertEquals(inUse.getReferenceCount(), 0);
+  }
+
+  @Test(expectedExceptions = TokenServiceException.class)
+  public void testFailedToCreateProxyUser() {
+    ProxyUserCache cache = new ProxyUserCache(10, 60000);
+    cache.acquire("testUser", () -> {
+      throw new IOException("login user not found");
+    });
+  }
+}
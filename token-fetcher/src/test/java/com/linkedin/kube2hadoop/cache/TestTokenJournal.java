@@ -0,0 +1,182 @@
+/**
+ * Copyright 2020 LinkedIn Corporation. All rights reserved. Licensed under the BSD-2 Clause license.
+ * See LICENSE in the project root for license information.
+ */
+
+package com.linkedin.kube2hadoop.cache;
+
+import com.google.common.collect.ImmutableMap;
+import com.linkedin.kube2hadoop.core.Constants;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.List;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.security.token.Token;
+import org.apache.hadoop.security.token.TokenIdentifier;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+
+public class TestTokenJournal {
+  long lastRenewalDate = 1567100400000L;
+  long expirationDate = 1567186800000L;
+
+  File journalDir;
+  File journalFile;
+
+  @BeforeMethod
+  public void setup() throws IOException {
+    journalDir = Files.createTempDirectory("token-journal").toFile();
+    journalFile = new File(journalDir, "tokens.journal");
+  }
+
+  @AfterMethod
+  public void cleanup() {
+    for (File file : journalDir.listFiles()) {
+      file.delete();
+    }
+    journalDir.delete();
+  }
+
+  @Test
+  public void testReplayAddsRenewalsAndRemovals() throws IOException {
+    TokenJournal journal = new TokenJournal(journalFile, false, 1000L);
+    Assert.assertTrue(journal.open(lastRenewalDate).isEmpty());
+    TokenInfo renewed = makeTokenInfo("renewed");
+    TokenInfo removed = makeTokenInfo("removed");
+    TokenInfo fresh = makeTokenInfo("fresh");
+    journal.logAdd(renewed);
+    journal.logAdd(removed);
+    journal.logAdd(fresh);
+    renewed.setExpirationDate(expirationDate, lastRenewalDate);
+    journal.logUpdate(renewed);
+    journal.logRemove(removed);
+    journal.close();
+
+    List<TokenInfo> tokens = reopen(lastRenewalDate);
+    Assert.assertEquals(tokens.size(), 2);
+    TokenInfo replayed = tokens.get(0);
+    Assert.assertEquals(replayed.getToken(), renewed.getToken());
+    Assert.assertEquals(replayed.getExpirationDate(), expirationDate);
+    Assert.assertEquals(replayed.getLastRenewalDate(), lastRenewalDate);
+    Assert.assertEquals(replayed.getTokenOwner(), "testUser");
+    Assert.assertEquals(tokens.get(1).getToken(), fresh.getToken());
+    Assert.assertEquals(tokens.get(1).getExpirationDate(), 0L);
+  }
+
+  @Test
+  public void testSkipExpiredTokens() throws IOException {
+    TokenJournal journal = new TokenJournal(journalFile, false, 1000L);
+    journal.open(lastRenewalDate);
+    TokenInfo tokenInfo = makeTokenInfo("token");
+    tokenInfo.setExpirationDate(expirationDate, lastRenewalDate);
+    journal.logAdd(tokenInfo);
+    journal.close();
+
+    Assert.assertTrue(reopen(expirationDate).isEmpty());
+  }
+
+  @Test
+  public void testDiscardTruncatedRecords() throws IOException {
+    TokenJournal journal = new TokenJournal(journalFile, true, 1000L);
+    journal.open(lastRenewalDate);
+    journal.logAdd(makeTokenInfo("first"));
+    journal.logAdd(makeTokenInfo("second"));
+    journal.close();
+
+    long length = journalFile.length();
+    try (RandomAccessFile file = new RandomAccessFile(journalFile, "rw")) {
+      file.setLength(length - 3);
+    }
+    TokenJournal reopened = new TokenJournal(journalFile, false, 1000L);
+    List<TokenInfo> tokens = reopened.open(lastRenewalDate);
+    Assert.assertEquals(tokens.size(), 1);
+    Assert.assertEquals(reopened.getRecordCount(), 1);
+
+    // Records appended after recovery follow the last valid record
+    reopened.logAdd(makeTokenInfo("third"));
+    reopened.close();
+    Assert.assertEquals(reopen(lastRenewalDate).size(), 2);
+  }
+
+  @Test
+  public void testCompaction() throws IOException {
+    TokenJournal journal = new TokenJournal(journalFile, false, 4L);
+    journal.open(lastRenewalDate);
+    TokenInfo tokenInfo = makeTokenInfo("token");
+    journal.logAdd(tokenInfo);
+    for (int i = 0; i < 5; i++) {
+      tokenInfo.setExpirationDate(expirationDate + i, lastRenewalDate + i);
+      journal.logUpdate(tokenInfo);
+    }
+    journal.close();
+    Assert.assertEquals(journal.getCompactionCount(), 1);
+    Assert.assertFalse(new File(journalFile.getPath() + ".compacting").exists());
+
+    List<TokenInfo> tokens = reopen(lastRenewalDate);
+    Assert.assertEquals(tokens.size(), 1);
+    Assert.assertEquals(tokens.get(0).getExpirationDate(), expirationDate + 4);
+  }
+
+  @Test
+  public void testJournalIsOnlyAccessibleByItsOwner() throws IOException {
+    File journalSubDir = new File(journalDir, "journal");
+    File subDirJournalFile = new File(journalSubDir, "tokens.journal");
+    TokenJournal journal = new TokenJournal(subDirJournalFile, false, 1L);
+    journal.open(lastRenewalDate);
+    Assert.assertEquals(PosixFilePermissions.toString(Files.getPosixFilePermissions(journalSubDir.toPath())),
+        "rwx------");
+    Assert.assertEquals(PosixFilePermissions.toString(Files.getPosixFilePermissions(subDirJournalFile.toPath())),
+        "rw-------");
+
+    TokenInfo tokenInfo = makeTokenInfo("token");
+    journal.logAdd(tokenInfo);
+    journal.logUpdate(tokenInfo);
+    journal.logUpdate(tokenInfo);
+    journal.close();
+    Assert.assertEquals(journal.getCompactionCount(), 1);
+    Assert.assertEquals(PosixFilePermissions.toString(Files.getPosixFilePermissions(subDirJournalFile.toPath())),
+        "rw-------");
+    subDirJournalFile.delete();
+    journalSubDir.delete();
+  }
+
+  @Test
+  public void testAppendAfterCompaction() throws IOException, InterruptedException {
+    TokenJournal journal = new TokenJournal(journalFile, false, 2L);
+    journal.open(lastRenewalDate);
+    TokenInfo tokenInfo = makeTokenInfo("token");
+    journal.logAdd(tokenInfo);
+    journal.logUpdate(tokenInfo);
+    journal.logUpdate(tokenInfo);
+    long deadline = System.currentTimeMillis() + 10000L;
+    while (journal.getCompactionCount() == 0 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10L);
+    }
+    Assert.assertEquals(journal.getCompactionCount(), 1);
+    journal.logAdd(makeTokenInfo("other"));
+    journal.close();
+
+    Assert.assertEquals(reopen(lastRenewalDate).size(), 2);
+  }
+
+  private List<TokenInfo> reopen(long now) throws IOException {
+    TokenJournal journal = new TokenJournal(journalFile, false, 1000L);
+    try {
+      return journal.open(now);
+    } finally {
+      journal.close();
+    }
+  }
+
+  private TokenInfo makeTokenInfo(String identifier) {
+    Token<TokenIdentifier> token = new Token<>(identifier.getBytes(), new byte[0],
+        new Text(Constants.HDFS_DELEGATION_TOKEN), new Text("namenode:8020"));
+    return new TokenInfo(ImmutableMap.of(Constants.PROXY_USER, "testUser"), token);
+  }
+}
@@ -0,0 +1,91 @@
+/**
+ * Copyright 2020 LinkedIn Corporation. All rights reserved. Licensed under the BSD-2 Clause license.
+ * See LICENSE in the project root for license information.
+ */
+
+package com.linkedin.kube2hadoop.cache;
+
+import com.linkedin.kube2hadoop.core.Constants;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.security.token.Token;
+import org.apache.hadoop.security.token.TokenIdentifier;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+
+public class TestTokenRenewalIndex {
+  long lastRenewalDate = 1567100400000L;
+  long expirationDate = 1567186800000L;
+  long renewalDate = 1567178160000L;
+
+  TokenRenewalIndex index;
+
+  @BeforeMethod
+  public void setup() {
+    index = new TokenRenewalIndex();
+  }
+
+  @Test
+  public void testPollDueInRenewalOrder() {
+    TokenInfo renewed = makeTokenInfo("renewed");
+    renewed.setExpirationDate(expirationDate, lastRenewalDate);
+    TokenInfo fresh = makeTokenInfo("fresh");
+
+    index.schedule(renewed);
+    index.schedule(fresh);
+
+    Assert.assertEquals(index.getNextRenewalDate(), 0L);
+    Assert.assertEquals(index.pollDue(lastRenewalDate), Arrays.asList(fresh));
+    Assert.assertEquals(index.pollDue(renewalDate + 1), Arrays.asList(renewed));
+    Assert.assertTrue(index.pollDue(Long.MAX_VALUE).isEmpty());
+    Assert.assertEquals(index.size(), 2);
+  }
+
+  @Test
+  public void testRescheduleAfterRenewal() {
+    TokenInfo tokenInfo = makeTokenInfo("token");
+    index.schedule(tokenInfo);
+
+    List<TokenInfo> dueTokens = index.pollDue(lastRenewalDate);
+    Assert.assertEquals(dueTokens, Arrays.asList(tokenInfo));
+    Assert.assertEquals(index.getNextRenewalDate(), Long.MAX_VALUE);
+
+    tokenInfo.setExpirationDate(expirationDate, lastRenewalDate);
+    Assert.assertTrue(index.reschedule(tokenInfo));
+    Assert.assertEquals(index.getNextRenewalDate(), renewalDate);
+    Assert.assertTrue(index.pollDue(renewalDate).isEmpty());
+  }
+
+  @Test
+  public void testRemovedTokenIsNotRescheduled() {
+    TokenInfo tokenInfo = makeTokenInfo("token");
+    index.schedule(tokenInfo);
+    index.pollDue(lastRenewalDate);
+
+    Assert.assertTrue(index.remove(tokenInfo));
+    Assert.assertFalse(index.reschedule(tokenInfo));
+    Assert.assertFalse(index.contains(tokenInfo));
+    Assert.assertFalse(index.remove(tokenInfo));
+    Assert.assertEquals(index.size(), 0);
+  }
+
+  @Test
+  public void testScheduleSameTokenTwice() {
+    TokenInfo tokenInfo = makeTokenInfo("token");
+    index.schedule(tokenInfo);
+    index.schedule(makeTokenInfo("token"));
+
+    Assert.assertEquals(index.size(), 1);
+    Assert.assertEquals(index.pollDue(lastRenewalDate).size(), 1);
+  }
+
+  private TokenInfo makeTokenInfo(String identifier) {
+    Token<TokenIdentifier> token = new Token<>(identifier.getBytes(), new byte[0],
+        new Text(Constants.HDFS_DELEGATION_TOKEN), new Text());
+    return new TokenInfo(new HashMap<>(), token);
+  }
+}
@@ -0,0 +1,306 @@
+/**
+ * Copyright 2020 LinkedIn Corporation. All rights reserved. Licensed under the BSD-2 Clause license.
+ * See LICENSE in the project root for license information.
+ */
+
+package com.linkedin.kube2hadoop.cache;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.linkedin.kube2hadoop.core.Constants;
+import com.linkedin.kube2hadoop.core.conf.ConfigurationKeys;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.retry.RetryOneTime;
+import org.apache.curator.test.TestingServer;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.security.token.Token;
+import org.apache.hadoop.security.token.TokenIdentifier;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.ZooDefs;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+
+public class TestZooKeeperTokenCache {
+  private static final String ROOT = "/kube2hadoop/token-cache";
+  private static final long TIMEOUT = 10000L;
+
+  long lastRenewalDate = 1567100400000L;
+  long expirationDate = 1567186800000L;
+
+  TestingServer server;
+  List<ZooKeeperTokenCache> caches;
+
+  @BeforeMethod
+  public void setup() throws Exception {
+    server = new TestingServer();
+    caches = new ArrayList<>();
+  }
+
+  @AfterMethod
+  public void cleanup() throws Exception {
+    caches.forEach(ZooKeeperTokenCache::close);
+    server.close();
+  }
+
+  @Test
+  public void testOwnerOnlyMovesFromRemovedReplica() {
+    List<String> replicas = ImmutableList.of("replica-a", "replica-b", "replica-c");
+    List<String> remaining = ImmutableList.of("replica-a", "replica-c");
+    int ownedByRemoved = 0;
+    for (int i = 0; i < 300; i++) {
+      String tokenId = "token" + i;
+      String owner = ZooKeeperTokenCache.getOwner(tokenId, replicas);
+      Assert.assertEquals(ZooKeeperTokenCache.getOwner(tokenId, ImmutableList.of("replica-c", "replica-b",
+          "replica-a")), owner);
+      if (owner.equals("replica-b")) {
+        ownedByRemoved++;
+      } else {
+        Assert.assertEquals(ZooKeeperTokenCache.getOwner(tokenId, remaining), owner);
+      }
+    }
+    Assert.assertTrue(ownedByRemoved > 50 && ownedByRemoved < 150, "Unbalanced ownership: " + ownedByRemoved);
+    Assert.assertNull(ZooKeeperTokenCache.getOwner("token", ImmutableList.of()));
+  }
+
+  @Test
+  public void testTokensArePartitionedAcrossReplicas() throws Exception {
+    ZooKeeperTokenCache cacheA = newCache("replica-a");
+    ZooKeeperTokenCache cacheB = newCache("replica-b");
+    waitFor(() -> cacheA.getReplicas().size() == 2 && cacheB.getReplicas().size() == 2);
+    List<TokenInfo> tokenInfos = addTokens(cacheA, 40);
+
+    waitFor(() -> cacheB.getTokenCount() == 40);
+    Assert.assertEquals(cacheA.getOwnedTokenCount() + cacheB.getOwnedTokenCount(), 40);
+    Assert.assertTrue(cacheA.getOwnedTokenCount() > 0);
+    Assert.assertTrue(cacheB.getOwnedTokenCount() > 0);
+    for (TokenInfo tokenInfo : tokenInfos) {
+      Assert.assertTrue(cacheB.containsToken(tokenInfo));
+    }
+
+    // Never renewed tokens are due right away, each on its owner only
+    Assert.assertEquals(cacheA.getTokensForRenewal().size() + cacheB.getTokensForRenewal().size(), 40);
+  }
+
+  @Test
+  public void testTokensAreTakenOverWhenReplicaLeaves() throws Exception {
+    ZooKeeperTokenCache cacheA = newCache("replica-a");
+    ZooKeeperTokenCache cacheB = newCache("replica-b");
+    waitFor(() -> cacheA.getReplicas().size() == 2);
+    addTokens(cacheB, 40);
+    waitFor(() -> cacheA.getTokenCount() == 40);
+    Assert.assertTrue(cacheA.getOwnedTokenCount() < 40);
+
+    cacheB.close();
+    waitFor(() -> cacheA.getOwnedTokenCount() == 40);
+    Assert.assertEquals(cacheA.getReplicas(), ImmutableList.of("replica-a"));
+
+    // A new replica starts with the tokens stored so far, and takes its share
+    ZooKeeperTokenCache cacheC = newCache("replica-c");
+    Assert.assertEquals(cacheC.getTokenCount(), 40);
+    waitFor(() -> cacheC.getOwnedTokenCount() > 0
+        && cacheA.getOwnedTokenCount() + cacheC.getOwnedTokenCount() == 40);
+  }
+
+  @Test
+  public void testRenewalIsSharedWithReplicas() throws Exception {
+    ZooKeeperTokenCache cacheA = newCache("replica-a");
+    TokenInfo tokenInfo = makeTokenInfo("token");
+    cacheA.addToken(tokenInfo);
+    ZooKeeperTokenCache cacheB = newCache("replica-b");
+    waitFor(() -> cacheA.getReplicas().size() == 2 && cacheB.getReplicas().size() == 2
+        && cacheA.getOwnedTokenCount() + cacheB.getOwnedTokenCount() == 1);
+    ZooKeeperTokenCache owner = cacheA.getOwnedTokenCount() == 1 ? cacheA : cacheB;
+    ZooKeeperTokenCache other = owner == cacheA ? cacheB : cacheA;
+
+    TokenInfo dueToken = owner.getTokensForRenewal().get(0);
+    Assert.assertTrue(other.getTokensForRenewal().isEmpty());
+    dueToken.setExpirationDate(expirationDate, lastRenewalDate);
+    owner.rescheduleToken(dueToken);
+    Assert.assertEquals(owner.getNextRenewalDate(), dueToken.getNextRenewalDate());
+    waitFor(() -> other.getTokenInfo(tokenInfo).getLastRenewalDate() == lastRenewalDate);
+    Assert.assertEquals(other.getTokenInfo(tokenInfo).getExpirationDate(), expirationDate);
+
+    ZooKeeperTokenCache cacheC = newCache("replica-c");
+    Assert.assertEquals(cacheC.getTokenInfo(tokenInfo).getExpirationDate(), expirationDate);
+    Assert.assertEquals(cacheC.getTokenInfo(tokenInfo).getLastRenewalDate(), lastRenewalDate);
+  }
+
+  @Test
+  public void testRemoveToken() throws Exception {
+    ZooKeeperTokenCache cacheA = newCache("replica-a");
+    ZooKeeperTokenCache cacheB = newCache("replica-b");
+    TokenInfo tokenInfo = makeTokenInfo("token");
+    cacheA.addToken(tokenInfo);
+    waitFor(() -> cacheB.containsToken(tokenInfo));
+
+    cacheB.removeToken(tokenInfo);
+    Assert.assertFalse(cacheB.containsToken(tokenInfo));
+    waitFor(() -> !cacheA.containsToken(tokenInfo));
+    Assert.assertEquals(cacheA.getOwnedTokenCount(), 0);
+    Assert.assertEquals(cacheA.getNextRenewalDate(), Long.MAX_VALUE);
+  }
+
+  @Test
+  public void testRenewalDatesOnlyMoveForward() throws Exception {
+    ZooKeeperTokenCache cacheA = newCache("replica-a");
+    ZooKeeperTokenCache cacheB = newCache("replica-b");
+    TokenInfo tokenInfo = makeTokenInfo("token");
+    tokenInfo.setExpirationDate(expirationDate, lastRenewalDate);
+    cacheA.addToken(tokenInfo);
+    waitFor(() -> cacheB.containsToken(tokenInfo));
+
+    // A copy of the token handed out again before its renewal was seen does not undo the renewal
+    cacheA.addToken(makeTokenInfo("token"));
+    TokenInfo marker = makeTokenInfo("marker");
+    cacheA.addToken(marker);
+    waitFor(() -> cacheB.containsToken(marker));
+    Assert.assertEquals(cacheB.getTokenInfo(tokenInfo).getLastRenewalDate(), lastRenewalDate);
+    Assert.assertEquals(cacheB.getTokenInfo(tokenInfo).getExpirationDate(), expirationDate);
+  }
+
+  @Test
+  public void testLeaderRenewsAllTokens() throws Exception {
+    ZooKeeperTokenCache cacheA = newCache("replica-a", ConfigurationKeys.TokenOwnership.LEADER);
+    ZooKeeperTokenCache cacheB = newCache("replica-b", ConfigurationKeys.TokenOwnership.LEADER);
+    addTokens(cacheB, 20);
+    waitFor(() -> cacheA.getTokenCount() == 20 && cacheB.getTokenCount() == 20);
+    waitFor(() -> cacheA.getOwnedTokenCount() + cacheB.getOwnedTokenCount() == 20);
+    ZooKeeperTokenCache leader = cacheA.getOwnedTokenCount() == 20 ? cacheA : cacheB;
+    ZooKeeperTokenCache follower = leader == cacheA ? cacheB : cacheA;
+    Assert.assertEquals(follower.getOwnedTokenCount(), 0);
+    Assert.assertTrue(follower.getTokensForRenewal().isEmpty());
+
+    // The follower takes over once the leader is gone
+    leader.close();
+    waitFor(() -> follower.getOwnedTokenCount() == 20);
+    Assert.assertEquals(follower.getTokensForRenewal().size(), 20);
+  }
+
+  @Test
+  public void testRenewalIsFencedOnLeaseLoss() throws Exception {
+    InProcessRenewalLease lease = new InProcessRenewalLease();
+    ZooKeeperTokenCache cache = newCache("replica-a", lease);
+    TokenInfo tokenInfo = makeTokenInfo("token");
+    cache.addToken(tokenInfo);
+    Assert.assertEquals(cache.getOwnedTokenCount(), 0);
+
+    lease.setHeld(true);
+    TokenInfo dueToken = cache.getTokensForRenewal().get(0);
+    Assert.assertTrue(cache.canRenew(dueToken));
+
+    // Lease lost while the token is being renewed
+    lease.setHeld(false);
+    Assert.assertFalse(cache.canRenew(dueToken));
+    Assert.assertEquals(cache.getOwnedTokenCount(), 0);
+    Assert.assertTrue(cache.containsToken(tokenInfo));
+  }
+
+  @Test
+  public void testZnodesAreOnlyAccessibleByTheirCreator() throws Exception {
+    Configuration conf = new Configuration();
+    conf.set(ConfigurationKeys.KUBE2HADOOP_TOKEN_CACHE_ZOOKEEPER_QUORUM, server.getConnectString());
+    conf.set(ConfigurationKeys.KUBE2HADOOP_TOKEN_CACHE_ZOOKEEPER_AUTH, "digest:kube2hadoop:secret");
+    ZooKeeperTokenCache cache = new ZooKeeperTokenCache(ZooKeeperTokenCache.newClient(conf), ROOT, "replica-a",
+        new RenewalPolicy(new Configuration()), ConfigurationKeys.TokenOwnership.PARTITIONED);
+    caches.add(cache);
+
+    CuratorFramework client = newClient();
+    try {
+      for (String path : ImmutableList.of(ROOT, ROOT + "/tokens", ROOT + "/replicas")) {
+        Assert.assertEquals(client.getACL().forPath(path).get(0).getId().getScheme(), "digest");
+        try {
+          client.getData().forPath(path);
+          Assert.fail("Expected " + path + " to be unreadable");
+        } catch (KeeperException.NoAuthException e) {
+          // expected
+        }
+      }
+      Assert.assertEquals(client.getACL().forPath("/kube2hadoop"), ZooDefs.Ids.OPEN_ACL_UNSAFE);
+    } finally {
+      client.close();
+    }
+  }
+
+  private ZooKeeperTokenCache newCache(String replicaId) {
+    return newCache(replicaId, ConfigurationKeys.TokenOwnership.PARTITIONED);
+  }
+
+  private ZooKeeperTokenCache newCache(String replicaId, ConfigurationKeys.TokenOwnership ownership) {
+    ZooKeeperTokenCache cache = new ZooKeeperTokenCache(newClient(), ROOT, replicaId,
+        new RenewalPolicy(new Configuration()), ownership);
+    caches.add(cache);
+    return cache;
+  }
+
+  private ZooKeeperTokenCache newCache(String replicaId, RenewalLease lease) {
+    ZooKeeperTokenCache cache = new ZooKeeperTokenCache(newClient(), ROOT, replicaId,
+        new RenewalPolicy(new Configuration()), lease);
+    caches.add(cache);
+    return cache;
+  }
+
+  private CuratorFramework newClient() {
+    CuratorFramework client = CuratorFrameworkFactory.newClient(server.getConnectString(), new RetryOneTime(100));
+    client.start();
+    return client;
+  }
+
+  private List<TokenInfo> addTokens(ZooKeeperTokenCache cache, int count) {
+    List<TokenInfo> tokenInfos = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      TokenInfo tokenInfo = makeTokenInfo("token" + i);
+      cache.addToken(tokenInfo);
+      tokenInfos.add(tokenInfo);
+    }
+    return tokenInfos;
+  }
+
+  private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + TIMEOUT;
+    while (!condition.getAsBoolean()) {
+      Assert.assertTrue(System.currentTimeMillis() < deadline, "Timed out waiting for the token cache");
+      Thread.sleep(20L);
+    }
+  }
+
+  /**
+   * Lease handed over by the test.
+   */
+  private static class InProcessRenewalLease implements RenewalLease {
+    private volatile boolean held = false;
+    private Listener listener;
+
+    @Override
+    public void start(Listener listener) {
+      this.listener = listener;
+    }
+
+    void setHeld(boolean held) {
+      this.held = held;
+      listener.onLeaseChanged(held);
+    }
+
+    @Override
+    public boolean isHeld() {
+      return held;
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+
+  private TokenInfo makeTokenInfo(String identifier) {
+    Token<TokenIdentifier> token = new Token<>(identifier.getBytes(), new byte[0],
+        new Text(Constants.HDFS_DELEGATION_TOKEN), new Text("namenode:8020"));
+    return new TokenInfo(ImmutableMap.of(Constants.PROXY_USER, "testUser"), token);
+  }
+}
@@ -5,8 +5,15 @@
 
 package com.linkedin.kube2hadoop.conf;
 
+import com.linkedin.kube2hadoop.cache.RenewalPolicy;
 import com.linkedin.kube2hadoop.cache.TokenInfo;
+import com.linkedin.kube2hadoop.core.Constants;
+import com.linkedin.kube2hadoop.core.conf.ConfigurationKeys;
 import java.util.HashMap;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hdfs.security.token.delegation.DelegationTokenIdentifier;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.security.token.Token;
 import org.testng.Assert;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
@@ -78,4 +85,112 @@ public class TestTokenInfo {
     Assert.assertFalse(tokenInfo.needsRenewal(now));
     Assert.assertFalse(tokenInfo.needsRenewal(notYet));
   }
+
+  @Test
+  public void testNextRenewalDateWithJitter() {
+    long expirationDate = 1567186800000L;
+    long renewalDate = 1567100400000L;
+    long lifetime = expirationDate - renewalDate;
+
+    Configuration conf = new Configuration(false);
+    conf.setDouble(ConfigurationKeys.KUBE2HADOOP_RENEWER_RENEWAL_FRACTION, 0.8);
+    conf.setDouble(ConfigurationKeys.KUBE2HADOOP_RENEWER_RENEWAL_JITTER, 0.5);
+    tokenInfo.setRenewalPolicy(new RenewalPolicy(conf));
+
+    for (int i = 0; i < 100; i++) {
+      tokenInfo.setExpirationDate(expirationDate, renewalDate + i);
+      long nextRenewalDate = tokenInfo.getNextRenewalDate();
+      Assert.assertTrue(nextRenewalDate >= renewalDate + i + (long) ((lifetime - i) * 0.4));
+      Assert.assertTrue(nextRenewalDate <= renewalDate + i + (long) ((lifetime - i) * 0.8));
+    }
+  }
+
+  @Test
+  public void testDeferRenewal() {
+    long expirationDate = 1567186800000L;
+    long renewalDate = 1567100400000L;
+
+    tokenInfo.deferRenewal(renewalDate, renewalDate - 1);
+    Assert.assertEquals(tokenInfo.getNextRenewalDate(), renewalDate);
+
+    tokenInfo.setExpirationDate(expirationDate, renewalDate);
+    tokenInfo.deferRenewal(expirationDate + 1, renewalDate);
+    Assert.assertEquals(tokenInfo.getNextRenewalDate(), expirationDate);
+
+    // Once expired, retries are spaced by the retry interval instead of being due right away
+    tokenInfo.deferRenewal(expirationDate + 2000, expirationDate + 1000);
+    Assert.assertEquals(tokenInfo.getNextRenewalDate(), expirationDate + 2000);
+  }
+
+  @Test
+  public void testScheduleFirstRenewalFromIdentifier() {
+    long issueDate = 1567100400000L;
+    long renewInterval = 86400000L;
+    tokenInfo = makeTokenInfo(makeIdentifier(issueDate, issueDate + 7 * renewInterval).getBytes());
+    tokenInfo.setRenewalPolicy(makeRenewalPolicy(renewInterval));
+
+    Assert.assertEquals(tokenInfo.getLastRenewalDate(), issueDate);
+    Assert.assertEquals(tokenInfo.getExpirationDate(), issueDate + renewInterval);
+    Assert.assertEquals(tokenInfo.getMaxDate(), issueDate + 7 * renewInterval);
+    Assert.assertEquals(tokenInfo.getNextRenewalDate(), issueDate + renewInterval / 2);
+    Assert.assertFalse(tokenInfo.isPastMaxDate(issueDate + renewInterval));
+  }
+
+  @Test
+  public void testStopRenewingAtMaxDate() {
+    long issueDate = 1567100400000L;
+    long renewInterval = 86400000L;
+    long maxDate = issueDate + renewInterval / 2;
+    tokenInfo = makeTokenInfo(makeIdentifier(issueDate, maxDate).getBytes());
+    tokenInfo.setRenewalPolicy(makeRenewalPolicy(renewInterval));
+
+    Assert.assertEquals(tokenInfo.getExpirationDate(), maxDate);
+    Assert.assertEquals(tokenInfo.getNextRenewalDate(), maxDate);
+    Assert.assertFalse(tokenInfo.isPastMaxDate(maxDate - 1));
+    Assert.assertTrue(tokenInfo.isPastMaxDate(maxDate));
+  }
+
+  @Test
+  public void testRenewRightAwayWithoutRenewInterval() {
+    long issueDate = 1567100400000L;
+    long maxDate = issueDate + 7 * 86400000L;
+    tokenInfo = makeTokenInfo(makeIdentifier(issueDate, maxDate).getBytes());
+    tokenInfo.setRenewalPolicy(makeRenewalPolicy(0L));
+
+    Assert.assertEquals(tokenInfo.getExpirationDate(), 0L);
+    Assert.assertEquals(tokenInfo.getMaxDate(), maxDate);
+    Assert.assertTrue(tokenInfo.needsRenewal(issueDate));
+  }
+
+  @Test
+  public void testUndecodableIdentifier() {
+    tokenInfo = makeTokenInfo("garbage".getBytes());
+    tokenInfo.setRenewalPolicy(makeRenewalPolicy(86400000L));
+
+    Assert.assertEquals(tokenInfo.getExpirationDate(), 0L);
+    Assert.assertEquals(tokenInfo.getMaxDate(), 0L);
+    Assert.assertTrue(tokenInfo.needsRenewal(1567100400000L));
+    Assert.assertFalse(tokenInfo.isPastMaxDate(Long.MAX_VALUE));
+  }
+
+  private DelegationTokenIdentifier makeIdentifier(long issueDate, long maxDate) {
+    DelegationTokenIdentifier identifier = new DelegationTokenIdentifier(new Text("testUser"), new Text("renewer"),
+        new Text("testUser"));
+    identifier.setIssueDate(issueDate);
+    identifier.setMaxDate(maxDate);
+    return identifier;
+  }
+
+  private TokenInfo makeTokenInfo(byte[] identifier) {
+    return new TokenInfo(new HashMap<>(), new Token<>(identifier, new byte[0],
+        new Text(Constants.HDFS_DELEGATION_TOKEN), new Text("namenode:8020")));
+  }
+
+  private RenewalPolicy makeRenewalPolicy(long renewInterval) {
+    Configuration conf = new Configuration(false);
+    conf.setDouble(ConfigurationKeys.KUBE2HADOOP_RENEWER_RENEWAL_FRACTION, 0.5);
+    conf.setDouble(ConfigurationKeys.KUBE2HADOOP_RENEWER_RENEWAL_JITTER, 0.0);
+    conf.setLong(ConfigurationKeys.KUBE2HADOOP_RENEWER_NAMENODE_RENEW_INTERVAL_IN_MILLISECONDS, renewInterval);
+    return new RenewalPolicy(conf);
+  }
 }
@@ -5,26 +5,45 @@
 
 package com.linkedin.kube2hadoop.service;
 
+import com.google.common.util.concurrent.Uninterruptibles;
+import com.linkedin.kube2hadoop.authenticator.Authenticator;
+import com.linkedin.kube2hadoop.cache.PodTokenTracker;
+import com.linkedin.kube2hadoop.cache.ProxyUserCache;
 import com.linkedin.kube2hadoop.core.Constants;
+import com.linkedin.kube2hadoop.core.ErrorCode;
+import com.linkedin.kube2hadoop.core.TokenServiceException;
+import com.linkedin.kube2hadoop.core.conf.ConfigurationKeys;
 import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.URI;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
 import org.apache.directory.server.kerberos.shared.keytab.Keytab;
 import org.apache.directory.server.kerberos.shared.keytab.KeytabEntry;
 import org.apache.directory.shared.kerberos.KerberosTime;
 import org.apache.directory.shared.kerberos.codec.types.EncryptionType;
 import org.apache.directory.shared.kerberos.components.EncryptionKey;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.CommonConfigurationKeys;
+import org.apache.hadoop.fs.CommonConfigurationKeysPublic;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.security.Credentials;
+import org.apache.hadoop.security.UserGroupInformation;
 import org.apache.hadoop.security.token.Token;
 import org.apache.hadoop.security.token.TokenIdentifier;
 import org.testng.Assert;
 import org.testng.annotations.Test;
 
+import static org.mockito.Mockito.*;
+
 
 public class TestTokenFetcherService {
   @Test
@@ -92,6 +111,164 @@ public class TestTokenFetcherService {
     Assert.assertEquals(cred.numberOfTokens(), decodedCred.numberOfTokens());
   }
 
+  @Test
+  public void testGetNameNodes() {
+    Configuration conf = new Configuration(false);
+    conf.set(CommonConfigurationKeysPublic.FS_DEFAULT_NAME_KEY, "hdfs://nameservice1");
+    conf.set(ConfigurationKeys.KUBE2HADOOP_NAMENODES, "hdfs://nameservice2, hdfs://nameservice1,hdfs://router:8888");
+
+    Assert.assertEquals(NameNodeTokenFetcher.getNameNodes(conf), Arrays.asList(URI.create("hdfs://nameservice1"),
+        URI.create("hdfs://nameservice2"), URI.create("hdfs://router:8888")));
+  }
+
+  @Test
+  public void testCancelTokensOfPartialFetch() {
+    Configuration conf = new Configuration(false);
+    conf.set(CommonConfigurationKeysPublic.FS_DEFAULT_NAME_KEY, "hdfs://nameservice1");
+    conf.set(ConfigurationKeys.KUBE2HADOOP_NAMENODES, "hdfs://nameservice2");
+    List<Credentials> cancelled = new ArrayList<>();
+    Credentials fetched = new Credentials();
+    addTokenToCredential(fetched, "nameservice1");
+    NameNodeTokenFetcher fetcher = new NameNodeTokenFetcher(conf, "renewer") {
+      @Override
+      Credentials fetchToken(UserGroupInformation proxyUgi, String userToProxy, URI nameNode) {
+        if (nameNode.getHost().equals("nameservice2")) {
+          throw new TokenServiceException("NameNode down", ErrorCode.FAILED_TO_FETCH_HDFS_TOKEN);
+        }
+        return fetched;
+      }
+
+      @Override
+      synchronized void cancelTokens(Credentials cred, String userToProxy) {
+        cancelled.add(cred);
+      }
+    };
+
+    Credentials cred = new Credentials();
+    try (ProxyUserCache.ProxyUser proxyUser = new ProxyUserCache(conf).acquireProxiedUser("user")) {
+      fetcher.fetchTokens(proxyUser, "user", cred);
+      Assert.fail("Expected the fetch to fail");
+    } catch (TokenServiceException ex) {
+      Assert.assertTrue(ex.getMessage().contains("nameservice2"));
+    } finally {
+      fetcher.shutdown();
+    }
+    Assert.assertEquals(cred.numberOfTokens(), 0);
+    Assert.assertEquals(cancelled, Arrays.asList(fetched));
+    Assert.assertNull(conf.get(CommonConfigurationKeys.IPC_CLIENT_PING_KEY));
+  }
+
+  @Test
+  public void testAbandonedFetchHoldsProxyUser() throws InterruptedException {
+    Configuration conf = new Configuration(false);
+    conf.set(CommonConfigurationKeysPublic.FS_DEFAULT_NAME_KEY, "hdfs://nameservice1");
+    conf.set(ConfigurationKeys.KUBE2HADOOP_NAMENODES, "hdfs://nameservice2");
+    conf.setLong(ConfigurationKeys.KUBE2HADOOP_NAMENODE_FETCH_TIMEOUT_IN_MILLISECONDS, 100L);
+    CountDownLatch hungNameNode = new CountDownLatch(1);
+    NameNodeTokenFetcher fetcher = new NameNodeTokenFetcher(conf, "renewer") {
+      @Override
+      Credentials fetchToken(UserGroupInformation proxyUgi, String userToProxy, URI nameNode) {
+        if (nameNode.getHost().equals("nameservice1")) {
+          Uninterruptibles.awaitUninterruptibly(hungNameNode);
+        }
+        return new Credentials();
+      }
+
+      @Override
+      void cancelTokens(Credentials cred, String userToProxy) {
+      }
+    };
+
+    ProxyUserCache.ProxyUser proxyUser = new ProxyUserCache(conf).acquireProxiedUser("user");
+    try {
+      fetcher.fetchTokens(proxyUser, "user", new Credentials());
+      Assert.fail("Expected the fetch to time out");
+    } catch (TokenServiceException ex) {
+      Assert.assertTrue(ex.getMessage().contains("nameservice1: timed out"));
+    } finally {
+      proxyUser.close();
+    }
+    Assert.assertTrue(isHeld(proxyUser));
+
+    hungNameNode.countDown();
+    long deadline = System.currentTimeMillis() + 10000L;
+    while (isHeld(proxyUser) && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10L);
+    }
+    Assert.assertFalse(isHeld(proxyUser));
+    fetcher.shutdown();
+  }
+
+  private static boolean isHeld(ProxyUserCache.ProxyUser proxyUser) {
+    try {
+      proxyUser.share().close();
+      return true;
+    } catch (IllegalStateException ex) {
+      return false;
+    }
+  }
+
+  @Test
+  public void testGetTokenRequestKey() {
+    String[] tokenKinds = new String[]{Constants.HDFS_DELEGATION_TOKEN, "KIND", Constants.HDFS_DELEGATION_TOKEN};
+    String[] sameTokenKinds = new String[]{"KIND", Constants.HDFS_DELEGATION_TOKEN};
+
+    Assert.assertEquals(TokenFetcherService.getTokenRequestKey("namespace", "pod", "user", tokenKinds),
+        TokenFetcherService.getTokenRequestKey("namespace", "pod", "user", sameTokenKinds));
+    Assert.assertNotEquals(TokenFetcherService.getTokenRequestKey("namespace", "pod", "user", tokenKinds),
+        TokenFetcherService.getTokenRequestKey("namespace", "pod", "headless", tokenKinds));
+  }
+
+  @Test
+  public void testBatchHandsOutOwnCredentialsOnceSharedOneIsReleased() {
+    String namespace = "namespace";
+    String[] tokenKinds = new String[]{Constants.HDFS_DELEGATION_TOKEN};
+    Authenticator authenticator = mock(Authenticator.class);
+    when(authenticator.getAuthenticatedUserID(any())).thenReturn("user");
+    // Released right after the shared fetch, except for the first pod, and for the own credential of the second pod
+    PodTokenTracker podTokenTracker = mock(PodTokenTracker.class);
+    when(podTokenTracker.onHandedOut(namespace, "pod-a", "shared")).thenReturn(true);
+    when(podTokenTracker.onHandedOut(namespace, "pod-b", "own-b")).thenReturn(true);
+
+    TokenFetcherService service = mock(TokenFetcherService.class);
+    doCallRealMethod().when(service).setAuthenticator(any());
+    doCallRealMethod().when(service).setPodTokenTracker(any());
+    doCallRealMethod().when(service).getDelegationTokens(anyList(), any(TokenFetcherService.BatchResultHandler.class));
+    doReturn("shared").when(service).fetchDelegationTokens(namespace, "pod-a", null, "user", tokenKinds);
+    doReturn("own-b").when(service).fetchDelegationTokens(namespace, "pod-b", null, "user", tokenKinds);
+    doReturn("own-c").when(service).fetchDelegationTokens(namespace, "pod-c", null, "user", tokenKinds);
+    service.setAuthenticator(authenticator);
+    service.setPodTokenTracker(podTokenTracker);
+
+    List<Map<String, String[]>> batch = new ArrayList<>();
+    for (String podName : Arrays.asList("pod-a", "pod-b", "pod-c")) {
+      Map<String, String[]> params = new HashMap<>();
+      params.put(Constants.NAMESPACE, new String[]{namespace});
+      params.put(Constants.POD_NAME, new String[]{podName});
+      params.put(Constants.TOKEN_KINDS, tokenKinds);
+      batch.add(params);
+    }
+    String[] tokens = new String[batch.size()];
+    TokenServiceException[] errors = new TokenServiceException[batch.size()];
+    service.getDelegationTokens(batch, new TokenFetcherService.BatchResultHandler() {
+      @Override
+      public void onToken(int index, String tokenStr) {
+        tokens[index] = tokenStr;
+      }
+
+      @Override
+      public void onError(int index, TokenServiceException error) {
+        errors[index] = error;
+      }
+    });
+
+    Assert.assertEquals(tokens, new String[]{"shared", "own-b", null});
+    Assert.assertNull(errors[0]);
+    Assert.assertNull(errors[1]);
+    Assert.assertEquals(errors[2].getErrorCode(), ErrorCode.INTERNAL_ERROR.getCode());
+    verify(service, times(1)).fetchDelegationTokens(namespace, "pod-a", null, "user", tokenKinds);
+  }
+
   private void addTokenToCredential(Credentials cred, String tokenName) {
     Token<TokenIdentifier> token =
         new Token<>(new byte[0], new byte[0], new Text(Constants.HDFS_DELEGATION_TOKEN), new Text());
@@ -0,0 +1,45 @@
+/**
+ * Copyright 2020 LinkedIn Corporation. All rights reserved. Licensed under the BSD-2 Clause license.
+ * See LICENSE in the project root for license information.
+ */
+
+package com.linkedin.kube2hadoop.servlets;
+
+import com.linkedin.kube2hadoop.core.Constants;
+import com.linkedin.kube2hadoop.core.TokenServiceException;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+import java.util.Map;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+
+public class TestBatchGetDelegationTokenServlet {
+  @Test
+  public void testParseBatch() throws IOException {
+    String body = "{\"pods\": [{\"namespace\": \"ns\", \"pod-name\": \"pod-0\"},"
+        + " {\"namespace\": \"ns\", \"pod-name\": \"pod-1\", \"srcIP\": \"10.0.0.1\"}],"
+        + " \"ignored\": {\"field\": [1, 2]}, \"token-kinds\": [\"KIND\"]}";
+
+    List<Map<String, String[]>> batch = BatchGetDelegationTokenServlet.parseBatch(new StringReader(body));
+    Assert.assertEquals(batch.size(), 2);
+    Assert.assertEquals(batch.get(1).get(Constants.NAMESPACE), new String[]{"ns"});
+    Assert.assertEquals(batch.get(1).get(Constants.POD_NAME), new String[]{"pod-1"});
+    Assert.assertEquals(batch.get(1).get(Constants.TOKEN_KINDS), new String[]{"KIND"});
+    Assert.assertNull(batch.get(1).get(Constants.SRCIP));
+  }
+
+  @Test
+  public void testParseBatchWithDefaultTokenKinds() throws IOException {
+    String body = "{\"pods\": [{\"namespace\": \"ns\", \"pod-name\": \"pod-0\"}]}";
+
+    List<Map<String, String[]>> batch = BatchGetDelegationTokenServlet.parseBatch(new StringReader(body));
+    Assert.assertEquals(batch.get(0).get(Constants.TOKEN_KINDS), new String[]{Constants.HDFS_DELEGATION_TOKEN});
+  }
+
+  @Test(expectedExceptions = TokenServiceException.class)
+  public void testParseBatchWithoutPodName() throws IOException {
+    BatchGetDelegationTokenServlet.parseBatch(new StringReader("{\"pods\": [{\"namespace\": \"ns\"}]}"));
+  }
+}